@@ -0,0 +1,338 @@
+package com.hygia.crm.archive;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Immutable file of opaque records grouped by a long key, e.g. a customer id.
+ * <p>
+ * The records of each key are stored as one deflate-compressed block of
+ * {@code length, payload} pairs. An index of fixed-size {@code key, offset, length, count}
+ * entries sorted by key follows the blocks, then a footer with the index position and a
+ * CRC32C of the index. Readers map only the index and binary-search it, so looking up a key
+ * reads and inflates just that key's block, and {@link #count} reads nothing but the index.
+ * <p>
+ * Files are written by a {@link Writer} to a temporary file that is fsynced and then renamed
+ * over the target, so a reader sees either the previous file or the complete new one.
+ */
+public class SegmentFile implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(SegmentFile.class);
+
+    private static final int MAGIC = 0x48594753; // "HYGS"
+    private static final int VERSION = 1;
+    private static final int ENTRY_BYTES = 24;
+    private static final int FOOTER_BYTES = 24;
+    private static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer index;
+    private final int entries;
+
+    private SegmentFile(Path file, FileChannel channel, MappedByteBuffer index, int entries) {
+        this.file = file;
+        this.channel = channel;
+        this.index = index;
+        this.entries = entries;
+    }
+
+    /**
+     * Opens a segment for reading and checks its footer and index.
+     *
+     * @throws IOException also when the file is not a complete segment
+     */
+    public static SegmentFile open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < FOOTER_BYTES) {
+                throw new IOException("Not a segment file: " + file);
+            }
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_BYTES);
+            readFully(channel, footer, size - FOOTER_BYTES);
+            footer.flip();
+            int magic = footer.getInt();
+            int version = footer.getInt();
+            long indexOffset = footer.getLong();
+            int entries = footer.getInt();
+            int checksum = footer.getInt();
+            if (magic != MAGIC || version != VERSION || entries < 0 || indexOffset < 0
+                    || indexOffset + (long) entries * ENTRY_BYTES != size - FOOTER_BYTES) {
+                throw new IOException("Not a segment file or unknown version: " + file);
+            }
+            MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset,
+                    (long) entries * ENTRY_BYTES);
+            CRC32C crc = new CRC32C();
+            crc.update(index.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                throw new IOException("Damaged segment index: " + file);
+            }
+            return new SegmentFile(file, channel, index, entries);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts writing a segment that replaces {@code target} when {@link Writer#finish} returns.
+     */
+    public static Writer create(Path target) throws IOException {
+        return new Writer(target);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Number of distinct keys.
+     */
+    public int keyCount() {
+        return entries;
+    }
+
+    /**
+     * The {@code i}-th key in ascending order, {@code 0 <= i < keyCount()}.
+     */
+    public long keyAt(int i) {
+        return index.getLong(i * ENTRY_BYTES);
+    }
+
+    /**
+     * Number of records in the file, from the index alone.
+     */
+    public long recordCount() {
+        long records = 0;
+        for (int i = 0; i < entries; i++) {
+            records += index.getInt(i * ENTRY_BYTES + 20);
+        }
+        return records;
+    }
+
+    /**
+     * Number of records stored under {@code key}, from the index alone.
+     */
+    public int count(long key) {
+        int entry = find(key);
+        return entry < 0 ? 0 : index.getInt(entry * ENTRY_BYTES + 20);
+    }
+
+    /**
+     * Records stored under {@code key}, in the order they were added; empty if there are none.
+     */
+    public List<byte[]> read(long key) throws IOException {
+        int entry = find(key);
+        if (entry < 0) {
+            return List.of();
+        }
+        int at = entry * ENTRY_BYTES;
+        long offset = index.getLong(at + 8);
+        int length = index.getInt(at + 16);
+        int count = index.getInt(at + 20);
+
+        ByteBuffer compressed = ByteBuffer.allocate(length);
+        readFully(channel, compressed, offset);
+        ByteBuffer block = ByteBuffer.wrap(inflate(compressed.array()));
+        List<byte[]> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] record = new byte[block.getInt()];
+            block.get(record);
+            records.add(record);
+        }
+        return records;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int find(long key) {
+        int low = 0;
+        int high = entries - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midKey = keyAt(mid);
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private byte[] inflate(byte[] compressed) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated block in segment " + file);
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("Damaged block in segment " + file, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of segment file");
+            }
+        }
+    }
+
+    /**
+     * Writes a segment; keys must be added in ascending order, the records of one key together.
+     * Closing a writer that was not finished deletes the partial file and leaves the target alone.
+     */
+    public static class Writer implements Closeable {
+
+        private final Path target;
+        private final Path temp;
+        private final FileChannel channel;
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private final ByteArrayOutputStream block = new ByteArrayOutputStream();
+
+        private long[] keys = new long[1024];
+        private long[] offsets = new long[1024];
+        private int[] lengths = new int[1024];
+        private int[] counts = new int[1024];
+        private int entries;
+        private long position;
+        private boolean finished;
+
+        private Writer(Path target) throws IOException {
+            this.target = target;
+            this.temp = target.resolveSibling(target.getFileName() + ".tmp");
+            this.channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        public void add(long key, byte[] record) throws IOException {
+            if (record.length > MAX_RECORD_BYTES) {
+                throw new IllegalArgumentException("Record of " + record.length + " bytes is too large");
+            }
+            if (entries == 0 || keys[entries - 1] != key) {
+                if (entries > 0 && keys[entries - 1] > key) {
+                    throw new IllegalArgumentException("Key " + key + " added after " + keys[entries - 1]);
+                }
+                flushBlock();
+                grow();
+                keys[entries++] = key;
+            }
+            DataOutputStream out = new DataOutputStream(block);
+            out.writeInt(record.length);
+            out.write(record);
+            counts[entries - 1]++;
+        }
+
+        /**
+         * Writes the index and footer, forces the file to disk and moves it over the target.
+         */
+        public void finish() throws IOException {
+            flushBlock();
+            ByteBuffer index = ByteBuffer.allocate(entries * ENTRY_BYTES);
+            for (int i = 0; i < entries; i++) {
+                index.putLong(keys[i]).putLong(offsets[i]).putInt(lengths[i]).putInt(counts[i]);
+            }
+            index.flip();
+            CRC32C crc = new CRC32C();
+            crc.update(index.duplicate());
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_BYTES)
+                    .putInt(MAGIC).putInt(VERSION).putLong(position).putInt(entries).putInt((int) crc.getValue())
+                    .flip();
+            write(index);
+            write(footer);
+            channel.force(true);
+            channel.close();
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            finished = true;
+            syncDirectory(target.getParent());
+        }
+
+        @Override
+        public void close() throws IOException {
+            deflater.end();
+            if (!finished) {
+                channel.close();
+                Files.deleteIfExists(temp);
+            }
+        }
+
+        private void flushBlock() throws IOException {
+            if (entries == 0 || block.size() == 0) {
+                return;
+            }
+            deflater.reset();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(block.size() / 2 + 64);
+            try (DeflaterOutputStream out = new DeflaterOutputStream(compressed, deflater)) {
+                block.writeTo(out);
+            }
+            block.reset();
+            offsets[entries - 1] = position;
+            lengths[entries - 1] = compressed.size();
+            write(ByteBuffer.wrap(compressed.toByteArray()));
+        }
+
+        private void write(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer);
+            }
+        }
+
+        private void grow() {
+            if (entries == keys.length) {
+                int size = entries * 2;
+                keys = Arrays.copyOf(keys, size);
+                offsets = Arrays.copyOf(offsets, size);
+                lengths = Arrays.copyOf(lengths, size);
+                counts = Arrays.copyOf(counts, size);
+            }
+        }
+    }
+
+    /**
+     * Makes a renamed or deleted file's directory entry durable; not supported on every platform.
+     */
+    public static void syncDirectory(Path dir) {
+        try (FileChannel directory = FileChannel.open(dir, StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            log.debug("Could not fsync segment directory {}", dir, e);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.hygia.crm.config;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets at most {@code maxConcurrent} connections be checked out of the target pool at a time;
+ * further callers wait in a FIFO queue for up to {@code acquireTimeout}. When {@code maxWaiting}
+ * callers are already queued, new ones are rejected at once instead of timing out later.
+ * <p>
+ * With virtual threads thousands of requests can reach the pool at once. Its own hand-off is not
+ * first come first served and times out after {@code connectionTimeout}, so under a burst some
+ * requests fail while later ones get through. Queueing in front of it keeps the pool's waiters
+ * bounded and serves requests in arrival order. A permit is held from {@code getConnection()}
+ * until the connection is closed.
+ */
+public class ConcurrencyLimitedDataSource extends DelegatingDataSource {
+
+    private final Semaphore permits;
+    private final int maxConcurrent;
+    private final int maxWaiting;
+    private final long acquireTimeoutNanos;
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public ConcurrencyLimitedDataSource(DataSource target, int maxConcurrent, int maxWaiting, Duration acquireTimeout) {
+        super(target);
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.maxConcurrent = maxConcurrent;
+        this.maxWaiting = maxWaiting;
+        this.acquireTimeoutNanos = acquireTimeout.toNanos();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        acquire();
+        try {
+            return limited(obtainTargetDataSource().getConnection());
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        acquire();
+        try {
+            return limited(obtainTargetDataSource().getConnection(username, password));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void acquire() throws SQLException {
+        // getQueueLength is an estimate, which is good enough for shedding load
+        if (permits.availablePermits() == 0 && permits.getQueueLength() >= maxWaiting) {
+            rejected.incrementAndGet();
+            throw new DatabaseBusyException(maxConcurrent, maxWaiting + " requests already waiting");
+        }
+        long start = System.nanoTime();
+        boolean granted;
+        try {
+            granted = permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        waitNanos.addAndGet(System.nanoTime() - start);
+        if (!granted) {
+            rejected.incrementAndGet();
+            throw new DatabaseBusyException(maxConcurrent, "no connection freed up within "
+                    + TimeUnit.NANOSECONDS.toMillis(acquireTimeoutNanos) + " ms");
+        }
+        acquired.incrementAndGet();
+    }
+
+    // Releases the permit on the first close()
+    private Connection limited(Connection connection) {
+        AtomicBoolean closed = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+                (proxy, method, args) -> {
+                    if ("equals".equals(method.getName()) && method.getParameterCount() == 1) {
+                        return proxy == args[0];
+                    }
+                    if ("hashCode".equals(method.getName()) && method.getParameterCount() == 0) {
+                        return System.identityHashCode(proxy);
+                    }
+                    if ("close".equals(method.getName()) && method.getParameterCount() == 0) {
+                        try {
+                            return method.invoke(connection);
+                        } catch (InvocationTargetException e) {
+                            throw e.getTargetException();
+                        } finally {
+                            if (closed.compareAndSet(false, true)) {
+                                permits.release();
+                            }
+                        }
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                });
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public int getActive() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    public int getWaiting() {
+        return permits.getQueueLength();
+    }
+
+    public long getAcquired() {
+        return acquired.get();
+    }
+
+    /**
+     * Requests for a connection rejected because the queue was full or they timed out in it.
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Total time spent waiting for a permit, granted or not.
+     */
+    public long getWaitNanos() {
+        return waitNanos.get();
+    }
+
+    /**
+     * The queue was full, or no permit became free within the acquire timeout.
+     */
+    public static class DatabaseBusyException extends SQLTransientConnectionException {
+
+        DatabaseBusyException(int maxConcurrent, String reason) {
+            super("All " + maxConcurrent + " database connections are busy: " + reason);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.hygia.crm.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Puts a {@link ConcurrencyLimitedDataSource} in front of the connection pool. Enabled by default
+ * with {@code crm.datasource.limiter.enabled}; {@code max-concurrent} defaults to the pool size,
+ * {@code max-waiting} to 200 and {@code acquire-timeout} to 10 s.
+ */
+@Configuration
+@ConditionalOnProperty(name = "crm.datasource.limiter.enabled", havingValue = "true", matchIfMissing = true)
+public class DataSourceLimiterConfig {
+
+    @Bean
+    public static BeanPostProcessor concurrencyLimitedDataSourcePostProcessor(Environment environment) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof HikariDataSource pool)) {
+                    return bean;
+                }
+                int maxConcurrent = environment.getProperty("crm.datasource.limiter.max-concurrent", Integer.class,
+                        pool.getMaximumPoolSize());
+                int maxWaiting = environment.getProperty("crm.datasource.limiter.max-waiting", Integer.class, 200);
+                Duration acquireTimeout = environment.getProperty("crm.datasource.limiter.acquire-timeout",
+                        Duration.class, Duration.ofSeconds(10));
+                return new ConcurrencyLimitedDataSource(pool, maxConcurrent, maxWaiting, acquireTimeout);
+            }
+        };
+    }
+
+    /**
+     * {@code crm.db.limiter.active}, {@code crm.db.limiter.waiting}, {@code crm.db.limiter.wait}
+     * (time spent queueing) and {@code crm.db.limiter.rejected} (queue full or timed out).
+     */
+    @Bean
+    public MeterBinder concurrencyLimitedDataSourceMetrics(DataSource dataSource) {
+        return registry -> {
+            ConcurrencyLimitedDataSource limiter;
+            try {
+                limiter = dataSource.unwrap(ConcurrencyLimitedDataSource.class);
+            } catch (Exception e) {
+                return;
+            }
+            Gauge.builder("crm.db.limiter.active", limiter, ConcurrencyLimitedDataSource::getActive)
+                    .description("Connections checked out through the limiter")
+                    .register(registry);
+            Gauge.builder("crm.db.limiter.waiting", limiter, ConcurrencyLimitedDataSource::getWaiting)
+                    .description("Threads queued for a connection")
+                    .register(registry);
+            FunctionTimer.builder("crm.db.limiter.wait", limiter,
+                            l -> l.getAcquired() + l.getRejected(), ConcurrencyLimitedDataSource::getWaitNanos,
+                            TimeUnit.NANOSECONDS)
+                    .description("Time spent queueing for a connection")
+                    .register(registry);
+            FunctionCounter.builder("crm.db.limiter.rejected", limiter, ConcurrencyLimitedDataSource::getRejected)
+                    .description("Requests for a connection that timed out in the queue")
+                    .register(registry);
+        };
+    }
+}
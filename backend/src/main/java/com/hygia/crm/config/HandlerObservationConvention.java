@@ -0,0 +1,33 @@
+package com.hygia.crm.config;
+
+import io.micrometer.common.KeyValues;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.server.observation.DefaultServerRequestObservationConvention;
+import org.springframework.http.server.observation.ServerRequestObservationContext;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Adds a {@code handler} tag (e.g. {@code CustomerController.getAllCustomers}) to the
+ * {@code http.server.requests} metrics, so latency can be broken down per controller method.
+ */
+public class HandlerObservationConvention extends DefaultServerRequestObservationConvention {
+
+    public static final String NO_HANDLER = "none";
+
+    @Override
+    public KeyValues getLowCardinalityKeyValues(ServerRequestObservationContext context) {
+        return super.getLowCardinalityKeyValues(context).and("handler", handlerName(context.getCarrier()));
+    }
+
+    /**
+     * The controller method that handled the request, or {@value #NO_HANDLER} if none matched.
+     */
+    public static String handlerName(HttpServletRequest request) {
+        if (request != null
+                && request.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE) instanceof HandlerMethod handler) {
+            return handler.getBeanType().getSimpleName() + "." + handler.getMethod().getName();
+        }
+        return NO_HANDLER;
+    }
+}
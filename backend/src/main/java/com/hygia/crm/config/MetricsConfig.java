@@ -0,0 +1,51 @@
+package com.hygia.crm.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Metrics on top of what Spring Boot binds by itself ({@code http.server.requests},
+ * {@code hikaricp.*}, the global {@code hibernate.*} statistics).
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public HandlerObservationConvention handlerObservationConvention() {
+        return new HandlerObservationConvention();
+    }
+
+    /**
+     * Loads and fetches per entity type: {@code crm.hibernate.entity.loads} and
+     * {@code crm.hibernate.entity.fetches}, tagged with {@code entity}. A fast growing fetch count
+     * points at lazy associations initialized one by one. Only registered when Hibernate
+     * statistics are enabled, as they would stay at zero otherwise.
+     */
+    @Bean
+    public MeterBinder hibernateEntityMetrics(EntityManagerFactory entityManagerFactory) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        return registry -> {
+            if (!statistics.isStatisticsEnabled()) {
+                return;
+            }
+            for (String entityName : statistics.getEntityNames()) {
+                String entity = entityName.substring(entityName.lastIndexOf('.') + 1);
+                FunctionCounter.builder("crm.hibernate.entity.loads", statistics,
+                                s -> s.getEntityStatistics(entityName).getLoadCount())
+                        .description("Entities loaded from the database")
+                        .tag("entity", entity)
+                        .register(registry);
+                FunctionCounter.builder("crm.hibernate.entity.fetches", statistics,
+                                s -> s.getEntityStatistics(entityName).getFetchCount())
+                        .description("Entities fetched by a separate query, e.g. lazy associations")
+                        .tag("entity", entity)
+                        .register(registry);
+            }
+        };
+    }
+}
@@ -0,0 +1,67 @@
+package com.hygia.crm.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the SQL statements and JDBC execution time of every request, per controller method:
+ * {@code crm.http.sql.statements} and {@code crm.http.sql.time}, both tagged with {@code handler}
+ * and {@code method}. A handler whose statement count grows with the page size is an N+1.
+ * <p>
+ * Counts only work done on the request thread, since the counters are thread-local: the queries
+ * {@code GET /api/customers/{id}/overview} runs on its own pool and the async part of streaming
+ * exports are not included. They are not handed over from those threads on purpose: an overview
+ * query that outlives its deadline would add to the counter of whatever request the thread serves
+ * next.
+ */
+@Component
+public class RequestSqlMetricsFilter extends OncePerRequestFilter {
+
+    /**
+     * Request attribute holding the {@link SqlStatementCounter} reading taken when the request started.
+     */
+    public static final String STATEMENTS_AT_START = RequestSqlMetricsFilter.class.getName() + ".statementsAtStart";
+
+    private final MeterRegistry meterRegistry;
+
+    public RequestSqlMetricsFilter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long statementsBefore = SqlStatementCounter.current();
+        long sqlNanosBefore = SqlTimeRecorder.currentNanos();
+        request.setAttribute(STATEMENTS_AT_START, statementsBefore);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            String handler = HandlerObservationConvention.handlerName(request);
+            DistributionSummary.builder("crm.http.sql.statements")
+                    .description("SQL statements prepared per request, on the request thread only")
+                    .tag("handler", handler)
+                    .tag("method", request.getMethod())
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(SqlStatementCounter.current() - statementsBefore);
+            Timer.builder("crm.http.sql.time")
+                    .description("JDBC statement execution time per request, on the request thread only")
+                    .tag("handler", handler)
+                    .tag("method", request.getMethod())
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(SqlTimeRecorder.currentNanos() - sqlNanosBefore, TimeUnit.NANOSECONDS);
+        }
+    }
+}
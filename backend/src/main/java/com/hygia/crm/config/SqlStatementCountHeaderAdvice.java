@@ -0,0 +1,44 @@
+package com.hygia.crm.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Dev only: adds the {@value SqlStatementCounter#HEADER} header with the SQL statements executed so
+ * far to every response body. Handlers that set the header themselves keep their value. Enabled with
+ * {@code crm.metrics.statement-count-header=true}.
+ */
+@ControllerAdvice
+@Profile("dev")
+@ConditionalOnProperty(name = "crm.metrics.statement-count-header", havingValue = "true")
+public class SqlStatementCountHeaderAdvice implements ResponseBodyAdvice<Object> {
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (request instanceof ServletServerHttpRequest servletRequest
+                && !response.getHeaders().containsKey(SqlStatementCounter.HEADER)) {
+            HttpServletRequest httpRequest = servletRequest.getServletRequest();
+            if (httpRequest.getAttribute(RequestSqlMetricsFilter.STATEMENTS_AT_START) instanceof Long start) {
+                response.getHeaders().set(SqlStatementCounter.HEADER,
+                        String.valueOf(SqlStatementCounter.current() - start));
+            }
+        }
+        return body;
+    }
+}
@@ -0,0 +1,27 @@
+package com.hygia.crm.config;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Counts the SQL statements Hibernate prepares on the current thread.
+ * <p>
+ * Registered through {@code hibernate.session_factory.statement_inspector}. The count only
+ * ever grows; callers take a reading before and after a unit of work and report the difference.
+ * Statements run on other threads, such as executor pools, are not part of the reading.
+ */
+public class SqlStatementCounter implements StatementInspector {
+
+    public static final String HEADER = "X-SQL-Statement-Count";
+
+    private static final ThreadLocal<long[]> COUNT = ThreadLocal.withInitial(() -> new long[1]);
+
+    @Override
+    public String inspect(String sql) {
+        COUNT.get()[0]++;
+        return sql;
+    }
+
+    public static long current() {
+        return COUNT.get()[0];
+    }
+}
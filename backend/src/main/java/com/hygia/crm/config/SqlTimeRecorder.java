@@ -0,0 +1,45 @@
+package com.hygia.crm.config;
+
+import org.hibernate.SessionEventListener;
+
+/**
+ * Adds up the time Hibernate spends executing JDBC statements and batches on the current thread.
+ * <p>
+ * Registered through {@code hibernate.session.events.auto}. Like {@link SqlStatementCounter}, the
+ * total only ever grows; callers take a reading before and after a unit of work. Reading result
+ * sets is not included.
+ */
+public class SqlTimeRecorder implements SessionEventListener {
+
+    // [0] total nanos, [1] start of the running statement
+    private static final ThreadLocal<long[]> NANOS = ThreadLocal.withInitial(() -> new long[2]);
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        NANOS.get()[1] = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        stop();
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+        NANOS.get()[1] = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        stop();
+    }
+
+    private static void stop() {
+        long[] nanos = NANOS.get();
+        nanos[0] += System.nanoTime() - nanos[1];
+    }
+
+    public static long currentNanos() {
+        return NANOS.get()[0];
+    }
+}
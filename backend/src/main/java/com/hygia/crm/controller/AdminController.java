@@ -0,0 +1,202 @@
+package com.hygia.crm.controller;
+
+import com.hygia.crm.dto.ErrorResponse;
+import com.hygia.crm.service.CustomerActivityService;
+import com.hygia.crm.service.CustomerSearchService;
+import com.hygia.crm.service.SalesRollupService;
+import com.hygia.crm.service.ServiceException;
+import com.hygia.crm.service.VisitArchiveService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin")
+@Tag(name = "Admin", description = "Maintenance commands for derived data")
+public class AdminController {
+
+    private final CustomerSearchService customerSearchService;
+    private final CustomerActivityService customerActivityService;
+    private final SalesRollupService salesRollupService;
+    private final VisitArchiveService visitArchiveService;
+    private final SessionFactory sessionFactory;
+
+    public AdminController(
+            CustomerSearchService customerSearchService,
+            CustomerActivityService customerActivityService,
+            SalesRollupService salesRollupService,
+            VisitArchiveService visitArchiveService,
+            EntityManagerFactory entityManagerFactory) {
+        this.customerSearchService = customerSearchService;
+        this.customerActivityService = customerActivityService;
+        this.salesRollupService = salesRollupService;
+        this.visitArchiveService = visitArchiveService;
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+    }
+
+    @PostMapping("/customers/search-index/rebuild")
+    @Operation(summary = "Rebuild the customer search index",
+               description = "Recomputes the normalized search columns and the n-gram index for every customer. " +
+                           "Needed once for customers created before the index existed.")
+    public ResponseEntity<Map<String, Object>> rebuildCustomerSearchIndex() {
+        long start = System.currentTimeMillis();
+        long indexed = customerSearchService.rebuild();
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("customersIndexed", indexed);
+        response.put("elapsedMillis", System.currentTimeMillis() - start);
+        return ResponseEntity.ok(response);
+    }
+
+    @PostMapping("/customers/activity/rebuild")
+    @Operation(summary = "Rebuild the customer activity summary",
+               description = "Recomputes last visit, open follow-up, last invoice and lifetime revenue of every customer " +
+                           "from visit logs and invoices. Needed once for data written before the summary existed.")
+    public ResponseEntity<Map<String, Object>> rebuildCustomerActivity() {
+        long start = System.currentTimeMillis();
+        long processed = customerActivityService.rebuild();
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("customersProcessed", processed);
+        response.put("elapsedMillis", System.currentTimeMillis() - start);
+        return ResponseEntity.ok(response);
+    }
+
+    @PostMapping("/analytics/sales-rollup/rebuild")
+    @Operation(summary = "Rebuild the sales rollup",
+               description = "Recomputes the revenue rollup behind /api/analytics from invoices and invoice items, in " +
+                           "parallel invoice id chunks of one snapshot, and corrects it by the difference, so invoices " +
+                           "written meanwhile stay counted. Use to repair drift, e.g. " +
+                           "after invoices were changed outside the application. Region and tier are taken from the " +
+                           "customers as they are now. Returns 409 ROLLUP_REBUILD_RUNNING while a rebuild runs on any instance.")
+    public ResponseEntity<?> rebuildSalesRollup() {
+        long start = System.currentTimeMillis();
+        long rows;
+        try {
+            rows = salesRollupService.rebuild();
+        } catch (ServiceException e) {
+            return ResponseEntity.status(e.getStatus()).body(e.toErrorResponse());
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("rollupRows", rows);
+        response.put("elapsedMillis", System.currentTimeMillis() - start);
+        return ResponseEntity.ok(response);
+    }
+
+    @PostMapping("/visits/archive")
+    @Operation(summary = "Archive old visits",
+               description = "Moves the visits of every whole month before crm.visits.archive.horizon out of visit_log " +
+                           "into compressed monthly segment files, merging visits added to an already archived month. " +
+                           "Customer visit listings read through to the archive. Returns 409 VISIT_ARCHIVE_BUSY while an " +
+                           "archive or restore runs on any instance.")
+    public ResponseEntity<?> archiveVisits() {
+        long start = System.currentTimeMillis();
+        Map<YearMonth, Long> archived;
+        try {
+            archived = visitArchiveService.archive();
+        } catch (ServiceException e) {
+            return ResponseEntity.status(e.getStatus()).body(e.toErrorResponse());
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("visitsArchived", archived.values().stream().mapToLong(Long::longValue).sum());
+        response.put("months", archived);
+        response.put("elapsedMillis", System.currentTimeMillis() - start);
+        return ResponseEntity.ok(response);
+    }
+
+    @PostMapping("/visits/archive/{month}/restore")
+    @Operation(summary = "Restore an archived month of visits",
+               description = "Inserts the archived visits of the month back into visit_log and deletes its segment. " +
+                           "Visits already in visit_log are skipped, so an interrupted restore can be repeated. " +
+                           "The next archive run moves the month out again if it is still before the horizon.")
+    public ResponseEntity<?> restoreVisits(
+            @Parameter(description = "Month as yyyy-MM", required = true) @PathVariable String month) {
+        YearMonth yearMonth;
+        try {
+            yearMonth = YearMonth.parse(month);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(new ErrorResponse("INVALID_MONTH", "month must be formatted as yyyy-MM"));
+        }
+
+        long start = System.currentTimeMillis();
+        long restored;
+        try {
+            restored = visitArchiveService.restore(yearMonth);
+        } catch (ServiceException e) {
+            return ResponseEntity.status(e.getStatus()).body(e.toErrorResponse());
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("month", yearMonth);
+        response.put("visitsRestored", restored);
+        response.put("elapsedMillis", System.currentTimeMillis() - start);
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/visits/archive")
+    @Operation(summary = "List archived months of visits",
+               description = "One entry per monthly segment with its customer and visit counts and file size.")
+    public ResponseEntity<List<VisitArchiveService.SegmentInfo>> listArchivedVisits() {
+        return ResponseEntity.ok(visitArchiveService.listSegments());
+    }
+
+    @GetMapping("/cache/stats")
+    @Operation(summary = "Second-level cache statistics",
+               description = "Hit, miss and put counts per cache region since startup or the last evict.")
+    public ResponseEntity<Map<String, Object>> getCacheStats() {
+        Statistics statistics = sessionFactory.getStatistics();
+
+        Map<String, Object> regions = new LinkedHashMap<>();
+        for (String regionName : statistics.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics regionStatistics = statistics.getDomainDataRegionStatistics(regionName);
+            long hits = regionStatistics.getHitCount();
+            long misses = regionStatistics.getMissCount();
+
+            Map<String, Object> region = new LinkedHashMap<>();
+            region.put("hits", hits);
+            region.put("misses", misses);
+            region.put("puts", regionStatistics.getPutCount());
+            region.put("hitRatio", hits + misses > 0 ? (double) hits / (hits + misses) : 0.0);
+            regions.put(regionName, region);
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("statisticsEnabled", statistics.isStatisticsEnabled());
+        response.put("hits", statistics.getSecondLevelCacheHitCount());
+        response.put("misses", statistics.getSecondLevelCacheMissCount());
+        response.put("puts", statistics.getSecondLevelCachePutCount());
+        response.put("regions", regions);
+        return ResponseEntity.ok(response);
+    }
+
+    @PostMapping("/cache/evict")
+    @Operation(summary = "Evict the second-level cache",
+               description = "Drops all cached Region and Product entries and resets the cache statistics. " +
+                           "Use after changing reference data outside the application; otherwise entries expire " +
+                           "after the TTL configured in ehcache.xml.")
+    public ResponseEntity<Void> evictCache() {
+        sessionFactory.getCache().evictAllRegions();
+        sessionFactory.getStatistics().clear();
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,166 @@
+package com.hygia.crm.controller;
+
+import com.hygia.crm.dto.ErrorResponse;
+import com.hygia.crm.dto.SalesReportDto;
+import com.hygia.crm.dto.SalesSliceDto;
+import com.hygia.crm.entity.Customer;
+import com.hygia.crm.entity.Product;
+import com.hygia.crm.entity.Region;
+import com.hygia.crm.repository.ProductRepository;
+import com.hygia.crm.repository.RegionRepository;
+import com.hygia.crm.repository.SalesDimension;
+import com.hygia.crm.repository.SalesSlice;
+import com.hygia.crm.service.SalesRollupService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@RestController
+@RequestMapping("/api/analytics")
+@Tag(name = "Analytics", description = "Revenue reports served from the sales rollup")
+public class AnalyticsController {
+
+    private final SalesRollupService salesRollupService;
+    private final RegionRepository regionRepository;
+    private final ProductRepository productRepository;
+
+    public AnalyticsController(
+            SalesRollupService salesRollupService,
+            RegionRepository regionRepository,
+            ProductRepository productRepository) {
+        this.salesRollupService = salesRollupService;
+        this.regionRepository = regionRepository;
+        this.productRepository = productRepository;
+    }
+
+    @GetMapping("/revenue")
+    @Operation(
+        summary = "Revenue report",
+        description = "Revenue, quantity and invoice line count grouped by any combination of month, region, tier " +
+                     "and product, e.g. groupBy=region,month. Region and tier are the customer's at the time the " +
+                     "invoice was written. Answered from the sales rollup, not from invoices."
+    )
+    public ResponseEntity<?> getRevenue(
+            @Parameter(description = "Comma-separated dimensions: month, region, tier, product. Defaults to month; empty for a grand total.", example = "region,month")
+            @RequestParam(required = false) String groupBy,
+            @Parameter(description = "First month included (yyyy-MM)", example = "2025-01") @RequestParam(required = false) String from,
+            @Parameter(description = "Last month included (yyyy-MM)", example = "2025-12") @RequestParam(required = false) String to,
+            @Parameter(description = "Filter by region ID") @RequestParam(required = false) Long regionId,
+            @Parameter(description = "Filter by tier (allowed values: A, B, C, Potential)") @RequestParam(required = false) String tier,
+            @Parameter(description = "Filter by product ID") @RequestParam(required = false) Long productId) {
+
+        List<SalesDimension> dimensions = new ArrayList<>();
+        for (String name : (groupBy != null ? groupBy : "month").split(",")) {
+            if (name.isBlank()) {
+                continue;
+            }
+            SalesDimension dimension = SalesDimension.parse(name);
+            if (dimension == null) {
+                ErrorResponse error = new ErrorResponse(
+                    "INVALID_GROUP_BY",
+                    "Invalid groupBy value: " + name.trim() + ". Allowed values are: month, region, tier, product"
+                );
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+            }
+            if (!dimensions.contains(dimension)) {
+                dimensions.add(dimension);
+            }
+        }
+
+        YearMonth fromMonth;
+        YearMonth toMonth;
+        try {
+            fromMonth = from != null ? YearMonth.parse(from) : null;
+            toMonth = to != null ? YearMonth.parse(to) : null;
+        } catch (DateTimeParseException e) {
+            ErrorResponse error = new ErrorResponse("INVALID_PERIOD", "from and to must be months in the format yyyy-MM");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        }
+        if (fromMonth != null && toMonth != null && fromMonth.isAfter(toMonth)) {
+            ErrorResponse error = new ErrorResponse("INVALID_PERIOD", "from must not be after to");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        }
+
+        if (tier != null && !tier.isEmpty() && !Customer.TIERS.contains(tier)) {
+            ErrorResponse error = new ErrorResponse(
+                "INVALID_TIER",
+                "Invalid tier value: " + tier + ". Allowed values are: A, B, C, Potential"
+            );
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        }
+
+        List<SalesSlice> slices = salesRollupService.summarize(
+                dimensions,
+                fromMonth != null ? fromMonth.atDay(1) : null,
+                toMonth != null ? toMonth.atDay(1) : null,
+                regionId,
+                tier != null && !tier.isEmpty() ? tier : null,
+                productId);
+
+        SalesReportDto report = toReport(dimensions, from, to, slices);
+        return ResponseEntity.ok(report);
+    }
+
+    private SalesReportDto toReport(List<SalesDimension> dimensions, String from, String to, List<SalesSlice> slices) {
+        Map<Long, String> regionNames = dimensions.contains(SalesDimension.REGION)
+                ? regionRepository.findAll().stream().collect(Collectors.toMap(Region::getId, Region::getName))
+                : Map.of();
+        Set<Long> productIds = slices.stream()
+                .map(SalesSlice::productId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<Long, String> productCodes = productRepository.findAllByIdCached(productIds).stream()
+                .collect(Collectors.toMap(Product::getId, Product::getItemCode));
+
+        BigDecimal totalRevenue = BigDecimal.ZERO;
+        long totalQuantity = 0;
+        long totalLines = 0;
+        List<SalesSliceDto> rows = new ArrayList<>(slices.size());
+        for (SalesSlice slice : slices) {
+            // Sums over no rows are null
+            if (slice.lineCount() == null) {
+                continue;
+            }
+            LocalDate periodStart = slice.periodStart();
+            rows.add(new SalesSliceDto(
+                    periodStart != null ? YearMonth.from(periodStart).toString() : null,
+                    slice.regionId(),
+                    slice.regionId() != null ? regionNames.get(slice.regionId()) : null,
+                    slice.tier(),
+                    slice.productId(),
+                    slice.productId() != null ? productCodes.get(slice.productId()) : null,
+                    slice.revenue(),
+                    slice.quantity(),
+                    slice.lineCount()));
+            totalRevenue = totalRevenue.add(slice.revenue());
+            totalQuantity += slice.quantity();
+            totalLines += slice.lineCount();
+        }
+
+        return new SalesReportDto(
+                dimensions.stream().map(dimension -> dimension.name().toLowerCase()).toList(),
+                from,
+                to,
+                totalRevenue,
+                totalQuantity,
+                totalLines,
+                rows);
+    }
+}
@@ -0,0 +1,80 @@
+package com.hygia.crm.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Encodes keyset scroll positions as opaque continuation tokens.
+ * <p>
+ * A token is base64url JSON holding the sort it was issued for and the key values of the last
+ * row returned. Key values travel as strings and are parsed back with the per-endpoint key types,
+ * so a token can only be replayed against the sort it was created with.
+ */
+final class CursorCodec {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private CursorCodec() {
+    }
+
+    static String nextCursor(String sort, Window<?> window) {
+        if (!window.hasNext() || window.isEmpty()) {
+            return null;
+        }
+        KeysetScrollPosition position = (KeysetScrollPosition) window.positionAt(window.size() - 1);
+        Map<String, String> keys = new LinkedHashMap<>();
+        position.getKeys().forEach((key, value) -> keys.put(key, String.valueOf(value)));
+        Token token = new Token(sort, keys);
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(MAPPER.writeValueAsBytes(token));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot encode cursor", e);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the token is malformed, was issued for another sort,
+     *                                  or carries unexpected keys
+     */
+    static KeysetScrollPosition decode(String cursor, String sort, Map<String, Function<String, Object>> keyTypes) {
+        Token token;
+        try {
+            token = MAPPER.readValue(Base64.getUrlDecoder().decode(cursor), new TypeReference<Token>() { });
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        if (token.s() == null || !token.s().equals(sort)) {
+            throw new IllegalArgumentException("Cursor was issued for sort '" + token.s() + "', not '" + sort + "'");
+        }
+        if (token.k() == null || token.k().isEmpty()) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+
+        Map<String, Object> keys = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : token.k().entrySet()) {
+            Function<String, Object> parser = keyTypes.get(entry.getKey());
+            if (parser == null) {
+                throw new IllegalArgumentException("Unexpected cursor key: " + entry.getKey());
+            }
+            try {
+                keys.put(entry.getKey(), parser.apply(entry.getValue()));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Malformed cursor value for " + entry.getKey());
+            }
+        }
+        return ScrollPosition.forward(keys);
+    }
+
+    private record Token(String s, Map<String, String> k) {
+    }
+}
@@ -1,44 +1,80 @@
 package com.hygia.crm.controller;
 
 import com.hygia.crm.dto.CustomerCreateDto;
+import com.hygia.crm.dto.CursorPageDto;
 import com.hygia.crm.dto.CustomerDto;
+import com.hygia.crm.dto.CustomerOverviewDto;
 import com.hygia.crm.dto.CustomerRegionDto;
+import com.hygia.crm.dto.CustomerTotalsDto;
 import com.hygia.crm.dto.ErrorResponse;
 import com.hygia.crm.entity.Customer;
+import com.hygia.crm.entity.CustomerActivity;
 import com.hygia.crm.entity.Region;
 import com.hygia.crm.repository.CustomerRepository;
+import com.hygia.crm.repository.CustomerRow;
 import com.hygia.crm.repository.CustomerSpecification;
 import com.hygia.crm.repository.RegionRepository;
+import com.hygia.crm.service.CustomerOverviewService;
+import com.hygia.crm.service.CustomerService;
+import com.hygia.crm.service.ServiceException;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import org.springframework.data.domain.KeysetScrollPosition;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 
 @RestController
 @RequestMapping("/api/customers")
 @Tag(name = "Customers", description = "Customer management API")
 public class CustomerController {
 
-    private static final Set<String> VALID_TIERS = new HashSet<>(Arrays.asList("A", "B", "C", "Potential"));
+    // Sort fields backed by an index (name_std is unique, id is the primary key)
+    private static final Set<String> SORTABLE_FIELDS = new LinkedHashSet<>(Arrays.asList("nameStd", "id"));
+
+    // Sort fields read from the activity summary (idx_activity_last_activity, idx_activity_last_visit)
+    private static final Set<String> ACTIVITY_SORT_FIELDS = new LinkedHashSet<>(Arrays.asList("lastActivityAt", "lastVisitAt"));
+
+    private static final Map<String, Function<String, Object>> CURSOR_KEY_TYPES = Map.of(
+        "nameStd", value -> value,
+        "id", Long::valueOf
+    );
+
+    private static final int MAX_CURSOR_PAGE_SIZE = 1000;
+
+    private static final String RELEVANCE_SORT = "relevance";
+
+    private static final int MAX_OVERVIEW_ITEMS = 100;
 
     private final CustomerRepository customerRepository;
     private final RegionRepository regionRepository;
+    private final CustomerService customerService;
+    private final CustomerOverviewService customerOverviewService;
 
-    public CustomerController(CustomerRepository customerRepository, RegionRepository regionRepository) {
+    public CustomerController(
+            CustomerRepository customerRepository,
+            RegionRepository regionRepository,
+            CustomerService customerService,
+            CustomerOverviewService customerOverviewService) {
         this.customerRepository = customerRepository;
         this.regionRepository = regionRepository;
+        this.customerService = customerService;
+        this.customerOverviewService = customerOverviewService;
     }
 
     @PostMapping
@@ -74,7 +110,7 @@ public class CustomerController {
         }
 
         // Validate tier if provided
-        if (!VALID_TIERS.contains(tier)) {
+        if (!Customer.TIERS.contains(tier)) {
             ErrorResponse error = new ErrorResponse(
                 "INVALID_TIER",
                 "Invalid tier value: " + tier + ". Allowed values are: A, B, C, Potential"
@@ -96,8 +132,8 @@ public class CustomerController {
         // isProspect will be automatically set to true if tier == "Potential", false otherwise
         // This happens in the @PrePersist lifecycle callback
 
-        // Save customer
-        Customer savedCustomer = customerRepository.save(customer);
+        // Save customer (and its search index entries)
+        Customer savedCustomer = customerService.save(customer);
 
         // Convert to DTO
         CustomerDto customerDto = convertToDto(savedCustomer);
@@ -110,8 +146,14 @@ public class CustomerController {
         summary = "Get customers with pagination and filters",
         description = "Returns a paginated list of customers with optional filters. " +
                      "Supports filtering by regionId, tier, search query (q), and isProspect. " +
-                     "Supports follow-up filtering with followup=due. " +
-                     "Default pagination: page=0, size=20, sort=nameStd,asc"
+                     "Supports follow-up filtering with followup=due (the follow-up set by the latest visit is due). " +
+                     "Default pagination: page=0, size=20, sort=nameStd,asc (sort=relevance when q is given). " +
+                     "Sortable fields: nameStd, id, relevance together with q, and lastActivityAt, lastVisitAt " +
+                     "(offset paging only, customers without activity last). " +
+                     "q matches names anywhere for 3+ characters and at word starts for shorter queries; " +
+                     "queries made of digits and punctuation also match phone numbers, ignoring punctuation. " +
+                     "With paging=cursor (or any cursor value) the response is a cursor page instead: " +
+                     "it uses keyset pagination, skips the total count, and returns nextCursor to pass back as cursor."
     )
     public ResponseEntity<?> getAllCustomers(
             @Parameter(description = "Page number (0-based)", example = "0") 
@@ -120,8 +162,8 @@ public class CustomerController {
             @Parameter(description = "Page size", example = "20") 
             @RequestParam(defaultValue = "20") int size,
             
-            @Parameter(description = "Sort field and direction (format: field,direction)", example = "nameStd,asc") 
-            @RequestParam(defaultValue = "nameStd,asc") String sort,
+            @Parameter(description = "Sort field and direction (format: field,direction), or relevance when q is given", example = "nameStd,asc") 
+            @RequestParam(required = false) String sort,
             
             @Parameter(description = "Filter by region ID") 
             @RequestParam(required = false) Long regionId,
@@ -129,17 +171,23 @@ public class CustomerController {
             @Parameter(description = "Filter by tier (allowed values: A, B, C, Potential)") 
             @RequestParam(required = false) String tier,
             
-            @Parameter(description = "Search query (case-insensitive match on nameStd and phone)") 
+            @Parameter(description = "Search query (indexed, case- and accent-insensitive match on nameStd and phone)") 
             @RequestParam(required = false) String q,
             
             @Parameter(description = "Filter by prospect status (true/false)") 
             @RequestParam(required = false) Boolean isProspect,
 
             @Parameter(description = "Filter by follow-up status. Currently only 'due' is supported.") 
-            @RequestParam(required = false) String followup) {
+            @RequestParam(required = false) String followup,
+
+            @Parameter(description = "Pagination mode: offset (default) or cursor", example = "offset")
+            @RequestParam(defaultValue = "offset") String paging,
+
+            @Parameter(description = "Continuation token from a previous cursor page (implies paging=cursor)")
+            @RequestParam(required = false) String cursor) {
 
         // Validate tier value
-        if (tier != null && !tier.isEmpty() && !VALID_TIERS.contains(tier)) {
+        if (tier != null && !tier.isEmpty() && !Customer.TIERS.contains(tier)) {
             ErrorResponse error = new ErrorResponse(
                 "INVALID_TIER",
                 "Invalid tier value: " + tier + ". Allowed values are: A, B, C, Potential"
@@ -147,6 +195,32 @@ public class CustomerController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
         }
 
+        boolean searching = q != null && !q.isEmpty();
+        boolean cursorMode = cursor != null || "cursor".equalsIgnoreCase(paging);
+        if (sort == null || sort.isEmpty()) {
+            sort = searching && !cursorMode ? RELEVANCE_SORT : "nameStd,asc";
+        }
+
+        // Normalize follow-up filter
+        String followupFilter = (followup != null && "due".equalsIgnoreCase(followup)) ? "due" : null;
+
+        // Build specification with filters
+        Specification<Customer> spec = CustomerSpecification.withFilters(regionId, tier, q, isProspect, followupFilter);
+
+        // Ranked search results: ordering comes from the specification, not from the pageable
+        if (RELEVANCE_SORT.equalsIgnoreCase(sort)) {
+            if (!searching || cursorMode) {
+                ErrorResponse error = new ErrorResponse(
+                    "INVALID_SORT",
+                    "sort=relevance requires q and offset paging"
+                );
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+            }
+            Page<CustomerRow> customerPage = customerRepository.findRows(
+                    spec.and(CustomerSpecification.orderByRelevance(q)), PageRequest.of(page, size));
+            return ResponseEntity.ok(customerPage.map(RowMapper::toDto));
+        }
+
         // Parse sort parameter
         String[] sortParams = sort.split(",");
         String sortField = sortParams[0];
@@ -154,25 +228,131 @@ public class CustomerController {
                 ? Sort.Direction.DESC 
                 : Sort.Direction.ASC;
 
-        // Create pageable
-        Pageable pageable = PageRequest.of(page, size, Sort.by(direction, sortField));
+        // Activity sorts: ordering comes from the specification, not from the pageable
+        if (ACTIVITY_SORT_FIELDS.contains(sortField)) {
+            if (cursorMode) {
+                ErrorResponse error = new ErrorResponse(
+                    "INVALID_SORT",
+                    "sort=" + sortField + " requires offset paging"
+                );
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+            }
+            Page<CustomerRow> customerPage = customerRepository.findRows(
+                    spec.and(CustomerSpecification.orderByActivity(sortField, direction)), PageRequest.of(page, size));
+            return ResponseEntity.ok(customerPage.map(RowMapper::toDto));
+        }
 
-        // Normalize follow-up filter
-        String followupFilter = (followup != null && "due".equalsIgnoreCase(followup)) ? "due" : null;
+        // Only allow sorting on indexed columns
+        if (!SORTABLE_FIELDS.contains(sortField)) {
+            ErrorResponse error = new ErrorResponse(
+                "INVALID_SORT",
+                "Invalid sort field: " + sortField + ". Allowed values are: " +
+                String.join(", ", SORTABLE_FIELDS) + ", " + String.join(", ", ACTIVITY_SORT_FIELDS)
+            );
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        }
 
-        // Build specification with filters
-        Specification<Customer> spec = CustomerSpecification.withFilters(regionId, tier, q, isProspect, followupFilter);
+        if (cursorMode) {
+            return getCustomersByCursor(spec, Sort.by(direction, sortField), size, cursor);
+        }
+
+        // Create pageable
+        Pageable pageable = PageRequest.of(page, size, Sort.by(direction, sortField));
 
         // Get paginated customers
-        Page<Customer> customerPage = customerRepository.findAll(spec, pageable);
+        Page<CustomerRow> customerPage = customerRepository.findRows(spec, pageable);
 
         // Convert to DTOs
-        Page<CustomerDto> customerDtoPage = customerPage.map(this::convertToDto);
+        Page<CustomerDto> customerDtoPage = customerPage.map(RowMapper::toDto);
 
         return ResponseEntity.ok(customerDtoPage);
     }
 
-    private CustomerDto convertToDto(Customer customer) {
+    private ResponseEntity<?> getCustomersByCursor(Specification<Customer> spec, Sort sort, int size, String cursor) {
+        if (size < 1 || size > MAX_CURSOR_PAGE_SIZE) {
+            ErrorResponse error = new ErrorResponse(
+                "INVALID_PAGE_REQUEST",
+                "size must be between 1 and " + MAX_CURSOR_PAGE_SIZE
+            );
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        }
+
+        Sort.Order order = sort.iterator().next();
+        String sortKey = order.getProperty() + "," + order.getDirection().name().toLowerCase();
+
+        KeysetScrollPosition position;
+        if (cursor == null || cursor.isEmpty()) {
+            position = ScrollPosition.keyset();
+        } else {
+            try {
+                position = CursorCodec.decode(cursor, sortKey, CURSOR_KEY_TYPES);
+            } catch (IllegalArgumentException e) {
+                ErrorResponse error = new ErrorResponse("INVALID_CURSOR", e.getMessage());
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+            }
+        }
+
+        // Keyset query: WHERE (sort column, id) > (last values), no OFFSET and no count(*)
+        Window<CustomerRow> window = customerRepository.scrollRows(spec, sort, size, position);
+
+        CursorPageDto<CustomerDto> cursorPage = new CursorPageDto<>(
+                window.map(RowMapper::toDto).getContent(),
+                window.size(),
+                window.hasNext(),
+                CursorCodec.nextCursor(sortKey, window));
+
+        return ResponseEntity.ok(cursorPage);
+    }
+
+    @GetMapping("/{id}/overview")
+    @Operation(
+        summary = "Get a customer with its recent history",
+        description = "Returns the customer with its region, its latest visits (archived ones included), the open follow-up, " +
+                     "its latest invoices and its lifetime totals in one call. The parts are read concurrently; " +
+                     "parts not ready within crm.customers.overview.deadline are null and listed in unavailable " +
+                     "with partial=true, so the response never waits longer than the deadline. Returns 404 if the " +
+                     "customer is not found, 503 if the customer itself could not be read in time."
+    )
+    public ResponseEntity<?> getCustomerOverview(
+            @Parameter(description = "Customer ID", required = true) @PathVariable Long id,
+            @Parameter(description = "Number of latest visits", example = "10") @RequestParam(defaultValue = "10") int visits,
+            @Parameter(description = "Number of latest invoices", example = "10") @RequestParam(defaultValue = "10") int invoices) {
+        if (visits < 1 || visits > MAX_OVERVIEW_ITEMS || invoices < 1 || invoices > MAX_OVERVIEW_ITEMS) {
+            ErrorResponse error = new ErrorResponse(
+                "INVALID_PAGE_REQUEST",
+                "visits and invoices must be between 1 and " + MAX_OVERVIEW_ITEMS
+            );
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        }
+
+        CustomerOverviewService.Overview overview;
+        try {
+            overview = customerOverviewService.getOverview(id, visits, invoices);
+        } catch (ServiceException e) {
+            return ResponseEntity.status(e.getStatus()).body(e.toErrorResponse());
+        }
+
+        CustomerOverviewDto dto = new CustomerOverviewDto();
+        dto.setCustomer(RowMapper.toDto(overview.customer()));
+        if (overview.recentVisits() != null) {
+            dto.setRecentVisits(overview.recentVisits().stream().map(RowMapper::toDto).toList());
+        }
+        if (overview.recentInvoices() != null) {
+            dto.setRecentInvoices(overview.recentInvoices().stream().map(RowMapper::toSummaryDto).toList());
+        }
+        CustomerActivity activity = overview.activity();
+        if (activity != null) {
+            dto.setOpenFollowUpAt(activity.getNextFollowUpAt());
+            dto.setTotals(new CustomerTotalsDto(activity.getVisitCount(), activity.getInvoiceCount(),
+                    activity.getLifetimeRevenue(), activity.getLastVisitAt(), activity.getLastInvoiceDate(),
+                    activity.getLastActivityAt()));
+        }
+        dto.setPartial(!overview.unavailable().isEmpty());
+        dto.setUnavailable(overview.unavailable());
+        return ResponseEntity.ok(dto);
+    }
+
+    CustomerDto convertToDto(Customer customer) {
         CustomerDto dto = new CustomerDto();
         dto.setId(customer.getId());
         dto.setNameStd(customer.getNameStd());
@@ -198,4 +378,3 @@ public class CustomerController {
         return dto;
     }
 }
-
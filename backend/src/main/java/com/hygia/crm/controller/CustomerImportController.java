@@ -0,0 +1,86 @@
+package com.hygia.crm.controller;
+
+import com.hygia.crm.dto.CustomerImportJobDto;
+import com.hygia.crm.dto.ErrorResponse;
+import com.hygia.crm.service.CustomerImportJob;
+import com.hygia.crm.service.CustomerImportService;
+import com.hygia.crm.service.ServiceException;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.io.IOException;
+import java.net.URI;
+
+@RestController
+@RequestMapping("/api/customers/import")
+@Tag(name = "Customer Import", description = "Bulk CSV customer import")
+public class CustomerImportController {
+
+    private final CustomerImportService customerImportService;
+
+    public CustomerImportController(CustomerImportService customerImportService) {
+        this.customerImportService = customerImportService;
+    }
+
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(
+        summary = "Start a CSV customer import",
+        description = "Uploads a UTF-8 CSV file and imports it in the background. The header row names the columns " +
+                     "(case-insensitive): nameStd, regionId or region (region name), tier, addressText, phone, email, " +
+                     "paymentTerms, notes. Rows whose nameStd repeats within the file or already exists are reported as " +
+                     "errors and skipped. Returns 202 with the job; poll the Location URL for progress."
+    )
+    public ResponseEntity<?> startImport(
+            @Parameter(description = "CSV file") @RequestParam("file") MultipartFile file) {
+        if (file.isEmpty()) {
+            ErrorResponse error = new ErrorResponse("EMPTY_FILE", "Uploaded file is empty");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        }
+
+        CustomerImportJob job;
+        try {
+            job = customerImportService.submit(file);
+        } catch (ServiceException e) {
+            return ResponseEntity.status(e.getStatus()).body(e.toErrorResponse());
+        } catch (IOException e) {
+            ErrorResponse error = new ErrorResponse("UPLOAD_FAILED", "Could not store uploaded file: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+        }
+
+        URI location = ServletUriComponentsBuilder.fromCurrentRequest()
+                .path("/{jobId}")
+                .buildAndExpand(job.getId())
+                .toUri();
+        return ResponseEntity.accepted().location(location).body(job.toDto());
+    }
+
+    @GetMapping("/{jobId}")
+    @Operation(
+        summary = "Get import job status",
+        description = "Returns progress (rows read, imported, failed, bytes read), throughput and the first 1000 error rows. " +
+                     "Finished jobs are kept for 24 hours."
+    )
+    public ResponseEntity<?> getImportJob(
+            @Parameter(description = "Job ID returned when the import was started") @PathVariable String jobId) {
+        CustomerImportJobDto jobDto = customerImportService.findJob(jobId)
+                .map(CustomerImportJob::toDto)
+                .orElse(null);
+        if (jobDto == null) {
+            ErrorResponse error = new ErrorResponse("IMPORT_JOB_NOT_FOUND", "Import job " + jobId + " not found");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+        }
+        return ResponseEntity.ok(jobDto);
+    }
+}
@@ -0,0 +1,37 @@
+package com.hygia.crm.controller;
+
+import com.hygia.crm.config.ConcurrencyLimitedDataSource;
+import com.hygia.crm.dto.ErrorResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * Turns failures to get a database connection into error responses: 503 DATABASE_BUSY with
+ * Retry-After when the connection limiter queue timed out, 503 DATABASE_UNAVAILABLE otherwise.
+ */
+@RestControllerAdvice
+public class DatabaseExceptionHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(DatabaseExceptionHandler.class);
+
+    @ExceptionHandler({CannotCreateTransactionException.class, CannotGetJdbcConnectionException.class})
+    public ResponseEntity<ErrorResponse> handleNoConnection(RuntimeException e) {
+        if (NestedExceptionUtils.getRootCause(e) instanceof ConcurrencyLimitedDataSource.DatabaseBusyException busy) {
+            log.warn("Request rejected: {}", busy.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(new ErrorResponse("DATABASE_BUSY", "The database is busy, please retry"));
+        }
+        log.error("Could not get a database connection", e);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(new ErrorResponse("DATABASE_UNAVAILABLE", "The database is not available"));
+    }
+}
@@ -0,0 +1,184 @@
+package com.hygia.crm.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hygia.crm.dto.ErrorResponse;
+import com.hygia.crm.entity.Customer;
+import com.hygia.crm.export.ExportFormat;
+import com.hygia.crm.repository.CustomerSpecification;
+import com.hygia.crm.service.ExportService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+@RestController
+@RequestMapping("/api/export")
+@Tag(name = "Export", description = "Bulk export for data warehouse loads")
+public class ExportController {
+
+    // Open ends of the export windows
+    private static final OffsetDateTime WINDOW_START = OffsetDateTime.of(1900, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private static final OffsetDateTime WINDOW_END = OffsetDateTime.of(3000, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    private final ExportService exportService;
+    private final ObjectMapper objectMapper;
+    private final Duration requestTimeout;
+
+    public ExportController(
+            ExportService exportService,
+            ObjectMapper objectMapper,
+            @Value("${crm.export.request-timeout:60m}") Duration requestTimeout) {
+        this.exportService = exportService;
+        this.objectMapper = objectMapper;
+        this.requestTimeout = requestTimeout;
+    }
+
+    @GetMapping("/customers")
+    @Operation(
+        summary = "Export customers",
+        description = "Streams all matching customers in id order as NDJSON (default) or CSV, without pagination or count query. " +
+                     "Accepts the same filters as GET /api/customers, plus updatedSince to export only rows inserted or " +
+                     "updated since a previous run."
+    )
+    public ResponseEntity<StreamingResponseBody> exportCustomers(
+            @Parameter(description = "ndjson or csv", example = "ndjson") @RequestParam(defaultValue = "ndjson") String format,
+            @Parameter(description = "Filter by region ID") @RequestParam(required = false) Long regionId,
+            @Parameter(description = "Filter by tier (allowed values: A, B, C, Potential)") @RequestParam(required = false) String tier,
+            @Parameter(description = "Search query, as in GET /api/customers") @RequestParam(required = false) String q,
+            @Parameter(description = "Filter by prospect status (true/false)") @RequestParam(required = false) Boolean isProspect,
+            @Parameter(description = "Filter by follow-up status. Currently only 'due' is supported.") @RequestParam(required = false) String followup,
+            @Parameter(description = "Only customers inserted or updated at or after this instant (ISO-8601)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime updatedSince) {
+
+        ExportFormat exportFormat = ExportFormat.parse(format);
+        if (exportFormat == null) {
+            return invalidFormat(format);
+        }
+
+        // Validate tier value
+        if (tier != null && !tier.isEmpty() && !Customer.TIERS.contains(tier)) {
+            ErrorResponse error = new ErrorResponse(
+                "INVALID_TIER",
+                "Invalid tier value: " + tier + ". Allowed values are: A, B, C, Potential"
+            );
+            return badRequest(error);
+        }
+
+        String followupFilter = (followup != null && "due".equalsIgnoreCase(followup)) ? "due" : null;
+        Specification<Customer> spec = CustomerSpecification.withFilters(regionId, tier, q, isProspect, followupFilter);
+        if (updatedSince != null) {
+            spec = spec.and(CustomerSpecification.updatedSince(updatedSince));
+        }
+
+        Specification<Customer> exportSpec = spec;
+        return stream("customers", exportFormat, out -> exportService.exportCustomers(exportSpec, exportFormat, out));
+    }
+
+    @GetMapping("/visits")
+    @Operation(
+        summary = "Export visit logs",
+        description = "Streams visit logs with visitAt in [since, until) in id order as NDJSON (default) or CSV. " +
+                     "Both window ends are optional."
+    )
+    public ResponseEntity<StreamingResponseBody> exportVisits(
+            @Parameter(description = "ndjson or csv", example = "ndjson") @RequestParam(defaultValue = "ndjson") String format,
+            @Parameter(description = "Only visits of this customer") @RequestParam(required = false) Long customerId,
+            @Parameter(description = "Window start, inclusive (ISO-8601)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime since,
+            @Parameter(description = "Window end, exclusive (ISO-8601)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime until) {
+
+        ExportFormat exportFormat = ExportFormat.parse(format);
+        if (exportFormat == null) {
+            return invalidFormat(format);
+        }
+
+        OffsetDateTime from = since != null ? since : WINDOW_START;
+        OffsetDateTime to = until != null ? until : WINDOW_END;
+        if (!from.isBefore(to)) {
+            return invalidWindow();
+        }
+
+        return stream("visits", exportFormat, out -> exportService.exportVisits(customerId, from, to, exportFormat, out));
+    }
+
+    @GetMapping("/invoices")
+    @Operation(
+        summary = "Export invoices",
+        description = "Streams invoice headers with invoiceDate in [since, until) in id order as NDJSON (default) or CSV. " +
+                     "Both window ends are optional."
+    )
+    public ResponseEntity<StreamingResponseBody> exportInvoices(
+            @Parameter(description = "ndjson or csv", example = "ndjson") @RequestParam(defaultValue = "ndjson") String format,
+            @Parameter(description = "Only invoices of this customer") @RequestParam(required = false) Long customerId,
+            @Parameter(description = "Window start, inclusive (yyyy-MM-dd)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate since,
+            @Parameter(description = "Window end, exclusive (yyyy-MM-dd)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate until) {
+
+        ExportFormat exportFormat = ExportFormat.parse(format);
+        if (exportFormat == null) {
+            return invalidFormat(format);
+        }
+
+        LocalDate from = since != null ? since : WINDOW_START.toLocalDate();
+        LocalDate to = until != null ? until : WINDOW_END.toLocalDate();
+        if (!from.isBefore(to)) {
+            return invalidWindow();
+        }
+
+        return stream("invoices", exportFormat, out -> exportService.exportInvoices(customerId, from, to, exportFormat, out));
+    }
+
+    private ResponseEntity<StreamingResponseBody> stream(String name, ExportFormat format, StreamingResponseBody body) {
+        // Exports outlast the default async timeout; only these requests get the longer one
+        HttpServletRequest request = ((ServletRequestAttributes) RequestContextHolder.currentRequestAttributes()).getRequest();
+        WebAsyncUtils.getAsyncManager(request).getAsyncWebRequest().setTimeout(requestTimeout.toMillis());
+        return ResponseEntity.ok()
+                .contentType(format.getMediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(name + "." + format.getExtension()).build().toString())
+                .body(body);
+    }
+
+    private ResponseEntity<StreamingResponseBody> invalidFormat(String format) {
+        ErrorResponse error = new ErrorResponse(
+            "INVALID_FORMAT",
+            "Invalid format: " + format + ". Allowed values are: ndjson, csv"
+        );
+        return badRequest(error);
+    }
+
+    private ResponseEntity<StreamingResponseBody> invalidWindow() {
+        ErrorResponse error = new ErrorResponse("INVALID_WINDOW", "since must be before until");
+        return badRequest(error);
+    }
+
+    // Streaming endpoints can only return StreamingResponseBody, so errors are written through one too
+    private ResponseEntity<StreamingResponseBody> badRequest(ErrorResponse error) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> objectMapper.writeValue(out, error));
+    }
+}
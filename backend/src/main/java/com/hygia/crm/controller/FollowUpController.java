@@ -0,0 +1,37 @@
+package com.hygia.crm.controller;
+
+import com.hygia.crm.service.FollowUpScheduler;
+import com.hygia.crm.service.ServiceException;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/customers/follow-ups")
+@Tag(name = "Follow-ups", description = "Follow-up reminder events")
+public class FollowUpController {
+
+    private final FollowUpScheduler followUpScheduler;
+
+    public FollowUpController(FollowUpScheduler followUpScheduler) {
+        this.followUpScheduler = followUpScheduler;
+    }
+
+    // Object rather than ResponseEntity<?>: an SseEmitter is only streamed when it is the returned value itself
+    @GetMapping("/stream")
+    @Operation(summary = "Stream follow-up events", description = "Server-Sent Events: 'followup-due' when a customer's open follow-up comes due, " +
+                                                         "'followup-changed' when a visit recorded on this instance may have changed it. " +
+                                                         "Load GET /api/customers?followup=due once, then apply the events. " +
+                                                         "The stream ends after crm.followups.stream.timeout; reconnect and reload then. " +
+                                                         "Returns 503 when too many streams are open.")
+    public Object streamFollowUps() {
+        try {
+            return followUpScheduler.subscribe();
+        } catch (ServiceException e) {
+            return ResponseEntity.status(e.getStatus()).body(e.toErrorResponse());
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.hygia.crm.controller;
 
+import org.springframework.boot.actuate.health.HealthEndpoint;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -13,13 +16,24 @@ import java.util.Map;
 @RequestMapping("/api")
 public class HealthController {
 
+    private final HealthEndpoint healthEndpoint;
+
+    public HealthController(HealthEndpoint healthEndpoint) {
+        this.healthEndpoint = healthEndpoint;
+    }
+
+    /**
+     * Aggregated Actuator health (database, disk space); 503 unless UP. Details are on
+     * /actuator/health.
+     */
     @GetMapping("/health")
     public ResponseEntity<Map<String, String>> health() {
+        Status status = healthEndpoint.health().getStatus();
         Map<String, String> response = new HashMap<>();
-        response.put("status", "UP");
+        response.put("status", status.getCode());
         response.put("app", "crm-backend");
         response.put("time", Instant.now().toString());
-        return ResponseEntity.ok(response);
+        HttpStatus httpStatus = Status.UP.equals(status) ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE;
+        return ResponseEntity.status(httpStatus).body(response);
     }
 }
-
@@ -1,28 +1,35 @@
 package com.hygia.crm.controller;
 
+import com.hygia.crm.config.SqlStatementCounter;
 import com.hygia.crm.dto.ErrorResponse;
+import com.hygia.crm.dto.InvoiceBatchResultDto;
 import com.hygia.crm.dto.InvoiceCreateDto;
 import com.hygia.crm.dto.InvoiceDto;
-import com.hygia.crm.dto.InvoiceItemCreateDto;
 import com.hygia.crm.dto.InvoiceItemDto;
-import com.hygia.crm.entity.Customer;
 import com.hygia.crm.entity.Invoice;
 import com.hygia.crm.entity.InvoiceItem;
-import com.hygia.crm.entity.Product;
 import com.hygia.crm.repository.CustomerRepository;
-import com.hygia.crm.repository.InvoiceItemRepository;
-import com.hygia.crm.repository.InvoiceRepository;
-import com.hygia.crm.repository.ProductRepository;
+import com.hygia.crm.repository.InvoiceItemRow;
+import com.hygia.crm.repository.InvoiceRow;
+import com.hygia.crm.service.IdempotencyService;
+import com.hygia.crm.service.InvoiceBatchService;
+import com.hygia.crm.service.InvoiceService;
+import com.hygia.crm.service.InvoiceService.InvoiceWithItems;
+import com.hygia.crm.service.ServiceException;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.math.BigDecimal;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -31,120 +38,102 @@ import java.util.stream.Collectors;
 @Tag(name = "Invoices", description = "Invoice management API")
 public class InvoiceController {
 
-    private final InvoiceRepository invoiceRepository;
-    private final InvoiceItemRepository invoiceItemRepository;
+    private static final int MAX_HISTORY_PAGE_SIZE = 100;
+
     private final CustomerRepository customerRepository;
-    private final ProductRepository productRepository;
+    private final InvoiceService invoiceService;
+    private final InvoiceBatchService invoiceBatchService;
+    private final IdempotencyService idempotencyService;
+    private final int maxBatchSize;
 
     public InvoiceController(
-            InvoiceRepository invoiceRepository,
-            InvoiceItemRepository invoiceItemRepository,
             CustomerRepository customerRepository,
-            ProductRepository productRepository) {
-        this.invoiceRepository = invoiceRepository;
-        this.invoiceItemRepository = invoiceItemRepository;
+            InvoiceService invoiceService,
+            InvoiceBatchService invoiceBatchService,
+            IdempotencyService idempotencyService,
+            @Value("${crm.invoices.batch.max-size:10000}") int maxBatchSize) {
         this.customerRepository = customerRepository;
-        this.productRepository = productRepository;
+        this.invoiceService = invoiceService;
+        this.invoiceBatchService = invoiceBatchService;
+        this.idempotencyService = idempotencyService;
+        this.maxBatchSize = maxBatchSize;
     }
 
     @PostMapping
     @Operation(summary = "Create a new invoice with items", 
-               description = "Creates a new invoice with line items. Validates customer and products exist, " +
-                           "uses product default price if unitPrice not provided, and calculates total amount.")
-    public ResponseEntity<?> createInvoice(@Valid @RequestBody InvoiceCreateDto createDto) {
-        // Validate customer exists
-        Customer customer = customerRepository.findById(createDto.getCustomerId())
-                .orElse(null);
-        
-        if (customer == null) {
-            ErrorResponse error = new ErrorResponse(
-                "CUSTOMER_NOT_FOUND",
-                "Customer with ID " + createDto.getCustomerId() + " not found"
-            );
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+               description = "Creates a new invoice with line items in a single transaction. Validates customer and products exist, " +
+                           "uses product default price if unitPrice not provided, and calculates total amount. " +
+                           "Returns 409 CONFLICT if the customer already has an invoice with the same number. " +
+                           "With an Idempotency-Key header a retry gets the first response back instead of creating the invoice again.")
+    public ResponseEntity<?> createInvoice(
+            @Parameter(description = "Client-chosen key making retries safe") @RequestHeader(name = IdempotencyService.HEADER, required = false) String idempotencyKey,
+            @Valid @RequestBody InvoiceCreateDto createDto) {
+        if (idempotencyKey != null) {
+            return idempotencyService.execute("invoice", idempotencyKey, createDto, () -> create(createDto));
         }
+        return create(createDto);
+    }
 
-        // Validate all products exist and collect them
-        List<Product> products = new ArrayList<>();
-        for (InvoiceItemCreateDto itemDto : createDto.getItems()) {
-            Product product = productRepository.findById(itemDto.getProductId())
-                    .orElse(null);
-            
-            if (product == null) {
-                ErrorResponse error = new ErrorResponse(
-                    "PRODUCT_NOT_FOUND",
-                    "Product with ID " + itemDto.getProductId() + " not found"
-                );
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+    private ResponseEntity<?> create(InvoiceCreateDto createDto) {
+        InvoiceWithItems created;
+        try {
+            created = invoiceService.createInvoice(createDto);
+        } catch (ServiceException e) {
+            return ResponseEntity.status(e.getStatus()).body(e.toErrorResponse());
+        } catch (DataIntegrityViolationException e) {
+            // Only the invoice number's unique key is a conflict; other violations surface as 500
+            if (!invoiceService.invoiceExists(createDto.getCustomerId(), createDto.getInvoiceNumber())) {
+                throw e;
             }
-            products.add(product);
+            ErrorResponse error = new ErrorResponse(
+                "INVOICE_ALREADY_EXISTS",
+                "Invoice " + createDto.getInvoiceNumber() + " already exists for customer " + createDto.getCustomerId()
+            );
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
         }
 
-        // Create invoice entity
-        Invoice invoice = new Invoice();
-        invoice.setInvoiceNumber(createDto.getInvoiceNumber());
-        invoice.setCustomer(customer);
-        invoice.setInvoiceDate(createDto.getInvoiceDate());
-        invoice.setNote(createDto.getNote());
-        invoice.setTotalAmount(BigDecimal.ZERO); // Will be calculated below
-
-        // Save invoice first to get the ID
-        Invoice savedInvoice = invoiceRepository.save(invoice);
-
-        // Create invoice items and calculate total
-        BigDecimal totalAmount = BigDecimal.ZERO;
-        List<InvoiceItem> invoiceItems = new ArrayList<>();
-
-        for (int i = 0; i < createDto.getItems().size(); i++) {
-            InvoiceItemCreateDto itemDto = createDto.getItems().get(i);
-            Product product = products.get(i);
-
-            // Use provided unitPrice or product's defaultUnitPrice
-            BigDecimal unitPrice = itemDto.getUnitPrice();
-            if (unitPrice == null) {
-                unitPrice = product.getDefaultUnitPrice();
-                if (unitPrice == null) {
-                    ErrorResponse error = new ErrorResponse(
-                        "UNIT_PRICE_REQUIRED",
-                        "Product " + product.getItemCode() + " has no default unit price. Please provide unitPrice."
-                    );
-                    return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
-                }
-            }
-
-            // Calculate amount
-            BigDecimal amount = unitPrice.multiply(BigDecimal.valueOf(itemDto.getQuantity()));
+        // Convert to DTO
+        InvoiceDto invoiceDto = convertToDto(created.invoice(), created.items());
 
-            // Create invoice item
-            InvoiceItem invoiceItem = new InvoiceItem();
-            invoiceItem.setInvoice(savedInvoice);
-            invoiceItem.setProduct(product);
-            invoiceItem.setQuantity(itemDto.getQuantity());
-            invoiceItem.setUnitPrice(unitPrice);
-            invoiceItem.setAmount(amount);
+        return ResponseEntity.status(HttpStatus.CREATED).body(invoiceDto);
+    }
 
-            invoiceItems.add(invoiceItem);
-            totalAmount = totalAmount.add(amount);
+    @PostMapping("/batch")
+    @Operation(summary = "Create many invoices in one call",
+               description = "Bulk ingestion of invoices. Customers, products and existing invoice numbers are resolved " +
+                           "with set-based queries and rows are written with JDBC batching in chunked transactions. " +
+                           "Each invoice is validated independently; the response reports CREATED or FAILED per invoice " +
+                           "(by position in the request) together with throughput figures for the whole batch. An invoice number " +
+                           "repeated for the same customer fails with DUPLICATE_IN_BATCH once an earlier copy was created.")
+    public ResponseEntity<?> createInvoices(@RequestBody List<InvoiceCreateDto> createDtos) {
+        if (createDtos == null || createDtos.isEmpty()) {
+            ErrorResponse error = new ErrorResponse(
+                "BATCH_EMPTY",
+                "At least one invoice is required"
+            );
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
         }
 
-        // Update invoice total amount
-        savedInvoice.setTotalAmount(totalAmount);
-        invoiceRepository.save(savedInvoice);
-
-        // Save all invoice items
-        invoiceItemRepository.saveAll(invoiceItems);
+        if (createDtos.size() > maxBatchSize) {
+            ErrorResponse error = new ErrorResponse(
+                "BATCH_TOO_LARGE",
+                "A batch may contain at most " + maxBatchSize + " invoices, got " + createDtos.size()
+            );
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        }
 
-        // Convert to DTO
-        InvoiceDto invoiceDto = convertToDto(savedInvoice);
+        InvoiceBatchResultDto result = invoiceBatchService.createInvoices(createDtos);
 
-        return ResponseEntity.status(HttpStatus.CREATED).body(invoiceDto);
+        return ResponseEntity.ok(result);
     }
 
     @GetMapping("/by-customer/{customerId}")
     @Operation(summary = "Get invoices for a customer (newest first)", 
-               description = "Returns a list of invoices for the specified customer, ordered by invoice date descending.")
+               description = "Returns a list of invoices for the specified customer, ordered by invoice date descending. " +
+                           "For customers with a long history prefer the paginated /history endpoint.")
     public ResponseEntity<?> getInvoicesByCustomer(
             @Parameter(description = "Customer ID", required = true) @PathVariable Long customerId) {
+        long statementsBefore = SqlStatementCounter.current();
         
         // Check if customer exists
         if (!customerRepository.existsById(customerId)) {
@@ -155,15 +144,68 @@ public class InvoiceController {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
         }
 
-        List<Invoice> invoices = invoiceRepository.findByCustomerIdOrderByInvoiceDateDesc(customerId);
-        List<InvoiceDto> invoiceDtos = invoices.stream()
-                .map(this::convertToDto)
+        List<InvoiceDto> invoiceDtos = invoiceService.getInvoicesByCustomer(customerId).stream()
+                .map(invoice -> convertToDto(invoice.invoice(), invoice.items()))
                 .collect(Collectors.toList());
 
-        return ResponseEntity.ok(invoiceDtos);
+        return ResponseEntity.ok()
+                .header(SqlStatementCounter.HEADER, String.valueOf(SqlStatementCounter.current() - statementsBefore))
+                .body(invoiceDtos);
     }
 
-    private InvoiceDto convertToDto(Invoice invoice) {
+    @GetMapping("/by-customer/{customerId}/history")
+    @Operation(summary = "Get a page of a customer's invoice history (newest first)",
+               description = "Returns a page of invoices ordered by invoice date descending. " +
+                           "view=full (default) includes line items, loaded with one query per page; " +
+                           "view=summary returns invoice headers only. " +
+                           "The " + SqlStatementCounter.HEADER + " response header reports the SQL statements executed.")
+    public ResponseEntity<?> getInvoiceHistory(
+            @Parameter(description = "Customer ID", required = true) @PathVariable Long customerId,
+            @Parameter(description = "Page number (0-based)", example = "0") @RequestParam(defaultValue = "0") int page,
+            @Parameter(description = "Page size (1-" + MAX_HISTORY_PAGE_SIZE + ")", example = "20") @RequestParam(defaultValue = "20") int size,
+            @Parameter(description = "full (with items) or summary (headers only)", example = "full") @RequestParam(defaultValue = "full") String view) {
+        long statementsBefore = SqlStatementCounter.current();
+
+        if (page < 0 || size < 1 || size > MAX_HISTORY_PAGE_SIZE) {
+            ErrorResponse error = new ErrorResponse(
+                "INVALID_PAGE_REQUEST",
+                "page must be >= 0 and size between 1 and " + MAX_HISTORY_PAGE_SIZE
+            );
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        }
+
+        boolean summary = "summary".equalsIgnoreCase(view);
+        if (!summary && !"full".equalsIgnoreCase(view)) {
+            ErrorResponse error = new ErrorResponse(
+                "INVALID_VIEW",
+                "Invalid view value: " + view + ". Allowed values are: full, summary"
+            );
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        }
+
+        // Check if customer exists
+        if (!customerRepository.existsById(customerId)) {
+            ErrorResponse error = new ErrorResponse(
+                "CUSTOMER_NOT_FOUND",
+                "Customer with ID " + customerId + " not found"
+            );
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+        }
+
+        Pageable pageable = PageRequest.of(page, size,
+                Sort.by(Sort.Order.desc("invoiceDate"), Sort.Order.desc("id")));
+
+        Page<?> body = summary
+                ? invoiceService.getInvoiceSummaries(customerId, pageable).map(RowMapper::toSummaryDto)
+                : invoiceService.getInvoiceHistory(customerId, pageable)
+                        .map(invoice -> convertToDto(invoice.invoice(), invoice.items()));
+
+        return ResponseEntity.ok()
+                .header(SqlStatementCounter.HEADER, String.valueOf(SqlStatementCounter.current() - statementsBefore))
+                .body(body);
+    }
+
+    InvoiceDto convertToDto(Invoice invoice, List<InvoiceItem> items) {
         InvoiceDto dto = new InvoiceDto();
         dto.setId(invoice.getId());
         dto.setInvoiceNumber(invoice.getInvoiceNumber());
@@ -174,8 +216,6 @@ public class InvoiceController {
         dto.setNote(invoice.getNote());
 
         // Convert invoice items
-        List<InvoiceItem> items = invoiceItemRepository.findByInvoiceId(invoice.getId());
-
         List<InvoiceItemDto> itemDtos = items.stream()
                 .map(this::convertItemToDto)
                 .collect(Collectors.toList());
@@ -185,6 +225,21 @@ public class InvoiceController {
         return dto;
     }
 
+    InvoiceDto convertToDto(InvoiceRow invoice, List<InvoiceItemRow> items) {
+        InvoiceDto dto = new InvoiceDto();
+        dto.setId(invoice.id());
+        dto.setInvoiceNumber(invoice.invoiceNumber());
+        dto.setCustomerId(invoice.customerId());
+        dto.setCustomerName(invoice.customerName());
+        dto.setInvoiceDate(invoice.invoiceDate());
+        dto.setTotalAmount(invoice.totalAmount());
+        dto.setNote(invoice.note());
+        dto.setItems(items.stream()
+                .map(this::convertItemToDto)
+                .collect(Collectors.toList()));
+        return dto;
+    }
+
     private InvoiceItemDto convertItemToDto(InvoiceItem item) {
         InvoiceItemDto dto = new InvoiceItemDto();
         dto.setId(item.getId());
@@ -196,5 +251,16 @@ public class InvoiceController {
         dto.setAmount(item.getAmount());
         return dto;
     }
-}
 
+    private InvoiceItemDto convertItemToDto(InvoiceItemRow item) {
+        InvoiceItemDto dto = new InvoiceItemDto();
+        dto.setId(item.id());
+        dto.setProductId(item.productId());
+        dto.setItemCode(item.itemCode());
+        dto.setDescription(item.description());
+        dto.setQuantity(item.quantity());
+        dto.setUnitPrice(item.unitPrice());
+        dto.setAmount(item.amount());
+        return dto;
+    }
+}
@@ -5,14 +5,21 @@ import com.hygia.crm.dto.ProductCreateDto;
 import com.hygia.crm.dto.ProductDto;
 import com.hygia.crm.entity.Product;
 import com.hygia.crm.repository.ProductRepository;
+import com.hygia.crm.service.ProductCatalogService;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
-import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -21,10 +28,14 @@ import java.util.stream.Collectors;
 @Tag(name = "Products", description = "Product management API")
 public class ProductController {
 
+    private static final int MAX_PAGE_SIZE = 1000;
+
     private final ProductRepository productRepository;
+    private final ProductCatalogService productCatalogService;
 
-    public ProductController(ProductRepository productRepository) {
+    public ProductController(ProductRepository productRepository, ProductCatalogService productCatalogService) {
         this.productRepository = productRepository;
+        this.productCatalogService = productCatalogService;
     }
 
     @PostMapping
@@ -50,36 +61,65 @@ public class ProductController {
         product.setActive(true); // Default active = true
 
         // Save product
-        Product savedProduct = productRepository.save(product);
+        Product savedProduct = productCatalogService.create(product);
+        productCatalogService.invalidate();
 
         // Convert to DTO
-        ProductDto productDto = convertToDto(savedProduct);
+        ProductDto productDto = ProductCatalogService.toDto(savedProduct);
 
         return ResponseEntity.status(HttpStatus.CREATED).body(productDto);
     }
 
     @GetMapping
-    @Operation(summary = "Get all products", description = "Returns a list of all products sorted by itemCode ascending")
-    public ResponseEntity<List<ProductDto>> getAllProducts() {
-        List<Product> products = productRepository.findAll();
-        List<ProductDto> productDtos = products.stream()
-                .sorted(Comparator.comparing(Product::getItemCode))
-                .map(this::convertToDto)
+    @Operation(
+        summary = "Get products",
+        description = "Returns products sorted by itemCode ascending, optionally filtered by active, companyTag and productType. " +
+                     "Without page and size the whole (filtered) list is returned; with either of them a Page structure. " +
+                     "Responses carry an ETag that changes only when the catalog does; send it back in If-None-Match " +
+                     "to get 304 Not Modified without a body."
+    )
+    public ResponseEntity<?> getAllProducts(
+            @Parameter(description = "Filter by active flag") @RequestParam(required = false) Boolean active,
+            @Parameter(description = "Filter by company tag (exact match)") @RequestParam(required = false) String companyTag,
+            @Parameter(description = "Filter by product type (exact match)") @RequestParam(required = false) String productType,
+            @Parameter(description = "Page number (0-based), enables pagination") @RequestParam(required = false) Integer page,
+            @Parameter(description = "Page size (1-" + MAX_PAGE_SIZE + "), enables pagination") @RequestParam(required = false) Integer size,
+            WebRequest webRequest) {
+
+        boolean paged = page != null || size != null;
+        int pageNumber = page != null ? page : 0;
+        int pageSize = size != null ? size : 20;
+        if (paged && (pageNumber < 0 || pageSize < 1 || pageSize > MAX_PAGE_SIZE)) {
+            ErrorResponse error = new ErrorResponse(
+                "INVALID_PAGE_REQUEST",
+                "page must be >= 0 and size between 1 and " + MAX_PAGE_SIZE
+            );
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        }
+
+        // Every view is derived from the snapshot and the query string, so the snapshot's ETag covers it
+        ProductCatalogService.Snapshot catalog = productCatalogService.snapshot();
+        if (webRequest.checkNotModified(catalog.etag())) {
+            // ETag header already set by checkNotModified
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+        }
+
+        List<ProductDto> products = catalog.products().stream()
+                .filter(product -> active == null || active.equals(product.getActive()))
+                .filter(product -> companyTag == null || companyTag.equals(product.getCompanyTag()))
+                .filter(product -> productType == null || productType.equals(product.getProductType()))
                 .collect(Collectors.toList());
-        return ResponseEntity.ok(productDtos);
-    }
 
-    private ProductDto convertToDto(Product product) {
-        ProductDto dto = new ProductDto();
-        dto.setId(product.getId());
-        dto.setItemCode(product.getItemCode());
-        dto.setDescription(product.getDescription());
-        dto.setDefaultUnitPrice(product.getDefaultUnitPrice());
-        dto.setCompanyTag(product.getCompanyTag());
-        dto.setProductType(product.getProductType());
-        dto.setBarcode(product.getBarcode());
-        dto.setActive(product.getActive());
-        return dto;
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag(catalog.etag())
+                .cacheControl(CacheControl.noCache());
+        if (!paged) {
+            return response.body(products);
+        }
+
+        Pageable pageable = PageRequest.of(pageNumber, pageSize, Sort.by("itemCode"));
+        int from = (int) Math.min(pageable.getOffset(), products.size());
+        int to = Math.min(from + pageSize, products.size());
+        return response.body(new PageImpl<>(products.subList(from, to), pageable, products.size()));
     }
 }
-
@@ -0,0 +1,60 @@
+package com.hygia.crm.controller;
+
+import com.hygia.crm.dto.CustomerDto;
+import com.hygia.crm.dto.CustomerRegionDto;
+import com.hygia.crm.dto.InvoiceSummaryDto;
+import com.hygia.crm.dto.VisitDto;
+import com.hygia.crm.repository.CustomerRow;
+import com.hygia.crm.repository.CustomerVisitRow;
+import com.hygia.crm.repository.InvoiceRow;
+import com.hygia.crm.repository.VisitRow;
+
+/**
+ * DTOs from the repository's projection rows, shared by the listing, overview and sync endpoints.
+ */
+final class RowMapper {
+
+    private RowMapper() {
+    }
+
+    static CustomerDto toDto(CustomerRow customer) {
+        CustomerDto dto = new CustomerDto();
+        dto.setId(customer.id());
+        dto.setNameStd(customer.nameStd());
+        dto.setIsProspect(customer.tier() != null && "Potential".equalsIgnoreCase(customer.tier()));
+        dto.setAddressText(customer.addressText());
+        dto.setPhone(customer.phone());
+        dto.setEmail(customer.email());
+        dto.setPaymentTerms(customer.paymentTerms());
+        dto.setTier(customer.tier());
+        dto.setRegion(new CustomerRegionDto(customer.regionId(), customer.regionName()));
+        return dto;
+    }
+
+    static VisitDto toDto(VisitRow visit) {
+        VisitDto dto = new VisitDto();
+        dto.setId(visit.id());
+        dto.setVisitAt(visit.visitAt());
+        dto.setType(visit.type());
+        dto.setResult(visit.result());
+        dto.setNotes(visit.notes());
+        dto.setNextFollowUpAt(visit.nextFollowUpAt());
+        return dto;
+    }
+
+    static VisitDto toDto(CustomerVisitRow visit) {
+        return toDto(new VisitRow(visit.id(), visit.visitAt(), visit.type(), visit.result(), visit.notes(),
+                visit.nextFollowUpAt()));
+    }
+
+    static InvoiceSummaryDto toSummaryDto(InvoiceRow invoice) {
+        InvoiceSummaryDto dto = new InvoiceSummaryDto();
+        dto.setId(invoice.id());
+        dto.setInvoiceNumber(invoice.invoiceNumber());
+        dto.setCustomerId(invoice.customerId());
+        dto.setInvoiceDate(invoice.invoiceDate());
+        dto.setTotalAmount(invoice.totalAmount());
+        dto.setNote(invoice.note());
+        return dto;
+    }
+}
@@ -0,0 +1,120 @@
+package com.hygia.crm.controller;
+
+import com.hygia.crm.dto.ErrorResponse;
+import com.hygia.crm.dto.SyncChangeDto;
+import com.hygia.crm.dto.SyncChangesDto;
+import com.hygia.crm.entity.ChangeLogEntry;
+import com.hygia.crm.entity.Product;
+import com.hygia.crm.repository.ChangeKey;
+import com.hygia.crm.repository.CustomerRow;
+import com.hygia.crm.repository.CustomerVisitRow;
+import com.hygia.crm.repository.InvoiceRow;
+import com.hygia.crm.service.ChangeLogService;
+import com.hygia.crm.service.ProductCatalogService;
+import com.hygia.crm.service.ServiceException;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/sync")
+@Tag(name = "Sync", description = "Change feed for offline clients")
+public class SyncController {
+
+    private static final int MAX_CHANGES = 5000;
+
+    private final ChangeLogService changeLogService;
+
+    public SyncController(ChangeLogService changeLogService) {
+        this.changeLogService = changeLogService;
+    }
+
+    @GetMapping("/changes")
+    @Operation(summary = "Get changes since a cursor", description = "Customers, products, visits and invoices written after the cursor, each once with its current state, " +
+                                                            "in the order of their latest change. Without 'since' only the current cursor is returned: take it before downloading everything. " +
+                                                            "Returns 410 SYNC_CURSOR_EXPIRED when the changes after the cursor are no longer kept.")
+    public ResponseEntity<?> getChanges(
+            @Parameter(description = "Cursor returned by the previous call")
+            @RequestParam(required = false) String since,
+            @Parameter(description = "Maximum number of changed entities (1-" + MAX_CHANGES + ")")
+            @RequestParam(defaultValue = "500") int limit) {
+
+        if (limit < 1 || limit > MAX_CHANGES) {
+            ErrorResponse error = new ErrorResponse(
+                "INVALID_PAGE_REQUEST",
+                "limit must be between 1 and " + MAX_CHANGES
+            );
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        }
+
+        if (since == null) {
+            return ResponseEntity.ok(new SyncChangesDto(List.of(),
+                    String.valueOf(changeLogService.currentCursor()), false));
+        }
+        long sinceId;
+        try {
+            sinceId = Long.parseLong(since);
+        } catch (NumberFormatException e) {
+            sinceId = -1;
+        }
+        if (sinceId < 0) {
+            ErrorResponse error = new ErrorResponse("INVALID_CURSOR", "Malformed cursor");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        }
+
+        ChangeLogService.ChangeBatch batch;
+        try {
+            batch = changeLogService.findChanges(sinceId, limit);
+        } catch (ServiceException e) {
+            return ResponseEntity.status(e.getStatus()).body(e.toErrorResponse());
+        }
+
+        List<SyncChangeDto> changes = new ArrayList<>(batch.changes().size());
+        for (ChangeKey change : batch.changes()) {
+            SyncChangeDto dto = convertToDto(change, batch);
+            // An entity gone since it changed, i.e. an archived visit, is left out
+            if (dto != null) {
+                changes.add(dto);
+            }
+        }
+        return ResponseEntity.ok(new SyncChangesDto(changes, String.valueOf(batch.cursor()), batch.hasMore()));
+    }
+
+    private SyncChangeDto convertToDto(ChangeKey change, ChangeLogService.ChangeBatch batch) {
+        Long id = change.entityId();
+        switch (change.entityType()) {
+            case ChangeLogEntry.CUSTOMER -> {
+                CustomerRow customer = batch.customers().get(id);
+                return customer == null ? null
+                        : new SyncChangeDto(ChangeLogEntry.CUSTOMER, id, null, RowMapper.toDto(customer));
+            }
+            case ChangeLogEntry.PRODUCT -> {
+                Product product = batch.products().get(id);
+                return product == null ? null
+                        : new SyncChangeDto(ChangeLogEntry.PRODUCT, id, null, ProductCatalogService.toDto(product));
+            }
+            case ChangeLogEntry.VISIT -> {
+                CustomerVisitRow visit = batch.visits().get(id);
+                return visit == null ? null
+                        : new SyncChangeDto(ChangeLogEntry.VISIT, id, visit.customerId(), RowMapper.toDto(visit));
+            }
+            case ChangeLogEntry.INVOICE -> {
+                InvoiceRow invoice = batch.invoices().get(id);
+                return invoice == null ? null
+                        : new SyncChangeDto(ChangeLogEntry.INVOICE, id, invoice.customerId(), RowMapper.toSummaryDto(invoice));
+            }
+            default -> {
+                return null;
+            }
+        }
+    }
+}
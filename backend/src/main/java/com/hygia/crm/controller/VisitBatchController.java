@@ -0,0 +1,71 @@
+package com.hygia.crm.controller;
+
+import com.hygia.crm.dto.ErrorResponse;
+import com.hygia.crm.dto.VisitBatchItemDto;
+import com.hygia.crm.service.IdempotencyService;
+import com.hygia.crm.service.VisitBatchService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/visits")
+@Tag(name = "Visits", description = "Visit log management API")
+public class VisitBatchController {
+
+    private final VisitBatchService visitBatchService;
+    private final IdempotencyService idempotencyService;
+    private final int maxBatchSize;
+
+    public VisitBatchController(
+            VisitBatchService visitBatchService,
+            IdempotencyService idempotencyService,
+            @Value("${crm.visits.batch.max-size:1000}") int maxBatchSize) {
+        this.visitBatchService = visitBatchService;
+        this.idempotencyService = idempotencyService;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    @PostMapping("/batch")
+    @Operation(summary = "Create visits of many customers in one call",
+               description = "Upload of visits collected offline. All customers are checked with one query and the visits are " +
+                           "written with JDBC batching in one transaction. Each visit is validated independently; the response " +
+                           "reports CREATED with the visit's ID or FAILED per visit, by position and client ID. " +
+                           "Visits are written directly, also in journal ingest mode. " +
+                           "With an Idempotency-Key header a retry gets the first response back instead of creating the visits again.")
+    public ResponseEntity<?> createVisits(
+            @Parameter(description = "Client-chosen key making retries safe") @RequestHeader(name = IdempotencyService.HEADER, required = false) String idempotencyKey,
+            @RequestBody List<VisitBatchItemDto> createDtos) {
+        if (createDtos == null || createDtos.isEmpty()) {
+            ErrorResponse error = new ErrorResponse(
+                "BATCH_EMPTY",
+                "At least one visit is required"
+            );
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        }
+
+        if (createDtos.size() > maxBatchSize) {
+            ErrorResponse error = new ErrorResponse(
+                "BATCH_TOO_LARGE",
+                "A batch may contain at most " + maxBatchSize + " visits, got " + createDtos.size()
+            );
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        }
+
+        if (idempotencyKey != null) {
+            return idempotencyService.execute("visit-batch", idempotencyKey, createDtos,
+                    () -> ResponseEntity.ok(visitBatchService.createVisits(createDtos)));
+        }
+        return ResponseEntity.ok(visitBatchService.createVisits(createDtos));
+    }
+}
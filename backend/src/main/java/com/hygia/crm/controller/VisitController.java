@@ -1,42 +1,95 @@
 package com.hygia.crm.controller;
 
+import com.hygia.crm.dto.CursorPageDto;
+import com.hygia.crm.dto.ErrorResponse;
 import com.hygia.crm.dto.VisitCreateDto;
 import com.hygia.crm.dto.VisitDto;
-import com.hygia.crm.entity.Customer;
 import com.hygia.crm.entity.VisitLog;
 import com.hygia.crm.repository.CustomerRepository;
-import com.hygia.crm.repository.VisitLogRepository;
+import com.hygia.crm.repository.VisitRow;
+import com.hygia.crm.service.IdempotencyService;
+import com.hygia.crm.service.ServiceException;
+import com.hygia.crm.service.VisitArchiveService;
+import com.hygia.crm.service.VisitJournalService;
+import com.hygia.crm.service.VisitService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.KeysetScrollPosition;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.lang.Nullable;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
 @RestController
 @RequestMapping("/api/customers/{customerId}/visits")
 @Tag(name = "Visits", description = "Visit log management API")
 public class VisitController {
 
-    private final VisitLogRepository visitLogRepository;
-    private final CustomerRepository customerRepository;
+    // Sort fields backed by an index (idx_customer_visit_at, primary key)
+    private static final Set<String> SORTABLE_FIELDS = new LinkedHashSet<>(Arrays.asList("visitAt", "id"));
+
+    private static final Map<String, Function<String, Object>> CURSOR_KEY_TYPES = Map.of(
+        "visitAt", OffsetDateTime::parse,
+        "id", Long::valueOf
+    );
 
-    public VisitController(VisitLogRepository visitLogRepository, CustomerRepository customerRepository) {
-        this.visitLogRepository = visitLogRepository;
+    private static final int MAX_CURSOR_PAGE_SIZE = 1000;
+
+    private final VisitArchiveService visitArchiveService;
+    private final CustomerRepository customerRepository;
+    private final VisitService visitService;
+    private final IdempotencyService idempotencyService;
+    // Only with crm.visits.ingest.mode=journal
+    private final VisitJournalService visitJournalService;
+    private final Duration journalReadWait;
+
+    public VisitController(VisitArchiveService visitArchiveService, CustomerRepository customerRepository,
+                           VisitService visitService, IdempotencyService idempotencyService,
+                           @Nullable VisitJournalService visitJournalService,
+                           @Value("${crm.visits.ingest.read-wait:5s}") Duration journalReadWait) {
+        this.visitArchiveService = visitArchiveService;
         this.customerRepository = customerRepository;
+        this.visitService = visitService;
+        this.idempotencyService = idempotencyService;
+        this.visitJournalService = visitJournalService;
+        this.journalReadWait = journalReadWait;
     }
 
     @PostMapping
-    @Operation(summary = "Create a visit log", description = "Creates a new visit log for the specified customer. Returns 404 if customer not found.")
+    @Operation(summary = "Create a visit log", description = "Creates a new visit log for the specified customer. Returns 404 if customer not found. " +
+                                                        "In journal ingest mode the visit is journaled and 202 is returned; it is written to the database shortly after. " +
+                                                        "With an Idempotency-Key header a retry gets the first response back instead of creating the visit again.")
     public ResponseEntity<?> createVisit(
             @Parameter(description = "Customer ID", required = true) @PathVariable Long customerId,
+            @Parameter(description = "Client-chosen key making retries safe") @RequestHeader(name = IdempotencyService.HEADER, required = false) String idempotencyKey,
             @Valid @RequestBody VisitCreateDto createDto) {
+        if (idempotencyKey != null) {
+            return idempotencyService.execute("visit", idempotencyKey, List.of(customerId, createDto),
+                    () -> create(customerId, createDto));
+        }
+        return create(customerId, createDto);
+    }
+
+    private ResponseEntity<?> create(Long customerId, VisitCreateDto createDto) {
 
         // Validate nextFollowUpAt >= visitAt if present
         if (createDto.getNextFollowUpAt() != null && createDto.getVisitAt() != null) {
@@ -46,26 +99,23 @@ public class VisitController {
             }
         }
 
-        // Check if customer exists
-        Customer customer = customerRepository.findById(customerId)
-                .orElse(null);
-
-        if (customer == null) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                    .body("Customer with ID " + customerId + " not found");
+        if (visitJournalService != null) {
+            VisitLog journaledVisit;
+            try {
+                journaledVisit = visitJournalService.append(customerId, createDto);
+            } catch (ServiceException e) {
+                return ResponseEntity.status(e.getStatus()).body(e.getMessage());
+            }
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(convertToDto(journaledVisit));
         }
 
-        // Create visit log
-        VisitLog visitLog = new VisitLog();
-        visitLog.setCustomer(customer);
-        visitLog.setVisitAt(createDto.getVisitAt());
-        visitLog.setType(createDto.getType());
-        visitLog.setResult(createDto.getResult());
-        visitLog.setNotes(createDto.getNotes());
-        visitLog.setNextFollowUpAt(createDto.getNextFollowUpAt());
-
-        // Save visit log
-        VisitLog savedVisitLog = visitLogRepository.save(visitLog);
+        // Save visit log and update the customer's activity summary
+        VisitLog savedVisitLog;
+        try {
+            savedVisitLog = visitService.createVisit(customerId, createDto);
+        } catch (ServiceException e) {
+            return ResponseEntity.status(e.getStatus()).body(e.getMessage());
+        }
 
         // Convert to DTO
         VisitDto visitDto = convertToDto(savedVisitLog);
@@ -78,13 +128,18 @@ public class VisitController {
         summary = "Get visit logs for a customer",
         description = "Returns a paginated list of visit logs for the specified customer, sorted by visitAt descending by default. " +
                      "Returns a Page structure with content, pageable, totalElements, and totalPages. " +
-                     "Default pagination: page=0, size=20, sort=visitAt,desc"
+                     "Default pagination: page=0, size=20, sort=visitAt,desc. Sortable fields: visitAt, id. " +
+                     "With paging=cursor (or any cursor value) the response is a cursor page instead: " +
+                     "it uses keyset pagination, skips the total count, and returns nextCursor to pass back as cursor. " +
+                     "Visits moved to the archive (older than crm.visits.archive.horizon) are included in both modes."
     )
     public ResponseEntity<?> getVisits(
             @Parameter(description = "Customer ID", required = true) @PathVariable Long customerId,
             @Parameter(description = "Page number (0-based)") @RequestParam(defaultValue = "0") int page,
             @Parameter(description = "Page size") @RequestParam(defaultValue = "20") int size,
-            @Parameter(description = "Sort field and direction") @RequestParam(defaultValue = "visitAt,desc") String sort) {
+            @Parameter(description = "Sort field and direction") @RequestParam(defaultValue = "visitAt,desc") String sort,
+            @Parameter(description = "Pagination mode: offset (default) or cursor") @RequestParam(defaultValue = "offset") String paging,
+            @Parameter(description = "Continuation token from a previous cursor page (implies paging=cursor)") @RequestParam(required = false) String cursor) {
 
         // Check if customer exists
         if (!customerRepository.existsById(customerId)) {
@@ -92,6 +147,13 @@ public class VisitController {
                     .body("Customer with ID " + customerId + " not found");
         }
 
+        // Read your writes: visits journaled but not yet written are waited for
+        if (visitJournalService != null && !visitJournalService.awaitApplied(customerId, journalReadWait)) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(new ErrorResponse("VISITS_PENDING", "Recent visits of this customer are still being saved, please retry"));
+        }
+
         // Parse sort parameter
         String[] sortParams = sort.split(",");
         String sortField = sortParams[0];
@@ -99,19 +161,68 @@ public class VisitController {
                 ? Sort.Direction.DESC 
                 : Sort.Direction.ASC;
 
+        // Only allow sorting on indexed columns
+        if (!SORTABLE_FIELDS.contains(sortField)) {
+            ErrorResponse error = new ErrorResponse(
+                "INVALID_SORT",
+                "Invalid sort field: " + sortField + ". Allowed values are: " + String.join(", ", SORTABLE_FIELDS)
+            );
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        }
+
+        if (cursor != null || "cursor".equalsIgnoreCase(paging)) {
+            return getVisitsByCursor(customerId, Sort.by(direction, sortField), size, cursor);
+        }
+
         // Create pageable
         Pageable pageable = PageRequest.of(page, size, Sort.by(direction, sortField));
 
-        // Get visit logs
-        Page<VisitLog> visitLogsPage = visitLogRepository.findByCustomerId(customerId, pageable);
+        // Get visit logs, reading through to the archive where the page reaches it
+        Page<VisitRow> visitLogsPage = visitArchiveService.findVisits(customerId, pageable);
 
         // Convert to DTOs - return Page structure for consistency with customers endpoint
-        Page<VisitDto> visitDtoPage = visitLogsPage.map(this::convertToDto);
+        Page<VisitDto> visitDtoPage = visitLogsPage.map(RowMapper::toDto);
 
         return ResponseEntity.ok(visitDtoPage);
     }
 
-    private VisitDto convertToDto(VisitLog visitLog) {
+    private ResponseEntity<?> getVisitsByCursor(Long customerId, Sort sort, int size, String cursor) {
+        if (size < 1 || size > MAX_CURSOR_PAGE_SIZE) {
+            ErrorResponse error = new ErrorResponse(
+                "INVALID_PAGE_REQUEST",
+                "size must be between 1 and " + MAX_CURSOR_PAGE_SIZE
+            );
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        }
+
+        Sort.Order order = sort.iterator().next();
+        String sortKey = order.getProperty() + "," + order.getDirection().name().toLowerCase();
+
+        KeysetScrollPosition position;
+        if (cursor == null || cursor.isEmpty()) {
+            position = ScrollPosition.keyset();
+        } else {
+            try {
+                position = CursorCodec.decode(cursor, sortKey, CURSOR_KEY_TYPES);
+            } catch (IllegalArgumentException e) {
+                ErrorResponse error = new ErrorResponse("INVALID_CURSOR", e.getMessage());
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+            }
+        }
+
+        // Keyset query over idx_customer_visit_at, no OFFSET and no count(*), merged with archived visits
+        Window<VisitRow> window = visitArchiveService.scrollVisits(customerId, sort, size, position);
+
+        CursorPageDto<VisitDto> cursorPage = new CursorPageDto<>(
+                window.map(RowMapper::toDto).getContent(),
+                window.size(),
+                window.hasNext(),
+                CursorCodec.nextCursor(sortKey, window));
+
+        return ResponseEntity.ok(cursorPage);
+    }
+
+    VisitDto convertToDto(VisitLog visitLog) {
         VisitDto dto = new VisitDto();
         dto.setId(visitLog.getId());
         dto.setVisitAt(visitLog.getVisitAt());
@@ -0,0 +1,10 @@
+package com.hygia.crm.csv;
+
+import java.io.IOException;
+
+public class CsvFormatException extends IOException {
+
+    public CsvFormatException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,462 @@
+package com.hygia.crm.datagen;
+
+import com.hygia.crm.entity.CustomerSearchGram;
+import com.hygia.crm.search.SearchText;
+import com.hygia.crm.service.SalesRollupService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Fills an empty dev database with synthetic customers, products, visits and invoices at
+ * production-like volumes, for load testing. Enabled with {@code crm.datagen.enabled=true}.
+ * <p>
+ * Visits and invoices are spread over customers with a Zipf distribution: a few huge accounts
+ * get a large share, most customers get a handful or none. Tiers follow account size. Rows are
+ * written with plain JDBC batches and explicit ids, then the sequences are moved past them. The
+ * search index and activity summaries are written alongside the source rows; the sales rollup
+ * is rebuilt at the end.
+ * <p>
+ * The same seed always produces the same data. Does nothing if the database already has customers.
+ */
+@Component
+@Profile("dev")
+@ConditionalOnProperty(name = "crm.datagen.enabled", havingValue = "true")
+@Order(100)
+public class DataGenerator implements CommandLineRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(DataGenerator.class);
+
+    private static final String[][] CITIES = {
+        {"Seattle", "WA"}, {"San Francisco", "CA"}, {"Los Angeles", "CA"}, {"Portland", "OR"}, {"San Diego", "CA"},
+        {"Sacramento", "CA"}, {"Spokane", "WA"}, {"Tacoma", "WA"}, {"Boise", "ID"}, {"Reno", "NV"},
+        {"Las Vegas", "NV"}, {"Phoenix", "AZ"}, {"Tucson", "AZ"}, {"Salt Lake City", "UT"}, {"Denver", "CO"},
+        {"Albuquerque", "NM"}, {"Fresno", "CA"}, {"Oakland", "CA"}, {"San Jose", "CA"}, {"Eugene", "OR"},
+        {"Anchorage", "AK"}, {"Honolulu", "HI"}, {"Dallas", "TX"}, {"Houston", "TX"}, {"Austin", "TX"},
+        {"Chicago", "IL"}, {"Minneapolis", "MN"}, {"Kansas City", "MO"}, {"St. Louis", "MO"}, {"Omaha", "NE"},
+        {"Atlanta", "GA"}, {"Miami", "FL"}, {"Orlando", "FL"}, {"Tampa", "FL"}, {"Charlotte", "NC"},
+        {"Raleigh", "NC"}, {"Nashville", "TN"}, {"New Orleans", "LA"}, {"Boston", "MA"}, {"New York", "NY"},
+        {"Philadelphia", "PA"}, {"Pittsburgh", "PA"}, {"Baltimore", "MD"}, {"Washington", "DC"}, {"Detroit", "MI"},
+        {"Cleveland", "OH"}, {"Columbus", "OH"}, {"Indianapolis", "IN"}, {"Milwaukee", "WI"}, {"Buffalo", "NY"}
+    };
+    private static final String[] NAME_PREFIXES = {
+        "Evergreen", "Bright Smile", "Harbor", "Summit", "Lakeside", "Pioneer", "Cedar", "Valley", "Northgate",
+        "Riverside", "Sunrise", "Pacific", "Maple", "Downtown", "Westside", "Crescent", "Golden Gate", "Alpine"
+    };
+    private static final String[] NAME_KINDS = {
+        "Dental Clinic", "Family Dentistry", "Orthodontics", "Dental Group", "Pediatric Dentistry",
+        "Oral Surgery", "Dental Care", "Smile Studio", "Endodontics", "Periodontics"
+    };
+    private static final String[] STREETS = {"Pine St", "Main St", "Oak Ave", "1st Ave", "Market St", "Broadway", "Elm St"};
+    private static final String[] PAYMENT_TERMS = {"NET30", "NET30", "NET30", "NET15", "NET60", "COD"};
+    private static final String[] PRODUCT_KINDS = {
+        "Nitrile exam gloves", "Prophy paste", "Fluoride varnish", "Saliva ejectors", "Patient bibs",
+        "Disinfectant wipes", "Impression material", "Composite resin", "Face masks", "Sterilization pouches"
+    };
+    private static final String[] PRODUCT_TYPES = {"consumable", "consumable", "consumable", "equipment", "chemical"};
+    private static final String[] VISIT_TYPES = {"in_person", "in_person", "phone", "phone", "email"};
+    private static final String[] VISIT_RESULTS = {"order_placed", "follow_up", "follow_up", "no_answer", "not_interested"};
+    private static final String[] VISIT_NOTES = {
+        null, null, "Restock order placed.", "Asked for a quote on gloves.", "Office manager out, call back.",
+        "Interested in the new varnish line.", "Complained about delivery times."
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SalesRollupService salesRollupService;
+
+    private final int customers;
+    private final long visits;
+    private final long invoices;
+    private final int products;
+    private final int regions;
+    private final int maxItemsPerInvoice;
+    private final double skew;
+    private final int years;
+    private final long seed;
+    private final int batchSize;
+
+    public DataGenerator(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            SalesRollupService salesRollupService,
+            @Value("${crm.datagen.customers:100000}") int customers,
+            @Value("${crm.datagen.visits:2000000}") long visits,
+            @Value("${crm.datagen.invoices:500000}") long invoices,
+            @Value("${crm.datagen.products:500}") int products,
+            @Value("${crm.datagen.regions:20}") int regions,
+            @Value("${crm.datagen.max-items-per-invoice:8}") int maxItemsPerInvoice,
+            @Value("${crm.datagen.skew:1.1}") double skew,
+            @Value("${crm.datagen.years:3}") int years,
+            @Value("${crm.datagen.seed:42}") long seed,
+            @Value("${crm.datagen.batch-size:5000}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.salesRollupService = salesRollupService;
+        this.customers = customers;
+        this.visits = visits;
+        this.invoices = invoices;
+        this.products = products;
+        this.regions = Math.min(regions, CITIES.length);
+        this.maxItemsPerInvoice = maxItemsPerInvoice;
+        this.skew = skew;
+        this.years = years;
+        this.seed = seed;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void run(String... args) {
+        Long existing = jdbcTemplate.queryForObject("select count(*) from customer", Long.class);
+        if (existing != null && existing > 0) {
+            log.info("Data generator skipped: database already has {} customers", existing);
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        log.info("Generating {} customers, {} visits, {} invoices, {} products in {} regions (skew {}, seed {})",
+                customers, visits, invoices, products, regions, skew, seed);
+
+        Random random = new Random(seed);
+        long[] regionIds = generateRegions();
+        ProductCatalog catalog = generateProducts(random);
+
+        // Account size rank 0 is the largest; ranks are assigned to customer ids in random order
+        long[] customerIdByRank = new long[customers];
+        for (int rank = 0; rank < customers; rank++) {
+            customerIdByRank[rank] = rank + 1;
+        }
+        for (int i = customers - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            long swap = customerIdByRank[i];
+            customerIdByRank[i] = customerIdByRank[j];
+            customerIdByRank[j] = swap;
+        }
+
+        generateCustomers(random, regionIds, customerIdByRank);
+        ZipfSampler accounts = new ZipfSampler(customers, skew);
+        ActivityTotals activity = new ActivityTotals(customers);
+        generateVisits(random, accounts, customerIdByRank, activity);
+        long items = generateInvoices(random, accounts, customerIdByRank, catalog, activity);
+        writeActivity(activity);
+
+        restartSequence("customer_seq", customers);
+        restartSequence("visit_log_seq", visits);
+        restartSequence("invoice_seq", invoices);
+        restartSequence("invoice_item_seq", items);
+
+        salesRollupService.rebuild();
+
+        log.info("Data generation finished in {} s", (System.currentTimeMillis() - start) / 1000);
+    }
+
+    private long[] generateRegions() {
+        Set<String> existingNames = new HashSet<>(jdbcTemplate.queryForList("select name from region", String.class));
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < regions; i++) {
+            if (!existingNames.contains(CITIES[i][0])) {
+                rows.add(new Object[] {CITIES[i][0], CITIES[i][1]});
+            }
+        }
+        jdbcTemplate.batchUpdate("insert into region (name, state) values (?, ?)", rows);
+        return jdbcTemplate.queryForList("select id from region order by id", Long.class).stream()
+                .mapToLong(Long::longValue)
+                .toArray();
+    }
+
+    private ProductCatalog generateProducts(Random random) {
+        List<Object[]> rows = new ArrayList<>(products);
+        for (int i = 0; i < products; i++) {
+            String kind = PRODUCT_KINDS[i % PRODUCT_KINDS.length];
+            BigDecimal price = BigDecimal.valueOf(200 + random.nextInt(9800), 2);
+            rows.add(new Object[] {
+                "GEN-" + (10000 + i),
+                kind + ", variant " + (i / PRODUCT_KINDS.length + 1),
+                price,
+                i % 7 == 0 ? "partner" : "hygia",
+                PRODUCT_TYPES[i % PRODUCT_TYPES.length],
+                String.format("40%011d", i),
+                i % 50 != 49
+            });
+        }
+        jdbcTemplate.batchUpdate("insert into product (item_code, description, default_unit_price, company_tag, " +
+                "product_type, barcode, active) values (?, ?, ?, ?, ?, ?, ?)", rows);
+
+        List<Long> ids = new ArrayList<>(products);
+        List<BigDecimal> prices = new ArrayList<>(products);
+        jdbcTemplate.query("select id, default_unit_price from product where item_code like 'GEN-%' order by id", row -> {
+            ids.add(row.getLong(1));
+            prices.add(row.getBigDecimal(2));
+        });
+        return new ProductCatalog(
+                ids.stream().mapToLong(Long::longValue).toArray(),
+                prices.toArray(new BigDecimal[0]),
+                new ZipfSampler(ids.size(), 1.0));
+    }
+
+    private void generateCustomers(Random random, long[] regionIds, long[] customerIdByRank) {
+        ZipfSampler regionSampler = new ZipfSampler(regionIds.length, 0.8);
+        String sql = "insert into customer (id, name_std, is_prospect, region_id, address_text, phone, email, " +
+                "payment_terms, notes, tier, search_name, phone_digits, updated_at) " +
+                "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+
+        // Rows are generated in rank order; tiers follow account size
+        Batch batch = new Batch("customers", sql, customers, null);
+        Batch grams = new Batch("search grams", "insert into customer_search_gram (gram, field, customer_id) " +
+                "values (?, ?, ?)", -1, batch);
+        for (int rank = 0; rank < customers; rank++) {
+            long id = customerIdByRank[rank];
+            double percentile = (double) rank / customers;
+            String tier = percentile < 0.02 ? "A" : percentile < 0.12 ? "B" : percentile < 0.40 ? "C" : "Potential";
+            String name = NAME_PREFIXES[random.nextInt(NAME_PREFIXES.length)] + " "
+                    + NAME_KINDS[random.nextInt(NAME_KINDS.length)] + " " + id;
+            String phone = random.nextInt(10) == 0 ? null
+                    : String.format("(%03d) %03d-%04d", 200 + random.nextInt(800), random.nextInt(1000), random.nextInt(10000));
+            String searchName = SearchText.normalizeName(name);
+            String phoneDigits = SearchText.digitsOnly(phone);
+            batch.add(new Object[] {
+                id,
+                name,
+                "Potential".equals(tier),
+                regionIds[regionSampler.sample(random)],
+                (100 + random.nextInt(9900)) + " " + STREETS[random.nextInt(STREETS.length)],
+                phone,
+                random.nextInt(5) == 0 ? null : "office" + id + "@clinic.example",
+                PAYMENT_TERMS[random.nextInt(PAYMENT_TERMS.length)],
+                random.nextInt(4) == 0 ? "Prefers deliveries before noon." : null,
+                tier,
+                searchName,
+                phoneDigits,
+                now
+            });
+            for (String gram : SearchText.nameIndexGrams(searchName)) {
+                grams.add(new Object[] {gram, CustomerSearchGram.FIELD_NAME, id});
+            }
+            for (String gram : SearchText.digitGrams(phoneDigits)) {
+                grams.add(new Object[] {gram, CustomerSearchGram.FIELD_PHONE, id});
+            }
+        }
+        grams.flush();
+    }
+
+    private void generateVisits(Random random, ZipfSampler accounts, long[] customerIdByRank, ActivityTotals activity) {
+        String sql = "insert into visit_log (id, customer_id, visit_at, type, result, notes, next_follow_up_at) " +
+                "values (?, ?, ?, ?, ?, ?, ?)";
+        OffsetDateTime end = OffsetDateTime.now(ZoneOffset.UTC);
+        long spanMinutes = years * 365L * 24 * 60;
+
+        Batch batch = new Batch("visits", sql, visits, null);
+        for (long i = 0; i < visits; i++) {
+            OffsetDateTime visitAt = end.minusMinutes((long) (random.nextDouble() * spanMinutes));
+            String result = VISIT_RESULTS[random.nextInt(VISIT_RESULTS.length)];
+            OffsetDateTime nextFollowUpAt = "follow_up".equals(result) ? visitAt.plusDays(3 + random.nextInt(28)) : null;
+            long customerId = customerIdByRank[accounts.sample(random)];
+            activity.addVisit(customerId, visitAt, nextFollowUpAt);
+            batch.add(new Object[] {
+                i + 1,
+                customerId,
+                visitAt,
+                VISIT_TYPES[random.nextInt(VISIT_TYPES.length)],
+                result,
+                VISIT_NOTES[random.nextInt(VISIT_NOTES.length)],
+                nextFollowUpAt
+            });
+        }
+        batch.flush();
+    }
+
+    /**
+     * @return number of invoice items written
+     */
+    private long generateInvoices(Random random, ZipfSampler accounts, long[] customerIdByRank, ProductCatalog catalog,
+                                  ActivityTotals activity) {
+        String invoiceSql = "insert into invoice (id, invoice_number, customer_id, invoice_date, total_amount, note) " +
+                "values (?, ?, ?, ?, ?, ?)";
+        String itemSql = "insert into invoice_item (id, invoice_id, product_id, quantity, unit_price, amount) " +
+                "values (?, ?, ?, ?, ?, ?)";
+        LocalDate end = LocalDate.now(ZoneOffset.UTC);
+        int spanDays = years * 365;
+
+        Batch invoiceBatch = new Batch("invoices", invoiceSql, invoices, null);
+        // Items reference invoices, so pending invoices are written before every item batch
+        Batch itemBatch = new Batch("invoice items", itemSql, -1, invoiceBatch);
+        long itemId = 0;
+        for (long invoiceId = 1; invoiceId <= invoices; invoiceId++) {
+            int rank = accounts.sample(random);
+            // Mostly small orders, occasionally a large restock
+            int itemCount = Math.min(maxItemsPerInvoice, 1 + (int) (-Math.log(1 - random.nextDouble()) * 2));
+            BigDecimal total = BigDecimal.ZERO;
+            List<Object[]> lines = new ArrayList<>(itemCount);
+            for (int line = 0; line < itemCount; line++) {
+                int product = catalog.sampler().sample(random);
+                int quantity = 1 + random.nextInt(rank < customers / 50 ? 200 : 20);
+                BigDecimal unitPrice = catalog.prices()[product];
+                BigDecimal amount = unitPrice.multiply(BigDecimal.valueOf(quantity)).setScale(2, RoundingMode.HALF_UP);
+                total = total.add(amount);
+                lines.add(new Object[] {++itemId, invoiceId, catalog.ids()[product], quantity, unitPrice, amount});
+            }
+            long customerId = customerIdByRank[rank];
+            LocalDate invoiceDate = end.minusDays(random.nextInt(spanDays));
+            activity.addInvoice(customerId, invoiceDate, total);
+            invoiceBatch.add(new Object[] {
+                invoiceId,
+                "G-" + invoiceId,
+                customerId,
+                invoiceDate,
+                total,
+                random.nextInt(10) == 0 ? "Delivered with the monthly restock." : null
+            });
+            lines.forEach(itemBatch::add);
+        }
+        itemBatch.flush();
+        return itemId;
+    }
+
+    private void writeActivity(ActivityTotals activity) {
+        String sql = "insert into customer_activity (customer_id, last_visit_at, next_follow_up_at, last_invoice_date, " +
+                "last_activity_at, visit_count, invoice_count, lifetime_revenue) values (?, ?, ?, ?, ?, ?, ?, ?)";
+        Batch batch = new Batch("activity summaries", sql, customers, null);
+        for (int id = 1; id <= customers; id++) {
+            OffsetDateTime lastVisitAt = activity.lastVisitAt[id];
+            LocalDate lastInvoiceDate = activity.lastInvoiceDate[id];
+            OffsetDateTime invoiceAt = lastInvoiceDate != null ? lastInvoiceDate.atStartOfDay().atOffset(ZoneOffset.UTC) : null;
+            OffsetDateTime lastActivityAt = lastVisitAt == null ? invoiceAt
+                    : invoiceAt == null || lastVisitAt.isAfter(invoiceAt) ? lastVisitAt : invoiceAt;
+            batch.add(new Object[] {
+                id,
+                lastVisitAt,
+                activity.nextFollowUpAt[id],
+                lastInvoiceDate,
+                lastActivityAt,
+                activity.visitCount[id],
+                activity.invoiceCount[id],
+                BigDecimal.valueOf(activity.revenueCents[id], 2)
+            });
+        }
+        batch.flush();
+    }
+
+    /**
+     * Moves a pooled (allocationSize 50) sequence past {@code maxId}: the first value Hibernate
+     * fetches is the top of its first id block.
+     */
+    private void restartSequence(String sequence, long maxId) {
+        jdbcTemplate.execute("alter sequence " + sequence + " restart with " + (maxId + 50));
+    }
+
+    private record ProductCatalog(long[] ids, BigDecimal[] prices, ZipfSampler sampler) {
+    }
+
+    /**
+     * Per-customer activity summary accumulated while generating, indexed by customer id. As in
+     * CustomerActivityService, only the latest visit's follow-up counts and a later-written visit
+     * wins a tie.
+     */
+    private static final class ActivityTotals {
+
+        final long[] visitCount;
+        final OffsetDateTime[] lastVisitAt;
+        final OffsetDateTime[] nextFollowUpAt;
+        final long[] invoiceCount;
+        final long[] revenueCents;
+        final LocalDate[] lastInvoiceDate;
+
+        ActivityTotals(int customers) {
+            visitCount = new long[customers + 1];
+            lastVisitAt = new OffsetDateTime[customers + 1];
+            nextFollowUpAt = new OffsetDateTime[customers + 1];
+            invoiceCount = new long[customers + 1];
+            revenueCents = new long[customers + 1];
+            lastInvoiceDate = new LocalDate[customers + 1];
+        }
+
+        void addVisit(long customerId, OffsetDateTime visitAt, OffsetDateTime followUpAt) {
+            int id = (int) customerId;
+            visitCount[id]++;
+            if (lastVisitAt[id] == null || !visitAt.isBefore(lastVisitAt[id])) {
+                lastVisitAt[id] = visitAt;
+                nextFollowUpAt[id] = followUpAt;
+            }
+        }
+
+        void addInvoice(long customerId, LocalDate invoiceDate, BigDecimal total) {
+            int id = (int) customerId;
+            invoiceCount[id]++;
+            revenueCents[id] += total.unscaledValue().longValueExact();
+            if (lastInvoiceDate[id] == null || invoiceDate.isAfter(lastInvoiceDate[id])) {
+                lastInvoiceDate[id] = invoiceDate;
+            }
+        }
+    }
+
+    /**
+     * Rows of one insert statement, written as a JDBC batch in its own transaction every
+     * {@code batchSize} rows, with progress logged about every 10%. Rows of {@code before} are
+     * written first.
+     */
+    private final class Batch {
+
+        private final String name;
+        private final String sql;
+        private final long expected;
+        private final Batch before;
+        private final long startNanos = System.nanoTime();
+        private List<Object[]> rows = new ArrayList<>(batchSize);
+        private long written;
+        private long nextReport;
+
+        Batch(String name, String sql, long expected, Batch before) {
+            this.name = name;
+            this.sql = sql;
+            this.expected = expected;
+            this.before = before;
+            this.nextReport = expected > 0 ? expected / 10 : 1_000_000;
+        }
+
+        void add(Object[] row) {
+            rows.add(row);
+            if (rows.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (before != null) {
+                before.flush();
+            }
+            if (rows.isEmpty()) {
+                return;
+            }
+            List<Object[]> batch = rows;
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(sql, batch));
+            written += batch.size();
+            rows = new ArrayList<>(batchSize);
+
+            if (written >= nextReport || written == expected) {
+                double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+                log.info("Generated {} {} ({} rows/s)", written, name, String.format("%.0f", written / seconds));
+                nextReport += expected > 0 ? Math.max(expected / 10, 1) : 1_000_000;
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.hygia.crm.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * A slice of a keyset-paginated listing. Pass {@code nextCursor} back as {@code cursor} to get
+ * the following slice; it is null on the last one. No total count is computed.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPageDto<T> {
+    private List<T> content;
+    private int size;
+    private boolean hasNext;
+    private String nextCursor;
+}
@@ -0,0 +1,17 @@
+package com.hygia.crm.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class CustomerImportErrorDto {
+    private long line;
+    private String nameStd;
+    private String code;
+    private String message;
+}
@@ -0,0 +1,33 @@
+package com.hygia.crm.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class CustomerImportJobDto {
+    private String jobId;
+    private String fileName;
+    private String status;
+    private long rowsRead;
+    private long imported;
+    private long failed;
+    private long bytesRead;
+    private long bytesTotal;
+    private double progress;
+    private OffsetDateTime submittedAt;
+    private OffsetDateTime startedAt;
+    private OffsetDateTime finishedAt;
+    private long elapsedMillis;
+    private double rowsPerSecond;
+    private String message;
+    private long errorCount;
+    private List<CustomerImportErrorDto> errors;
+}
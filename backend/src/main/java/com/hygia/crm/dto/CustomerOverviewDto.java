@@ -0,0 +1,36 @@
+package com.hygia.crm.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A customer with its recent history. Parts that could not be read in time are null and listed
+ * in {@code unavailable} with the reason; {@code partial} is then true.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class CustomerOverviewDto {
+    private CustomerDto customer;
+
+    private List<VisitDto> recentVisits;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ssXXX")
+    private OffsetDateTime openFollowUpAt;
+
+    private List<InvoiceSummaryDto> recentInvoices;
+
+    private CustomerTotalsDto totals;
+
+    private boolean partial;
+
+    private Map<String, ErrorResponse> unavailable;
+}
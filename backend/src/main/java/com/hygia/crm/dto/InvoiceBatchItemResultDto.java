@@ -0,0 +1,19 @@
+package com.hygia.crm.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class InvoiceBatchItemResultDto {
+    private int index;
+    private String invoiceNumber;
+    private Long customerId;
+    private String status;
+    private Long invoiceId;
+    private ErrorResponse error;
+}
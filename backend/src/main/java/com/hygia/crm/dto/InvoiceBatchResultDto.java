@@ -0,0 +1,22 @@
+package com.hygia.crm.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class InvoiceBatchResultDto {
+    private int total;
+    private int succeeded;
+    private int failed;
+    private long itemsWritten;
+    private long elapsedMillis;
+    private double invoicesPerSecond;
+    private List<InvoiceBatchItemResultDto> results;
+}
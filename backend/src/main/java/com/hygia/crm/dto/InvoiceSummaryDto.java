@@ -0,0 +1,22 @@
+package com.hygia.crm.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class InvoiceSummaryDto {
+    private Long id;
+    private String invoiceNumber;
+    private Long customerId;
+    private LocalDate invoiceDate;
+    private BigDecimal totalAmount;
+    private String note;
+}
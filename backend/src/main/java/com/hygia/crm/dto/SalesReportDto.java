@@ -0,0 +1,23 @@
+package com.hygia.crm.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class SalesReportDto {
+    private List<String> groupBy;
+    private String fromMonth;
+    private String toMonth;
+    private BigDecimal totalRevenue;
+    private long totalQuantity;
+    private long totalLines;
+    private List<SalesSliceDto> rows;
+}
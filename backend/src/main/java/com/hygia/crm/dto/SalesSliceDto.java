@@ -0,0 +1,25 @@
+package com.hygia.crm.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class SalesSliceDto {
+    // Dimensions not grouped by are null
+    private String month;
+    private Long regionId;
+    private String regionName;
+    private String tier;
+    private Long productId;
+    private String productItemCode;
+    private BigDecimal revenue;
+    private long quantity;
+    private long lineCount;
+}
@@ -0,0 +1,23 @@
+package com.hygia.crm.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * The current state of one changed entity: {@code data} is a CustomerDto, ProductDto, VisitDto or
+ * InvoiceSummaryDto by {@code type}.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class SyncChangeDto {
+    // customer, product, visit or invoice
+    private String type;
+    private Long id;
+    // Set for visits and invoices
+    private Long customerId;
+    private Object data;
+}
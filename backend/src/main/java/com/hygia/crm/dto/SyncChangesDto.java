@@ -0,0 +1,22 @@
+package com.hygia.crm.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * A batch of the change feed. Pass {@code cursor} back as {@code since} for the next batch; while
+ * {@code hasMore} is true more changes are already waiting.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class SyncChangesDto {
+    private List<SyncChangeDto> changes;
+    private String cursor;
+    private boolean hasMore;
+}
@@ -0,0 +1,25 @@
+package com.hygia.crm.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * One visit of a batch upload: a visit as for a single customer, plus the customer and the
+ * client's own id for the visit, which its outcome is reported under.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class VisitBatchItemDto extends VisitCreateDto {
+
+    @NotBlank(message = "Client ID is required")
+    @Size(max = 100, message = "Client ID must be at most 100 characters")
+    private String clientId;
+
+    @NotNull(message = "Customer ID is required")
+    private Long customerId;
+}
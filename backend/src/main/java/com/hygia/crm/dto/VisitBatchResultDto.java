@@ -0,0 +1,20 @@
+package com.hygia.crm.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class VisitBatchResultDto {
+    private int total;
+    private int succeeded;
+    private int failed;
+    private long elapsedMillis;
+    private List<VisitBatchItemResultDto> results;
+}
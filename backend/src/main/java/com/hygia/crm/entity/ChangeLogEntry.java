@@ -0,0 +1,40 @@
+package com.hygia.crm.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.OffsetDateTime;
+
+/**
+ * One entity written by a committed transaction, in the sync change feed. Rows are inserted with
+ * plain JDBC by ChangeLogService; the entity is only read.
+ */
+@Entity
+@Table(name = "change_log")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChangeLogEntry {
+
+    public static final String CUSTOMER = "customer";
+    public static final String PRODUCT = "product";
+    public static final String VISIT = "visit";
+    public static final String INVOICE = "invoice";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "entity_type", nullable = false, length = 20)
+    private String entityType;
+
+    @Column(name = "entity_id", nullable = false)
+    private Long entityId;
+
+    @Column(name = "changed_at", nullable = false)
+    private OffsetDateTime changedAt;
+}
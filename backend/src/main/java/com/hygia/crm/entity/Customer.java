@@ -1,11 +1,15 @@
 package com.hygia.crm.entity;
 
+import com.hygia.crm.search.SearchText;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
+import java.time.OffsetDateTime;
+import java.util.Set;
+
 @Entity
 @Table(name = "customer", uniqueConstraints = {
     @UniqueConstraint(columnNames = "name_std")
@@ -16,8 +20,11 @@ import lombok.Setter;
 @AllArgsConstructor
 public class Customer {
 
+    public static final Set<String> TIERS = Set.of("A", "B", "C", "Potential");
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "customer_seq")
+    @SequenceGenerator(name = "customer_seq", sequenceName = "customer_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "name_std", nullable = false, unique = true)
@@ -26,7 +33,7 @@ public class Customer {
     @Column(name = "is_prospect", nullable = false)
     private Boolean isProspect = false;
 
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "region_id", nullable = false)
     private Region region;
 
@@ -49,12 +56,40 @@ public class Customer {
     private String tier = "Potential";
 
     /**
-     * Automatically set isProspect based on tier before persist/update.
-     * tier == "Potential" → isProspect = true
-     * Otherwise → isProspect = false
+     * nameStd normalized for search (see {@link SearchText#normalizeName}), derived on save.
+     */
+    @Column(name = "search_name")
+    private String searchName;
+
+    /**
+     * Digits of phone, derived on save so phone search ignores punctuation.
+     */
+    @Column(name = "phone_digits", length = 32)
+    private String phoneDigits;
+
+    /**
+     * Last insert or update of the row, maintained by the entity callbacks; null for rows that
+     * have not been written since the column was added.
+     */
+    @Column(name = "updated_at")
+    private OffsetDateTime updatedAt;
+
+    /**
+     * Derive computed columns before persist/update.
      */
     @PrePersist
     @PreUpdate
+    private void updateDerivedFields() {
+        updateIsProspectFromTier();
+        updateSearchFields();
+        this.updatedAt = OffsetDateTime.now();
+    }
+
+    /**
+     * Automatically set isProspect based on tier.
+     * tier == "Potential" → isProspect = true
+     * Otherwise → isProspect = false
+     */
     private void updateIsProspectFromTier() {
         if (tier != null && "Potential".equalsIgnoreCase(tier)) {
             this.isProspect = true;
@@ -62,5 +97,13 @@ public class Customer {
             this.isProspect = false;
         }
     }
+
+    /**
+     * Recompute searchName and phoneDigits from nameStd and phone.
+     */
+    public void updateSearchFields() {
+        this.searchName = SearchText.normalizeName(nameStd);
+        this.phoneDigits = SearchText.digitsOnly(phone);
+    }
 }
 
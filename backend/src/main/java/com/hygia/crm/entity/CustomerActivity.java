@@ -0,0 +1,58 @@
+package com.hygia.crm.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+
+/**
+ * Per-customer activity summary, maintained incrementally on every visit and invoice write.
+ * <p>
+ * The open follow-up is the {@code nextFollowUpAt} of the customer's latest visit: a later visit
+ * handles any follow-up scheduled by an earlier one.
+ */
+@Entity
+@Table(name = "customer_activity")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class CustomerActivity {
+
+    @Id
+    @Column(name = "customer_id")
+    private Long customerId;
+
+    @Column(name = "last_visit_at")
+    private OffsetDateTime lastVisitAt;
+
+    @Column(name = "next_follow_up_at")
+    private OffsetDateTime nextFollowUpAt;
+
+    @Column(name = "last_invoice_date")
+    private LocalDate lastInvoiceDate;
+
+    /**
+     * Latest of lastVisitAt and the start (UTC) of lastInvoiceDate.
+     */
+    @Column(name = "last_activity_at")
+    private OffsetDateTime lastActivityAt;
+
+    @Column(name = "visit_count", nullable = false)
+    private Long visitCount = 0L;
+
+    @Column(name = "invoice_count", nullable = false)
+    private Long invoiceCount = 0L;
+
+    @Column(name = "lifetime_revenue", nullable = false, precision = 19, scale = 2)
+    private BigDecimal lifetimeRevenue = BigDecimal.ZERO;
+
+    public CustomerActivity(Long customerId) {
+        this.customerId = customerId;
+    }
+}
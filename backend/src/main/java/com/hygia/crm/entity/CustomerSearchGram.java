@@ -0,0 +1,27 @@
+package com.hygia.crm.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * One posting of the customer search index: customer {@code customerId} contains {@code gram}
+ * in its normalized name or phone digits. The primary key (field, gram, customer_id) is the
+ * lookup path; {@code idx_search_gram_customer} serves re-indexing a single customer.
+ */
+@Entity
+@Table(name = "customer_search_gram")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class CustomerSearchGram {
+
+    public static final String FIELD_NAME = "N";
+    public static final String FIELD_PHONE = "P";
+
+    @EmbeddedId
+    private CustomerSearchGramId id;
+}
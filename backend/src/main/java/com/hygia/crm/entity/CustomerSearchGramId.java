@@ -0,0 +1,33 @@
+package com.hygia.crm.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+
+@Embeddable
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+public class CustomerSearchGramId implements Serializable {
+
+    @Column(name = "gram", length = 3, nullable = false)
+    private String gram;
+
+    /**
+     * Which text the gram was taken from: {@link CustomerSearchGram#FIELD_NAME} or
+     * {@link CustomerSearchGram#FIELD_PHONE}.
+     */
+    @Column(name = "field", length = 1, nullable = false)
+    private String field;
+
+    @Column(name = "customer_id", nullable = false)
+    private Long customerId;
+}
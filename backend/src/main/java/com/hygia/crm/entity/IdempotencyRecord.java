@@ -0,0 +1,53 @@
+package com.hygia.crm.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.OffsetDateTime;
+
+/**
+ * A request made with an {@code Idempotency-Key}: claimed while it runs, then holding the response
+ * to replay to retries until {@code expiresAt}.
+ */
+@Entity
+@Table(name = "idempotency_key")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdempotencyRecord {
+
+    public static final String STATUS_IN_PROGRESS = "IN_PROGRESS";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+
+    // Scope and client key, e.g. "invoice:3f2a..."
+    @Id
+    @Column(name = "id", length = 300)
+    private String id;
+
+    // SHA-256 of the request, to catch a key reused for a different request
+    @Column(name = "request_hash", nullable = false, length = 64)
+    private String requestHash;
+
+    @Column(name = "status", nullable = false, length = 16)
+    private String status;
+
+    // An in-progress claim older than this was abandoned and may be taken over
+    @Column(name = "locked_until", nullable = false)
+    private OffsetDateTime lockedUntil;
+
+    @Column(name = "expires_at", nullable = false)
+    private OffsetDateTime expiresAt;
+
+    @Column(name = "response_status")
+    private Integer responseStatus;
+
+    @Column(name = "response_content_type", length = 100)
+    private String responseContentType;
+
+    @Column(name = "response_body", columnDefinition = "TEXT")
+    private String responseBody;
+}
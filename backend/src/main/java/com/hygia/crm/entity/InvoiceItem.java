@@ -10,21 +10,28 @@ import java.math.BigDecimal;
 
 @Entity
 @Table(name = "invoice_item")
+@NamedEntityGraph(name = InvoiceItem.WITH_PRODUCT, attributeNodes = @NamedAttributeNode("product"))
 @Getter
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
 public class InvoiceItem {
 
+    /**
+     * Fetch plan for reads that show the product's code and description.
+     */
+    public static final String WITH_PRODUCT = "InvoiceItem.withProduct";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "invoice_item_seq")
+    @SequenceGenerator(name = "invoice_item_seq", sequenceName = "invoice_item_seq", allocationSize = 50)
     private Long id;
 
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "invoice_id", nullable = false)
     private Invoice invoice;
 
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "product_id", nullable = false)
     private Product product;
 
@@ -0,0 +1,27 @@
+package com.hygia.crm.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Sequence number of the last journal record applied to the database, advanced in the same
+ * transaction as the writes it covers.
+ */
+@Entity
+@Table(name = "journal_checkpoint")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class JournalCheckpoint {
+
+    @Id
+    @Column(name = "name", length = 64)
+    private String name;
+
+    @Column(name = "last_seq", nullable = false)
+    private long lastSeq;
+}
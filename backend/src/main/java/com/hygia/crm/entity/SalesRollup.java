@@ -0,0 +1,36 @@
+package com.hygia.crm.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+
+/**
+ * Invoice line totals per (month, region, tier, product), maintained in the transaction that
+ * writes the invoices. Region and tier are the customer's at the time the invoice was written.
+ * The primary key leads with the month, so period ranges are index scans;
+ * {@code idx_sales_rollup_product} serves per-product reports.
+ */
+@Entity
+@Table(name = "sales_rollup")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class SalesRollup {
+
+    @EmbeddedId
+    private SalesRollupId id;
+
+    @Column(name = "revenue", nullable = false, precision = 19, scale = 2)
+    private BigDecimal revenue = BigDecimal.ZERO;
+
+    @Column(name = "quantity", nullable = false)
+    private Long quantity = 0L;
+
+    @Column(name = "line_count", nullable = false)
+    private Long lineCount = 0L;
+}
@@ -0,0 +1,36 @@
+package com.hygia.crm.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+@Embeddable
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+public class SalesRollupId implements Serializable {
+
+    /**
+     * First day of the invoice month.
+     */
+    @Column(name = "period_start", nullable = false)
+    private LocalDate periodStart;
+
+    @Column(name = "region_id", nullable = false)
+    private Long regionId;
+
+    @Column(name = "tier", length = 16, nullable = false)
+    private String tier;
+
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+}
@@ -9,9 +9,7 @@ import lombok.Setter;
 import java.time.OffsetDateTime;
 
 @Entity
-@Table(name = "visit_log", indexes = {
-    @Index(name = "idx_customer_visit_at", columnList = "customer_id, visit_at")
-})
+@Table(name = "visit_log")
 @Getter
 @Setter
 @NoArgsConstructor
@@ -19,7 +17,8 @@ import java.time.OffsetDateTime;
 public class VisitLog {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "visit_log_seq")
+    @SequenceGenerator(name = "visit_log_seq", sequenceName = "visit_log_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -0,0 +1,68 @@
+package com.hygia.crm.export;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * RFC 4180 CSV with a header row. Timestamps are written as ISO-8601 with seconds, other values
+ * with toString(); nulls as empty fields.
+ */
+class CsvRowWriter<T> implements RowWriter<T> {
+
+    private final List<ExportColumn<T>> columns;
+    private final BufferedWriter writer;
+
+    CsvRowWriter(List<ExportColumn<T>> columns, OutputStream out) throws IOException {
+        this.columns = columns;
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writeField(columns.get(i).name());
+        }
+        writer.write("\r\n");
+    }
+
+    @Override
+    public void write(T row) throws IOException {
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            Object value = columns.get(i).value().apply(row);
+            if (value instanceof OffsetDateTime timestamp) {
+                writer.write(DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(timestamp));
+            } else if (value != null) {
+                writeField(value.toString());
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    private void writeField(String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
@@ -0,0 +1,9 @@
+package com.hygia.crm.export;
+
+import java.util.function.Function;
+
+/**
+ * One field of an export row: its name (CSV header, JSON property) and how to read it.
+ */
+public record ExportColumn<T>(String name, Function<T, Object> value) {
+}
@@ -0,0 +1,40 @@
+package com.hygia.crm.export;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * One flat JSON object per line, fields in column order.
+ */
+class NdjsonRowWriter<T> implements RowWriter<T> {
+
+    private final List<ExportColumn<T>> columns;
+    private final JsonGenerator generator;
+
+    NdjsonRowWriter(List<ExportColumn<T>> columns, OutputStream out, ObjectMapper objectMapper) throws IOException {
+        this.columns = columns;
+        this.generator = objectMapper.createGenerator(out);
+        // The servlet container owns the response stream
+        this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    @Override
+    public void write(T row) throws IOException {
+        generator.writeStartObject();
+        for (ExportColumn<T> column : columns) {
+            generator.writeFieldName(column.name());
+            generator.writeObject(column.value().apply(row));
+        }
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        generator.flush();
+    }
+}
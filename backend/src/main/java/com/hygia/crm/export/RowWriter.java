@@ -0,0 +1,28 @@
+package com.hygia.crm.export;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Writes export rows to a stream as they are produced, without buffering the result.
+ */
+public interface RowWriter<T> {
+
+    void write(T row) throws IOException;
+
+    /**
+     * Pushes buffered output to the client.
+     */
+    void flush() throws IOException;
+
+    static <T> RowWriter<T> open(ExportFormat format, List<ExportColumn<T>> columns, OutputStream out,
+                                 ObjectMapper objectMapper) throws IOException {
+        return switch (format) {
+            case NDJSON -> new NdjsonRowWriter<>(columns, out, objectMapper);
+            case CSV -> new CsvRowWriter<>(columns, out);
+        };
+    }
+}
@@ -0,0 +1,319 @@
+package com.hygia.crm.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Local append-only log of opaque records, numbered by a gapless sequence and kept in segment
+ * files named after their first sequence number.
+ * <p>
+ * Each record is stored as {@code length, crc32c, seq, payload}; the checksum covers the sequence
+ * number and the payload. {@link #write} appends to the current segment and {@link #sync} forces
+ * it to disk: the first caller does the fsync for every record written before it started and
+ * callers arriving meanwhile wait for it, so concurrent writers share one fsync (group commit).
+ * <p>
+ * On {@link #open} the segments are scanned and a torn record at the end of the last one, left by
+ * a crash in the middle of a write, is cut off. Appends always go to a fresh segment. After an
+ * I/O error the journal refuses further writes, since the file may now hold a partial record.
+ */
+public class AppendOnlyJournal implements Closeable {
+
+    public record Entry(long seq, byte[] payload) {
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(AppendOnlyJournal.class);
+
+    private static final String SUFFIX = ".journal";
+    private static final int HEADER_BYTES = 16;
+    private static final int MAX_PAYLOAD_BYTES = 16 * 1024 * 1024;
+
+    private final Path dir;
+    private final long segmentBytes;
+    // First sequence number -> segment file, the current one last
+    private final TreeMap<Long, Path> segments = new TreeMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final AtomicLong durableSeq = new AtomicLong();
+
+    // Guarded by writeLock
+    private FileChannel current;
+    private long currentBytes;
+    private volatile long lastSeq;
+    private volatile IOException failure;
+
+    private AppendOnlyJournal(Path dir, long segmentBytes) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     * Opens the journal in {@code dir}, creating it if needed, and passes every intact record
+     * with a sequence number above {@code afterSeq} to {@code replay}, in order. New records are
+     * numbered after the highest of {@code afterSeq} and the last record found.
+     *
+     * @throws IOException also when a segment other than the last one is damaged
+     */
+    public static AppendOnlyJournal open(Path dir, long segmentBytes, long afterSeq, Consumer<Entry> replay)
+            throws IOException {
+        Files.createDirectories(dir);
+        AppendOnlyJournal journal = new AppendOnlyJournal(dir, segmentBytes);
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(file -> file.getFileName().toString().endsWith(SUFFIX))
+                    .forEach(file -> journal.segments.put(firstSeqOf(file), file));
+        }
+
+        long last = afterSeq;
+        for (Map.Entry<Long, Path> segment : journal.segments.entrySet()) {
+            boolean tail = segment.getKey().equals(journal.segments.lastKey());
+            last = Math.max(last, scan(segment.getValue(), tail, afterSeq, replay));
+        }
+        journal.lastSeq = last;
+        journal.durableSeq.set(last);
+        journal.startSegment(last + 1);
+        return journal;
+    }
+
+    /**
+     * Appends a record without waiting for it to reach the disk.
+     *
+     * @return its sequence number, to pass to {@link #sync}
+     */
+    public long write(byte[] payload) throws IOException {
+        if (payload.length > MAX_PAYLOAD_BYTES) {
+            throw new IllegalArgumentException("Journal record too large: " + payload.length + " bytes");
+        }
+        writeLock.lock();
+        try {
+            checkUsable();
+            if (currentBytes >= segmentBytes) {
+                roll();
+            }
+            long seq = lastSeq + 1;
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+            buffer.putInt(payload.length).putInt(checksum(seq, payload)).putLong(seq).put(payload).flip();
+            try {
+                while (buffer.hasRemaining()) {
+                    current.write(buffer);
+                }
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            }
+            currentBytes += buffer.limit();
+            lastSeq = seq;
+            return seq;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Returns once the record {@code seq} and all before it are on disk.
+     */
+    public void sync(long seq) throws IOException {
+        syncLock.lock();
+        try {
+            if (durableSeq.get() >= seq) {
+                return;
+            }
+            FileChannel channel;
+            long target;
+            writeLock.lock();
+            try {
+                checkUsable();
+                channel = current;
+                target = lastSeq;
+            } finally {
+                writeLock.unlock();
+            }
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // roll() forced the segment before closing it
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            }
+            durableSeq.accumulateAndGet(target, Math::max);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Sequence number of the last record known to be on disk.
+     */
+    public long getDurableSeq() {
+        return durableSeq.get();
+    }
+
+    /**
+     * Deletes the segments holding only records up to {@code seq}. The current segment is kept.
+     */
+    public void deleteUpTo(long seq) {
+        List<Path> obsolete = new ArrayList<>();
+        writeLock.lock();
+        try {
+            // A segment ends right before the next one starts
+            while (segments.size() > 1) {
+                Long second = segments.higherKey(segments.firstKey());
+                if (second - 1 > seq) {
+                    break;
+                }
+                obsolete.add(segments.pollFirstEntry().getValue());
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        for (Path file : obsolete) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Could not delete journal segment {}", file, e);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            if (current != null && current.isOpen()) {
+                if (failure == null) {
+                    current.force(false);
+                }
+                current.close();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void checkUsable() throws IOException {
+        if (failure != null) {
+            throw new IOException("Journal in " + dir + " failed earlier and must be reopened", failure);
+        }
+        if (current == null || !current.isOpen()) {
+            throw new IOException("Journal in " + dir + " is closed");
+        }
+    }
+
+    private void roll() throws IOException {
+        try {
+            current.force(false);
+            current.close();
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        }
+        durableSeq.accumulateAndGet(lastSeq, Math::max);
+        startSegment(lastSeq + 1);
+    }
+
+    private void startSegment(long firstSeq) throws IOException {
+        Path file = dir.resolve(String.format("%020d%s", firstSeq, SUFFIX));
+        current = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        currentBytes = 0;
+        segments.put(firstSeq, file);
+        syncDirectory();
+    }
+
+    // Makes the new segment's directory entry durable; not supported on every platform
+    private void syncDirectory() {
+        try (FileChannel directory = FileChannel.open(dir, StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            log.debug("Could not fsync journal directory {}", dir, e);
+        }
+    }
+
+    /**
+     * @return the last sequence number found in the segment, 0 if none
+     */
+    private static long scan(Path file, boolean tail, long afterSeq, Consumer<Entry> replay) throws IOException {
+        long last = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long position = 0;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (position < size) {
+                String damage = null;
+                header.clear();
+                if (size - position < HEADER_BYTES) {
+                    damage = "truncated header";
+                } else {
+                    readFully(channel, header, position);
+                    header.flip();
+                    int length = header.getInt();
+                    int crc = header.getInt();
+                    long seq = header.getLong();
+                    if (length < 0 || length > MAX_PAYLOAD_BYTES || size - position - HEADER_BYTES < length) {
+                        damage = "truncated record";
+                    } else {
+                        ByteBuffer payload = ByteBuffer.allocate(length);
+                        readFully(channel, payload, position + HEADER_BYTES);
+                        if (checksum(seq, payload.array()) != crc) {
+                            damage = "checksum mismatch";
+                        } else {
+                            if (seq > afterSeq) {
+                                replay.accept(new Entry(seq, payload.array()));
+                            }
+                            last = seq;
+                            position += HEADER_BYTES + length;
+                        }
+                    }
+                }
+                if (damage != null) {
+                    if (!tail) {
+                        throw new IOException("Journal segment " + file + " is damaged at byte " + position
+                                + " (" + damage + ")");
+                    }
+                    log.warn("Cutting off torn write at byte {} of journal segment {} ({})", position, file, damage);
+                    channel.truncate(position);
+                    channel.force(true);
+                    break;
+                }
+            }
+        }
+        return last;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of journal segment");
+            }
+        }
+    }
+
+    private static int checksum(long seq, byte[] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(ByteBuffer.allocate(Long.BYTES).putLong(seq).flip());
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static long firstSeqOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+}
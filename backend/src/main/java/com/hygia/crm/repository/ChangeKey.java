@@ -0,0 +1,7 @@
+package com.hygia.crm.repository;
+
+/**
+ * An entity in the change feed with the id of its latest change_log row.
+ */
+public record ChangeKey(String entityType, Long entityId, Long changeId) {
+}
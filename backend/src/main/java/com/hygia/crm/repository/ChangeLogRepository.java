@@ -0,0 +1,49 @@
+package com.hygia.crm.repository;
+
+import com.hygia.crm.entity.ChangeLogEntry;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+@Repository
+public interface ChangeLogRepository extends JpaRepository<ChangeLogEntry, Long> {
+
+    /**
+     * Entities changed in (afterId, beforeId), each once, in the order of their latest change.
+     */
+    @Query("select new com.hygia.crm.repository.ChangeKey(c.entityType, c.entityId, max(c.id)) from ChangeLogEntry c " +
+           "where c.id > :afterId and c.id < :beforeId group by c.entityType, c.entityId order by max(c.id)")
+    List<ChangeKey> findLatestChanges(@Param("afterId") long afterId, @Param("beforeId") long beforeId, Limit limit);
+
+    /**
+     * Ids of the changes stamped at or before {@code changedUpTo}, latest stamp first.
+     */
+    @Query("select c.id from ChangeLogEntry c where c.changedAt <= :changedUpTo order by c.changedAt desc, c.id desc")
+    List<Long> findIdsChangedUpTo(@Param("changedUpTo") OffsetDateTime changedUpTo, Limit limit);
+
+    /**
+     * Changes above {@code afterId} with their stamps, ascending.
+     */
+    @Query("select new com.hygia.crm.repository.ChangeStamp(c.id, c.changedAt) from ChangeLogEntry c " +
+           "where c.id > :afterId order by c.id")
+    List<ChangeStamp> findStampsAfter(@Param("afterId") long afterId, Limit limit);
+
+    @Query("select min(c.id) from ChangeLogEntry c")
+    Long findMinId();
+
+    /**
+     * Deletes changes logged before {@code cutoff} except the latest of them: the oldest kept id
+     * tells which cursors have expired, and as a settled change it tells the purged ids from ones
+     * still committing.
+     */
+    @Modifying
+    @Query("delete from ChangeLogEntry c where c.changedAt < :cutoff " +
+           "and c.id < (select max(m.id) from ChangeLogEntry m where m.changedAt < :cutoff)")
+    int deleteOlderThan(@Param("cutoff") OffsetDateTime cutoff);
+}
@@ -0,0 +1,9 @@
+package com.hygia.crm.repository;
+
+import java.time.OffsetDateTime;
+
+/**
+ * A change_log id with the database time its writing transaction started.
+ */
+public record ChangeStamp(Long id, OffsetDateTime changedAt) {
+}
@@ -0,0 +1,79 @@
+package com.hygia.crm.repository;
+
+import com.hygia.crm.entity.CustomerActivity;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface CustomerActivityRepository extends JpaRepository<CustomerActivity, Long>, CustomerActivityRepositoryCustom {
+
+    /**
+     * Applies visits to the summary in one atomic statement. The follow-up is replaced only when
+     * the visit is at least as recent as the latest one already recorded.
+     *
+     * @return number of rows updated, 0 if the customer has no summary row yet
+     */
+    @Modifying
+    @Query("update CustomerActivity a set " +
+           "a.visitCount = a.visitCount + :visits, " +
+           "a.nextFollowUpAt = case when a.lastVisitAt is null or a.lastVisitAt <= :visitAt " +
+           "    then :nextFollowUpAt else a.nextFollowUpAt end, " +
+           "a.lastVisitAt = case when a.lastVisitAt is null or a.lastVisitAt < :visitAt " +
+           "    then :visitAt else a.lastVisitAt end, " +
+           "a.lastActivityAt = case when a.lastActivityAt is null or a.lastActivityAt < :visitAt " +
+           "    then :visitAt else a.lastActivityAt end " +
+           "where a.customerId = :customerId")
+    int recordVisits(@Param("customerId") Long customerId,
+                     @Param("visits") long visits,
+                     @Param("visitAt") OffsetDateTime visitAt,
+                     @Param("nextFollowUpAt") OffsetDateTime nextFollowUpAt);
+
+    /**
+     * Applies invoices to the summary in one atomic statement.
+     *
+     * @return number of rows updated, 0 if the customer has no summary row yet
+     */
+    @Modifying
+    @Query("update CustomerActivity a set " +
+           "a.invoiceCount = a.invoiceCount + :invoices, " +
+           "a.lifetimeRevenue = a.lifetimeRevenue + :amount, " +
+           "a.lastInvoiceDate = case when a.lastInvoiceDate is null or a.lastInvoiceDate < :invoiceDate " +
+           "    then :invoiceDate else a.lastInvoiceDate end, " +
+           "a.lastActivityAt = case when a.lastActivityAt is null or a.lastActivityAt < :invoiceAt " +
+           "    then :invoiceAt else a.lastActivityAt end " +
+           "where a.customerId = :customerId")
+    int recordInvoices(@Param("customerId") Long customerId,
+                       @Param("invoices") long invoices,
+                       @Param("amount") BigDecimal amount,
+                       @Param("invoiceDate") LocalDate invoiceDate,
+                       @Param("invoiceAt") OffsetDateTime invoiceAt);
+
+    /**
+     * Open follow-ups from ({@code fromAt}, {@code fromCustomerId}) on, due before {@code to}, in
+     * (nextFollowUpAt, customerId) order (idx_activity_next_follow_up).
+     */
+    @Query("select new com.hygia.crm.repository.FollowUp(a.customerId, a.nextFollowUpAt) from CustomerActivity a " +
+           "where (a.nextFollowUpAt > :fromAt or (a.nextFollowUpAt = :fromAt and a.customerId >= :fromCustomerId)) " +
+           "and a.nextFollowUpAt < :to order by a.nextFollowUpAt, a.customerId")
+    List<FollowUp> findFollowUpsFrom(@Param("fromAt") OffsetDateTime fromAt,
+                                     @Param("fromCustomerId") Long fromCustomerId,
+                                     @Param("to") OffsetDateTime to,
+                                     Limit limit);
+
+    /**
+     * Current open follow-ups of the given customers; customers without a summary row are missing.
+     */
+    @Query("select new com.hygia.crm.repository.FollowUp(a.customerId, a.nextFollowUpAt) from CustomerActivity a " +
+           "where a.customerId in :customerIds")
+    List<FollowUp> findFollowUps(@Param("customerIds") Collection<Long> customerIds);
+}
@@ -0,0 +1,18 @@
+package com.hygia.crm.repository;
+
+import com.hygia.crm.entity.CustomerActivity;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface CustomerActivityRepositoryCustom {
+
+    /**
+     * Inserts the summaries of customers that have no row yet, as one JDBC batch of native
+     * insert-if-absent statements, so a concurrent writer creating the same row does not fail on
+     * the primary key.
+     *
+     * @return ids of the customers whose row already existed and was left alone
+     */
+    List<Long> insertAllIfAbsent(Collection<CustomerActivity> activities);
+}
@@ -0,0 +1,95 @@
+package com.hygia.crm.repository;
+
+import com.hygia.crm.entity.CustomerActivity;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+class CustomerActivityRepositoryImpl implements CustomerActivityRepositoryCustom {
+
+    private static final String POSTGRES_INSERT_IF_ABSENT =
+            "insert into customer_activity (customer_id, last_visit_at, next_follow_up_at, last_invoice_date, " +
+            "last_activity_at, visit_count, invoice_count, lifetime_revenue) values (?, ?, ?, ?, ?, ?, ?, ?) " +
+            "on conflict (customer_id) do nothing";
+
+    // Standard SQL MERGE, used on H2
+    private static final String MERGE_INSERT_IF_ABSENT =
+            "merge into customer_activity t using (values (cast(? as bigint), cast(? as timestamp(6) with time zone), " +
+            "cast(? as timestamp(6) with time zone), cast(? as date), cast(? as timestamp(6) with time zone), " +
+            "cast(? as bigint), cast(? as bigint), cast(? as numeric(19, 2)))) " +
+            "s (customer_id, last_visit_at, next_follow_up_at, last_invoice_date, last_activity_at, visit_count, " +
+            "invoice_count, lifetime_revenue) " +
+            "on t.customer_id = s.customer_id " +
+            "when not matched then insert (customer_id, last_visit_at, next_follow_up_at, last_invoice_date, " +
+            "last_activity_at, visit_count, invoice_count, lifetime_revenue) " +
+            "values (s.customer_id, s.last_visit_at, s.next_follow_up_at, s.last_invoice_date, s.last_activity_at, " +
+            "s.visit_count, s.invoice_count, s.lifetime_revenue)";
+
+    private final EntityManager entityManager;
+
+    CustomerActivityRepositoryImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public List<Long> insertAllIfAbsent(Collection<CustomerActivity> activities) {
+        List<Long> existing = new ArrayList<>();
+        if (activities.isEmpty()) {
+            return existing;
+        }
+        Session session = entityManager.unwrap(Session.class);
+        boolean postgres = session.getSessionFactory().unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices().getDialect() instanceof PostgreSQLDialect;
+        session.doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    postgres ? POSTGRES_INSERT_IF_ABSENT : MERGE_INSERT_IF_ABSENT)) {
+                for (CustomerActivity activity : activities) {
+                    statement.setLong(1, activity.getCustomerId());
+                    setTimestamp(statement, 2, activity.getLastVisitAt());
+                    setTimestamp(statement, 3, activity.getNextFollowUpAt());
+                    setDate(statement, 4, activity.getLastInvoiceDate());
+                    setTimestamp(statement, 5, activity.getLastActivityAt());
+                    statement.setLong(6, activity.getVisitCount());
+                    statement.setLong(7, activity.getInvoiceCount());
+                    statement.setBigDecimal(8, activity.getLifetimeRevenue());
+                    statement.addBatch();
+                }
+                int[] counts = statement.executeBatch();
+                int i = 0;
+                for (CustomerActivity activity : activities) {
+                    if (counts[i++] == 0) {
+                        existing.add(activity.getCustomerId());
+                    }
+                }
+            }
+        });
+        return existing;
+    }
+
+    private static void setTimestamp(PreparedStatement statement, int index, OffsetDateTime value) throws SQLException {
+        if (value != null) {
+            statement.setObject(index, value);
+        } else {
+            statement.setNull(index, Types.TIMESTAMP_WITH_TIMEZONE);
+        }
+    }
+
+    private static void setDate(PreparedStatement statement, int index, LocalDate value) throws SQLException {
+        if (value != null) {
+            statement.setDate(index, Date.valueOf(value));
+        } else {
+            statement.setNull(index, Types.DATE);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.hygia.crm.repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Invoice aggregates of one customer.
+ */
+public record CustomerInvoiceStats(Long customerId, Long invoiceCount, BigDecimal revenue, LocalDate lastInvoiceDate) {
+}
@@ -1,15 +1,48 @@
 package com.hygia.crm.repository;
 
 import com.hygia.crm.entity.Customer;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface CustomerRepository extends JpaRepository<Customer, Long>, JpaSpecificationExecutor<Customer> {
+public interface CustomerRepository extends JpaRepository<Customer, Long>, JpaSpecificationExecutor<Customer>,
+        CustomerRepositoryCustom {
     Optional<Customer> findByNameStd(String nameStd);
     boolean existsByNameStd(String nameStd);
+
+    /**
+     * A customer's listing columns with its region's name, in one query.
+     */
+    @Query("select new com.hygia.crm.repository.CustomerRow(c.id, c.nameStd, c.addressText, c.phone, c.email, " +
+           "c.paymentTerms, c.tier, r.id, r.name) from Customer c join c.region r where c.id = :id")
+    Optional<CustomerRow> findRowById(@Param("id") Long id);
+
+    @Query("select new com.hygia.crm.repository.CustomerRow(c.id, c.nameStd, c.addressText, c.phone, c.email, " +
+           "c.paymentTerms, c.tier, r.id, r.name) from Customer c join c.region r where c.id in :ids")
+    List<CustomerRow> findRowsByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("select c.id from Customer c where c.id in :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    @Query("select c.nameStd from Customer c where c.nameStd in :names")
+    List<String> findExistingNameStds(@Param("names") Collection<String> names);
+
+    /**
+     * Walks the table in primary key order, {@code limit} rows after {@code afterId} at a time.
+     * Regions are not fetched.
+     */
+    @Query("select c from Customer c where c.id > :afterId order by c.id")
+    List<Customer> findBatchAfter(@Param("afterId") Long afterId, Limit limit);
+
+    @Query("select c.id from Customer c where c.id > :afterId order by c.id")
+    List<Long> findIdsAfter(@Param("afterId") Long afterId, Limit limit);
 }
 
@@ -0,0 +1,33 @@
+package com.hygia.crm.repository;
+
+import com.hygia.crm.entity.Customer;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.stream.Stream;
+
+public interface CustomerRepositoryCustom {
+
+    /**
+     * All customers matching {@code spec}, in id order, read through a JDBC cursor. Regions are
+     * not joined, so the filter can drive the plan; they load from the second-level cache. Must be
+     * consumed inside a transaction.
+     */
+    Stream<Customer> streamAll(Specification<Customer> spec);
+
+    /**
+     * Like {@code findAll(spec, pageable)}, but selects only the listed columns. An unsorted
+     * pageable keeps any ordering the specification sets.
+     */
+    Page<CustomerRow> findRows(Specification<Customer> spec, Pageable pageable);
+
+    /**
+     * Like {@code findBy(spec, q -> q.sortBy(sort).limit(limit).scroll(position))}, but selects
+     * only the listed columns. Positions carry the sort property and id.
+     */
+    Window<CustomerRow> scrollRows(Specification<Customer> spec, Sort sort, int limit, KeysetScrollPosition position);
+}
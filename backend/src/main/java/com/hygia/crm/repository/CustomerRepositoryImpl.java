@@ -0,0 +1,120 @@
+package com.hygia.crm.repository;
+
+import com.hygia.crm.entity.Customer;
+import com.hygia.crm.entity.Region;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+class CustomerRepositoryImpl implements CustomerRepositoryCustom {
+
+    private final EntityManager entityManager;
+
+    CustomerRepositoryImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public Stream<Customer> streamAll(Specification<Customer> spec) {
+        // JpaSpecificationExecutor has no way to pass a fetch size, so build the query here
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Customer> query = cb.createQuery(Customer.class);
+        Root<Customer> root = query.from(Customer.class);
+        Predicate predicate = spec.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.select(root).orderBy(cb.asc(root.get("id")));
+
+        return entityManager.createQuery(query)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, Integer.parseInt(StreamingHints.FETCH_SIZE))
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .getResultStream();
+    }
+
+    @Override
+    public Page<CustomerRow> findRows(Specification<Customer> spec, Pageable pageable) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<CustomerRow> query = cb.createQuery(CustomerRow.class);
+        Root<Customer> root = selectRow(query, cb);
+        Predicate predicate = spec.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        if (pageable.getSort().isSorted()) {
+            query.orderBy(QueryUtils.toOrders(pageable.getSort(), root, cb));
+        }
+
+        TypedQuery<CustomerRow> rows = entityManager.createQuery(query);
+        if (pageable.isPaged()) {
+            rows.setFirstResult((int) pageable.getOffset()).setMaxResults(pageable.getPageSize());
+        }
+        return PageableExecutionUtils.getPage(rows.getResultList(), pageable, () -> count(spec));
+    }
+
+    @Override
+    public Window<CustomerRow> scrollRows(Specification<Customer> spec, Sort sort, int limit,
+                                          KeysetScrollPosition position) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<CustomerRow> query = cb.createQuery(CustomerRow.class);
+        Root<Customer> root = selectRow(query, cb);
+        List<Sort.Order> orders = KeysetScroll.orders(sort);
+
+        List<Predicate> predicates = new ArrayList<>(2);
+        Predicate predicate = spec.toPredicate(root, query, cb);
+        if (predicate != null) {
+            predicates.add(predicate);
+        }
+        Predicate after = KeysetScroll.after(orders, position, root, cb);
+        if (after != null) {
+            predicates.add(after);
+        }
+        query.where(predicates.toArray(new Predicate[0]))
+                .orderBy(KeysetScroll.toOrders(orders, root, cb));
+
+        List<CustomerRow> rows = entityManager.createQuery(query).setMaxResults(limit + 1).getResultList();
+        return KeysetScroll.window(rows, limit, orders, (row, property) -> switch (property) {
+            case "id" -> row.id();
+            case "nameStd" -> row.nameStd();
+            default -> throw new IllegalArgumentException("Cannot scroll customers by " + property);
+        });
+    }
+
+    private static Root<Customer> selectRow(CriteriaQuery<CustomerRow> query, CriteriaBuilder cb) {
+        Root<Customer> root = query.from(Customer.class);
+        Join<Customer, Region> region = root.join("region");
+        query.select(cb.construct(CustomerRow.class,
+                root.get("id"), root.get("nameStd"), root.get("addressText"), root.get("phone"), root.get("email"),
+                root.get("paymentTerms"), root.get("tier"), region.get("id"), region.get("name")));
+        return root;
+    }
+
+    private long count(Specification<Customer> spec) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<Customer> root = query.from(Customer.class);
+        Predicate predicate = spec.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.select(cb.count(root));
+        return entityManager.createQuery(query).getSingleResult();
+    }
+}
@@ -0,0 +1,9 @@
+package com.hygia.crm.repository;
+
+/**
+ * The columns of a customer shown in customer listings, with its region's name; notes and the
+ * derived search columns are left out.
+ */
+public record CustomerRow(Long id, String nameStd, String addressText, String phone, String email,
+                          String paymentTerms, String tier, Long regionId, String regionName) {
+}
@@ -0,0 +1,33 @@
+package com.hygia.crm.repository;
+
+import com.hygia.crm.entity.CustomerSearchGram;
+import com.hygia.crm.entity.CustomerSearchGramId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface CustomerSearchGramRepository extends JpaRepository<CustomerSearchGram, CustomerSearchGramId> {
+
+    @Modifying
+    @Query("delete from CustomerSearchGram g where g.id.customerId = :customerId")
+    int deleteByCustomerId(@Param("customerId") Long customerId);
+
+    /**
+     * Deletes the grams of customer ids in {@code (afterId, upToId]}, including those of
+     * customers that no longer exist.
+     */
+    @Modifying
+    @Query("delete from CustomerSearchGram g where g.id.customerId > :afterId and g.id.customerId <= :upToId")
+    int deleteByCustomerIdRange(@Param("afterId") Long afterId, @Param("upToId") Long upToId);
+
+    /**
+     * Deletes the grams of customer ids after {@code afterId} whose customer no longer exists.
+     */
+    @Modifying
+    @Query("delete from CustomerSearchGram g where g.id.customerId > :afterId"
+            + " and not exists (select 1 from Customer c where c.id = g.id.customerId)")
+    int deleteOrphansAfter(@Param("afterId") Long afterId);
+}
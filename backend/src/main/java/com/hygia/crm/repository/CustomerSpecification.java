@@ -1,14 +1,29 @@
 package com.hygia.crm.repository;
 
 import com.hygia.crm.entity.Customer;
-import com.hygia.crm.entity.VisitLog;
+import com.hygia.crm.entity.CustomerActivity;
+import com.hygia.crm.entity.CustomerSearchGram;
+import com.hygia.crm.search.SearchText;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Path;
 import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
 import jakarta.persistence.criteria.Subquery;
+import org.hibernate.query.NullPrecedence;
+import org.hibernate.query.criteria.HibernateCriteriaBuilder;
+import org.hibernate.query.criteria.JpaEntityJoin;
+import org.hibernate.query.criteria.JpaOrder;
+import org.hibernate.query.criteria.JpaRoot;
+import org.hibernate.query.sqm.tree.SqmJoinType;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 public class CustomerSpecification {
 
@@ -20,7 +35,7 @@ public class CustomerSpecification {
             String followup) {
 
         return (root, query, cb) -> {
-            query.distinct(true);
+            // No to-many joins are involved, so rows are unique without DISTINCT
             List<Predicate> predicates = new ArrayList<>();
 
             // Filter by regionId
@@ -38,36 +53,125 @@ public class CustomerSpecification {
                 predicates.add(cb.equal(root.get("isProspect"), isProspect));
             }
 
-            // Filter by follow-up (due visits)
+            // Filter by follow-up: the follow-up of the latest visit is due (idx_activity_next_follow_up)
             if ("due".equalsIgnoreCase(followup)) {
                 Subquery<Long> subquery = query.subquery(Long.class);
-                var visitRoot = subquery.from(VisitLog.class);
-                subquery.select(visitRoot.get("id"));
-                Predicate customerMatch = cb.equal(visitRoot.get("customer"), root);
-                Predicate nextFollowUpNotNull = cb.isNotNull(visitRoot.get("nextFollowUpAt"));
-                Predicate nextFollowUpDue = cb.lessThanOrEqualTo(
-                        visitRoot.get("nextFollowUpAt"), OffsetDateTime.now());
-                subquery.where(customerMatch, nextFollowUpNotNull, nextFollowUpDue);
-                predicates.add(cb.exists(subquery));
+                Root<CustomerActivity> activity = subquery.from(CustomerActivity.class);
+                subquery.select(activity.get("customerId"))
+                        .where(cb.lessThanOrEqualTo(activity.get("nextFollowUpAt"), OffsetDateTime.now()));
+                predicates.add(root.get("id").in(subquery));
             }
 
-            // Search query (case-insensitive contains match on nameStd and phone)
+            // Search query: n-gram index lookup, then a contains check on the few candidates left
             if (searchQuery != null && !searchQuery.isEmpty()) {
-                String searchPattern = "%" + searchQuery.toLowerCase() + "%";
-                Predicate namePredicate = cb.like(cb.lower(root.get("nameStd")), searchPattern);
-                
-                // Phone predicate: only match if phone is not null and contains the search query
-                Predicate phonePredicate = cb.and(
-                    cb.isNotNull(root.get("phone")),
-                    cb.like(cb.lower(root.get("phone")), searchPattern)
-                );
-                
-                // Match if nameStd OR phone matches
-                predicates.add(cb.or(namePredicate, phonePredicate));
+                predicates.add(searchPredicate(searchQuery, root, query, cb));
             }
 
             return cb.and(predicates.toArray(new Predicate[0]));
         };
     }
-}
 
+    /**
+     * Customers inserted or updated at or after {@code since} (idx_customer_updated_at).
+     */
+    public static Specification<Customer> updatedSince(OffsetDateTime since) {
+        return (root, query, cb) -> cb.greaterThanOrEqualTo(root.get("updatedAt"), since);
+    }
+
+    /**
+     * Orders customers by how well their name matches the search query: exact match, then name
+     * prefix, then word prefix, then anything else (including phone-only matches); shorter names
+     * first within each group. Count queries are left unordered.
+     */
+    public static Specification<Customer> orderByRelevance(String searchQuery) {
+        String normalized = SearchText.normalizeName(searchQuery);
+
+        return (root, query, cb) -> {
+            Class<?> resultType = query.getResultType();
+            if (normalized == null || Long.class.equals(resultType) || long.class.equals(resultType)) {
+                return null;
+            }
+            Expression<String> searchName = root.get("searchName");
+            Expression<Integer> rank = cb.<Integer>selectCase()
+                    .when(cb.equal(searchName, normalized), 0)
+                    .when(cb.like(searchName, normalized + "%"), 1)
+                    .when(cb.like(searchName, "% " + normalized + "%"), 2)
+                    .otherwise(3);
+            query.orderBy(cb.asc(rank), cb.asc(cb.length(searchName)), cb.asc(root.get("nameStd")), cb.asc(root.get("id")));
+            return null;
+        };
+    }
+
+    /**
+     * Orders customers by a timestamp of their activity summary ({@code lastActivityAt} or
+     * {@code lastVisitAt}), customers without a summary or without any activity last, then by id.
+     * The summary is left joined, so it leaves the rows and totals alone.
+     */
+    public static Specification<Customer> orderByActivity(String field, Sort.Direction direction) {
+        return (root, query, cb) -> {
+            Class<?> resultType = query.getResultType();
+            if (!Long.class.equals(resultType) && !long.class.equals(resultType)) {
+                JpaEntityJoin<CustomerActivity> activity =
+                        ((JpaRoot<Customer>) root).join(CustomerActivity.class, SqmJoinType.LEFT);
+                activity.on(cb.equal(activity.get("customerId"), root.get("id")));
+                Expression<OffsetDateTime> timestamp = activity.get(field);
+                JpaOrder order = (JpaOrder) (direction.isAscending() ? cb.asc(timestamp) : cb.desc(timestamp));
+                query.orderBy(order.nullPrecedence(NullPrecedence.LAST), cb.asc(root.get("id")));
+            }
+            return null;
+        };
+    }
+
+    private static Predicate searchPredicate(String searchQuery, Root<Customer> root, CriteriaQuery<?> query,
+                                             CriteriaBuilder cb) {
+        List<Subquery<Long>> candidates = new ArrayList<>();
+        List<Predicate> matches = new ArrayList<>();
+
+        String normalized = SearchText.normalizeName(searchQuery);
+        if (normalized != null) {
+            Expression<String> searchName = root.get("searchName");
+            candidates.add(gramSubquery(CustomerSearchGram.FIELD_NAME, SearchText.nameQueryGrams(normalized), query, cb));
+            matches.add(normalized.length() < SearchText.GRAM_LENGTH
+                    // Short queries match the start of a word
+                    ? cb.or(cb.like(searchName, normalized + "%"), cb.like(searchName, "% " + normalized + "%"))
+                    : cb.like(searchName, "%" + normalized + "%"));
+        }
+
+        // Phone predicate: only when the query looks like a phone number; punctuation is ignored
+        String phoneDigits = SearchText.phoneQuery(searchQuery);
+        if (phoneDigits != null) {
+            candidates.add(gramSubquery(CustomerSearchGram.FIELD_PHONE, SearchText.digitGrams(phoneDigits), query, cb));
+            matches.add(cb.like(root.get("phoneDigits"), "%" + phoneDigits + "%"));
+        }
+
+        // Nothing searchable in the query (e.g. only punctuation): match nothing
+        if (candidates.isEmpty()) {
+            return cb.disjunction();
+        }
+
+        // Match if nameStd OR phone matches. A match implies all of its field's grams, so the candidates
+        // are one id IN (... union ...): an OR of two IN subqueries cannot use the primary key
+        Subquery<Long> candidateIds = candidates.size() == 1
+                ? candidates.get(0)
+                : ((HibernateCriteriaBuilder) cb).union(candidates.get(0), candidates.get(1));
+        return cb.and(root.get("id").in(candidateIds), cb.or(matches.toArray(new Predicate[0])));
+    }
+
+    /**
+     * Ids of customers whose {@code field} contains every one of {@code grams}.
+     */
+    private static Subquery<Long> gramSubquery(String field, Set<String> grams, CriteriaQuery<?> query,
+                                               CriteriaBuilder cb) {
+        Subquery<Long> subquery = query.subquery(Long.class);
+        Root<CustomerSearchGram> gramRoot = subquery.from(CustomerSearchGram.class);
+        Path<Object> id = gramRoot.get("id");
+        subquery.select(id.<Long>get("customerId"))
+                .where(
+                    cb.equal(id.get("field"), field),
+                    id.get("gram").in(grams)
+                )
+                .groupBy(id.get("customerId"))
+                .having(cb.equal(cb.count(id.get("gram")), (long) grams.size()));
+        return subquery;
+    }
+}
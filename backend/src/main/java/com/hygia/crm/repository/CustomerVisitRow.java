@@ -0,0 +1,10 @@
+package com.hygia.crm.repository;
+
+import java.time.OffsetDateTime;
+
+/**
+ * A visit's listing columns with its customer id, for readers that mix customers.
+ */
+public record CustomerVisitRow(Long id, Long customerId, OffsetDateTime visitAt, String type, String result,
+                               String notes, OffsetDateTime nextFollowUpAt) {
+}
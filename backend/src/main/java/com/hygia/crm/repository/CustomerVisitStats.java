@@ -0,0 +1,9 @@
+package com.hygia.crm.repository;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Visit aggregates of one customer.
+ */
+public record CustomerVisitStats(Long customerId, Long visitCount, OffsetDateTime lastVisitAt) {
+}
@@ -0,0 +1,9 @@
+package com.hygia.crm.repository;
+
+import java.time.OffsetDateTime;
+
+/**
+ * The open follow-up of one customer, i.e. the one scheduled by its latest visit; null if none.
+ */
+public record FollowUp(Long customerId, OffsetDateTime nextFollowUpAt) {
+}
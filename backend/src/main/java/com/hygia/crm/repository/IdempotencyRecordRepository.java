@@ -0,0 +1,49 @@
+package com.hygia.crm.repository;
+
+import com.hygia.crm.entity.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+
+    /**
+     * Claims a key whose record has expired, or whose in-progress claim was abandoned.
+     *
+     * @return 1 if claimed, 0 if the record is still live
+     */
+    @Modifying
+    @Query("update IdempotencyRecord r set r.requestHash = :requestHash, r.status = 'IN_PROGRESS', " +
+           "r.lockedUntil = :lockedUntil, r.expiresAt = :expiresAt, " +
+           "r.responseStatus = null, r.responseContentType = null, r.responseBody = null " +
+           "where r.id = :id and (r.expiresAt < :now or (r.status = 'IN_PROGRESS' and r.lockedUntil < :now))")
+    int takeOver(@Param("id") String id,
+                 @Param("requestHash") String requestHash,
+                 @Param("lockedUntil") OffsetDateTime lockedUntil,
+                 @Param("expiresAt") OffsetDateTime expiresAt,
+                 @Param("now") OffsetDateTime now);
+
+    /**
+     * Stores the response of a claimed key.
+     */
+    @Modifying
+    @Query("update IdempotencyRecord r set r.status = 'COMPLETED', r.responseStatus = :status, " +
+           "r.responseContentType = :contentType, r.responseBody = :body where r.id = :id")
+    int complete(@Param("id") String id,
+                 @Param("status") int status,
+                 @Param("contentType") String contentType,
+                 @Param("body") String body);
+
+    @Modifying
+    @Query("delete from IdempotencyRecord r where r.id = :id and r.status = 'IN_PROGRESS'")
+    int release(@Param("id") String id);
+
+    @Modifying
+    @Query("delete from IdempotencyRecord r where r.expiresAt < :now")
+    int deleteExpired(@Param("now") OffsetDateTime now);
+}
@@ -1,13 +1,39 @@
 package com.hygia.crm.repository;
 
 import com.hygia.crm.entity.InvoiceItem;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface InvoiceItemRepository extends JpaRepository<InvoiceItem, Long> {
+    /**
+     * The items of an invoice with their products ({@link InvoiceItem#WITH_PRODUCT}).
+     */
+    @EntityGraph(InvoiceItem.WITH_PRODUCT)
     List<InvoiceItem> findByInvoiceId(Long invoiceId);
-}
 
+    /**
+     * The items of several invoices with their product's code and description, in one query.
+     */
+    @Query("select new com.hygia.crm.repository.InvoiceItemRow(i.invoice.id, i.id, p.id, p.itemCode, p.description, i.quantity, i.unitPrice, i.amount) " +
+           "from InvoiceItem i join i.product p where i.invoice.id in :invoiceIds order by i.invoice.id, i.id")
+    List<InvoiceItemRow> findRowsByInvoiceIdIn(@Param("invoiceIds") Collection<Long> invoiceIds);
+
+    /**
+     * Sales rollup rows of the invoices with {@code fromId <= id < toId}, grouped by invoice month,
+     * the customer's current region and tier, and product.
+     */
+    @Query("select new com.hygia.crm.repository.SalesRollupRow(" +
+           "extract(year from i.invoiceDate), extract(month from i.invoiceDate), c.region.id, c.tier, ii.product.id, " +
+           "sum(ii.amount), sum(ii.quantity), count(ii)) " +
+           "from InvoiceItem ii join ii.invoice i join i.customer c " +
+           "where i.id >= :fromId and i.id < :toId " +
+           "group by extract(year from i.invoiceDate), extract(month from i.invoiceDate), c.region.id, c.tier, ii.product.id")
+    List<SalesRollupRow> findSalesRollupRows(@Param("fromId") long fromId, @Param("toId") long toId);
+}
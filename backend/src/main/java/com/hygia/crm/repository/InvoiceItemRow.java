@@ -0,0 +1,10 @@
+package com.hygia.crm.repository;
+
+import java.math.BigDecimal;
+
+/**
+ * An invoice line as listed, with its product's code and description.
+ */
+public record InvoiceItemRow(Long invoiceId, Long id, Long productId, String itemCode, String description,
+                             Integer quantity, BigDecimal unitPrice, BigDecimal amount) {
+}
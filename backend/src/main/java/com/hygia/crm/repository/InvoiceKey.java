@@ -0,0 +1,7 @@
+package com.hygia.crm.repository;
+
+/**
+ * Natural key of an invoice: the (invoice_number, customer_id) unique constraint.
+ */
+public record InvoiceKey(Long customerId, String invoiceNumber) {
+}
@@ -1,13 +1,82 @@
 package com.hygia.crm.repository;
 
 import com.hygia.crm.entity.Invoice;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
-    List<Invoice> findByCustomerIdOrderByInvoiceDateDesc(Long customerId);
-}
+    /**
+     * A customer's invoice headers, newest first, selecting only the listed columns.
+     */
+    @Query("select new com.hygia.crm.repository.InvoiceRow(i.id, i.invoiceNumber, c.id, c.nameStd, i.invoiceDate, i.totalAmount, i.note) " +
+           "from Invoice i join i.customer c where c.id = :customerId order by i.invoiceDate desc, i.id desc")
+    List<InvoiceRow> findRowsByCustomerId(@Param("customerId") Long customerId);
+
+    /**
+     * The customer's newest {@code limit} invoice headers, without a count query.
+     */
+    @Query("select new com.hygia.crm.repository.InvoiceRow(i.id, i.invoiceNumber, c.id, c.nameStd, i.invoiceDate, i.totalAmount, i.note) " +
+           "from Invoice i join i.customer c where c.id = :customerId order by i.invoiceDate desc, i.id desc")
+    List<InvoiceRow> findRowsByCustomerId(@Param("customerId") Long customerId, Limit limit);
+
+    @Query("select new com.hygia.crm.repository.InvoiceRow(i.id, i.invoiceNumber, c.id, c.nameStd, i.invoiceDate, i.totalAmount, i.note) " +
+           "from Invoice i join i.customer c where i.id in :ids")
+    List<InvoiceRow> findRowsByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query(value = "select new com.hygia.crm.repository.InvoiceRow(i.id, i.invoiceNumber, c.id, c.nameStd, i.invoiceDate, i.totalAmount, i.note) " +
+                   "from Invoice i join i.customer c where c.id = :customerId",
+           countQuery = "select count(i) from Invoice i where i.customer.id = :customerId")
+    Page<InvoiceRow> findRowsByCustomerId(@Param("customerId") Long customerId, Pageable pageable);
+
+    /**
+     * Invoices with invoiceDate in [from, to), in id order, read through a JDBC cursor. The
+     * customer is not joined; only its id is available without another query. Must be consumed
+     * inside a transaction.
+     */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = StreamingHints.FETCH_SIZE),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select i from Invoice i where i.invoiceDate >= :from and i.invoiceDate < :to order by i.id")
+    Stream<Invoice> streamByInvoiceDateWindow(@Param("from") LocalDate from, @Param("to") LocalDate to);
 
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = StreamingHints.FETCH_SIZE),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select i from Invoice i " +
+           "where i.customer.id = :customerId and i.invoiceDate >= :from and i.invoiceDate < :to order by i.id")
+    Stream<Invoice> streamByCustomerIdAndInvoiceDateWindow(@Param("customerId") Long customerId,
+                                                           @Param("from") LocalDate from,
+                                                           @Param("to") LocalDate to);
+
+    /**
+     * Returns the keys of existing invoices among the given customers and invoice numbers.
+     * The result may contain combinations that were not asked for; callers match exact pairs.
+     */
+    @Query("select new com.hygia.crm.repository.InvoiceKey(i.customer.id, i.invoiceNumber) from Invoice i " +
+           "where i.customer.id in :customerIds and i.invoiceNumber in :invoiceNumbers")
+    List<InvoiceKey> findExistingKeys(@Param("customerIds") Collection<Long> customerIds,
+                                      @Param("invoiceNumbers") Collection<String> invoiceNumbers);
+
+    @Query("select new com.hygia.crm.repository.CustomerInvoiceStats(i.customer.id, count(i), sum(i.totalAmount), max(i.invoiceDate)) " +
+           "from Invoice i where i.customer.id in :customerIds group by i.customer.id")
+    List<CustomerInvoiceStats> findInvoiceStats(@Param("customerIds") Collection<Long> customerIds);
+
+    @Query("select max(i.id) from Invoice i")
+    Long findMaxId();
+}
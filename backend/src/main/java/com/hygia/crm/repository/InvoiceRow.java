@@ -0,0 +1,11 @@
+package com.hygia.crm.repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * An invoice header as listed, with the customer's name.
+ */
+public record InvoiceRow(Long id, String invoiceNumber, Long customerId, String customerName, LocalDate invoiceDate,
+                         BigDecimal totalAmount, String note) {
+}
@@ -0,0 +1,21 @@
+package com.hygia.crm.repository;
+
+import com.hygia.crm.entity.JournalCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface JournalCheckpointRepository extends JpaRepository<JournalCheckpoint, String> {
+
+    /**
+     * Moves the checkpoint forward to {@code seq}.
+     *
+     * @return 0 if it is already at or past {@code seq}
+     */
+    @Modifying
+    @Query("update JournalCheckpoint c set c.lastSeq = :seq where c.name = :name and c.lastSeq < :seq")
+    int advance(@Param("name") String name, @Param("seq") long seq);
+}
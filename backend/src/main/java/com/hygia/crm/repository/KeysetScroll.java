@@ -0,0 +1,132 @@
+package com.hygia.crm.repository;
+
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.function.BiFunction;
+
+/**
+ * Forward keyset scrolling for criteria and JPQL queries that select projections, which Spring
+ * Data's {@code scroll} cannot do. Orders by the requested sort and then by id ascending, and puts
+ * the same keys into positions, so cursors match the ones Spring Data issues for entity queries.
+ */
+final class KeysetScroll {
+
+    private static final String ID = "id";
+
+    private KeysetScroll() {
+    }
+
+    static List<Sort.Order> orders(Sort sort) {
+        List<Sort.Order> orders = new ArrayList<>(sort.toList());
+        if (sort.getOrderFor(ID) == null) {
+            orders.add(Sort.Order.asc(ID));
+        }
+        return orders;
+    }
+
+    static List<Order> toOrders(List<Sort.Order> orders, Path<?> root, CriteriaBuilder cb) {
+        List<Order> result = new ArrayList<>(orders.size());
+        for (Sort.Order order : orders) {
+            Expression<?> property = root.get(order.getProperty());
+            result.add(order.isAscending() ? cb.asc(property) : cb.desc(property));
+        }
+        return result;
+    }
+
+    /**
+     * Rows after {@code position} in the given order, or null for the initial position.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static Predicate after(List<Sort.Order> orders, KeysetScrollPosition position, Path<?> root, CriteriaBuilder cb) {
+        if (position.isInitial()) {
+            return null;
+        }
+        Map<String, Object> keys = position.getKeys();
+        List<Predicate> alternatives = new ArrayList<>();
+        List<Predicate> equalSoFar = new ArrayList<>();
+        for (Sort.Order order : orders) {
+            Object value = keys.get(order.getProperty());
+            if (value == null) {
+                throw new IllegalArgumentException("Scroll position lacks key " + order.getProperty());
+            }
+            Expression<Comparable> property = root.get(order.getProperty());
+            Predicate beyond = order.isAscending()
+                    ? cb.greaterThan(property, (Comparable) value)
+                    : cb.lessThan(property, (Comparable) value);
+            List<Predicate> alternative = new ArrayList<>(equalSoFar);
+            alternative.add(beyond);
+            alternatives.add(cb.and(alternative.toArray(new Predicate[0])));
+            equalSoFar.add(cb.equal(property, value));
+        }
+        return cb.or(alternatives.toArray(new Predicate[0]));
+    }
+
+    /**
+     * JPQL form of {@link #after(List, KeysetScrollPosition, Path, CriteriaBuilder)} over properties
+     * of {@code alias}, with key values bound as {@code :key0}, {@code :key1}, and so on; see
+     * {@link #bindAfter}. Callers check property names, as they end up in the query text.
+     */
+    static String after(List<Sort.Order> orders, String alias) {
+        StringBuilder jpql = new StringBuilder("(");
+        StringBuilder equalSoFar = new StringBuilder();
+        for (int i = 0; i < orders.size(); i++) {
+            Sort.Order order = orders.get(i);
+            String property = alias + "." + order.getProperty();
+            if (i > 0) {
+                jpql.append(" or ");
+            }
+            jpql.append('(').append(equalSoFar)
+                    .append(property).append(order.isAscending() ? " > " : " < ").append(":key").append(i).append(')');
+            equalSoFar.append(property).append(" = :key").append(i).append(" and ");
+        }
+        return jpql.append(')').toString();
+    }
+
+    static void bindAfter(List<Sort.Order> orders, KeysetScrollPosition position, TypedQuery<?> query) {
+        for (int i = 0; i < orders.size(); i++) {
+            Object value = position.getKeys().get(orders.get(i).getProperty());
+            if (value == null) {
+                throw new IllegalArgumentException("Scroll position lacks key " + orders.get(i).getProperty());
+            }
+            query.setParameter("key" + i, value);
+        }
+    }
+
+    static String orderBy(List<Sort.Order> orders, String alias) {
+        StringJoiner jpql = new StringJoiner(", ", " order by ", "");
+        for (Sort.Order order : orders) {
+            jpql.add(alias + "." + order.getProperty() + (order.isAscending() ? " asc" : " desc"));
+        }
+        return jpql.toString();
+    }
+
+    /**
+     * @param rows  up to {@code limit + 1} rows; the extra one only signals a next window
+     * @param keyOf value of a sort property of a row
+     */
+    static <T> Window<T> window(List<T> rows, int limit, List<Sort.Order> orders, BiFunction<T, String, Object> keyOf) {
+        boolean hasNext = rows.size() > limit;
+        List<T> content = hasNext ? rows.subList(0, limit) : rows;
+        return Window.from(content, index -> {
+            Map<String, Object> keys = new LinkedHashMap<>();
+            for (Sort.Order order : orders) {
+                keys.put(order.getProperty(), keyOf.apply(content.get(index), order.getProperty()));
+            }
+            return ScrollPosition.forward(keys);
+        }, hasNext);
+    }
+}
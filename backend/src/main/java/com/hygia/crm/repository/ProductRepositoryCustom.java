@@ -0,0 +1,18 @@
+package com.hygia.crm.repository;
+
+import com.hygia.crm.entity.Product;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface ProductRepositoryCustom {
+
+    /**
+     * Loads products by id, serving them from the persistence context and the second-level
+     * cache where possible and querying only the ids found in neither. Unknown ids are skipped.
+     * Joins the caller's transaction, or runs in its own read-only one.
+     */
+    @Transactional(readOnly = true)
+    List<Product> findAllByIdCached(Collection<Long> ids);
+}
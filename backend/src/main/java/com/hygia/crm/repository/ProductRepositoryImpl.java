@@ -0,0 +1,37 @@
+package com.hygia.crm.repository;
+
+import com.hygia.crm.entity.Product;
+import jakarta.persistence.EntityManager;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+class ProductRepositoryImpl implements ProductRepositoryCustom {
+
+    private final EntityManager entityManager;
+
+    ProductRepositoryImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public List<Product> findAllByIdCached(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        // findAllById always queries; multiLoad checks the caches first
+        return entityManager.unwrap(Session.class)
+                .byMultipleIds(Product.class)
+                .enableSessionCheck(true)
+                .with(CacheMode.NORMAL)
+                .multiLoad(new ArrayList<>(ids))
+                .stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,24 @@
+package com.hygia.crm.repository;
+
+import java.util.Locale;
+
+/**
+ * Dimensions the sales rollup can be grouped by.
+ */
+public enum SalesDimension {
+    MONTH,
+    REGION,
+    TIER,
+    PRODUCT;
+
+    /**
+     * Case-insensitive lookup, null for unknown names.
+     */
+    public static SalesDimension parse(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.hygia.crm.repository;
+
+import com.hygia.crm.entity.SalesRollup;
+import com.hygia.crm.entity.SalesRollupId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface SalesRollupRepository extends JpaRepository<SalesRollup, SalesRollupId>, SalesRollupRepositoryCustom {
+
+    /**
+     * Deletes rows left without any invoice line, e.g. after a rebuild took their lines away.
+     */
+    @Modifying
+    @Query("delete from SalesRollup r where r.lineCount = 0")
+    int deleteEmptyRollups();
+}
@@ -0,0 +1,36 @@
+package com.hygia.crm.repository;
+
+import com.hygia.crm.entity.SalesRollup;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+public interface SalesRollupRepositoryCustom {
+
+    /**
+     * Adds the revenue, quantity and line counts of {@code deltas} to the stored rows with the
+     * same keys, creating rows that do not exist yet. Runs as one JDBC batch of native upserts,
+     * so concurrent writers creating the same key do not fail on the primary key.
+     */
+    void addAll(Collection<SalesRollup> deltas);
+
+    /**
+     * Exports the snapshot of the current transaction, which must be REPEATABLE READ, for
+     * {@link #importSnapshot}. PostgreSQL only; null on H2, which cannot share snapshots.
+     */
+    String exportSnapshot();
+
+    /**
+     * Makes the current REPEATABLE READ transaction see the exported {@code snapshot}. Must be
+     * its first statement, and the exporting transaction must still be open.
+     */
+    void importSnapshot(String snapshot);
+
+    /**
+     * Totals grouped by {@code groupBy}, in that order, restricted by the optional filters.
+     * Periods are first days of months; both bounds are inclusive.
+     */
+    List<SalesSlice> summarize(List<SalesDimension> groupBy, LocalDate fromPeriod, LocalDate toPeriod,
+                               Long regionId, String tier, Long productId);
+}
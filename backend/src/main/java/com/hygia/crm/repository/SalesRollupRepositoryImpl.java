@@ -0,0 +1,167 @@
+package com.hygia.crm.repository;
+
+import com.hygia.crm.entity.SalesRollup;
+import com.hygia.crm.entity.SalesRollupId;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import org.hibernate.Session;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+class SalesRollupRepositoryImpl implements SalesRollupRepositoryCustom {
+
+    private static final String POSTGRES_UPSERT =
+            "insert into sales_rollup (period_start, region_id, tier, product_id, revenue, quantity, line_count) " +
+            "values (?, ?, ?, ?, ?, ?, ?) " +
+            "on conflict (period_start, region_id, tier, product_id) do update set " +
+            "revenue = sales_rollup.revenue + excluded.revenue, " +
+            "quantity = sales_rollup.quantity + excluded.quantity, " +
+            "line_count = sales_rollup.line_count + excluded.line_count";
+
+    // Standard SQL MERGE, used on H2
+    private static final String MERGE_UPSERT =
+            "merge into sales_rollup t using (values (cast(? as date), cast(? as bigint), cast(? as varchar(16)), " +
+            "cast(? as bigint), cast(? as numeric(19, 2)), cast(? as bigint), cast(? as bigint))) " +
+            "s (period_start, region_id, tier, product_id, revenue, quantity, line_count) " +
+            "on t.period_start = s.period_start and t.region_id = s.region_id and t.tier = s.tier and t.product_id = s.product_id " +
+            "when matched then update set revenue = t.revenue + s.revenue, quantity = t.quantity + s.quantity, " +
+            "line_count = t.line_count + s.line_count " +
+            "when not matched then insert (period_start, region_id, tier, product_id, revenue, quantity, line_count) " +
+            "values (s.period_start, s.region_id, s.tier, s.product_id, s.revenue, s.quantity, s.line_count)";
+
+    private static final Pattern SNAPSHOT_ID = Pattern.compile("[0-9A-Fa-f-]+");
+
+    private final EntityManager entityManager;
+
+    SalesRollupRepositoryImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public void addAll(Collection<SalesRollup> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        Session session = entityManager.unwrap(Session.class);
+        executeBatch(session, isPostgres(session) ? POSTGRES_UPSERT : MERGE_UPSERT, deltas);
+    }
+
+    @Override
+    public String exportSnapshot() {
+        if (!isPostgres(entityManager.unwrap(Session.class))) {
+            return null;
+        }
+        return (String) entityManager.createNativeQuery("select pg_export_snapshot()").getSingleResult();
+    }
+
+    @Override
+    public void importSnapshot(String snapshot) {
+        // SET takes no bind parameters
+        if (!SNAPSHOT_ID.matcher(snapshot).matches()) {
+            throw new IllegalArgumentException("Malformed snapshot id " + snapshot);
+        }
+        entityManager.createNativeQuery("set transaction snapshot '" + snapshot + "'").executeUpdate();
+    }
+
+    private static boolean isPostgres(Session session) {
+        return session.getSessionFactory().unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices().getDialect() instanceof PostgreSQLDialect;
+    }
+
+    private static void executeBatch(Session session, String sql, Collection<SalesRollup> rollups) {
+        session.doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (SalesRollup rollup : rollups) {
+                    SalesRollupId id = rollup.getId();
+                    statement.setDate(1, Date.valueOf(id.getPeriodStart()));
+                    statement.setLong(2, id.getRegionId());
+                    statement.setString(3, id.getTier());
+                    statement.setLong(4, id.getProductId());
+                    statement.setBigDecimal(5, rollup.getRevenue());
+                    statement.setLong(6, rollup.getQuantity());
+                    statement.setLong(7, rollup.getLineCount());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        });
+    }
+
+    @Override
+    public List<SalesSlice> summarize(List<SalesDimension> groupBy, LocalDate fromPeriod, LocalDate toPeriod,
+                                      Long regionId, String tier, Long productId) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<SalesRollup> rollup = query.from(SalesRollup.class);
+        Path<SalesRollupId> id = rollup.get("id");
+
+        Map<SalesDimension, Path<?>> columns = new EnumMap<>(SalesDimension.class);
+        columns.put(SalesDimension.MONTH, id.get("periodStart"));
+        columns.put(SalesDimension.REGION, id.get("regionId"));
+        columns.put(SalesDimension.TIER, id.get("tier"));
+        columns.put(SalesDimension.PRODUCT, id.get("productId"));
+
+        List<Selection<?>> selections = new ArrayList<>();
+        List<Expression<?>> grouping = new ArrayList<>();
+        for (SalesDimension dimension : groupBy) {
+            selections.add(columns.get(dimension).alias(dimension.name()));
+            grouping.add(columns.get(dimension));
+        }
+        selections.add(cb.sum(rollup.<BigDecimal>get("revenue")).alias("revenue"));
+        selections.add(cb.sum(rollup.<Long>get("quantity")).alias("quantity"));
+        selections.add(cb.sum(rollup.<Long>get("lineCount")).alias("lineCount"));
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (fromPeriod != null) {
+            predicates.add(cb.greaterThanOrEqualTo(id.get("periodStart"), fromPeriod));
+        }
+        if (toPeriod != null) {
+            predicates.add(cb.lessThanOrEqualTo(id.get("periodStart"), toPeriod));
+        }
+        if (regionId != null) {
+            predicates.add(cb.equal(id.get("regionId"), regionId));
+        }
+        if (tier != null) {
+            predicates.add(cb.equal(id.get("tier"), tier));
+        }
+        if (productId != null) {
+            predicates.add(cb.equal(id.get("productId"), productId));
+        }
+
+        query.multiselect(selections)
+                .where(predicates.toArray(new Predicate[0]))
+                .groupBy(grouping)
+                .orderBy(grouping.stream().map(cb::asc).toList());
+
+        List<SalesSlice> slices = new ArrayList<>();
+        for (Tuple tuple : entityManager.createQuery(query).getResultList()) {
+            slices.add(new SalesSlice(
+                    groupBy.contains(SalesDimension.MONTH) ? tuple.get(SalesDimension.MONTH.name(), LocalDate.class) : null,
+                    groupBy.contains(SalesDimension.REGION) ? tuple.get(SalesDimension.REGION.name(), Long.class) : null,
+                    groupBy.contains(SalesDimension.TIER) ? tuple.get(SalesDimension.TIER.name(), String.class) : null,
+                    groupBy.contains(SalesDimension.PRODUCT) ? tuple.get(SalesDimension.PRODUCT.name(), Long.class) : null,
+                    tuple.get("revenue", BigDecimal.class),
+                    tuple.get("quantity", Long.class),
+                    tuple.get("lineCount", Long.class)));
+        }
+        return slices;
+    }
+}
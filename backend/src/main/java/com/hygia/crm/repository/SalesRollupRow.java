@@ -0,0 +1,10 @@
+package com.hygia.crm.repository;
+
+import java.math.BigDecimal;
+
+/**
+ * Invoice line totals of one rollup key, computed from invoice items.
+ */
+public record SalesRollupRow(Integer year, Integer month, Long regionId, String tier, Long productId,
+                             BigDecimal revenue, Long quantity, Long lineCount) {
+}
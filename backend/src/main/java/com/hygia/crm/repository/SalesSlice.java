@@ -0,0 +1,11 @@
+package com.hygia.crm.repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Sales totals of one group; dimensions that were not grouped by are null.
+ */
+public record SalesSlice(LocalDate periodStart, Long regionId, String tier, Long productId,
+                         BigDecimal revenue, Long quantity, Long lineCount) {
+}
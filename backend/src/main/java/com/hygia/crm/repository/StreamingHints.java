@@ -0,0 +1,16 @@
+package com.hygia.crm.repository;
+
+/**
+ * Query hint values for repository methods that stream large result sets.
+ */
+public final class StreamingHints {
+
+    /**
+     * Rows fetched per JDBC round trip. Large enough to keep round trips cheap, small enough that
+     * the driver buffer stays a few hundred KB; PostgreSQL only uses a cursor when this is set.
+     */
+    public static final String FETCH_SIZE = "500";
+
+    private StreamingHints() {
+    }
+}
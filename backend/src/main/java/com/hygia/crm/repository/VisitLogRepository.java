@@ -1,13 +1,105 @@
 package com.hygia.crm.repository;
 
 import com.hygia.crm.entity.VisitLog;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
 @Repository
-public interface VisitLogRepository extends JpaRepository<VisitLog, Long> {
-    Page<VisitLog> findByCustomerId(Long customerId, Pageable pageable);
-}
+public interface VisitLogRepository extends JpaRepository<VisitLog, Long>, VisitLogRepositoryCustom {
+    /**
+     * One page of a customer's visits, selecting only the listed columns.
+     */
+    @Query(value = "select new com.hygia.crm.repository.VisitRow(v.id, v.visitAt, v.type, v.result, v.notes, v.nextFollowUpAt) " +
+                   "from VisitLog v where v.customer.id = :customerId",
+           countQuery = "select count(v) from VisitLog v where v.customer.id = :customerId")
+    Page<VisitRow> findRowsByCustomerId(@Param("customerId") Long customerId, Pageable pageable);
+
+    /**
+     * The first {@code limit} visits of a customer in {@code sort} order, without a count query.
+     */
+    @Query("select new com.hygia.crm.repository.VisitRow(v.id, v.visitAt, v.type, v.result, v.notes, v.nextFollowUpAt) " +
+           "from VisitLog v where v.customer.id = :customerId")
+    List<VisitRow> findRowsByCustomerId(@Param("customerId") Long customerId, Sort sort, Limit limit);
+
+    @Query("select new com.hygia.crm.repository.CustomerVisitRow(v.id, v.customer.id, v.visitAt, v.type, v.result, " +
+           "v.notes, v.nextFollowUpAt) from VisitLog v where v.id in :ids")
+    List<CustomerVisitRow> findRowsByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Visits with visitAt in [from, to), in id order, read through a JDBC cursor. The customer is
+     * not joined; only its id is available without another query. Must be consumed inside a
+     * transaction.
+     */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = StreamingHints.FETCH_SIZE),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select v from VisitLog v where v.visitAt >= :from and v.visitAt < :to order by v.id")
+    Stream<VisitLog> streamByVisitAtWindow(@Param("from") OffsetDateTime from, @Param("to") OffsetDateTime to);
+
+    /**
+     * Visits with visitAt in [from, to) ordered by customer, visitAt and id, read through a JDBC
+     * cursor; the input of a visit archive segment. Must be consumed inside a transaction.
+     */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = StreamingHints.FETCH_SIZE),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select v from VisitLog v where v.visitAt >= :from and v.visitAt < :to " +
+           "order by v.customer.id, v.visitAt, v.id")
+    Stream<VisitLog> streamByVisitAtWindowInCustomerOrder(@Param("from") OffsetDateTime from,
+                                                          @Param("to") OffsetDateTime to);
+
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = StreamingHints.FETCH_SIZE),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select v from VisitLog v " +
+           "where v.customer.id = :customerId and v.visitAt >= :from and v.visitAt < :to order by v.id")
+    Stream<VisitLog> streamByCustomerIdAndVisitAtWindow(@Param("customerId") Long customerId,
+                                                        @Param("from") OffsetDateTime from,
+                                                        @Param("to") OffsetDateTime to);
 
+    @Query("select new com.hygia.crm.repository.CustomerVisitStats(v.customer.id, count(v), max(v.visitAt)) " +
+           "from VisitLog v where v.customer.id in :customerIds group by v.customer.id")
+    List<CustomerVisitStats> findVisitStats(@Param("customerIds") Collection<Long> customerIds);
+
+    /**
+     * The latest visits of the given customers; several per customer when they share visitAt.
+     */
+    @Query("select v from VisitLog v where v.customer.id in :customerIds and (v.customer.id, v.visitAt) in " +
+           "(select v2.customer.id, max(v2.visitAt) from VisitLog v2 where v2.customer.id in :customerIds group by v2.customer.id)")
+    List<VisitLog> findLatestVisits(@Param("customerIds") Collection<Long> customerIds);
+
+    @Query("select min(v.visitAt) from VisitLog v")
+    OffsetDateTime findMinVisitAt();
+
+    @Query("select min(v.visitAt) from VisitLog v where v.visitAt >= :from")
+    OffsetDateTime findMinVisitAtFrom(@Param("from") OffsetDateTime from);
+
+    @Query("select v.id from VisitLog v where v.id in :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    @Query("select v.id from VisitLog v where v.customer.id = :customerId and v.visitAt < :before")
+    List<Long> findIdsByCustomerIdAndVisitAtBefore(@Param("customerId") Long customerId,
+                                                   @Param("before") OffsetDateTime before);
+
+    @Modifying
+    @Query("delete from VisitLog v where v.id in :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
+}
@@ -0,0 +1,23 @@
+package com.hygia.crm.repository;
+
+import com.hygia.crm.entity.VisitLog;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+
+import java.util.Collection;
+
+public interface VisitLogRepositoryCustom {
+
+    /**
+     * Inserts {@code visits} with the ids they already carry as one JDBC batch. Only the
+     * customer's id is read from {@code getCustomer()}, so a reference is enough.
+     */
+    void insertAll(Collection<VisitLog> visits);
+
+    /**
+     * A customer's visits after {@code position}, selecting only the listed columns. Ordered by
+     * {@code sort} and then id, which positions carry as keys, as Spring Data's keyset scrolling does.
+     */
+    Window<VisitRow> scrollRowsByCustomerId(Long customerId, Sort sort, int limit, KeysetScrollPosition position);
+}
@@ -0,0 +1,80 @@
+package com.hygia.crm.repository;
+
+import com.hygia.crm.entity.VisitLog;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.Session;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+class VisitLogRepositoryImpl implements VisitLogRepositoryCustom {
+
+    private static final String INSERT =
+            "insert into visit_log (id, customer_id, visit_at, type, result, notes, next_follow_up_at) " +
+            "values (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String SELECT_ROW =
+            "select new com.hygia.crm.repository.VisitRow(v.id, v.visitAt, v.type, v.result, v.notes, v.nextFollowUpAt) " +
+            "from VisitLog v";
+
+    private static final Set<String> SCROLL_PROPERTIES = Set.of("visitAt", "id");
+
+    private final EntityManager entityManager;
+
+    VisitLogRepositoryImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public void insertAll(Collection<VisitLog> visits) {
+        if (visits.isEmpty()) {
+            return;
+        }
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT)) {
+                for (VisitLog visit : visits) {
+                    statement.setLong(1, visit.getId());
+                    statement.setLong(2, visit.getCustomer().getId());
+                    statement.setObject(3, visit.getVisitAt());
+                    statement.setString(4, visit.getType());
+                    statement.setString(5, visit.getResult());
+                    statement.setString(6, visit.getNotes());
+                    statement.setObject(7, visit.getNextFollowUpAt());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        });
+    }
+
+    @Override
+    public Window<VisitRow> scrollRowsByCustomerId(Long customerId, Sort sort, int limit,
+                                                   KeysetScrollPosition position) {
+        List<Sort.Order> orders = KeysetScroll.orders(sort);
+        for (Sort.Order order : orders) {
+            if (!SCROLL_PROPERTIES.contains(order.getProperty())) {
+                throw new IllegalArgumentException("Cannot scroll visits by " + order.getProperty());
+            }
+        }
+
+        // JPQL rather than criteria: Hibernate caches the plan of a query string, not of a criteria tree
+        String jpql = SELECT_ROW + " where v.customer.id = :customerId"
+                + (position.isInitial() ? "" : " and " + KeysetScroll.after(orders, "v"))
+                + KeysetScroll.orderBy(orders, "v");
+        TypedQuery<VisitRow> query = entityManager.createQuery(jpql, VisitRow.class)
+                .setParameter("customerId", customerId)
+                .setMaxResults(limit + 1);
+        if (!position.isInitial()) {
+            KeysetScroll.bindAfter(orders, position, query);
+        }
+
+        return KeysetScroll.window(query.getResultList(), limit, orders,
+                (row, property) -> "id".equals(property) ? row.id() : row.visitAt());
+    }
+}
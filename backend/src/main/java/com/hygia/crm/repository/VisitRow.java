@@ -0,0 +1,10 @@
+package com.hygia.crm.repository;
+
+import java.time.OffsetDateTime;
+
+/**
+ * The columns of a visit shown in a customer's visit listing.
+ */
+public record VisitRow(Long id, OffsetDateTime visitAt, String type, String result, String notes,
+                       OffsetDateTime nextFollowUpAt) {
+}
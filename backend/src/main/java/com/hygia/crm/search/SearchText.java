@@ -0,0 +1,140 @@
+package com.hygia.crm.search;
+
+import java.text.Normalizer;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Text normalization and n-gram extraction for customer search.
+ * <p>
+ * Names are lower-cased, stripped of accents and reduced to words of letters and digits separated
+ * by single spaces. Phones are reduced to their digits so punctuation never matters. The index
+ * stores every trigram of {@code " " + name + " "} plus a two-character {@code " x"} gram for each
+ * word start, which lets one- and two-character queries match word prefixes.
+ */
+public final class SearchText {
+
+    public static final int GRAM_LENGTH = 3;
+
+    // Minimum number of digits before a query is also matched against phone numbers
+    public static final int MIN_PHONE_QUERY_DIGITS = 3;
+
+    private SearchText() {
+    }
+
+    /**
+     * Lower-cased, accent-free words of letters and digits separated by single spaces, or null
+     * if nothing searchable remains.
+     */
+    public static String normalizeName(String text) {
+        if (text == null) {
+            return null;
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder normalized = new StringBuilder(decomposed.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSpace && normalized.length() > 0) {
+                    normalized.append(' ');
+                }
+                pendingSpace = false;
+                normalized.append(Character.toLowerCase(c));
+            } else {
+                pendingSpace = true;
+            }
+        }
+        return normalized.length() == 0 ? null : normalized.toString();
+    }
+
+    /**
+     * The digits of a phone number, or null if it has none.
+     */
+    public static String digitsOnly(String text) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder digits = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        return digits.length() == 0 ? null : digits.toString();
+    }
+
+    /**
+     * The digits of a search query if it looks like a phone number: no letters and at least
+     * {@link #MIN_PHONE_QUERY_DIGITS} digits. Otherwise null.
+     */
+    public static String phoneQuery(String query) {
+        if (query == null) {
+            return null;
+        }
+        for (int i = 0; i < query.length(); i++) {
+            if (Character.isLetter(query.charAt(i))) {
+                return null;
+            }
+        }
+        String digits = digitsOnly(query);
+        return digits != null && digits.length() >= MIN_PHONE_QUERY_DIGITS ? digits : null;
+    }
+
+    /**
+     * Grams stored in the index for a normalized name.
+     */
+    public static Set<String> nameIndexGrams(String normalizedName) {
+        Set<String> grams = new LinkedHashSet<>();
+        if (normalizedName == null) {
+            return grams;
+        }
+        String padded = " " + normalizedName + " ";
+        for (int i = 0; i + GRAM_LENGTH <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + GRAM_LENGTH));
+        }
+        for (int i = 0; i < padded.length() - 1; i++) {
+            if (padded.charAt(i) == ' ' && padded.charAt(i + 1) != ' ') {
+                grams.add(padded.substring(i, i + 2));
+            }
+        }
+        return grams;
+    }
+
+    /**
+     * Grams a name must contain to match a normalized query. Queries of three or more characters
+     * match anywhere; shorter ones match the start of a word.
+     */
+    public static Set<String> nameQueryGrams(String normalizedQuery) {
+        Set<String> grams = new LinkedHashSet<>();
+        if (normalizedQuery == null) {
+            return grams;
+        }
+        if (normalizedQuery.length() < GRAM_LENGTH) {
+            grams.add(" " + normalizedQuery);
+            return grams;
+        }
+        for (int i = 0; i + GRAM_LENGTH <= normalizedQuery.length(); i++) {
+            grams.add(normalizedQuery.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+
+    /**
+     * Trigrams of a digit string, used both for indexing phones and for phone queries.
+     */
+    public static Set<String> digitGrams(String digits) {
+        Set<String> grams = new LinkedHashSet<>();
+        if (digits == null) {
+            return grams;
+        }
+        for (int i = 0; i + GRAM_LENGTH <= digits.length(); i++) {
+            grams.add(digits.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+}
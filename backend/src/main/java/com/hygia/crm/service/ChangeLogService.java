@@ -0,0 +1,285 @@
+package com.hygia.crm.service;
+
+import com.hygia.crm.entity.ChangeLogEntry;
+import com.hygia.crm.entity.Product;
+import com.hygia.crm.repository.ChangeKey;
+import com.hygia.crm.repository.ChangeLogRepository;
+import com.hygia.crm.repository.ChangeStamp;
+import com.hygia.crm.repository.CustomerRepository;
+import com.hygia.crm.repository.CustomerRow;
+import com.hygia.crm.repository.CustomerVisitRow;
+import com.hygia.crm.repository.InvoiceRepository;
+import com.hygia.crm.repository.InvoiceRow;
+import com.hygia.crm.repository.ProductRepository;
+import com.hygia.crm.repository.VisitLogRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * The change_log outbox behind the sync change feed.
+ * <p>
+ * Writers call {@link #record} in the transaction that wrote the entities; the ids are collected
+ * and inserted into change_log in one JDBC batch when that transaction starts to commit, before
+ * Hibernate flushes its entities, so a rolled-back write logs nothing. Change ids do not follow
+ * commit order: a transaction may commit after one that got higher ids. {@link #findChanges}
+ * therefore never reads past a missing id that may still be committed, see {@link #readableBefore}.
+ * Rows are stamped with the database's time, so the clocks of the instances do not matter.
+ * <p>
+ * Rows older than {@code crm.sync.retention} are purged; a cursor from before the oldest kept row
+ * has expired.
+ */
+@Service
+public class ChangeLogService {
+
+    private static final Logger log = LoggerFactory.getLogger(ChangeLogService.class);
+
+    // current_timestamp is when the transaction started, on H2 and PostgreSQL alike
+    private static final String INSERT_SQL =
+            "insert into change_log (entity_type, entity_id, changed_at) values (?, ?, current_timestamp)";
+    private static final int INSERT_BATCH_SIZE = 500;
+    private static final int READ_BATCH_SIZE = 1000;
+    // Changes looked at per call to find the readable bound; the rest waits for the next call
+    private static final int MAX_UNSETTLED = 10_000;
+    private static final long PURGE_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private record PendingChange(String entityType, Long entityId) {
+    }
+
+    /**
+     * Entities changed after a cursor, with their current rows; changes of a type are in the map of
+     * that type unless the entity is gone (an archived visit).
+     *
+     * @param cursor  to pass as {@code since} for the next batch
+     * @param hasMore true if changes past {@code cursor} were already available
+     */
+    public record ChangeBatch(List<ChangeKey> changes, Map<Long, CustomerRow> customers, Map<Long, Product> products,
+                              Map<Long, CustomerVisitRow> visits, Map<Long, InvoiceRow> invoices, long cursor,
+                              boolean hasMore) {
+    }
+
+    private final ChangeLogRepository changeLogRepository;
+    private final CustomerRepository customerRepository;
+    private final ProductRepository productRepository;
+    private final VisitLogRepository visitLogRepository;
+    private final InvoiceRepository invoiceRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration settleDelay;
+    private final Duration retention;
+
+    // Key of the current transaction's pending changes among its synchronization resources
+    private final Object resourceKey = new Object();
+    private final AtomicLong lastPurgeNanos = new AtomicLong(System.nanoTime());
+
+    public ChangeLogService(
+            ChangeLogRepository changeLogRepository,
+            CustomerRepository customerRepository,
+            ProductRepository productRepository,
+            VisitLogRepository visitLogRepository,
+            InvoiceRepository invoiceRepository,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            @Value("${crm.sync.settle-delay:10s}") Duration settleDelay,
+            @Value("${crm.sync.retention:30d}") Duration retention) {
+        this.changeLogRepository = changeLogRepository;
+        this.customerRepository = customerRepository;
+        this.productRepository = productRepository;
+        this.visitLogRepository = visitLogRepository;
+        this.invoiceRepository = invoiceRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.settleDelay = settleDelay;
+        this.retention = retention;
+    }
+
+    /**
+     * Logs entities of one {@link ChangeLogEntry} type as changed when the current transaction commits.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(String entityType, Collection<Long> entityIds) {
+        @SuppressWarnings("unchecked")
+        Set<PendingChange> pending = (Set<PendingChange>) TransactionSynchronizationManager.getResource(resourceKey);
+        if (pending == null) {
+            Set<PendingChange> changes = new LinkedHashSet<>();
+            TransactionSynchronizationManager.bindResource(resourceKey, changes);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void suspend() {
+                    TransactionSynchronizationManager.unbindResource(resourceKey);
+                }
+
+                @Override
+                public void resume() {
+                    TransactionSynchronizationManager.bindResource(resourceKey, changes);
+                }
+
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    insert(changes);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(resourceKey);
+                }
+            });
+            pending = changes;
+        }
+        for (Long entityId : entityIds) {
+            pending.add(new PendingChange(entityType, entityId));
+        }
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(String entityType, Long entityId) {
+        record(entityType, List.of(entityId));
+    }
+
+    private void insert(Collection<PendingChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, changes, INSERT_BATCH_SIZE, (statement, change) -> {
+            statement.setString(1, change.entityType());
+            statement.setLong(2, change.entityId());
+        });
+    }
+
+    /**
+     * The cursor of the latest change that can be read now; a client starts from it before it
+     * downloads everything.
+     */
+    public long currentCursor() {
+        return readableBefore(0) - 1;
+    }
+
+    /**
+     * Up to {@code limit} entities changed after {@code since}, each once, in the order of their
+     * latest change, with their current rows. Not one transaction: rows are read as they are when
+     * loaded, which is at least as new as the changes returned.
+     *
+     * @throws ServiceException SYNC_CURSOR_EXPIRED when changes after {@code since} were purged
+     */
+    public ChangeBatch findChanges(long since, int limit) {
+        purgeIfDue();
+
+        long before = readableBefore(since);
+        List<ChangeKey> changes = before > since + 1
+                ? changeLogRepository.findLatestChanges(since, before, Limit.of(limit + 1))
+                : List.of();
+        // Checked after reading, so a purge running meanwhile cannot go unnoticed
+        Long oldest = changeLogRepository.findMinId();
+        if (oldest != null && since < oldest - 1) {
+            throw new ServiceException(HttpStatus.GONE, "SYNC_CURSOR_EXPIRED",
+                    "Changes after this cursor are no longer kept; download everything again");
+        }
+
+        boolean hasMore = changes.size() > limit;
+        if (hasMore) {
+            changes = changes.subList(0, limit);
+        }
+        long cursor = hasMore ? changes.get(changes.size() - 1).changeId() : Math.max(since, before - 1);
+
+        Map<String, List<Long>> idsByType = new HashMap<>();
+        for (ChangeKey change : changes) {
+            idsByType.computeIfAbsent(change.entityType(), type -> new ArrayList<>()).add(change.entityId());
+        }
+        return new ChangeBatch(changes,
+                load(idsByType.get(ChangeLogEntry.CUSTOMER), customerRepository::findRowsByIdIn, CustomerRow::id),
+                load(idsByType.get(ChangeLogEntry.PRODUCT), productRepository::findAllById, Product::getId),
+                load(idsByType.get(ChangeLogEntry.VISIT), visitLogRepository::findRowsByIdIn, CustomerVisitRow::id),
+                load(idsByType.get(ChangeLogEntry.INVOICE), invoiceRepository::findRowsByIdIn, InvoiceRow::id),
+                cursor, hasMore);
+    }
+
+    /**
+     * The change id up to which (exclusive) every change above {@code since} is committed or was
+     * rolled back.
+     * <p>
+     * A row is stamped with the start of its transaction, and a transaction commits within
+     * {@code settle-delay} of starting. Any lower id was taken before that row's transaction ended,
+     * so by a transaction that has ended {@code settle-delay} later. A gap below a row stamped more
+     * than twice {@code settle-delay} ago is therefore a rolled-back id; gaps above the last such
+     * row are waited for. Each step only relies on rows that stay visible, so commits between the
+     * queries cannot make it skip a change.
+     */
+    private long readableBefore(long since) {
+        OffsetDateTime now = jdbcTemplate.queryForObject("select current_timestamp", OffsetDateTime.class);
+        OffsetDateTime settled = now.minus(settleDelay.multipliedBy(2));
+
+        List<Long> settledIds = changeLogRepository.findIdsChangedUpTo(settled, Limit.of(1));
+        long from = settledIds.isEmpty() ? since : Math.max(since, settledIds.get(0));
+        List<ChangeStamp> later = changeLogRepository.findStampsAfter(from, Limit.of(MAX_UNSETTLED));
+
+        int lastSettled = -1;
+        for (int i = 0; i < later.size(); i++) {
+            if (!later.get(i).changedAt().isAfter(settled)) {
+                lastSettled = i;
+            }
+        }
+        long expected = from + 1;
+        for (int i = 0; i < later.size(); i++) {
+            long id = later.get(i).id();
+            if (id != expected && i > lastSettled) {
+                break;
+            }
+            expected = id + 1;
+        }
+        return expected;
+    }
+
+    private static <T> Map<Long, T> load(List<Long> ids, Function<List<Long>, List<T>> query, Function<T, Long> idOf) {
+        Map<Long, T> rows = new HashMap<>();
+        if (ids == null) {
+            return rows;
+        }
+        for (int from = 0; from < ids.size(); from += READ_BATCH_SIZE) {
+            for (T row : query.apply(ids.subList(from, Math.min(ids.size(), from + READ_BATCH_SIZE)))) {
+                rows.put(idOf.apply(row), row);
+            }
+        }
+        return rows;
+    }
+
+    private void purgeIfDue() {
+        long last = lastPurgeNanos.get();
+        long now = System.nanoTime();
+        if (now - last < PURGE_INTERVAL_NANOS || !lastPurgeNanos.compareAndSet(last, now)) {
+            return;
+        }
+        try {
+            int deleted = transactionTemplate.execute(status ->
+                    changeLogRepository.deleteOlderThan(OffsetDateTime.now(ZoneOffset.UTC).minus(retention)));
+            if (deleted > 0) {
+                log.debug("Deleted {} expired change log rows", deleted);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not delete expired change log rows", e);
+        }
+    }
+}
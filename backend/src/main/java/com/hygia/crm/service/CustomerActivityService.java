@@ -0,0 +1,220 @@
+package com.hygia.crm.service;
+
+import com.hygia.crm.entity.CustomerActivity;
+import com.hygia.crm.entity.VisitLog;
+import com.hygia.crm.repository.CustomerActivityRepository;
+import com.hygia.crm.repository.CustomerInvoiceStats;
+import com.hygia.crm.repository.CustomerRepository;
+import com.hygia.crm.repository.CustomerVisitStats;
+import com.hygia.crm.repository.InvoiceRepository;
+import com.hygia.crm.repository.VisitLogRepository;
+import com.hygia.crm.repository.VisitRow;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Maintains the {@link CustomerActivity} summary.
+ * <p>
+ * Writers call the {@code record*} methods in the transaction that wrote the visit or invoice.
+ * Each call is a single atomic UPDATE that adds to the counters and moves the timestamps forward,
+ * so concurrent writers for the same customer never lose an update. Summary rows are created
+ * with the customer; for customers that predate the summary the row is computed from the source
+ * tables on first use, and {@link #rebuild()} backfills all of them at once.
+ */
+@Service
+public class CustomerActivityService {
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerActivityService.class);
+
+    private static final int REBUILD_BATCH_SIZE = 500;
+
+    private final CustomerActivityRepository activityRepository;
+    private final CustomerRepository customerRepository;
+    private final VisitLogRepository visitLogRepository;
+    private final InvoiceRepository invoiceRepository;
+    private final VisitArchiveService visitArchiveService;
+    private final FollowUpScheduler followUpScheduler;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+
+    public CustomerActivityService(
+            CustomerActivityRepository activityRepository,
+            CustomerRepository customerRepository,
+            VisitLogRepository visitLogRepository,
+            InvoiceRepository invoiceRepository,
+            VisitArchiveService visitArchiveService,
+            FollowUpScheduler followUpScheduler,
+            EntityManager entityManager,
+            PlatformTransactionManager transactionManager) {
+        this.activityRepository = activityRepository;
+        this.customerRepository = customerRepository;
+        this.visitLogRepository = visitLogRepository;
+        this.invoiceRepository = invoiceRepository;
+        this.visitArchiveService = visitArchiveService;
+        this.followUpScheduler = followUpScheduler;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Creates the empty summary row of a new customer.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void createFor(Long customerId) {
+        entityManager.persist(new CustomerActivity(customerId));
+    }
+
+    /**
+     * Records {@code visits} new visits of a customer, the latest of which happened at
+     * {@code latestVisitAt} and scheduled {@code nextFollowUpAt} (may be null).
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordVisits(Long customerId, long visits, OffsetDateTime latestVisitAt, OffsetDateTime nextFollowUpAt) {
+        if (activityRepository.recordVisits(customerId, visits, latestVisitAt, nextFollowUpAt) == 0
+                && !refresh(List.of(customerId)).isEmpty()) {
+            // Created meanwhile by another writer, which did not see these visits
+            activityRepository.recordVisits(customerId, visits, latestVisitAt, nextFollowUpAt);
+        }
+        followUpScheduler.visitRecorded(customerId, nextFollowUpAt);
+    }
+
+    /**
+     * Records {@code invoices} new invoices of a customer worth {@code amount} in total, the latest
+     * dated {@code latestInvoiceDate}.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordInvoices(Long customerId, long invoices, BigDecimal amount, LocalDate latestInvoiceDate) {
+        if (activityRepository.recordInvoices(customerId, invoices, amount, latestInvoiceDate,
+                startOfDay(latestInvoiceDate)) == 0
+                && !refresh(List.of(customerId)).isEmpty()) {
+            // Created meanwhile by another writer, which did not see these invoices
+            activityRepository.recordInvoices(customerId, invoices, amount, latestInvoiceDate, startOfDay(latestInvoiceDate));
+        }
+    }
+
+    /**
+     * Recomputes the summary of every customer from visit_log, the visit archive and invoice, one transaction per
+     * batch of customers in primary key order.
+     *
+     * @return number of customers processed
+     */
+    public long rebuild() {
+        long start = System.currentTimeMillis();
+        long processed = 0;
+        Long afterId = 0L;
+        while (true) {
+            Long from = afterId;
+            List<Long> customerIds = transactionTemplate.execute(status -> {
+                List<Long> ids = customerRepository.findIdsAfter(from, Limit.of(REBUILD_BATCH_SIZE));
+                if (!ids.isEmpty()) {
+                    refresh(ids);
+                    entityManager.flush();
+                    entityManager.clear();
+                }
+                return ids;
+            });
+            if (customerIds.isEmpty()) {
+                break;
+            }
+            processed += customerIds.size();
+            afterId = customerIds.get(customerIds.size() - 1);
+        }
+
+        log.info("Customer activity rebuilt: {} customers in {} ms", processed, System.currentTimeMillis() - start);
+        return processed;
+    }
+
+    /**
+     * Computes the summaries of the given customers from the source tables and writes them,
+     * inserting rows that do not exist yet. A row another transaction inserts first is left to
+     * that transaction, which computed it from the same tables.
+     *
+     * @return ids of the customers whose row was inserted by another transaction
+     */
+    private List<Long> refresh(Collection<Long> customerIds) {
+        Map<Long, CustomerVisitStats> visitStats = visitLogRepository.findVisitStats(customerIds).stream()
+                .collect(Collectors.toMap(CustomerVisitStats::customerId, Function.identity()));
+        Map<Long, CustomerInvoiceStats> invoiceStats = invoiceRepository.findInvoiceStats(customerIds).stream()
+                .collect(Collectors.toMap(CustomerInvoiceStats::customerId, Function.identity()));
+
+        // Visits sharing the latest visitAt: the one written last wins, as in recordVisits
+        Map<Long, VisitLog> latestVisits = new HashMap<>();
+        for (VisitLog visit : visitLogRepository.findLatestVisits(customerIds)) {
+            latestVisits.merge(visit.getCustomer().getId(), visit,
+                    (a, b) -> a.getId() > b.getId() ? a : b);
+        }
+        Map<Long, VisitArchiveService.ArchivedVisits> archivedVisits = visitArchiveService.findArchivedVisits(customerIds);
+
+        Map<Long, CustomerActivity> existing = activityRepository.findAllById(customerIds).stream()
+                .collect(Collectors.toMap(CustomerActivity::getCustomerId, Function.identity()));
+
+        List<CustomerActivity> missing = new ArrayList<>();
+        for (Long customerId : customerIds) {
+            CustomerActivity activity = existing.get(customerId);
+            if (activity == null) {
+                activity = new CustomerActivity(customerId);
+                missing.add(activity);
+            }
+
+            CustomerVisitStats visits = visitStats.get(customerId);
+            VisitLog latestVisit = latestVisits.get(customerId);
+            activity.setVisitCount(visits != null ? visits.visitCount() : 0L);
+            activity.setLastVisitAt(visits != null ? visits.lastVisitAt() : null);
+            activity.setNextFollowUpAt(latestVisit != null ? latestVisit.getNextFollowUpAt() : null);
+
+            // Archived visits are older than the horizon, but visit_log may have none left
+            VisitArchiveService.ArchivedVisits archived = archivedVisits.get(customerId);
+            if (archived != null) {
+                VisitRow latestArchived = archived.latest();
+                activity.setVisitCount(activity.getVisitCount() + archived.count());
+                if (latestVisit == null || latestArchived.visitAt().isAfter(latestVisit.getVisitAt())
+                        || (latestArchived.visitAt().isEqual(latestVisit.getVisitAt())
+                            && latestArchived.id() > latestVisit.getId())) {
+                    activity.setLastVisitAt(latestArchived.visitAt());
+                    activity.setNextFollowUpAt(latestArchived.nextFollowUpAt());
+                }
+            }
+
+            CustomerInvoiceStats invoices = invoiceStats.get(customerId);
+            activity.setInvoiceCount(invoices != null ? invoices.invoiceCount() : 0L);
+            activity.setLifetimeRevenue(invoices != null && invoices.revenue() != null ? invoices.revenue() : BigDecimal.ZERO);
+            activity.setLastInvoiceDate(invoices != null ? invoices.lastInvoiceDate() : null);
+
+            activity.setLastActivityAt(latest(activity.getLastVisitAt(), startOfDay(activity.getLastInvoiceDate())));
+        }
+        return activityRepository.insertAllIfAbsent(missing);
+    }
+
+    private static OffsetDateTime startOfDay(LocalDate date) {
+        return date != null ? date.atStartOfDay().atOffset(ZoneOffset.UTC) : null;
+    }
+
+    private static OffsetDateTime latest(OffsetDateTime a, OffsetDateTime b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return a.isAfter(b) ? a : b;
+    }
+}
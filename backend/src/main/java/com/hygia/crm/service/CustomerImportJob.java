@@ -0,0 +1,129 @@
+package com.hygia.crm.service;
+
+import com.hygia.crm.dto.CustomerImportErrorDto;
+import com.hygia.crm.dto.CustomerImportJobDto;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of one customer import. Updated by the import thread, read by status requests.
+ */
+public class CustomerImportJob {
+
+    public static final String STATUS_QUEUED = "QUEUED";
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+    public static final String STATUS_FAILED = "FAILED";
+
+    // Error rows kept for the status endpoint; errorCount keeps counting past it
+    private static final int MAX_ERRORS_KEPT = 1000;
+
+    private final String id;
+    private final String fileName;
+    private final long bytesTotal;
+    private final OffsetDateTime submittedAt = OffsetDateTime.now();
+
+    private final AtomicLong rowsRead = new AtomicLong();
+    private final AtomicLong imported = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final List<CustomerImportErrorDto> errors = new ArrayList<>();
+
+    private volatile String status = STATUS_QUEUED;
+    private volatile OffsetDateTime startedAt;
+    private volatile OffsetDateTime finishedAt;
+    private volatile long startNanos;
+    private volatile long finishNanos;
+    private volatile String message;
+
+    public CustomerImportJob(String id, String fileName, long bytesTotal) {
+        this.id = id;
+        this.fileName = fileName;
+        this.bytesTotal = bytesTotal;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public boolean isFinished() {
+        return finishedAt != null;
+    }
+
+    public OffsetDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    void start() {
+        startNanos = System.nanoTime();
+        startedAt = OffsetDateTime.now();
+        status = STATUS_RUNNING;
+    }
+
+    void complete() {
+        finish(STATUS_COMPLETED, null);
+    }
+
+    void fail(String reason) {
+        finish(STATUS_FAILED, reason);
+    }
+
+    void rowRead() {
+        rowsRead.incrementAndGet();
+    }
+
+    void imported(long count) {
+        imported.addAndGet(count);
+    }
+
+    void setBytesRead(long bytes) {
+        bytesRead.set(bytes);
+    }
+
+    void rowFailed(long line, String nameStd, String code, String errorMessage) {
+        failed.incrementAndGet();
+        synchronized (errors) {
+            if (errors.size() < MAX_ERRORS_KEPT) {
+                errors.add(new CustomerImportErrorDto(line, nameStd, code, errorMessage));
+            }
+        }
+    }
+
+    public CustomerImportJobDto toDto() {
+        long elapsedNanos = startNanos == 0 ? 0 : (finishNanos != 0 ? finishNanos : System.nanoTime()) - startNanos;
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        long rows = rowsRead.get();
+        List<CustomerImportErrorDto> errorRows;
+        synchronized (errors) {
+            errorRows = new ArrayList<>(errors);
+        }
+        return new CustomerImportJobDto(
+                id,
+                fileName,
+                status,
+                rows,
+                imported.get(),
+                failed.get(),
+                bytesRead.get(),
+                bytesTotal,
+                isFinished() ? 1.0 : (bytesTotal > 0 ? Math.min(1.0, (double) bytesRead.get() / bytesTotal) : 0.0),
+                submittedAt,
+                startedAt,
+                finishedAt,
+                elapsedNanos / 1_000_000,
+                seconds > 0 ? rows / seconds : 0,
+                message,
+                failed.get(),
+                errorRows);
+    }
+
+    private void finish(String finalStatus, String reason) {
+        finishNanos = System.nanoTime();
+        message = reason;
+        status = finalStatus;
+        finishedAt = OffsetDateTime.now();
+    }
+}
@@ -0,0 +1,447 @@
+package com.hygia.crm.service;
+
+import com.hygia.crm.csv.CsvReader;
+import com.hygia.crm.dto.CustomerCreateDto;
+import com.hygia.crm.dto.CustomerImportJobDto;
+import com.hygia.crm.entity.ChangeLogEntry;
+import com.hygia.crm.entity.Customer;
+import com.hygia.crm.entity.Region;
+import com.hygia.crm.repository.CustomerRepository;
+import com.hygia.crm.repository.RegionRepository;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * CSV customer import running as a background job.
+ * <p>
+ * The upload is spooled to a temp file and parsed as a stream, so memory use does not depend on
+ * the file size. Names are deduplicated in one pass: against the names already seen in the file
+ * with an in-memory set, and against the database with one {@code IN} query per batch. Regions
+ * are resolved by id or name from a map loaded once per job. Every batch is written in its own
+ * transaction; if a batch fails to commit its rows are retried one by one.
+ */
+@Service
+public class CustomerImportService {
+
+    public static final String ERROR_DUPLICATE_IN_FILE = "DUPLICATE_IN_FILE";
+    public static final String ERROR_ALREADY_EXISTS = "CUSTOMER_ALREADY_EXISTS";
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerImportService.class);
+
+    // Finished jobs stay queryable for this long
+    private static final long FINISHED_JOB_RETENTION_HOURS = 24;
+    private static final int MAX_COLUMN_LENGTH = 255;
+    private static final int JDBC_BATCH_SIZE = 500;
+    private static final int FLUSH_INTERVAL = 100;
+
+    private final CustomerRepository customerRepository;
+    private final RegionRepository regionRepository;
+    private final CustomerSearchService customerSearchService;
+    private final CustomerActivityService customerActivityService;
+    private final ChangeLogService changeLogService;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+    private final int batchSize;
+    private final ThreadPoolTaskExecutor executor;
+    private final Map<String, CustomerImportJob> jobs = new ConcurrentHashMap<>();
+
+    public CustomerImportService(
+            CustomerRepository customerRepository,
+            RegionRepository regionRepository,
+            CustomerSearchService customerSearchService,
+            CustomerActivityService customerActivityService,
+            ChangeLogService changeLogService,
+            EntityManager entityManager,
+            PlatformTransactionManager transactionManager,
+            Validator validator,
+            @Value("${crm.customers.import.batch-size:1000}") int batchSize,
+            @Value("${crm.customers.import.max-concurrent-jobs:2}") int maxConcurrentJobs,
+            @Value("${crm.customers.import.queue-capacity:16}") int queueCapacity) {
+        this.customerRepository = customerRepository;
+        this.regionRepository = regionRepository;
+        this.customerSearchService = customerSearchService;
+        this.customerActivityService = customerActivityService;
+        this.changeLogService = changeLogService;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.validator = validator;
+        this.batchSize = batchSize;
+
+        // Kept private rather than a bean: an Executor bean would replace Boot's applicationTaskExecutor
+        this.executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(maxConcurrentJobs);
+        executor.setMaxPoolSize(maxConcurrentJobs);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("customer-import-");
+        executor.initialize();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Spools the upload to a temp file and queues the import.
+     *
+     * @throws ServiceException IMPORT_QUEUE_FULL when too many imports are already waiting
+     */
+    public CustomerImportJob submit(MultipartFile file) throws IOException {
+        evictFinishedJobs();
+
+        Path spool = Files.createTempFile("customer-import-", ".csv");
+        try {
+            file.transferTo(spool);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(spool);
+            throw e;
+        }
+
+        CustomerImportJob job = new CustomerImportJob(UUID.randomUUID().toString(), file.getOriginalFilename(), Files.size(spool));
+        jobs.put(job.getId(), job);
+        try {
+            executor.execute(() -> run(job, spool));
+        } catch (TaskRejectedException e) {
+            jobs.remove(job.getId());
+            Files.deleteIfExists(spool);
+            throw new ServiceException(
+                HttpStatus.SERVICE_UNAVAILABLE,
+                "IMPORT_QUEUE_FULL",
+                "Too many customer imports are queued, try again later"
+            );
+        }
+        return job;
+    }
+
+    public Optional<CustomerImportJob> findJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    private void run(CustomerImportJob job, Path spool) {
+        job.start();
+        try (CountingInputStream in = new CountingInputStream(new BufferedInputStream(Files.newInputStream(spool), 64 * 1024));
+             CsvReader reader = new CsvReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            importRows(job, reader, in);
+            job.complete();
+        } catch (Exception e) {
+            log.warn("Customer import {} failed: {}", job.getId(), e.getMessage());
+            job.fail(e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(spool);
+            } catch (IOException e) {
+                log.warn("Could not delete import spool file {}: {}", spool, e.getMessage());
+            }
+        }
+        CustomerImportJobDto summary = job.toDto();
+        log.info("Customer import {} {}: {} rows read, {} imported, {} failed in {} ms, {} rows/s",
+                job.getId(), summary.getStatus(), summary.getRowsRead(), summary.getImported(), summary.getFailed(),
+                summary.getElapsedMillis(), String.format("%.1f", summary.getRowsPerSecond()));
+    }
+
+    private void importRows(CustomerImportJob job, CsvReader reader, CountingInputStream in) throws IOException {
+        List<String> header = reader.readRecord();
+        if (header == null) {
+            throw new IOException("File is empty");
+        }
+        Columns columns = Columns.of(header);
+
+        RegionLookup regions = new RegionLookup(regionRepository.findAll());
+        Set<String> seenNames = new HashSet<>();
+        List<ImportRow> batch = new ArrayList<>(batchSize);
+
+        List<String> record;
+        while ((record = reader.readRecord()) != null) {
+            job.rowRead();
+            long line = reader.getRecordLine();
+            if (record.size() == 1 && record.get(0).isBlank()) {
+                continue;
+            }
+
+            ImportRow row;
+            try {
+                row = parse(line, record, columns, regions);
+            } catch (ServiceException e) {
+                job.rowFailed(line, columns.get(record, columns.nameStd), e.getCode(), e.getMessage());
+                continue;
+            }
+            if (!seenNames.add(row.createDto().getNameStd())) {
+                job.rowFailed(line, row.createDto().getNameStd(), ERROR_DUPLICATE_IN_FILE,
+                        "Customer '" + row.createDto().getNameStd() + "' appears more than once in the file");
+                continue;
+            }
+
+            batch.add(row);
+            if (batch.size() >= batchSize) {
+                writeBatch(job, batch);
+                batch.clear();
+                job.setBytesRead(in.getCount());
+            }
+        }
+        if (!batch.isEmpty()) {
+            writeBatch(job, batch);
+        }
+        job.setBytesRead(in.getCount());
+    }
+
+    private ImportRow parse(long line, List<String> record, Columns columns, RegionLookup regions) {
+        String regionValue = columns.get(record, columns.regionId);
+        Long regionId = regionValue != null ? regions.resolveId(regionValue) : null;
+        if (regionValue == null && columns.region >= 0) {
+            String regionName = columns.get(record, columns.region);
+            regionId = regionName != null ? regions.resolveName(regionName) : null;
+            regionValue = regionName;
+        }
+        if (regionValue != null && regionId == null) {
+            throw new ServiceException(HttpStatus.BAD_REQUEST, "REGION_NOT_FOUND", "Region '" + regionValue + "' not found");
+        }
+
+        CustomerCreateDto createDto = new CustomerCreateDto();
+        createDto.setNameStd(columns.get(record, columns.nameStd));
+        createDto.setRegionId(regionId);
+        createDto.setTier(columns.get(record, columns.tier));
+        createDto.setAddressText(columns.get(record, columns.addressText));
+        createDto.setPhone(columns.get(record, columns.phone));
+        createDto.setEmail(columns.get(record, columns.email));
+        createDto.setPaymentTerms(columns.get(record, columns.paymentTerms));
+        createDto.setNotes(columns.get(record, columns.notes));
+
+        Set<ConstraintViolation<CustomerCreateDto>> violations = validator.validate(createDto);
+        if (!violations.isEmpty()) {
+            String message = violations.stream()
+                    .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining("; "));
+            throw new ServiceException(HttpStatus.BAD_REQUEST, "VALIDATION_FAILED", message);
+        }
+        if (createDto.getTier() == null) {
+            createDto.setTier("Potential");
+        } else if (!Customer.TIERS.contains(createDto.getTier())) {
+            throw new ServiceException(HttpStatus.BAD_REQUEST, "INVALID_TIER",
+                    "Invalid tier value: " + createDto.getTier() + ". Allowed values are: A, B, C, Potential");
+        }
+        for (String value : List.of(createDto.getNameStd(), nullToEmpty(createDto.getAddressText()), nullToEmpty(createDto.getPhone()),
+                nullToEmpty(createDto.getEmail()), nullToEmpty(createDto.getPaymentTerms()))) {
+            if (value.length() > MAX_COLUMN_LENGTH) {
+                throw new ServiceException(HttpStatus.BAD_REQUEST, "VALIDATION_FAILED",
+                        "Values must be at most " + MAX_COLUMN_LENGTH + " characters (except notes)");
+            }
+        }
+        return new ImportRow(line, createDto);
+    }
+
+    private void writeBatch(CustomerImportJob job, List<ImportRow> batch) {
+        // One IN query per batch for names that already exist in the database
+        Set<String> existing = new HashSet<>(customerRepository.findExistingNameStds(
+                batch.stream().map(row -> row.createDto().getNameStd()).toList()));
+        List<ImportRow> rows = new ArrayList<>(batch.size());
+        for (ImportRow row : batch) {
+            if (existing.contains(row.createDto().getNameStd())) {
+                job.rowFailed(row.line(), row.createDto().getNameStd(), ERROR_ALREADY_EXISTS,
+                        "Customer with name '" + row.createDto().getNameStd() + "' already exists");
+            } else {
+                rows.add(row);
+            }
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> persist(rows));
+            job.imported(rows.size());
+        } catch (RuntimeException e) {
+            log.warn("Customer import {} batch at line {} failed, retrying rows individually: {}",
+                    job.getId(), rows.get(0).line(), e.getMessage());
+            for (ImportRow row : rows) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> persist(List.of(row)));
+                    job.imported(1);
+                } catch (RuntimeException rowError) {
+                    job.rowFailed(row.line(), row.createDto().getNameStd(), "IMPORT_WRITE_FAILED",
+                            "Customer '" + row.createDto().getNameStd() + "' could not be saved: " + rowError.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the rows in the current transaction. The persistence context is flushed and cleared
+     * every {@link #FLUSH_INTERVAL} customers: each customer brings a few dozen search index rows,
+     * and Hibernate's insert ordering gets slow on very large action queues.
+     */
+    private void persist(List<ImportRow> rows) {
+        entityManager.unwrap(Session.class).setJdbcBatchSize(JDBC_BATCH_SIZE);
+        for (int from = 0; from < rows.size(); from += FLUSH_INTERVAL) {
+            List<Customer> customers = new ArrayList<>(FLUSH_INTERVAL);
+            for (ImportRow row : rows.subList(from, Math.min(from + FLUSH_INTERVAL, rows.size()))) {
+                CustomerCreateDto createDto = row.createDto();
+                Customer customer = new Customer();
+                customer.setNameStd(createDto.getNameStd());
+                customer.setRegion(entityManager.getReference(Region.class, createDto.getRegionId()));
+                customer.setAddressText(createDto.getAddressText());
+                customer.setPhone(createDto.getPhone());
+                customer.setEmail(createDto.getEmail());
+                customer.setPaymentTerms(createDto.getPaymentTerms());
+                customer.setNotes(createDto.getNotes());
+                customer.setTier(createDto.getTier());
+                entityManager.persist(customer);
+                customers.add(customer);
+            }
+            customerSearchService.indexNew(customers);
+            changeLogService.record(ChangeLogEntry.CUSTOMER, customers.stream().map(Customer::getId).toList());
+            for (Customer customer : customers) {
+                customerActivityService.createFor(customer.getId());
+            }
+            entityManager.flush();
+            entityManager.clear();
+        }
+    }
+
+    private void evictFinishedJobs() {
+        OffsetDateTime cutoff = OffsetDateTime.now().minusHours(FINISHED_JOB_RETENTION_HOURS);
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt().isBefore(cutoff));
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    private record ImportRow(long line, CustomerCreateDto createDto) {
+    }
+
+    /**
+     * Header positions of the known columns, matched case-insensitively; -1 when absent.
+     */
+    private record Columns(int nameStd, int regionId, int region, int tier, int addressText,
+                           int phone, int email, int paymentTerms, int notes) {
+
+        static Columns of(List<String> header) {
+            Map<String, Integer> positions = new HashMap<>();
+            for (int i = 0; i < header.size(); i++) {
+                positions.putIfAbsent(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+            }
+            Columns columns = new Columns(
+                    positions.getOrDefault("namestd", -1),
+                    positions.getOrDefault("regionid", -1),
+                    positions.getOrDefault("region", -1),
+                    positions.getOrDefault("tier", -1),
+                    positions.getOrDefault("addresstext", -1),
+                    positions.getOrDefault("phone", -1),
+                    positions.getOrDefault("email", -1),
+                    positions.getOrDefault("paymentterms", -1),
+                    positions.getOrDefault("notes", -1));
+            if (columns.nameStd < 0) {
+                throw new IllegalArgumentException("Header must contain a nameStd column");
+            }
+            if (columns.regionId < 0 && columns.region < 0) {
+                throw new IllegalArgumentException("Header must contain a regionId or region column");
+            }
+            return columns;
+        }
+
+        /** Trimmed value of a column, null when the column is absent or the value is blank. */
+        String get(List<String> record, int column) {
+            if (column < 0 || column >= record.size()) {
+                return null;
+            }
+            String value = record.get(column).trim();
+            return value.isEmpty() ? null : value;
+        }
+    }
+
+    /**
+     * Regions by id and by lowercased name, loaded once per job.
+     */
+    private static final class RegionLookup {
+
+        private final Set<Long> ids = new HashSet<>();
+        private final Map<String, Long> idsByName = new HashMap<>();
+
+        RegionLookup(List<Region> regions) {
+            for (Region region : regions) {
+                ids.add(region.getId());
+                idsByName.put(region.getName().toLowerCase(Locale.ROOT), region.getId());
+            }
+        }
+
+        Long resolveId(String value) {
+            try {
+                Long id = Long.valueOf(value);
+                return ids.contains(id) ? id : null;
+            } catch (NumberFormatException e) {
+                return resolveName(value);
+            }
+        }
+
+        Long resolveName(String value) {
+            return idsByName.get(value.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
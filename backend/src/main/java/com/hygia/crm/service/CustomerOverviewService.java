@@ -0,0 +1,185 @@
+package com.hygia.crm.service;
+
+import com.hygia.crm.dto.ErrorResponse;
+import com.hygia.crm.entity.CustomerActivity;
+import com.hygia.crm.repository.CustomerActivityRepository;
+import com.hygia.crm.repository.CustomerRepository;
+import com.hygia.crm.repository.CustomerRow;
+import com.hygia.crm.repository.InvoiceRepository;
+import com.hygia.crm.repository.InvoiceRow;
+import com.hygia.crm.repository.VisitRow;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Everything the customer screen shows, read with one call.
+ * <p>
+ * The customer row, its recent visits, its activity summary and its recent invoices are
+ * independent queries, so they run concurrently on a bounded pool and the call takes about as
+ * long as the slowest of them. Whatever is not done by {@code crm.customers.overview.deadline}
+ * is left out and reported in {@link Overview#unavailable()}; only the customer itself is
+ * required. A query that misses the deadline still runs to completion on its pool thread.
+ * Statements run on the pool are not counted in the request's SQL metrics.
+ */
+@Service
+public class CustomerOverviewService {
+
+    public static final String PART_VISITS = "recentVisits";
+    public static final String PART_ACTIVITY = "activity";
+    public static final String PART_INVOICES = "recentInvoices";
+
+    /**
+     * @param activity    null if the customer has no summary row yet or the part is unavailable
+     * @param unavailable parts left out, by name, with the reason
+     */
+    public record Overview(CustomerRow customer, List<VisitRow> recentVisits, CustomerActivity activity,
+                           List<InvoiceRow> recentInvoices, Map<String, ErrorResponse> unavailable) {
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerOverviewService.class);
+
+    private final CustomerRepository customerRepository;
+    private final CustomerActivityRepository activityRepository;
+    private final InvoiceRepository invoiceRepository;
+    private final VisitArchiveService visitArchiveService;
+    // Only with crm.visits.ingest.mode=journal
+    private final VisitJournalService visitJournalService;
+    private final Duration deadline;
+    private final ThreadPoolTaskExecutor executor;
+    private final MeterRegistry meterRegistry;
+
+    public CustomerOverviewService(
+            CustomerRepository customerRepository,
+            CustomerActivityRepository activityRepository,
+            InvoiceRepository invoiceRepository,
+            VisitArchiveService visitArchiveService,
+            @Nullable VisitJournalService visitJournalService,
+            MeterRegistry meterRegistry,
+            @Value("${crm.customers.overview.deadline:2s}") Duration deadline,
+            @Value("${crm.customers.overview.threads:16}") int threads,
+            @Value("${crm.customers.overview.queue-capacity:200}") int queueCapacity) {
+        this.customerRepository = customerRepository;
+        this.activityRepository = activityRepository;
+        this.invoiceRepository = invoiceRepository;
+        this.visitArchiveService = visitArchiveService;
+        this.visitJournalService = visitJournalService;
+        this.meterRegistry = meterRegistry;
+        this.deadline = deadline;
+
+        // Kept private rather than a bean: an Executor bean would replace Boot's applicationTaskExecutor
+        this.executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("customer-overview-");
+        executor.initialize();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * @throws ServiceException CUSTOMER_NOT_FOUND, or with 503 when the customer itself could not be
+     *                          read in time
+     */
+    public Overview getOverview(Long customerId, int visitLimit, int invoiceLimit) {
+        long deadlineNanos = System.nanoTime() + deadline.toNanos();
+
+        CompletableFuture<Optional<CustomerRow>> customer = submit(() -> customerRepository.findRowById(customerId));
+        CompletableFuture<List<VisitRow>> visits = submit(() -> recentVisits(customerId, visitLimit, deadlineNanos));
+        CompletableFuture<Optional<CustomerActivity>> activity = submit(() -> activityRepository.findById(customerId));
+        CompletableFuture<List<InvoiceRow>> invoices = submit(
+                () -> invoiceRepository.findRowsByCustomerId(customerId, Limit.of(invoiceLimit)));
+
+        Map<String, ErrorResponse> unavailable = new LinkedHashMap<>();
+        Optional<CustomerRow> row = await("customer", customer, deadlineNanos, unavailable);
+        if (row == null) {
+            ErrorResponse reason = unavailable.get("customer");
+            throw new ServiceException(HttpStatus.SERVICE_UNAVAILABLE, reason.getCode(), reason.getMessage());
+        }
+        if (row.isEmpty()) {
+            throw new ServiceException(HttpStatus.NOT_FOUND, "CUSTOMER_NOT_FOUND",
+                    "Customer with ID " + customerId + " not found");
+        }
+
+        List<VisitRow> recentVisits = await(PART_VISITS, visits, deadlineNanos, unavailable);
+        Optional<CustomerActivity> summary = await(PART_ACTIVITY, activity, deadlineNanos, unavailable);
+        List<InvoiceRow> recentInvoices = await(PART_INVOICES, invoices, deadlineNanos, unavailable);
+        return new Overview(row.get(), recentVisits, summary != null ? summary.orElse(null) : null, recentInvoices,
+                unavailable);
+    }
+
+    private List<VisitRow> recentVisits(Long customerId, int limit, long deadlineNanos) {
+        // Read your writes, as GET .../visits does
+        if (visitJournalService != null && !visitJournalService.awaitApplied(customerId,
+                Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime())))) {
+            throw new ServiceException(HttpStatus.SERVICE_UNAVAILABLE, "VISITS_PENDING",
+                    "Recent visits of this customer are still being saved");
+        }
+        return visitArchiveService.findRecentVisits(customerId, limit);
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> query) {
+        try {
+            return CompletableFuture.supplyAsync(query, executor);
+        } catch (TaskRejectedException e) {
+            return CompletableFuture.failedFuture(new ServiceException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "OVERVIEW_BUSY", "Too many overview queries waiting"));
+        }
+    }
+
+    /**
+     * The part's result, or null after recording why it is unavailable.
+     */
+    private <T> T await(String part, CompletableFuture<T> future, long deadlineNanos,
+                        Map<String, ErrorResponse> unavailable) {
+        ErrorResponse reason;
+        try {
+            return future.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            reason = new ErrorResponse("PART_TIMEOUT", "Not ready within " + deadline.toMillis() + " ms");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ServiceException serviceException) {
+                reason = serviceException.toErrorResponse();
+            } else {
+                log.warn("Customer overview part {} failed", part, e.getCause());
+                reason = new ErrorResponse("PART_FAILED", "Could not be read");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reason = new ErrorResponse("PART_TIMEOUT", "Interrupted");
+        }
+        unavailable.put(part, reason);
+        Counter.builder("crm.customers.overview.unavailable")
+                .description("Customer overview parts left out of a response")
+                .tag("part", part)
+                .tag("reason", reason.getCode())
+                .register(meterRegistry)
+                .increment();
+        return null;
+    }
+}
@@ -0,0 +1,118 @@
+package com.hygia.crm.service;
+
+import com.hygia.crm.entity.Customer;
+import com.hygia.crm.entity.CustomerSearchGram;
+import com.hygia.crm.entity.CustomerSearchGramId;
+import com.hygia.crm.repository.CustomerRepository;
+import com.hygia.crm.repository.CustomerSearchGramRepository;
+import com.hygia.crm.search.SearchText;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Maintains the n-gram index behind the customer {@code q} filter.
+ */
+@Service
+public class CustomerSearchService {
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerSearchService.class);
+
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    private final CustomerRepository customerRepository;
+    private final CustomerSearchGramRepository searchGramRepository;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+
+    public CustomerSearchService(
+            CustomerRepository customerRepository,
+            CustomerSearchGramRepository searchGramRepository,
+            EntityManager entityManager,
+            PlatformTransactionManager transactionManager) {
+        this.customerRepository = customerRepository;
+        this.searchGramRepository = searchGramRepository;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Replaces the index entries of a saved customer. Must run in the transaction that wrote the
+     * customer so the index never disagrees with committed data.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void index(Customer customer) {
+        searchGramRepository.deleteByCustomerId(customer.getId());
+        addGrams(customer);
+    }
+
+    /**
+     * Adds index entries for customers that have none yet, e.g. rows inserted in bulk.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void indexNew(List<Customer> customers) {
+        for (Customer customer : customers) {
+            addGrams(customer);
+        }
+    }
+
+    /**
+     * Rebuilds the whole index, recomputing the derived search columns on the way. Works through
+     * the customer table in primary key order, replacing the grams of each batch's id range in the
+     * batch's transaction, so searches keep finding customers while the rebuild runs.
+     *
+     * @return number of customers indexed
+     */
+    public long rebuild() {
+        long start = System.currentTimeMillis();
+        long indexed = 0;
+        Long afterId = 0L;
+        while (true) {
+            Long from = afterId;
+            List<Customer> batch = transactionTemplate.execute(status -> {
+                List<Customer> customers = customerRepository.findBatchAfter(from, Limit.of(REBUILD_BATCH_SIZE));
+                Long upTo = customers.isEmpty() ? from : customers.get(customers.size() - 1).getId();
+                searchGramRepository.deleteByCustomerIdRange(from, upTo);
+                if (customers.size() < REBUILD_BATCH_SIZE) {
+                    // Customers created since the batch was read index themselves; only drop leftovers
+                    searchGramRepository.deleteOrphansAfter(upTo);
+                }
+                for (Customer customer : customers) {
+                    // Rows written before the derived columns existed are fixed up by dirty checking
+                    customer.updateSearchFields();
+                    addGrams(customer);
+                }
+                entityManager.flush();
+                entityManager.clear();
+                return customers;
+            });
+            if (batch.isEmpty()) {
+                break;
+            }
+            indexed += batch.size();
+            afterId = batch.get(batch.size() - 1).getId();
+        }
+
+        log.info("Customer search index rebuilt: {} customers in {} ms", indexed, System.currentTimeMillis() - start);
+        return indexed;
+    }
+
+    private void addGrams(Customer customer) {
+        for (String gram : SearchText.nameIndexGrams(customer.getSearchName())) {
+            entityManager.persist(new CustomerSearchGram(
+                    new CustomerSearchGramId(gram, CustomerSearchGram.FIELD_NAME, customer.getId())));
+        }
+        for (String gram : SearchText.digitGrams(customer.getPhoneDigits())) {
+            entityManager.persist(new CustomerSearchGram(
+                    new CustomerSearchGramId(gram, CustomerSearchGram.FIELD_PHONE, customer.getId())));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.hygia.crm.service;
+
+import com.hygia.crm.entity.ChangeLogEntry;
+import com.hygia.crm.entity.Customer;
+import com.hygia.crm.repository.CustomerRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+@Service
+public class CustomerService {
+
+    private final CustomerRepository customerRepository;
+    private final CustomerSearchService customerSearchService;
+    private final CustomerActivityService customerActivityService;
+    private final ChangeLogService changeLogService;
+
+    public CustomerService(
+            CustomerRepository customerRepository,
+            CustomerSearchService customerSearchService,
+            CustomerActivityService customerActivityService,
+            ChangeLogService changeLogService) {
+        this.customerRepository = customerRepository;
+        this.customerSearchService = customerSearchService;
+        this.customerActivityService = customerActivityService;
+        this.changeLogService = changeLogService;
+    }
+
+    /**
+     * Saves a customer, refreshes its search index entries and logs it for sync in the same transaction. New
+     * customers also get their (empty) activity summary row.
+     */
+    @Transactional
+    public Customer save(Customer customer) {
+        boolean isNew = customer.getId() == null;
+        Customer savedCustomer = customerRepository.save(customer);
+        customerSearchService.index(savedCustomer);
+        changeLogService.record(ChangeLogEntry.CUSTOMER, savedCustomer.getId());
+        if (isNew) {
+            customerActivityService.createFor(savedCustomer.getId());
+        }
+        return savedCustomer;
+    }
+}
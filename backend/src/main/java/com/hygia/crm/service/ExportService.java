@@ -0,0 +1,159 @@
+package com.hygia.crm.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hygia.crm.entity.Customer;
+import com.hygia.crm.entity.Invoice;
+import com.hygia.crm.entity.VisitLog;
+import com.hygia.crm.export.ExportColumn;
+import com.hygia.crm.export.ExportFormat;
+import com.hygia.crm.export.RowWriter;
+import com.hygia.crm.repository.CustomerRepository;
+import com.hygia.crm.repository.InvoiceRepository;
+import com.hygia.crm.repository.VisitLogRepository;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Streams customers, visits and invoices to an output stream.
+ * <p>
+ * Rows are read through a JDBC cursor inside one read-only transaction and written as soon as
+ * they arrive. Every {@value #CLEAR_EVERY} rows the output is flushed and the persistence
+ * context cleared, so memory use does not grow with the size of the export.
+ */
+@Service
+public class ExportService {
+
+    private static final Logger log = LoggerFactory.getLogger(ExportService.class);
+
+    private static final int CLEAR_EVERY = 1000;
+
+    private static final List<ExportColumn<Customer>> CUSTOMER_COLUMNS = List.of(
+        new ExportColumn<>("id", Customer::getId),
+        new ExportColumn<>("nameStd", Customer::getNameStd),
+        new ExportColumn<>("tier", Customer::getTier),
+        new ExportColumn<>("isProspect", Customer::getIsProspect),
+        new ExportColumn<>("regionId", customer -> customer.getRegion().getId()),
+        new ExportColumn<>("regionName", customer -> customer.getRegion().getName()),
+        new ExportColumn<>("addressText", Customer::getAddressText),
+        new ExportColumn<>("phone", Customer::getPhone),
+        new ExportColumn<>("email", Customer::getEmail),
+        new ExportColumn<>("paymentTerms", Customer::getPaymentTerms),
+        new ExportColumn<>("notes", Customer::getNotes),
+        new ExportColumn<>("updatedAt", Customer::getUpdatedAt)
+    );
+
+    private static final List<ExportColumn<VisitLog>> VISIT_COLUMNS = List.of(
+        new ExportColumn<>("id", VisitLog::getId),
+        new ExportColumn<>("customerId", visit -> visit.getCustomer().getId()),
+        new ExportColumn<>("visitAt", VisitLog::getVisitAt),
+        new ExportColumn<>("type", VisitLog::getType),
+        new ExportColumn<>("result", VisitLog::getResult),
+        new ExportColumn<>("notes", VisitLog::getNotes),
+        new ExportColumn<>("nextFollowUpAt", VisitLog::getNextFollowUpAt)
+    );
+
+    private static final List<ExportColumn<Invoice>> INVOICE_COLUMNS = List.of(
+        new ExportColumn<>("id", Invoice::getId),
+        new ExportColumn<>("invoiceNumber", Invoice::getInvoiceNumber),
+        new ExportColumn<>("customerId", invoice -> invoice.getCustomer().getId()),
+        new ExportColumn<>("invoiceDate", Invoice::getInvoiceDate),
+        new ExportColumn<>("totalAmount", Invoice::getTotalAmount),
+        new ExportColumn<>("note", Invoice::getNote)
+    );
+
+    private final CustomerRepository customerRepository;
+    private final VisitLogRepository visitLogRepository;
+    private final InvoiceRepository invoiceRepository;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    public ExportService(
+            CustomerRepository customerRepository,
+            VisitLogRepository visitLogRepository,
+            InvoiceRepository invoiceRepository,
+            EntityManager entityManager,
+            ObjectMapper objectMapper,
+            PlatformTransactionManager transactionManager) {
+        this.customerRepository = customerRepository;
+        this.visitLogRepository = visitLogRepository;
+        this.invoiceRepository = invoiceRepository;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * @return number of rows written
+     */
+    public long exportCustomers(Specification<Customer> spec, ExportFormat format, OutputStream out) {
+        return export("customers", format, CUSTOMER_COLUMNS, out, () -> customerRepository.streamAll(spec));
+    }
+
+    /**
+     * Visits with visitAt in [from, to), optionally of one customer.
+     *
+     * @return number of rows written
+     */
+    public long exportVisits(Long customerId, OffsetDateTime from, OffsetDateTime to, ExportFormat format,
+                             OutputStream out) {
+        return export("visits", format, VISIT_COLUMNS, out, () -> customerId != null
+                ? visitLogRepository.streamByCustomerIdAndVisitAtWindow(customerId, from, to)
+                : visitLogRepository.streamByVisitAtWindow(from, to));
+    }
+
+    /**
+     * Invoice headers with invoiceDate in [from, to), optionally of one customer.
+     *
+     * @return number of rows written
+     */
+    public long exportInvoices(Long customerId, LocalDate from, LocalDate to, ExportFormat format,
+                               OutputStream out) {
+        return export("invoices", format, INVOICE_COLUMNS, out, () -> customerId != null
+                ? invoiceRepository.streamByCustomerIdAndInvoiceDateWindow(customerId, from, to)
+                : invoiceRepository.streamByInvoiceDateWindow(from, to));
+    }
+
+    private <T> long export(String name, ExportFormat format, List<ExportColumn<T>> columns, OutputStream out,
+                            Supplier<Stream<T>> rows) {
+        long start = System.currentTimeMillis();
+        Long written = transactionTemplate.execute(status -> {
+            long count = 0;
+            try (Stream<T> stream = rows.get()) {
+                RowWriter<T> writer = RowWriter.open(format, columns, out, objectMapper);
+                Iterator<T> iterator = stream.iterator();
+                while (iterator.hasNext()) {
+                    writer.write(iterator.next());
+                    if (++count % CLEAR_EVERY == 0) {
+                        writer.flush();
+                        entityManager.clear();
+                    }
+                }
+                writer.flush();
+            } catch (IOException e) {
+                // Usually the client went away; the read-only transaction just ends
+                throw new UncheckedIOException(e);
+            }
+            return count;
+        });
+        log.info("Export of {} finished: {} rows as {} in {} ms", name, written, format,
+                System.currentTimeMillis() - start);
+        return written;
+    }
+}
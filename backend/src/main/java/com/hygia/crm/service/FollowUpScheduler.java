@@ -0,0 +1,428 @@
+package com.hygia.crm.service;
+
+import com.hygia.crm.dto.FollowUpEventDto;
+import com.hygia.crm.repository.CustomerActivityRepository;
+import com.hygia.crm.repository.FollowUp;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Pushes "follow-up now due" events to Server-Sent Event subscribers, so dashboards do not have to
+ * poll {@code GET /api/customers?followup=due}.
+ * <p>
+ * Only follow-ups due within {@code crm.followups.window} are held in memory, at most
+ * {@code max-entries} of them, in a set ordered by due time. The window is read from
+ * idx_activity_next_follow_up on startup and every {@code reload-interval}, and follow-ups
+ * scheduled by visits recorded on this instance are added after their transaction commits. When
+ * more follow-ups fall into the window than fit, the window is shortened to the ones that fit and
+ * the rest are read by a later reload. A later visit may replace a follow-up, so each one is
+ * checked against {@code customer_activity} when it comes due and only the customer's current
+ * follow-up is announced.
+ * <p>
+ * Each instance announces the follow-ups of all customers; visits recorded on other instances are
+ * seen by the next reload. The dispatcher thread runs while the application context is running.
+ */
+@Service
+public class FollowUpScheduler implements SmartLifecycle {
+
+    public static final String EVENT_DUE = "followup-due";
+    public static final String EVENT_CHANGED = "followup-changed";
+
+    private static final Logger log = LoggerFactory.getLogger(FollowUpScheduler.class);
+
+    private static final int CHECK_BATCH_SIZE = 1000;
+    private static final long RETRY_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * A follow-up, in idx_activity_next_follow_up order; microseconds, as the database stores them.
+     */
+    private record Entry(long dueAtMicros, long customerId) implements Comparable<Entry> {
+
+        @Override
+        public int compareTo(Entry other) {
+            int byDue = Long.compare(dueAtMicros, other.dueAtMicros);
+            return byDue != 0 ? byDue : Long.compare(customerId, other.customerId);
+        }
+
+        static Entry before(long dueAtMicros) {
+            return new Entry(dueAtMicros, Long.MIN_VALUE);
+        }
+    }
+
+    private final CustomerActivityRepository activityRepository;
+    private final long windowMicros;
+    private final long reloadIntervalMillis;
+    private final int maxEntries;
+    private final long heartbeatMillis;
+    private final Duration streamTimeout;
+    private final int maxSubscribers;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Guarded by lock: every follow-up from handledBefore (inclusive) to loadedUntil (exclusive),
+    // plus ones made due by a new visit; may hold replaced follow-ups, which are dropped when due
+    private final TreeSet<Entry> entries = new TreeSet<>();
+    private Entry handledBefore;
+    private Entry loadedUntil;
+
+    // Customers with a visit recorded since the last round, announced as followup-changed
+    private final Set<Long> changedCustomers = ConcurrentHashMap.newKeySet();
+
+    private final List<SseEmitter> subscribers = new CopyOnWriteArrayList<>();
+    private final Counter dueCounter;
+
+    private volatile Thread dispatcher;
+    private volatile boolean running;
+
+    public FollowUpScheduler(
+            CustomerActivityRepository activityRepository,
+            MeterRegistry meterRegistry,
+            @Value("${crm.followups.window:1h}") Duration window,
+            @Value("${crm.followups.reload-interval:5m}") Duration reloadInterval,
+            @Value("${crm.followups.max-entries:200000}") int maxEntries,
+            @Value("${crm.followups.stream.heartbeat:30s}") Duration heartbeat,
+            @Value("${crm.followups.stream.timeout:30m}") Duration streamTimeout,
+            @Value("${crm.followups.stream.max-subscribers:1000}") int maxSubscribers) {
+        this.activityRepository = activityRepository;
+        this.windowMicros = TimeUnit.NANOSECONDS.toMicros(window.toNanos());
+        this.reloadIntervalMillis = reloadInterval.toMillis();
+        this.maxEntries = maxEntries;
+        this.heartbeatMillis = heartbeat.toMillis();
+        this.streamTimeout = streamTimeout;
+        this.maxSubscribers = maxSubscribers;
+
+        // Follow-ups already due on startup are listed by followup=due, not announced
+        this.handledBefore = Entry.before(toMicros(Instant.now()));
+        this.loadedUntil = handledBefore;
+
+        this.dueCounter = Counter.builder("crm.followups.due")
+                .description("Follow-ups announced as due to stream subscribers")
+                .register(meterRegistry);
+        Gauge.builder("crm.followups.scheduled", this, FollowUpScheduler::scheduledCount)
+                .description("Follow-ups held in memory until they are due")
+                .register(meterRegistry);
+        Gauge.builder("crm.followups.subscribers", subscribers, List::size)
+                .description("Open follow-up event streams")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        dispatcher = new Thread(this::dispatchLoop, "follow-up-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        LockSupport.unpark(dispatcher);
+        try {
+            dispatcher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        subscribers.forEach(SseEmitter::complete);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Opens an event stream; it sends {@value #EVENT_DUE} and {@value #EVENT_CHANGED} events with a
+     * {@link FollowUpEventDto} until {@code crm.followups.stream.timeout}, when clients reconnect.
+     *
+     * @throws ServiceException TOO_MANY_SUBSCRIBERS
+     */
+    public SseEmitter subscribe() {
+        if (subscribers.size() >= maxSubscribers) {
+            throw new ServiceException(HttpStatus.SERVICE_UNAVAILABLE, "TOO_MANY_SUBSCRIBERS",
+                    "Too many open follow-up streams, please retry later");
+        }
+        SseEmitter emitter = new SseEmitter(streamTimeout.toMillis());
+        emitter.onCompletion(() -> subscribers.remove(emitter));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> subscribers.remove(emitter));
+        subscribers.add(emitter);
+        return emitter;
+    }
+
+    /**
+     * Called in the transaction that recorded a visit: once it commits, the customer's follow-up is
+     * announced as changed and {@code nextFollowUpAt} (may be null) is scheduled.
+     */
+    public void visitRecorded(Long customerId, @Nullable OffsetDateTime nextFollowUpAt) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                if (nextFollowUpAt != null) {
+                    schedule(new Entry(toMicros(nextFollowUpAt.toInstant()), customerId));
+                }
+                if (!subscribers.isEmpty() && changedCustomers.size() < maxEntries) {
+                    changedCustomers.add(customerId);
+                    LockSupport.unpark(dispatcher);
+                }
+            }
+        });
+    }
+
+    private void schedule(Entry entry) {
+        boolean earliest;
+        lock.lock();
+        try {
+            // Beyond the window it is read by a later reload
+            if (entry.compareTo(loadedUntil) >= 0) {
+                return;
+            }
+            entries.add(entry);
+            trim();
+            earliest = entries.first().equals(entry);
+        } finally {
+            lock.unlock();
+        }
+        if (earliest) {
+            LockSupport.unpark(dispatcher);
+        }
+    }
+
+    /**
+     * End of the follow-ups held in memory; later ones are read by a later reload.
+     */
+    OffsetDateTime loadedUntil() {
+        lock.lock();
+        try {
+            return toDateTime(loadedUntil.dueAtMicros());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int scheduledCount() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void dispatchLoop() {
+        long nextReloadAt = 0;
+        long nextHeartbeatAt = System.currentTimeMillis() + heartbeatMillis;
+        while (running) {
+            try {
+                long now = System.currentTimeMillis();
+                long nowMicros = toMicros(Instant.now());
+                boolean windowUsedUp;
+                lock.lock();
+                try {
+                    windowUsedUp = loadedUntil.dueAtMicros() <= nowMicros;
+                } finally {
+                    lock.unlock();
+                }
+                if (now >= nextReloadAt || windowUsedUp) {
+                    reload(nowMicros);
+                    nextReloadAt = now + reloadIntervalMillis;
+                }
+                fireDue(nowMicros);
+                announceChanged();
+                if (now >= nextHeartbeatAt) {
+                    send(() -> SseEmitter.event().comment("keep-alive"));
+                    nextHeartbeatAt = now + heartbeatMillis;
+                }
+
+                long wakeAt = Math.min(nextReloadAt, nextHeartbeatAt);
+                lock.lock();
+                try {
+                    wakeAt = Math.min(wakeAt, toMillisCeiling(loadedUntil.dueAtMicros()));
+                    if (!entries.isEmpty()) {
+                        wakeAt = Math.min(wakeAt, toMillisCeiling(entries.first().dueAtMicros()));
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                if (changedCustomers.isEmpty()) {
+                    LockSupport.parkUntil(wakeAt);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Follow-up dispatch failed, retrying", e);
+                LockSupport.parkNanos(RETRY_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Reads the follow-ups due in the next window that have not been announced yet.
+     */
+    void reload(long nowMicros) {
+        Entry from;
+        lock.lock();
+        try {
+            from = handledBefore;
+        } finally {
+            lock.unlock();
+        }
+        long untilMicros = nowMicros + windowMicros;
+        List<FollowUp> followUps = activityRepository.findFollowUpsFrom(toDateTime(from.dueAtMicros()),
+                from.customerId(), toDateTime(untilMicros), Limit.of(maxEntries + 1));
+
+        lock.lock();
+        try {
+            // Too many to hold: end the window at the first one that does not fit
+            loadedUntil = followUps.size() > maxEntries ? toEntry(followUps.get(maxEntries)) : Entry.before(untilMicros);
+            entries.tailSet(loadedUntil, true).clear();
+            for (FollowUp followUp : followUps) {
+                Entry entry = toEntry(followUp);
+                if (entry.compareTo(loadedUntil) < 0) {
+                    entries.add(entry);
+                }
+            }
+            trim();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops the latest follow-ups while more than {@code max-entries} are held, moving the end of
+     * the window back so that a later reload reads them again.
+     */
+    private void trim() {
+        while (entries.size() > maxEntries) {
+            loadedUntil = entries.pollLast();
+        }
+    }
+
+    void fireDue(long nowMicros) {
+        List<Entry> due = new ArrayList<>();
+        lock.lock();
+        try {
+            Entry bound = Entry.before(nowMicros + 1);
+            if (loadedUntil.compareTo(bound) < 0) {
+                bound = loadedUntil;
+            }
+            if (handledBefore.compareTo(bound) > 0) {
+                bound = handledBefore;
+            }
+            while (!entries.isEmpty() && entries.first().compareTo(bound) < 0) {
+                due.add(entries.pollFirst());
+            }
+            handledBefore = bound;
+        } finally {
+            lock.unlock();
+        }
+        if (due.isEmpty() || subscribers.isEmpty()) {
+            return;
+        }
+
+        // The database rounds sub-microsecond times, so a follow-up may be held once as scheduled and once as read
+        Set<Long> announced = new HashSet<>();
+        for (int i = 0; i < due.size(); i += CHECK_BATCH_SIZE) {
+            List<Entry> batch = due.subList(i, Math.min(due.size(), i + CHECK_BATCH_SIZE));
+            Map<Long, OffsetDateTime> current = currentFollowUps(batch.stream().map(Entry::customerId).toList());
+            for (Entry entry : batch) {
+                OffsetDateTime followUp = current.get(entry.customerId());
+                // Replaced or cleared by a later visit
+                if (followUp == null || Math.abs(toMicros(followUp.toInstant()) - entry.dueAtMicros()) > 1
+                        || !announced.add(entry.customerId())) {
+                    continue;
+                }
+                dueCounter.increment();
+                FollowUpEventDto data = new FollowUpEventDto(entry.customerId(), followUp);
+                send(() -> SseEmitter.event().name(EVENT_DUE).data(data, MediaType.APPLICATION_JSON));
+            }
+        }
+    }
+
+    private void announceChanged() {
+        if (changedCustomers.isEmpty()) {
+            return;
+        }
+        List<Long> customerIds = new ArrayList<>(changedCustomers);
+        changedCustomers.removeAll(customerIds);
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < customerIds.size(); i += CHECK_BATCH_SIZE) {
+            List<Long> batch = customerIds.subList(i, Math.min(customerIds.size(), i + CHECK_BATCH_SIZE));
+            Map<Long, OffsetDateTime> current = currentFollowUps(batch);
+            for (Long customerId : batch) {
+                FollowUpEventDto data = new FollowUpEventDto(customerId, current.get(customerId));
+                send(() -> SseEmitter.event().name(EVENT_CHANGED).data(data, MediaType.APPLICATION_JSON));
+            }
+        }
+    }
+
+    private Map<Long, OffsetDateTime> currentFollowUps(List<Long> customerIds) {
+        Map<Long, OffsetDateTime> current = new HashMap<>();
+        for (FollowUp followUp : activityRepository.findFollowUps(customerIds)) {
+            current.put(followUp.customerId(), followUp.nextFollowUpAt());
+        }
+        return current;
+    }
+
+    /**
+     * Sends an event to every subscriber, dropping the ones that are gone. A builder is used once.
+     */
+    private void send(Supplier<SseEmitter.SseEventBuilder> event) {
+        for (SseEmitter emitter : subscribers) {
+            try {
+                emitter.send(event.get());
+            } catch (IOException | IllegalStateException e) {
+                subscribers.remove(emitter);
+                emitter.completeWithError(e);
+            }
+        }
+    }
+
+    private static Entry toEntry(FollowUp followUp) {
+        return new Entry(toMicros(followUp.nextFollowUpAt().toInstant()), followUp.customerId());
+    }
+
+    private static long toMicros(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000 + instant.getNano() / 1_000;
+    }
+
+    private static long toMillisCeiling(long micros) {
+        return Math.floorDiv(micros + 999, 1_000);
+    }
+
+    private static OffsetDateTime toDateTime(long micros) {
+        return Instant.EPOCH.plus(micros, ChronoUnit.MICROS).atOffset(ZoneOffset.UTC);
+    }
+}
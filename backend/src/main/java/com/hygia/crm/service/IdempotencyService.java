@@ -0,0 +1,368 @@
+package com.hygia.crm.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hygia.crm.dto.ErrorResponse;
+import com.hygia.crm.entity.IdempotencyRecord;
+import com.hygia.crm.repository.IdempotencyRecordRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Runs create requests carrying an {@code Idempotency-Key} at most once per key and replays the
+ * stored response to retries.
+ * <p>
+ * Keys live in memory, where a duplicate arriving while the first request still runs waits for
+ * its response instead of running the write path again, and in the idempotency_key table, which
+ * covers restarts and other instances. A request first claims its key in the table; the claim
+ * holds for {@code lease}, after which a crashed instance's key can be taken over. 2xx and 4xx
+ * responses are kept for {@code ttl}; after a 5xx or an exception the claim is dropped so a retry
+ * runs again. Once the action has succeeded its claim is never dropped: a response that could not
+ * be saved is replayed from memory and saved again on later requests.
+ */
+@Service
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyService.class);
+
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final long PURGE_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private record StoredResponse(int status, String contentType, String body) {
+    }
+
+    private record Entry(String requestHash, CompletableFuture<StoredResponse> response, long expiresAtNanos) {
+    }
+
+    private final IdempotencyRecordRepository recordRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration ttl;
+    private final Duration lease;
+    private final Duration waitTimeout;
+    private final int maxEntries;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Responses of succeeded requests whose save failed, by key
+    private final Map<String, StoredResponse> unsaved = new ConcurrentHashMap<>();
+    private final AtomicLong lastPurgeNanos = new AtomicLong(System.nanoTime());
+    // Duplicates waiting here for the response of a running request
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final MeterRegistry meterRegistry;
+
+    public IdempotencyService(
+            IdempotencyRecordRepository recordRepository,
+            ObjectMapper objectMapper,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${crm.idempotency.ttl:24h}") Duration ttl,
+            @Value("${crm.idempotency.lease:60s}") Duration lease,
+            @Value("${crm.idempotency.wait-timeout:30s}") Duration waitTimeout,
+            @Value("${crm.idempotency.max-entries:10000}") int maxEntries) {
+        this.recordRepository = recordRepository;
+        this.objectMapper = objectMapper;
+        // Claims and results are committed on their own, whatever the caller's transaction does
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.meterRegistry = meterRegistry;
+        this.ttl = ttl;
+        this.lease = lease;
+        this.waitTimeout = waitTimeout;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Runs {@code action} unless a request with the same {@code scope} and {@code key} has
+     * already run, in which case its response is returned with {@value #REPLAYED_HEADER}.
+     * {@code request} must identify the request's content; reusing a key for a different request
+     * is answered with 422 IDEMPOTENCY_KEY_REUSED. 409 IDEMPOTENCY_KEY_IN_PROGRESS means the
+     * first request is still running elsewhere, or here for longer than {@code wait-timeout}.
+     */
+    public ResponseEntity<?> execute(String scope, String key, Object request, Supplier<ResponseEntity<?>> action) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            return error(HttpStatus.BAD_REQUEST, "INVALID_IDEMPOTENCY_KEY",
+                    HEADER + " must be 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+        purgeIfDue();
+        saveUnsaved();
+
+        String id = scope + ":" + key;
+        String requestHash = fingerprint(scope, request);
+        while (true) {
+            Entry mine = new Entry(requestHash, new CompletableFuture<>(), System.nanoTime() + ttl.toNanos());
+            Entry existing = entries.putIfAbsent(id, mine);
+            if (existing == null) {
+                return executeClaimed(id, mine, action);
+            }
+            if (existing.expiresAtNanos() - System.nanoTime() < 0) {
+                entries.remove(id, existing);
+                continue;
+            }
+            if (!existing.requestHash().equals(requestHash)) {
+                return keyReused();
+            }
+            waiting.incrementAndGet();
+            try {
+                StoredResponse response = existing.response().get(waitTimeout.toNanos(), TimeUnit.NANOSECONDS);
+                count("replayed");
+                return replay(response);
+            } catch (ExecutionException e) {
+                // The first request failed without a stored response; run it again
+            } catch (TimeoutException e) {
+                return inProgress();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return inProgress();
+            } finally {
+                waiting.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Number of duplicates currently waiting for the response of a request running on this instance.
+     */
+    int getWaitingCount() {
+        return waiting.get();
+    }
+
+    private ResponseEntity<?> executeClaimed(String id, Entry mine, Supplier<ResponseEntity<?>> action) {
+        boolean claimed = false;
+        ResponseEntity<?> response;
+        try {
+            IdempotencyRecord record = claim(id, mine.requestHash());
+            if (record != null) {
+                if (!record.getRequestHash().equals(mine.requestHash())) {
+                    entries.remove(id, mine);
+                    mine.response().completeExceptionally(new IllegalStateException("Key reused"));
+                    return keyReused();
+                }
+                if (!IdempotencyRecord.STATUS_COMPLETED.equals(record.getStatus())) {
+                    entries.remove(id, mine);
+                    mine.response().completeExceptionally(new IllegalStateException("Key in progress elsewhere"));
+                    return inProgress();
+                }
+                // Completed earlier or on another instance; cached here from now on
+                StoredResponse stored = new StoredResponse(record.getResponseStatus(),
+                        record.getResponseContentType(), record.getResponseBody());
+                mine.response().complete(stored);
+                count("replayed");
+                return replay(stored);
+            }
+            claimed = true;
+
+            response = action.get();
+        } catch (RuntimeException e) {
+            if (claimed) {
+                release(id, mine, e);
+            } else {
+                entries.remove(id, mine);
+                mine.response().completeExceptionally(e);
+            }
+            throw e;
+        }
+
+        count("executed");
+        if (response.getStatusCode().is5xxServerError()) {
+            release(id, mine, new IllegalStateException("Request failed with " + response.getStatusCode()));
+            return response;
+        }
+        // The write went through: from here on the key stays claimed whatever fails
+        StoredResponse stored = store(response);
+        mine.response().complete(stored);
+        if (!save(id, stored)) {
+            unsaved.put(id, stored);
+        }
+        evictIfFull();
+        return response;
+    }
+
+    /**
+     * Claims {@code id} in the database.
+     *
+     * @return null if claimed, otherwise the record holding the key
+     */
+    private IdempotencyRecord claim(String id, String requestHash) {
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        OffsetDateTime lockedUntil = now.plus(lease);
+        OffsetDateTime expiresAt = now.plus(ttl);
+        try {
+            return transactionTemplate.execute(status -> {
+                IdempotencyRecord record = recordRepository.findById(id).orElse(null);
+                if (record == null) {
+                    recordRepository.saveAndFlush(new IdempotencyRecord(id, requestHash,
+                            IdempotencyRecord.STATUS_IN_PROGRESS, lockedUntil, expiresAt, null, null, null));
+                    return null;
+                }
+                if (recordRepository.takeOver(id, requestHash, lockedUntil, expiresAt, now) == 1) {
+                    return null;
+                }
+                return record;
+            });
+        } catch (DataIntegrityViolationException e) {
+            // Another instance inserted the key first
+            return transactionTemplate.execute(status -> recordRepository.findById(id).orElseThrow(() -> e));
+        }
+    }
+
+    private boolean save(String id, StoredResponse stored) {
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    recordRepository.complete(id, stored.status(), stored.contentType(), stored.body()));
+            return true;
+        } catch (RuntimeException e) {
+            log.error("Could not save the response of idempotency key {}, keeping it in memory", id, e);
+            return false;
+        }
+    }
+
+    private void saveUnsaved() {
+        if (unsaved.isEmpty()) {
+            return;
+        }
+        unsaved.forEach((id, stored) -> {
+            if (save(id, stored)) {
+                unsaved.remove(id, stored);
+            }
+        });
+    }
+
+    private void release(String id, Entry mine, Exception cause) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> recordRepository.release(id));
+        } catch (RuntimeException e) {
+            // The claim expires with its lease
+            log.warn("Could not release idempotency key {}", id, e);
+        } finally {
+            entries.remove(id, mine);
+            mine.response().completeExceptionally(cause);
+        }
+    }
+
+    private StoredResponse store(ResponseEntity<?> response) {
+        Object body = response.getBody();
+        if (body == null) {
+            return new StoredResponse(response.getStatusCode().value(), null, null);
+        }
+        if (body instanceof String text) {
+            return new StoredResponse(response.getStatusCode().value(), MediaType.TEXT_PLAIN_VALUE, text);
+        }
+        try {
+            return new StoredResponse(response.getStatusCode().value(), MediaType.APPLICATION_JSON_VALUE,
+                    objectMapper.writeValueAsString(body));
+        } catch (JsonProcessingException e) {
+            // Replaying the status alone still keeps a retry from writing twice
+            log.warn("Could not serialize a response for replay, storing its status only", e);
+            return new StoredResponse(response.getStatusCode().value(), null, null);
+        }
+    }
+
+    private static ResponseEntity<?> replay(StoredResponse response) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(response.status()).header(REPLAYED_HEADER, "true");
+        if (response.contentType() != null) {
+            builder.contentType(MediaType.parseMediaType(response.contentType()));
+        }
+        return builder.body(response.body());
+    }
+
+    private String fingerprint(String scope, Object request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(scope.getBytes(StandardCharsets.UTF_8));
+            digest.update(objectMapper.writeValueAsBytes(request));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException("Could not fingerprint request", e);
+        }
+    }
+
+    // Memory only holds a cache of the table, so completed entries can go at any time
+    private void evictIfFull() {
+        if (entries.size() <= maxEntries) {
+            return;
+        }
+        long now = System.nanoTime();
+        entries.values().removeIf(entry -> entry.expiresAtNanos() - now < 0);
+        var iterator = entries.values().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            if (iterator.next().response().isDone()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void purgeIfDue() {
+        long last = lastPurgeNanos.get();
+        long now = System.nanoTime();
+        if (now - last < PURGE_INTERVAL_NANOS || !lastPurgeNanos.compareAndSet(last, now)) {
+            return;
+        }
+        entries.values().removeIf(entry -> entry.expiresAtNanos() - now < 0);
+        try {
+            int deleted = transactionTemplate.execute(status ->
+                    recordRepository.deleteExpired(OffsetDateTime.now(ZoneOffset.UTC)));
+            if (deleted > 0) {
+                log.debug("Deleted {} expired idempotency keys", deleted);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not delete expired idempotency keys", e);
+        }
+    }
+
+    private ResponseEntity<?> keyReused() {
+        count("rejected");
+        return error(HttpStatus.UNPROCESSABLE_ENTITY, "IDEMPOTENCY_KEY_REUSED",
+                HEADER + " was already used for a different request");
+    }
+
+    private ResponseEntity<?> inProgress() {
+        count("rejected");
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(new ErrorResponse("IDEMPOTENCY_KEY_IN_PROGRESS",
+                        "A request with this " + HEADER + " is still being processed, please retry"));
+    }
+
+    private static ResponseEntity<?> error(HttpStatus status, String code, String message) {
+        return ResponseEntity.status(status).body(new ErrorResponse(code, message));
+    }
+
+    private void count(String outcome) {
+        Counter.builder("crm.idempotency.requests")
+                .description("Requests with an Idempotency-Key, by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+    }
+}
@@ -0,0 +1,345 @@
+package com.hygia.crm.service;
+
+import com.hygia.crm.dto.ErrorResponse;
+import com.hygia.crm.dto.InvoiceBatchItemResultDto;
+import com.hygia.crm.dto.InvoiceBatchResultDto;
+import com.hygia.crm.dto.InvoiceCreateDto;
+import com.hygia.crm.dto.InvoiceItemCreateDto;
+import com.hygia.crm.entity.ChangeLogEntry;
+import com.hygia.crm.entity.Customer;
+import com.hygia.crm.entity.Invoice;
+import com.hygia.crm.entity.InvoiceItem;
+import com.hygia.crm.entity.Product;
+import com.hygia.crm.repository.CustomerRepository;
+import com.hygia.crm.repository.InvoiceKey;
+import com.hygia.crm.repository.InvoiceRepository;
+import com.hygia.crm.repository.ProductRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk invoice ingestion.
+ * <p>
+ * The batch is processed in chunks. For every chunk the referenced customers, products and
+ * already existing invoice keys are resolved with one set-based query each, and all invoices
+ * and items of the chunk are written in a single transaction so Hibernate can send them as
+ * JDBC batches, together with one activity summary update per customer and one sales rollup
+ * upsert per rollup key. If a chunk fails to commit, its invoices are retried one by one so a
+ * single bad row does not take the rest of the chunk down with it.
+ * <p>
+ * An invoice repeated within the batch fails with DUPLICATE_IN_BATCH once an earlier copy has
+ * been written; if no earlier copy could be written, the first copy that can is.
+ */
+@Service
+public class InvoiceBatchService {
+
+    public static final String STATUS_CREATED = "CREATED";
+    public static final String STATUS_FAILED = "FAILED";
+
+    private static final Logger log = LoggerFactory.getLogger(InvoiceBatchService.class);
+
+    private final CustomerRepository customerRepository;
+    private final ProductRepository productRepository;
+    private final InvoiceRepository invoiceRepository;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final CustomerActivityService customerActivityService;
+    private final ChangeLogService changeLogService;
+    private final SalesRollupService salesRollupService;
+    private final Validator validator;
+    private final int chunkSize;
+
+    public InvoiceBatchService(
+            CustomerRepository customerRepository,
+            ProductRepository productRepository,
+            InvoiceRepository invoiceRepository,
+            CustomerActivityService customerActivityService,
+            ChangeLogService changeLogService,
+            SalesRollupService salesRollupService,
+            EntityManager entityManager,
+            PlatformTransactionManager transactionManager,
+            Validator validator,
+            @Value("${crm.invoices.batch.chunk-size:500}") int chunkSize) {
+        this.customerRepository = customerRepository;
+        this.productRepository = productRepository;
+        this.invoiceRepository = invoiceRepository;
+        this.customerActivityService = customerActivityService;
+        this.changeLogService = changeLogService;
+        this.salesRollupService = salesRollupService;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.validator = validator;
+        this.chunkSize = chunkSize;
+    }
+
+    public InvoiceBatchResultDto createInvoices(List<InvoiceCreateDto> createDtos) {
+        long startNanos = System.nanoTime();
+        InvoiceBatchItemResultDto[] results = new InvoiceBatchItemResultDto[createDtos.size()];
+        Set<InvoiceKey> writtenKeys = new HashSet<>();
+        long itemsWritten = 0;
+
+        for (int from = 0; from < createDtos.size(); from += chunkSize) {
+            int to = Math.min(from + chunkSize, createDtos.size());
+            itemsWritten += processChunk(createDtos, from, to, writtenKeys, results);
+        }
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+        int succeeded = (int) Arrays.stream(results)
+                .filter(result -> STATUS_CREATED.equals(result.getStatus()))
+                .count();
+        int failed = results.length - succeeded;
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        double invoicesPerSecond = seconds > 0 ? succeeded / seconds : 0;
+
+        log.info("Invoice batch finished: {} invoices ({} created, {} failed, {} items) in {} ms, {} invoices/s",
+                results.length, succeeded, failed, itemsWritten, elapsedNanos / 1_000_000,
+                String.format("%.1f", invoicesPerSecond));
+
+        return new InvoiceBatchResultDto(
+                results.length,
+                succeeded,
+                failed,
+                itemsWritten,
+                elapsedNanos / 1_000_000,
+                invoicesPerSecond,
+                Arrays.asList(results));
+    }
+
+    private long processChunk(List<InvoiceCreateDto> createDtos, int from, int to,
+                              Set<InvoiceKey> writtenKeys, InvoiceBatchItemResultDto[] results) {
+        // Bean validation first, so lookups only see well-formed rows
+        List<Integer> valid = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            InvoiceCreateDto createDto = createDtos.get(i);
+            ErrorResponse error = validate(createDto);
+            if (error != null) {
+                results[i] = failure(i, createDto, error);
+            } else {
+                valid.add(i);
+            }
+        }
+        if (valid.isEmpty()) {
+            return 0;
+        }
+
+        // Set-based lookups for the whole chunk
+        Set<Long> customerIds = new HashSet<>();
+        Set<Long> productIds = new HashSet<>();
+        Set<String> invoiceNumbers = new HashSet<>();
+        for (int i : valid) {
+            InvoiceCreateDto createDto = createDtos.get(i);
+            customerIds.add(createDto.getCustomerId());
+            invoiceNumbers.add(createDto.getInvoiceNumber());
+            for (InvoiceItemCreateDto itemDto : createDto.getItems()) {
+                productIds.add(itemDto.getProductId());
+            }
+        }
+        Map<Long, Customer> customers = customerRepository.findAllById(customerIds).stream()
+                .collect(Collectors.toMap(Customer::getId, Function.identity()));
+        Map<Long, Product> products = productRepository.findAllByIdCached(productIds).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        Set<InvoiceKey> existingKeys = new HashSet<>(
+                invoiceRepository.findExistingKeys(customerIds, invoiceNumbers));
+
+        // A row repeating the key of a row prepared in the same pass waits for the next pass, where it is
+        // only written if that row could not be
+        long items = 0;
+        List<Integer> remaining = valid;
+        while (!remaining.isEmpty()) {
+            List<PreparedInvoice> prepared = new ArrayList<>();
+            Set<InvoiceKey> preparedKeys = new HashSet<>();
+            List<Integer> deferred = new ArrayList<>();
+            for (int i : remaining) {
+                InvoiceCreateDto createDto = createDtos.get(i);
+                InvoiceKey key = new InvoiceKey(createDto.getCustomerId(), createDto.getInvoiceNumber());
+                if (writtenKeys.contains(key)) {
+                    results[i] = failure(i, createDto, new ErrorResponse(
+                        "DUPLICATE_IN_BATCH",
+                        "Invoice " + createDto.getInvoiceNumber() + " for customer " + createDto.getCustomerId() +
+                            " appears more than once in the batch"
+                    ));
+                } else if (existingKeys.contains(key)) {
+                    results[i] = failure(i, createDto, new ErrorResponse(
+                        "INVOICE_ALREADY_EXISTS",
+                        "Invoice " + createDto.getInvoiceNumber() + " already exists for customer " + createDto.getCustomerId()
+                    ));
+                } else if (preparedKeys.contains(key)) {
+                    deferred.add(i);
+                } else {
+                    try {
+                        prepared.add(prepare(i, createDto, customers, products));
+                        preparedKeys.add(key);
+                    } catch (ServiceException e) {
+                        results[i] = failure(i, createDto, e.toErrorResponse());
+                    }
+                }
+            }
+            items += write(prepared, from, to, writtenKeys, results);
+            remaining = deferred;
+        }
+        return items;
+    }
+
+    private long write(List<PreparedInvoice> prepared, int from, int to,
+                       Set<InvoiceKey> writtenKeys, InvoiceBatchItemResultDto[] results) {
+        if (prepared.isEmpty()) {
+            return 0;
+        }
+        try {
+            List<Long> invoiceIds = transactionTemplate.execute(status -> persist(prepared));
+            long items = 0;
+            for (int i = 0; i < prepared.size(); i++) {
+                PreparedInvoice invoice = prepared.get(i);
+                results[invoice.index()] = success(invoice, invoiceIds.get(i));
+                writtenKeys.add(invoice.key());
+                items += invoice.itemCount();
+            }
+            return items;
+        } catch (RuntimeException e) {
+            log.warn("Invoice batch chunk [{}, {}) failed, retrying invoices individually: {}", from, to, e.getMessage());
+            return retryIndividually(prepared, writtenKeys, results);
+        }
+    }
+
+    private long retryIndividually(List<PreparedInvoice> prepared, Set<InvoiceKey> writtenKeys,
+                                   InvoiceBatchItemResultDto[] results) {
+        long items = 0;
+        for (PreparedInvoice invoice : prepared) {
+            try {
+                List<Long> invoiceIds = transactionTemplate.execute(status -> persist(List.of(invoice)));
+                results[invoice.index()] = success(invoice, invoiceIds.get(0));
+                writtenKeys.add(invoice.key());
+                items += invoice.itemCount();
+            } catch (RuntimeException e) {
+                results[invoice.index()] = failure(invoice.index(), invoice.createDto(), new ErrorResponse(
+                    "INVOICE_WRITE_FAILED",
+                    "Invoice " + invoice.createDto().getInvoiceNumber() + " could not be saved: " + e.getMessage()
+                ));
+            }
+        }
+        return items;
+    }
+
+    private List<Long> persist(List<PreparedInvoice> prepared) {
+        List<Long> invoiceIds = new ArrayList<>(prepared.size());
+        for (PreparedInvoice preparedInvoice : prepared) {
+            Invoice invoice = preparedInvoice.draft().newInvoice();
+            entityManager.persist(invoice);
+            for (InvoiceItem item : preparedInvoice.draft().newItems(invoice)) {
+                entityManager.persist(item);
+            }
+            invoiceIds.add(invoice.getId());
+        }
+        recordActivity(prepared);
+        changeLogService.record(ChangeLogEntry.INVOICE, invoiceIds);
+        salesRollupService.recordInvoices(prepared.stream().map(PreparedInvoice::draft).toList());
+        entityManager.flush();
+        entityManager.clear();
+        return invoiceIds;
+    }
+
+    /**
+     * One activity summary update per customer in the chunk, in customer id order so concurrent
+     * batches lock the summary rows in the same order.
+     */
+    private void recordActivity(List<PreparedInvoice> prepared) {
+        Map<Long, List<InvoiceDraft>> draftsByCustomer = prepared.stream()
+                .map(PreparedInvoice::draft)
+                .collect(Collectors.groupingBy(draft -> draft.customer().getId(), TreeMap::new, Collectors.toList()));
+        draftsByCustomer.forEach((customerId, drafts) -> {
+            BigDecimal amount = BigDecimal.ZERO;
+            LocalDate latestDate = null;
+            for (InvoiceDraft draft : drafts) {
+                amount = amount.add(draft.totalAmount());
+                LocalDate invoiceDate = draft.createDto().getInvoiceDate();
+                if (latestDate == null || invoiceDate.isAfter(latestDate)) {
+                    latestDate = invoiceDate;
+                }
+            }
+            customerActivityService.recordInvoices(customerId, drafts.size(), amount, latestDate);
+        });
+    }
+
+    private static PreparedInvoice prepare(int index, InvoiceCreateDto createDto,
+                                           Map<Long, Customer> customers, Map<Long, Product> products) {
+        Customer customer = customers.get(createDto.getCustomerId());
+        if (customer == null) {
+            throw new ServiceException(
+                HttpStatus.NOT_FOUND,
+                "CUSTOMER_NOT_FOUND",
+                "Customer with ID " + createDto.getCustomerId() + " not found"
+            );
+        }
+        return new PreparedInvoice(index, InvoiceDraft.create(createDto, customer, products));
+    }
+
+    private ErrorResponse validate(InvoiceCreateDto createDto) {
+        if (createDto == null) {
+            return new ErrorResponse("VALIDATION_FAILED", "Invoice must not be null");
+        }
+        Set<ConstraintViolation<InvoiceCreateDto>> violations = validator.validate(createDto);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        String message = violations.stream()
+                .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining("; "));
+        return new ErrorResponse("VALIDATION_FAILED", message);
+    }
+
+    private static InvoiceBatchItemResultDto success(PreparedInvoice invoice, Long invoiceId) {
+        return new InvoiceBatchItemResultDto(
+                invoice.index(),
+                invoice.createDto().getInvoiceNumber(),
+                invoice.createDto().getCustomerId(),
+                STATUS_CREATED,
+                invoiceId,
+                null);
+    }
+
+    private static InvoiceBatchItemResultDto failure(int index, InvoiceCreateDto createDto, ErrorResponse error) {
+        return new InvoiceBatchItemResultDto(
+                index,
+                createDto != null ? createDto.getInvoiceNumber() : null,
+                createDto != null ? createDto.getCustomerId() : null,
+                STATUS_FAILED,
+                null,
+                error);
+    }
+
+    private record PreparedInvoice(int index, InvoiceDraft draft) {
+
+        InvoiceCreateDto createDto() {
+            return draft.createDto();
+        }
+
+        InvoiceKey key() {
+            return new InvoiceKey(createDto().getCustomerId(), createDto().getInvoiceNumber());
+        }
+
+        int itemCount() {
+            return draft.lines().size();
+        }
+    }
+}
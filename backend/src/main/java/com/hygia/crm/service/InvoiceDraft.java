@@ -0,0 +1,88 @@
+package com.hygia.crm.service;
+
+import com.hygia.crm.dto.InvoiceCreateDto;
+import com.hygia.crm.dto.InvoiceItemCreateDto;
+import com.hygia.crm.entity.Customer;
+import com.hygia.crm.entity.Invoice;
+import com.hygia.crm.entity.InvoiceItem;
+import com.hygia.crm.entity.Product;
+import org.springframework.http.HttpStatus;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An invoice whose customer, products and prices have been resolved and whose total is known,
+ * but which has not been written yet. Entities are created from it inside the write transaction.
+ */
+record InvoiceDraft(InvoiceCreateDto createDto, Customer customer, List<Line> lines, BigDecimal totalAmount) {
+
+    record Line(Product product, Integer quantity, BigDecimal unitPrice, BigDecimal amount) {
+    }
+
+    /**
+     * Resolves every line against the preloaded products and computes amounts and total.
+     *
+     * @throws ServiceException PRODUCT_NOT_FOUND or UNIT_PRICE_REQUIRED
+     */
+    static InvoiceDraft create(InvoiceCreateDto createDto, Customer customer, Map<Long, Product> products) {
+        BigDecimal totalAmount = BigDecimal.ZERO;
+        List<Line> lines = new ArrayList<>(createDto.getItems().size());
+
+        for (InvoiceItemCreateDto itemDto : createDto.getItems()) {
+            Product product = products.get(itemDto.getProductId());
+            if (product == null) {
+                throw new ServiceException(
+                    HttpStatus.NOT_FOUND,
+                    "PRODUCT_NOT_FOUND",
+                    "Product with ID " + itemDto.getProductId() + " not found"
+                );
+            }
+
+            // Use provided unitPrice or product's defaultUnitPrice
+            BigDecimal unitPrice = itemDto.getUnitPrice();
+            if (unitPrice == null) {
+                unitPrice = product.getDefaultUnitPrice();
+                if (unitPrice == null) {
+                    throw new ServiceException(
+                        HttpStatus.BAD_REQUEST,
+                        "UNIT_PRICE_REQUIRED",
+                        "Product " + product.getItemCode() + " has no default unit price. Please provide unitPrice."
+                    );
+                }
+            }
+
+            BigDecimal amount = unitPrice.multiply(BigDecimal.valueOf(itemDto.getQuantity()));
+            lines.add(new Line(product, itemDto.getQuantity(), unitPrice, amount));
+            totalAmount = totalAmount.add(amount);
+        }
+
+        return new InvoiceDraft(createDto, customer, lines, totalAmount);
+    }
+
+    Invoice newInvoice() {
+        Invoice invoice = new Invoice();
+        invoice.setInvoiceNumber(createDto.getInvoiceNumber());
+        invoice.setCustomer(customer);
+        invoice.setInvoiceDate(createDto.getInvoiceDate());
+        invoice.setNote(createDto.getNote());
+        invoice.setTotalAmount(totalAmount);
+        return invoice;
+    }
+
+    List<InvoiceItem> newItems(Invoice invoice) {
+        List<InvoiceItem> items = new ArrayList<>(lines.size());
+        for (Line line : lines) {
+            InvoiceItem item = new InvoiceItem();
+            item.setInvoice(invoice);
+            item.setProduct(line.product());
+            item.setQuantity(line.quantity());
+            item.setUnitPrice(line.unitPrice());
+            item.setAmount(line.amount());
+            items.add(item);
+        }
+        return items;
+    }
+}
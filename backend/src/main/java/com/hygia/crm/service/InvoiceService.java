@@ -0,0 +1,164 @@
+package com.hygia.crm.service;
+
+import com.hygia.crm.dto.InvoiceCreateDto;
+import com.hygia.crm.dto.InvoiceItemCreateDto;
+import com.hygia.crm.entity.ChangeLogEntry;
+import com.hygia.crm.entity.Customer;
+import com.hygia.crm.entity.Invoice;
+import com.hygia.crm.entity.InvoiceItem;
+import com.hygia.crm.entity.Product;
+import com.hygia.crm.repository.CustomerRepository;
+import com.hygia.crm.repository.InvoiceItemRepository;
+import com.hygia.crm.repository.InvoiceItemRow;
+import com.hygia.crm.repository.InvoiceKey;
+import com.hygia.crm.repository.InvoiceRepository;
+import com.hygia.crm.repository.InvoiceRow;
+import com.hygia.crm.repository.ProductRepository;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+public class InvoiceService {
+
+    // Upper bound for the IN list when loading items of many invoices
+    private static final int ITEM_LOOKUP_CHUNK = 500;
+
+    private final InvoiceRepository invoiceRepository;
+    private final InvoiceItemRepository invoiceItemRepository;
+    private final CustomerRepository customerRepository;
+    private final ProductRepository productRepository;
+    private final CustomerActivityService customerActivityService;
+    private final ChangeLogService changeLogService;
+    private final SalesRollupService salesRollupService;
+
+    public InvoiceService(
+            InvoiceRepository invoiceRepository,
+            InvoiceItemRepository invoiceItemRepository,
+            CustomerRepository customerRepository,
+            ProductRepository productRepository,
+            CustomerActivityService customerActivityService,
+            ChangeLogService changeLogService,
+            SalesRollupService salesRollupService) {
+        this.invoiceRepository = invoiceRepository;
+        this.invoiceItemRepository = invoiceItemRepository;
+        this.customerRepository = customerRepository;
+        this.productRepository = productRepository;
+        this.customerActivityService = customerActivityService;
+        this.changeLogService = changeLogService;
+        this.salesRollupService = salesRollupService;
+    }
+
+    /**
+     * Creates an invoice and its items in one transaction.
+     * <p>
+     * The customer and all products are read with one query each, the total is computed before
+     * anything is written, and the invoice and its items are flushed together at commit, so a
+     * failing line never leaves a half-written invoice behind. The customer's activity summary and
+     * the sales rollup are updated in the same transaction.
+     *
+     * @throws ServiceException CUSTOMER_NOT_FOUND, PRODUCT_NOT_FOUND or UNIT_PRICE_REQUIRED
+     */
+    @Transactional
+    public InvoiceWithItems createInvoice(InvoiceCreateDto createDto) {
+        // Validate customer exists
+        Customer customer = customerRepository.findById(createDto.getCustomerId())
+                .orElseThrow(() -> new ServiceException(
+                    HttpStatus.NOT_FOUND,
+                    "CUSTOMER_NOT_FOUND",
+                    "Customer with ID " + createDto.getCustomerId() + " not found"
+                ));
+
+        // Load all referenced products, from the second-level cache where possible
+        Set<Long> productIds = createDto.getItems().stream()
+                .map(InvoiceItemCreateDto::getProductId)
+                .collect(Collectors.toSet());
+        Map<Long, Product> products = productRepository.findAllByIdCached(productIds).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+
+        // Price every line and compute the total before the first insert
+        InvoiceDraft draft = InvoiceDraft.create(createDto, customer, products);
+
+        Invoice invoice = invoiceRepository.save(draft.newInvoice());
+        List<InvoiceItem> items = invoiceItemRepository.saveAll(draft.newItems(invoice));
+        customerActivityService.recordInvoices(customer.getId(), 1, invoice.getTotalAmount(), invoice.getInvoiceDate());
+        changeLogService.record(ChangeLogEntry.INVOICE, invoice.getId());
+        salesRollupService.recordInvoices(List.of(draft));
+
+        return new InvoiceWithItems(invoice, items);
+    }
+
+    /**
+     * Whether the customer has an invoice with this number, e.g. to tell a lost race on the
+     * invoice number's unique key from other integrity violations.
+     */
+    @Transactional(readOnly = true)
+    public boolean invoiceExists(Long customerId, String invoiceNumber) {
+        InvoiceKey key = new InvoiceKey(customerId, invoiceNumber);
+        return invoiceRepository.findExistingKeys(List.of(customerId), List.of(invoiceNumber)).contains(key);
+    }
+
+    /**
+     * All invoices of a customer, newest first, with their items loaded in batches rather than
+     * one query per invoice. Only the listed columns are read.
+     */
+    @Transactional(readOnly = true)
+    public List<InvoiceListing> getInvoicesByCustomer(Long customerId) {
+        return withItems(invoiceRepository.findRowsByCustomerId(customerId));
+    }
+
+    /**
+     * One page of a customer's invoice history, newest first. All items of the page are loaded
+     * with a single query.
+     */
+    @Transactional(readOnly = true)
+    public Page<InvoiceListing> getInvoiceHistory(Long customerId, Pageable pageable) {
+        Page<InvoiceRow> invoices = invoiceRepository.findRowsByCustomerId(customerId, pageable);
+        List<InvoiceListing> content = withItems(invoices.getContent());
+        return new PageImpl<>(content, invoices.getPageable(), invoices.getTotalElements());
+    }
+
+    /**
+     * One page of a customer's invoice headers, newest first, without touching invoice items.
+     */
+    @Transactional(readOnly = true)
+    public Page<InvoiceRow> getInvoiceSummaries(Long customerId, Pageable pageable) {
+        return invoiceRepository.findRowsByCustomerId(customerId, pageable);
+    }
+
+    private List<InvoiceListing> withItems(List<InvoiceRow> invoices) {
+        Map<Long, List<InvoiceItemRow>> itemsByInvoice = new HashMap<>();
+        for (int from = 0; from < invoices.size(); from += ITEM_LOOKUP_CHUNK) {
+            List<Long> invoiceIds = invoices.subList(from, Math.min(from + ITEM_LOOKUP_CHUNK, invoices.size()))
+                    .stream()
+                    .map(InvoiceRow::id)
+                    .collect(Collectors.toList());
+            for (InvoiceItemRow item : invoiceItemRepository.findRowsByInvoiceIdIn(invoiceIds)) {
+                itemsByInvoice.computeIfAbsent(item.invoiceId(), id -> new ArrayList<>()).add(item);
+            }
+        }
+
+        List<InvoiceListing> result = new ArrayList<>(invoices.size());
+        for (InvoiceRow invoice : invoices) {
+            result.add(new InvoiceListing(invoice, itemsByInvoice.getOrDefault(invoice.id(), List.of())));
+        }
+        return result;
+    }
+
+    public record InvoiceWithItems(Invoice invoice, List<InvoiceItem> items) {
+    }
+
+    public record InvoiceListing(InvoiceRow invoice, List<InvoiceItemRow> items) {
+    }
+}
@@ -0,0 +1,88 @@
+package com.hygia.crm.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Locks shared by all instances, for maintenance jobs that must not overlap anywhere. Each lock is
+ * a row of maintenance_lock, held locked by an open transaction on a connection of its own, so it
+ * is released when the job ends and also when its instance dies.
+ */
+@Component
+public class MaintenanceLock {
+
+    public static final String SALES_ROLLUP_REBUILD = "sales-rollup-rebuild";
+
+    private static final Logger log = LoggerFactory.getLogger(MaintenanceLock.class);
+
+    // The same statement on PostgreSQL and H2; a row locked elsewhere is skipped, not waited for
+    private static final String LOCK_SQL = "select name from maintenance_lock where name = ? for update skip locked";
+
+    private final DataSource dataSource;
+
+    public MaintenanceLock(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Takes the named lock without waiting.
+     *
+     * @return the held lock, to be closed when the job is done, or null if someone else holds it
+     */
+    public Held tryAcquire(String name) {
+        Connection connection = null;
+        try {
+            connection = dataSource.getConnection();
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(LOCK_SQL)) {
+                statement.setString(1, name);
+                try (ResultSet row = statement.executeQuery()) {
+                    if (row.next()) {
+                        Held held = new Held(name, connection);
+                        connection = null;
+                        return held;
+                    }
+                }
+            }
+            return null;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not take maintenance lock " + name, e);
+        } finally {
+            if (connection != null) {
+                release(name, connection);
+            }
+        }
+    }
+
+    private static void release(String name, Connection connection) {
+        try (connection) {
+            connection.rollback();
+        } catch (SQLException e) {
+            // Closing the connection ends the transaction anyway
+            log.warn("Could not release maintenance lock {} cleanly", name, e);
+        }
+    }
+
+    public static final class Held implements AutoCloseable {
+
+        private final String name;
+        private final Connection connection;
+
+        private Held(String name, Connection connection) {
+            this.name = name;
+            this.connection = connection;
+        }
+
+        @Override
+        public void close() {
+            release(name, connection);
+        }
+    }
+}
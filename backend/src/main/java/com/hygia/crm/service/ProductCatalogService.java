@@ -0,0 +1,151 @@
+package com.hygia.crm.service;
+
+import com.hygia.crm.dto.ProductDto;
+import com.hygia.crm.entity.ChangeLogEntry;
+import com.hygia.crm.entity.Product;
+import com.hygia.crm.repository.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory snapshot of the product catalog, sorted by itemCode.
+ * <p>
+ * The snapshot is loaded on first use and reused until it is invalidated by a product write on
+ * this instance or it is older than the configured TTL, which bounds staleness for writes made
+ * elsewhere. Its ETag is a hash of the catalog content, so it only changes when the data does.
+ */
+@Service
+public class ProductCatalogService {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductCatalogService.class);
+
+    private final ProductRepository productRepository;
+    private final ChangeLogService changeLogService;
+    private final long ttlNanos;
+
+    // Bumped on every invalidation; a load that raced with one is served but not kept
+    private final AtomicLong generation = new AtomicLong();
+    private volatile Snapshot snapshot;
+    // Not synchronized: a virtual thread blocked in the load would pin its carrier thread
+    private final ReentrantLock loadLock = new ReentrantLock();
+
+    public ProductCatalogService(
+            ProductRepository productRepository,
+            ChangeLogService changeLogService,
+            @Value("${crm.products.catalog.ttl:PT5M}") Duration ttl) {
+        this.productRepository = productRepository;
+        this.changeLogService = changeLogService;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    /**
+     * Saves a new product and logs it for sync in one transaction. Call {@link #invalidate()} once it has committed.
+     */
+    @Transactional
+    public Product create(Product product) {
+        Product saved = productRepository.save(product);
+        changeLogService.record(ChangeLogEntry.PRODUCT, saved.getId());
+        return saved;
+    }
+
+    /**
+     * The current catalog snapshot, loading it if there is none or it has expired.
+     */
+    public Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current != null && System.nanoTime() - current.loadedAtNanos() < ttlNanos) {
+            return current;
+        }
+        loadLock.lock();
+        try {
+            current = snapshot;
+            if (current != null && System.nanoTime() - current.loadedAtNanos() < ttlNanos) {
+                return current;
+            }
+            long loadGeneration = generation.get();
+            Snapshot loaded = load();
+            if (generation.get() == loadGeneration) {
+                snapshot = loaded;
+            }
+            return loaded;
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    /**
+     * Drops the snapshot after a committed product write.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        snapshot = null;
+    }
+
+    public static ProductDto toDto(Product product) {
+        ProductDto dto = new ProductDto();
+        dto.setId(product.getId());
+        dto.setItemCode(product.getItemCode());
+        dto.setDescription(product.getDescription());
+        dto.setDefaultUnitPrice(product.getDefaultUnitPrice());
+        dto.setCompanyTag(product.getCompanyTag());
+        dto.setProductType(product.getProductType());
+        dto.setBarcode(product.getBarcode());
+        dto.setActive(product.getActive());
+        return dto;
+    }
+
+    private Snapshot load() {
+        long start = System.currentTimeMillis();
+        List<ProductDto> products = productRepository.findAll(Sort.by("itemCode")).stream()
+                .map(ProductCatalogService::toDto)
+                .collect(Collectors.toUnmodifiableList());
+        String etag = contentHash(products);
+        log.debug("Product catalog loaded: {} products in {} ms, etag {}", products.size(),
+                System.currentTimeMillis() - start, etag);
+        return new Snapshot(products, etag, System.nanoTime());
+    }
+
+    private static String contentHash(List<ProductDto> products) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (ProductDto product : products) {
+            String row = String.join("\u0000",
+                    Objects.toString(product.getId()),
+                    Objects.toString(product.getItemCode()),
+                    Objects.toString(product.getDescription()),
+                    product.getDefaultUnitPrice() != null ? product.getDefaultUnitPrice().toPlainString() : "null",
+                    Objects.toString(product.getCompanyTag()),
+                    Objects.toString(product.getProductType()),
+                    Objects.toString(product.getBarcode()),
+                    Objects.toString(product.getActive()));
+            digest.update(row.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        return "\"" + HexFormat.of().formatHex(digest.digest(), 0, 16) + "\"";
+    }
+
+    /**
+     * An immutable catalog version. {@code etag} is a quoted strong entity tag.
+     */
+    public record Snapshot(List<ProductDto> products, String etag, long loadedAtNanos) {
+    }
+}
@@ -0,0 +1,222 @@
+package com.hygia.crm.service;
+
+import com.hygia.crm.entity.SalesRollup;
+import com.hygia.crm.entity.SalesRollupId;
+import com.hygia.crm.repository.InvoiceItemRepository;
+import com.hygia.crm.repository.InvoiceRepository;
+import com.hygia.crm.repository.SalesDimension;
+import com.hygia.crm.repository.SalesRollupRepository;
+import com.hygia.crm.repository.SalesRollupRow;
+import com.hygia.crm.repository.SalesSlice;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Maintains the sales rollup and answers revenue reports from it.
+ * <p>
+ * Invoice writes add their line totals to the rollup in the same transaction, one upsert per
+ * (month, region, tier, product) key. {@link #rebuild()} recomputes the whole table from the
+ * invoice items to repair drift, e.g. after invoices were changed outside the application. It
+ * corrects the table with the same additive upserts, so invoice writes never wait for it and none
+ * is lost or counted twice. Only one rebuild runs at a time across all instances: two at once
+ * would both add the same correction.
+ */
+@Service
+public class SalesRollupService {
+
+    private static final Logger log = LoggerFactory.getLogger(SalesRollupService.class);
+
+    // Keys are upserted in this order so concurrent writers lock rollup rows in the same order
+    private static final Comparator<SalesRollupId> KEY_ORDER = Comparator
+            .comparing(SalesRollupId::getPeriodStart)
+            .thenComparing(SalesRollupId::getRegionId)
+            .thenComparing(SalesRollupId::getTier)
+            .thenComparing(SalesRollupId::getProductId);
+
+    private static final int WRITE_BATCH_SIZE = 1000;
+
+    private record Snapshot(Map<SalesRollupId, SalesRollup> recomputed, List<SalesRollup> stored) {
+    }
+
+    private final SalesRollupRepository salesRollupRepository;
+    private final InvoiceRepository invoiceRepository;
+    private final InvoiceItemRepository invoiceItemRepository;
+    private final MaintenanceLock maintenanceLock;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate snapshotTransactionTemplate;
+    private final int rebuildChunkSize;
+    private final int rebuildParallelism;
+
+    public SalesRollupService(
+            SalesRollupRepository salesRollupRepository,
+            InvoiceRepository invoiceRepository,
+            InvoiceItemRepository invoiceItemRepository,
+            MaintenanceLock maintenanceLock,
+            PlatformTransactionManager transactionManager,
+            @Value("${crm.analytics.rollup.rebuild-chunk-size:10000}") int rebuildChunkSize,
+            @Value("${crm.analytics.rollup.rebuild-parallelism:4}") int rebuildParallelism) {
+        this.salesRollupRepository = salesRollupRepository;
+        this.invoiceRepository = invoiceRepository;
+        this.invoiceItemRepository = invoiceItemRepository;
+        this.maintenanceLock = maintenanceLock;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.snapshotTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.snapshotTransactionTemplate.setReadOnly(true);
+        this.snapshotTransactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.rebuildChunkSize = rebuildChunkSize;
+        this.rebuildParallelism = rebuildParallelism;
+    }
+
+    /**
+     * Adds the lines of newly written invoices to the rollup. Must run in the transaction that
+     * writes the invoices.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    void recordInvoices(Collection<InvoiceDraft> drafts) {
+        Map<SalesRollupId, SalesRollup> deltas = new TreeMap<>(KEY_ORDER);
+        for (InvoiceDraft draft : drafts) {
+            LocalDate periodStart = draft.createDto().getInvoiceDate().withDayOfMonth(1);
+            Long regionId = draft.customer().getRegion().getId();
+            String tier = draft.customer().getTier();
+            for (InvoiceDraft.Line line : draft.lines()) {
+                SalesRollupId key = new SalesRollupId(periodStart, regionId, tier, line.product().getId());
+                add(deltas, key, line.amount(), line.quantity(), 1);
+            }
+        }
+        salesRollupRepository.addAll(deltas.values());
+    }
+
+    @Transactional(readOnly = true)
+    public List<SalesSlice> summarize(List<SalesDimension> groupBy, LocalDate fromPeriod, LocalDate toPeriod,
+                                      Long regionId, String tier, Long productId) {
+        return salesRollupRepository.summarize(groupBy, fromPeriod, toPeriod, regionId, tier, productId);
+    }
+
+    /**
+     * Recomputes the rollup from invoice items.
+     * <p>
+     * The invoice items and the rollup are read in one REPEATABLE READ snapshot; invoice id
+     * ranges of {@code rebuild-chunk-size} are aggregated in parallel, each chunk in its own
+     * transaction sharing that snapshot (sequentially in the snapshot's transaction on H2, which
+     * cannot share one). The difference between the recomputed and the stored rows is then added to
+     * the table. Invoices committed after the snapshot already added themselves and stay counted
+     * once. Region and tier are taken from the customers as they are now.
+     * <p>
+     * The rebuild holds {@link MaintenanceLock#SALES_ROLLUP_REBUILD} from before its snapshot until
+     * its correction committed, so the next one starts from the corrected table.
+     *
+     * @return number of rollup rows as of the snapshot
+     * @throws ServiceException ROLLUP_REBUILD_RUNNING if a rebuild is running on any instance
+     */
+    public long rebuild() {
+        try (MaintenanceLock.Held lock = maintenanceLock.tryAcquire(MaintenanceLock.SALES_ROLLUP_REBUILD)) {
+            if (lock == null) {
+                throw new ServiceException(HttpStatus.CONFLICT, "ROLLUP_REBUILD_RUNNING",
+                        "A sales rollup rebuild is already running");
+            }
+            return doRebuild();
+        }
+    }
+
+    private long doRebuild() {
+        long start = System.currentTimeMillis();
+        Snapshot snapshot = snapshotTransactionTemplate.execute(status -> {
+            Long maxId = invoiceRepository.findMaxId();
+            List<SalesRollup> stored = salesRollupRepository.findAll();
+            return new Snapshot(aggregate(maxId != null ? maxId + 1 : 0, salesRollupRepository.exportSnapshot()), stored);
+        });
+
+        Map<SalesRollupId, SalesRollup> corrections = new TreeMap<>(KEY_ORDER);
+        snapshot.recomputed().values().forEach(rollup ->
+                add(corrections, rollup.getId(), rollup.getRevenue(), rollup.getQuantity(), rollup.getLineCount()));
+        snapshot.stored().forEach(rollup ->
+                add(corrections, rollup.getId(), rollup.getRevenue().negate(), -rollup.getQuantity(), -rollup.getLineCount()));
+        corrections.values().removeIf(correction -> correction.getRevenue().signum() == 0
+                && correction.getQuantity() == 0 && correction.getLineCount() == 0);
+
+        List<SalesRollup> rows = new ArrayList<>(corrections.values());
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int from = 0; from < rows.size(); from += WRITE_BATCH_SIZE) {
+                salesRollupRepository.addAll(rows.subList(from, Math.min(from + WRITE_BATCH_SIZE, rows.size())));
+            }
+            salesRollupRepository.deleteEmptyRollups();
+        });
+
+        log.info("Sales rollup rebuilt: {} rows, {} corrected in {} ms",
+                snapshot.recomputed().size(), rows.size(), System.currentTimeMillis() - start);
+        return snapshot.recomputed().size();
+    }
+
+    /**
+     * Aggregates the items of invoices below {@code endId} in chunks, in parallel transactions
+     * importing {@code snapshot}, or in the current transaction when there is none.
+     */
+    private Map<SalesRollupId, SalesRollup> aggregate(long endId, String snapshot) {
+        Map<SalesRollupId, SalesRollup> rollups = new ConcurrentHashMap<>();
+        if (snapshot == null) {
+            for (long fromId = 0; fromId < endId; fromId += rebuildChunkSize) {
+                merge(rollups, invoiceItemRepository.findSalesRollupRows(fromId, Math.min(fromId + rebuildChunkSize, endId)));
+            }
+            return rollups;
+        }
+
+        List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(rebuildParallelism);
+        try {
+            for (long fromId = 0; fromId < endId; fromId += rebuildChunkSize) {
+                long chunkFrom = fromId;
+                long chunkTo = Math.min(fromId + rebuildChunkSize, endId);
+                chunks.add(CompletableFuture.runAsync(() -> {
+                    List<SalesRollupRow> rows = snapshotTransactionTemplate.execute(status -> {
+                        salesRollupRepository.importSnapshot(snapshot);
+                        return invoiceItemRepository.findSalesRollupRows(chunkFrom, chunkTo);
+                    });
+                    merge(rollups, rows);
+                }, executor));
+            }
+            CompletableFuture.allOf(chunks.toArray(new CompletableFuture[0])).join();
+        } finally {
+            executor.shutdown();
+        }
+        log.debug("Sales rollup aggregated from {} invoice id chunks", chunks.size());
+        return rollups;
+    }
+
+    private static void merge(Map<SalesRollupId, SalesRollup> rollups, List<SalesRollupRow> rows) {
+        for (SalesRollupRow row : rows) {
+            SalesRollupId key = new SalesRollupId(
+                    LocalDate.of(row.year(), row.month(), 1), row.regionId(), row.tier(), row.productId());
+            add(rollups, key, row.revenue(), row.quantity(), row.lineCount());
+        }
+    }
+
+    private static void add(Map<SalesRollupId, SalesRollup> rollups, SalesRollupId key,
+                            BigDecimal revenue, long quantity, long lineCount) {
+        rollups.merge(key, new SalesRollup(key, revenue, quantity, lineCount), (existing, delta) -> new SalesRollup(
+                key,
+                existing.getRevenue().add(delta.getRevenue()),
+                existing.getQuantity() + delta.getQuantity(),
+                existing.getLineCount() + delta.getLineCount()));
+    }
+}
@@ -0,0 +1,32 @@
+package com.hygia.crm.service;
+
+import com.hygia.crm.dto.ErrorResponse;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Business rule violation raised by a service. Controllers translate it into an
+ * {@link ErrorResponse} with the carried HTTP status.
+ */
+public class ServiceException extends RuntimeException {
+
+    private final HttpStatus status;
+    private final String code;
+
+    public ServiceException(HttpStatus status, String code, String message) {
+        super(message);
+        this.status = status;
+        this.code = code;
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public ErrorResponse toErrorResponse() {
+        return new ErrorResponse(code, getMessage());
+    }
+}
@@ -0,0 +1,769 @@
+package com.hygia.crm.service;
+
+import com.hygia.crm.archive.SegmentFile;
+import com.hygia.crm.entity.Customer;
+import com.hygia.crm.entity.VisitLog;
+import com.hygia.crm.repository.VisitLogRepository;
+import com.hygia.crm.repository.VisitRow;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.Period;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Moves visits older than {@code crm.visits.archive.horizon} out of visit_log into one compressed
+ * {@link SegmentFile} per UTC month, keyed by customer id, and reads them back for a customer's
+ * visit listing.
+ * <p>
+ * {@link #archive} writes the segments of all whole months before the horizon, merged with what a
+ * month's segment already holds, and only then deletes the archived rows from visit_log by id, so
+ * visits added meanwhile stay. {@link #restore} puts a month back. All instances read the segments
+ * in {@code crm.visits.archive.dir}, which they must share, and notice another instance's changes
+ * within {@code rescan-interval}; archive waits that long before deleting rows, so no instance
+ * ever sees a visit in neither place. Archive and restore hold a file lock in the directory, so
+ * only one of them runs at a time across all instances.
+ */
+@Service
+public class VisitArchiveService {
+
+    /**
+     * Archived visits of a customer: how many, and the latest by visitAt, then id.
+     */
+    public record ArchivedVisits(long count, VisitRow latest) {
+    }
+
+    public record SegmentInfo(YearMonth month, int customers, long visits, long bytes) {
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(VisitArchiveService.class);
+
+    private static final String PREFIX = "visits-";
+    private static final String SUFFIX = ".seg";
+    private static final String LOCK_FILE = "maintenance.lock";
+    // Rows per delete or restore statement and transaction
+    private static final int CHUNK_SIZE = 1000;
+    private static final Comparator<VisitRow> BLOCK_ORDER = Comparator
+            .comparing(VisitRow::visitAt, OffsetDateTime.timeLineOrder())
+            .thenComparing(VisitRow::id);
+
+    private final VisitLogRepository visitLogRepository;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final Path dir;
+    private final Period horizon;
+    private final long rescanIntervalNanos;
+
+    private final ReentrantReadWriteLock segmentsLock = new ReentrantReadWriteLock();
+    // Guarded by segmentsLock
+    private final TreeMap<YearMonth, Segment> segments = new TreeMap<>();
+    private volatile long lastScanNanos;
+    // One archive or restore at a time: maintenanceLock in this JVM, the lock file across instances
+    private final ReentrantLock maintenanceLock = new ReentrantLock();
+    // Guarded by maintenanceLock
+    private FileLock maintenanceFileLock;
+
+    public VisitArchiveService(
+            VisitLogRepository visitLogRepository,
+            EntityManager entityManager,
+            PlatformTransactionManager transactionManager,
+            @Value("${crm.visits.archive.dir:data/visit-archive}") Path dir,
+            @Value("${crm.visits.archive.horizon:P2Y}") Period horizon,
+            @Value("${crm.visits.archive.rescan-interval:10s}") Duration rescanInterval) throws IOException {
+        this.visitLogRepository = visitLogRepository;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.dir = dir;
+        this.horizon = horizon;
+        this.rescanIntervalNanos = rescanInterval.toNanos();
+
+        Files.createDirectories(dir);
+        segmentsLock.writeLock().lock();
+        try {
+            scan();
+        } finally {
+            segmentsLock.writeLock().unlock();
+        }
+        if (!segments.isEmpty()) {
+            log.info("Visit archive has {} monthly segments, {} to {}", segments.size(), segments.firstKey(),
+                    segments.lastKey());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        segmentsLock.writeLock().lock();
+        try {
+            segments.values().forEach(Segment::close);
+            segments.clear();
+        } finally {
+            segmentsLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * One page of a customer's visits, hot and archived. When the page ends before the archived
+     * months in visitAt descending order, the default, visit_log alone answers it.
+     */
+    public Page<VisitRow> findVisits(Long customerId, Pageable pageable) {
+        Page<VisitRow> hot = visitLogRepository.findRowsByCustomerId(customerId, pageable);
+        return withSegments(archive -> {
+            long archived = count(archive, customerId);
+            if (archived == 0) {
+                return hot;
+            }
+            // A visit still in visit_log after archiving, or again after a restore, is counted once
+            long total = hot.getTotalElements() + archived - countInBoth(archive, customerId);
+            List<Sort.Order> orders = orders(pageable.getSort());
+            if (hot.getNumberOfElements() == pageable.getPageSize()
+                    && endsBeforeArchive(hot.getContent(), orders, archive, customerId)) {
+                return new PageImpl<>(hot.getContent(), pageable, total);
+            }
+
+            // Rows before the end of the page can come from either side
+            int end = (int) Math.min(pageable.getOffset() + pageable.getPageSize(), Integer.MAX_VALUE);
+            List<VisitRow> rows = merge(
+                    visitLogRepository.findRowsByCustomerId(customerId, Sort.by(orders), Limit.of(end)),
+                    readAll(archive, customerId), comparator(orders));
+            int from = (int) Math.min(pageable.getOffset(), rows.size());
+            return new PageImpl<>(rows.subList(from, Math.min(end, rows.size())), pageable, total);
+        });
+    }
+
+    /**
+     * A customer's visits after {@code position}, hot and archived, with the same keys in
+     * positions as {@link VisitLogRepository#scrollRowsByCustomerId}.
+     */
+    public Window<VisitRow> scrollVisits(Long customerId, Sort sort, int limit, KeysetScrollPosition position) {
+        Window<VisitRow> hot = visitLogRepository.scrollRowsByCustomerId(customerId, sort, limit, position);
+        return withSegments(archive -> {
+            if (count(archive, customerId) == 0) {
+                return hot;
+            }
+            List<Sort.Order> orders = orders(sort);
+            Comparator<VisitRow> order = comparator(orders);
+            List<VisitRow> content;
+            boolean hasNext;
+            if (hot.size() == limit && endsBeforeArchive(hot.getContent(), orders, archive, customerId)) {
+                content = hot.getContent();
+                hasNext = true;
+            } else {
+                List<VisitRow> archived = readAll(archive, customerId);
+                if (!position.isInitial()) {
+                    Map<String, Object> keys = position.getKeys();
+                    VisitRow after = new VisitRow((Long) keys.get("id"), (OffsetDateTime) keys.get("visitAt"),
+                            null, null, null, null);
+                    archived.removeIf(row -> order.compare(row, after) <= 0);
+                }
+                List<VisitRow> rows = merge(hot.getContent(), archived, order);
+                hasNext = hot.hasNext() || rows.size() > limit;
+                content = rows.subList(0, Math.min(limit, rows.size()));
+            }
+            return Window.from(content, index -> {
+                Map<String, Object> keys = new LinkedHashMap<>();
+                for (Sort.Order o : orders) {
+                    VisitRow row = content.get(index);
+                    keys.put(o.getProperty(), "id".equals(o.getProperty()) ? row.id() : row.visitAt());
+                }
+                return ScrollPosition.forward(keys);
+            }, hasNext);
+        });
+    }
+
+    /**
+     * A customer's latest {@code limit} visits, hot and archived, newest first, without a count.
+     */
+    public List<VisitRow> findRecentVisits(Long customerId, int limit) {
+        List<Sort.Order> orders = orders(Sort.by(Sort.Direction.DESC, "visitAt"));
+        List<VisitRow> hot = visitLogRepository.findRowsByCustomerId(customerId, Sort.by(orders), Limit.of(limit));
+        return withSegments(archive -> {
+            if (count(archive, customerId) == 0
+                    || (hot.size() == limit && endsBeforeArchive(hot, orders, archive, customerId))) {
+                return hot;
+            }
+            List<VisitRow> rows = merge(hot, readAll(archive, customerId), comparator(orders));
+            return rows.subList(0, Math.min(limit, rows.size()));
+        });
+    }
+
+    /**
+     * Archived visit count and latest archived visit of each of the given customers that has any.
+     */
+    public Map<Long, ArchivedVisits> findArchivedVisits(Collection<Long> customerIds) {
+        return withSegments(archive -> {
+            Map<Long, ArchivedVisits> result = new HashMap<>();
+            if (archive.isEmpty()) {
+                return result;
+            }
+            for (Long customerId : customerIds) {
+                long count = 0;
+                VisitRow latest = null;
+                // Newest month first; the latest visit is in the first segment that has the customer
+                for (Segment segment : archive.descendingMap().values()) {
+                    int inSegment = segment.file().count(customerId);
+                    if (inSegment > 0 && latest == null) {
+                        List<VisitRow> rows = read(segment, customerId);
+                        latest = rows.stream().max(BLOCK_ORDER).orElseThrow();
+                    }
+                    count += inSegment;
+                }
+                if (count > 0) {
+                    result.put(customerId, new ArchivedVisits(count, latest));
+                }
+            }
+            return result;
+        });
+    }
+
+    public List<SegmentInfo> listSegments() {
+        return withSegments(archive -> {
+            List<SegmentInfo> result = new ArrayList<>();
+            for (Map.Entry<YearMonth, Segment> entry : archive.entrySet()) {
+                SegmentFile file = entry.getValue().file();
+                result.add(new SegmentInfo(entry.getKey(), file.keyCount(), file.recordCount(),
+                        entry.getValue().size()));
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Archives every whole month before the horizon, oldest first.
+     *
+     * @return visits moved out of visit_log per month
+     * @throws ServiceException VISIT_ARCHIVE_BUSY while another archive or restore runs on any instance
+     */
+    public Map<YearMonth, Long> archive() {
+        lockMaintenance();
+        try {
+            long start = System.currentTimeMillis();
+            YearMonth cutoff = YearMonth.from(OffsetDateTime.now(ZoneOffset.UTC).minus(horizon));
+            Map<YearMonth, List<Long>> archivedIds = new LinkedHashMap<>();
+            OffsetDateTime next = visitLogRepository.findMinVisitAt();
+            while (next != null) {
+                YearMonth month = YearMonth.from(next.withOffsetSameInstant(ZoneOffset.UTC));
+                if (!month.isBefore(cutoff)) {
+                    break;
+                }
+                List<Long> ids = writeSegment(month);
+                if (!ids.isEmpty()) {
+                    archivedIds.put(month, ids);
+                }
+                next = visitLogRepository.findMinVisitAtFrom(startOf(month.plusMonths(1)));
+            }
+            if (archivedIds.isEmpty()) {
+                return Map.of();
+            }
+
+            // Other instances pick up the new segments before the rows leave visit_log
+            sleep(rescanIntervalNanos);
+            Map<YearMonth, Long> archived = new LinkedHashMap<>();
+            for (Map.Entry<YearMonth, List<Long>> entry : archivedIds.entrySet()) {
+                List<Long> ids = entry.getValue();
+                for (int from = 0; from < ids.size(); from += CHUNK_SIZE) {
+                    List<Long> chunk = ids.subList(from, Math.min(from + CHUNK_SIZE, ids.size()));
+                    transactionTemplate.executeWithoutResult(status -> visitLogRepository.deleteByIds(chunk));
+                }
+                archived.put(entry.getKey(), (long) ids.size());
+            }
+            log.info("Archived {} visits of {} months before {} in {} ms",
+                    archived.values().stream().mapToLong(Long::longValue).sum(), archived.size(), cutoff,
+                    System.currentTimeMillis() - start);
+            return archived;
+        } finally {
+            unlockMaintenance();
+        }
+    }
+
+    /**
+     * Puts the archived visits of {@code month} back into visit_log and deletes its segment. Visits
+     * already in visit_log are skipped, so an interrupted restore can simply be repeated. The next
+     * {@link #archive} archives the month again if it is still before the horizon.
+     *
+     * @return visits inserted
+     * @throws ServiceException ARCHIVE_MONTH_NOT_FOUND, VISIT_ARCHIVE_BUSY
+     */
+    public long restore(YearMonth month) {
+        lockMaintenance();
+        try {
+            long start = System.currentTimeMillis();
+            Path file = dir.resolve(fileName(month));
+            if (!Files.exists(file)) {
+                throw new ServiceException(HttpStatus.NOT_FOUND, "ARCHIVE_MONTH_NOT_FOUND",
+                        "No archived visits for " + month);
+            }
+            long restored = 0;
+            try (SegmentFile segment = SegmentFile.open(file)) {
+                List<JournaledVisit> chunk = new ArrayList<>(CHUNK_SIZE);
+                for (int i = 0; i < segment.keyCount(); i++) {
+                    for (byte[] record : segment.read(segment.keyAt(i))) {
+                        chunk.add(JournaledVisit.decode(record));
+                        if (chunk.size() == CHUNK_SIZE) {
+                            restored += insertMissing(chunk);
+                            chunk.clear();
+                        }
+                    }
+                }
+                restored += insertMissing(chunk);
+            }
+
+            segmentsLock.writeLock().lock();
+            try {
+                Segment segment = segments.remove(month);
+                if (segment != null) {
+                    segment.close();
+                }
+                Files.delete(file);
+                SegmentFile.syncDirectory(dir);
+            } finally {
+                segmentsLock.writeLock().unlock();
+            }
+            log.info("Restored {} archived visits of {} in {} ms", restored, month,
+                    System.currentTimeMillis() - start);
+            return restored;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not restore archived visits of " + month, e);
+        } finally {
+            unlockMaintenance();
+        }
+    }
+
+    /**
+     * Writes the segment of {@code month} from its rows in visit_log and the segment's previous
+     * content, if any, and publishes it.
+     *
+     * @return ids of the visit_log rows now in the segment; empty if there were none and the segment is unchanged
+     */
+    private List<Long> writeSegment(YearMonth month) {
+        Path target = dir.resolve(fileName(month));
+        List<Long> ids = new ArrayList<>();
+        readOnlyTransactionTemplate.executeWithoutResult(status -> {
+            try (SegmentFile previous = Files.exists(target) ? SegmentFile.open(target) : null;
+                 SegmentFile.Writer writer = SegmentFile.create(target);
+                 Stream<VisitLog> rows = visitLogRepository.streamByVisitAtWindowInCustomerOrder(
+                         startOf(month), startOf(month.plusMonths(1)))) {
+                int copied = 0;
+                long customerId = 0;
+                List<VisitRow> visits = new ArrayList<>();
+                Iterator<VisitLog> iterator = rows.iterator();
+                while (iterator.hasNext()) {
+                    VisitLog visit = iterator.next();
+                    if (!visits.isEmpty() && visit.getCustomer().getId() != customerId) {
+                        copied = writeCustomer(writer, previous, copied, customerId, visits);
+                        visits.clear();
+                    }
+                    customerId = visit.getCustomer().getId();
+                    visits.add(new VisitRow(visit.getId(), visit.getVisitAt(), visit.getType(), visit.getResult(),
+                            visit.getNotes(), visit.getNextFollowUpAt()));
+                    ids.add(visit.getId());
+                    if (ids.size() % CHUNK_SIZE == 0) {
+                        entityManager.clear();
+                    }
+                }
+                if (ids.isEmpty()) {
+                    return;
+                }
+                copied = writeCustomer(writer, previous, copied, customerId, visits);
+                copyUpTo(writer, previous, copied, Long.MAX_VALUE);
+                writer.finish();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write archive segment " + target, e);
+            }
+        });
+        if (!ids.isEmpty()) {
+            publish(month, target);
+        }
+        return ids;
+    }
+
+    /**
+     * Copies the previous segment's customers before {@code customerId}, then writes the customer's
+     * visits merged with its previously archived ones.
+     *
+     * @return index of the next previous-segment key to copy
+     */
+    private int writeCustomer(SegmentFile.Writer writer, SegmentFile previous, int copied, long customerId,
+                              List<VisitRow> visits) throws IOException {
+        copied = copyUpTo(writer, previous, copied, customerId);
+        List<VisitRow> merged = visits;
+        if (previous != null && copied < previous.keyCount() && previous.keyAt(copied) == customerId) {
+            merged = merge(visits, decode(previous.read(customerId)), BLOCK_ORDER);
+            copied++;
+        }
+        for (VisitRow visit : merged) {
+            writer.add(customerId, encode(customerId, visit));
+        }
+        return copied;
+    }
+
+    private static int copyUpTo(SegmentFile.Writer writer, SegmentFile previous, int copied, long beforeKey)
+            throws IOException {
+        if (previous == null) {
+            return copied;
+        }
+        while (copied < previous.keyCount() && previous.keyAt(copied) < beforeKey) {
+            long key = previous.keyAt(copied++);
+            for (byte[] record : previous.read(key)) {
+                writer.add(key, record);
+            }
+        }
+        return copied;
+    }
+
+    private long insertMissing(List<JournaledVisit> visits) {
+        if (visits.isEmpty()) {
+            return 0;
+        }
+        return transactionTemplate.execute(status -> {
+            Set<Long> existing = Set.copyOf(
+                    visitLogRepository.findExistingIds(visits.stream().map(JournaledVisit::id).toList()));
+            List<VisitLog> missing = new ArrayList<>(visits.size());
+            for (JournaledVisit visit : visits) {
+                if (!existing.contains(visit.id())) {
+                    VisitLog visitLog = new VisitLog();
+                    visitLog.setId(visit.id());
+                    visitLog.setCustomer(entityManager.getReference(Customer.class, visit.customerId()));
+                    visitLog.setVisitAt(visit.visitAt());
+                    visitLog.setType(visit.type());
+                    visitLog.setResult(visit.result());
+                    visitLog.setNotes(visit.notes());
+                    visitLog.setNextFollowUpAt(visit.nextFollowUpAt());
+                    missing.add(visitLog);
+                }
+            }
+            visitLogRepository.insertAll(missing);
+            entityManager.clear();
+            return (long) missing.size();
+        });
+    }
+
+    private void publish(YearMonth month, Path file) {
+        segmentsLock.writeLock().lock();
+        try {
+            Segment replaced = segments.put(month, Segment.open(file));
+            if (replaced != null) {
+                replaced.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open archive segment " + file, e);
+        } finally {
+            segmentsLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Runs {@code action} on the current segments, first picking up changes in the directory if
+     * the last look is older than the rescan interval.
+     */
+    private <T> T withSegments(Function<NavigableMap<YearMonth, Segment>, T> action) {
+        if (System.nanoTime() - lastScanNanos > rescanIntervalNanos) {
+            segmentsLock.writeLock().lock();
+            try {
+                if (System.nanoTime() - lastScanNanos > rescanIntervalNanos) {
+                    scan();
+                }
+            } finally {
+                segmentsLock.writeLock().unlock();
+            }
+        }
+        segmentsLock.readLock().lock();
+        try {
+            return action.apply(segments);
+        } finally {
+            segmentsLock.readLock().unlock();
+        }
+    }
+
+    // Write lock held
+    private void scan() {
+        Map<YearMonth, Path> found = new HashMap<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(file -> {
+                String name = file.getFileName().toString();
+                if (name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+                    found.put(YearMonth.parse(name.substring(PREFIX.length(), name.length() - SUFFIX.length())), file);
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Could not list visit archive {}, keeping the segments known so far", dir, e);
+            lastScanNanos = System.nanoTime();
+            return;
+        }
+
+        segments.entrySet().removeIf(entry -> {
+            if (found.containsKey(entry.getKey())) {
+                return false;
+            }
+            entry.getValue().close();
+            return true;
+        });
+        for (Map.Entry<YearMonth, Path> entry : found.entrySet()) {
+            Segment known = segments.get(entry.getKey());
+            try {
+                if (known == null || !known.isCurrent(entry.getValue())) {
+                    segments.put(entry.getKey(), Segment.open(entry.getValue()));
+                    if (known != null) {
+                        known.close();
+                    }
+                }
+            } catch (IOException e) {
+                log.error("Could not open visit archive segment {}", entry.getValue(), e);
+            }
+        }
+        lastScanNanos = System.nanoTime();
+    }
+
+    private void lockMaintenance() {
+        if (!maintenanceLock.tryLock()) {
+            throw maintenanceBusy();
+        }
+        try {
+            FileChannel channel = FileChannel.open(dir.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE);
+            FileLock lock = null;
+            try {
+                lock = channel.tryLock();
+            } finally {
+                if (lock == null) {
+                    channel.close();
+                }
+            }
+            if (lock == null) {
+                throw maintenanceBusy();
+            }
+            maintenanceFileLock = lock;
+        } catch (IOException e) {
+            maintenanceLock.unlock();
+            throw new UncheckedIOException("Could not lock visit archive " + dir, e);
+        } catch (RuntimeException e) {
+            maintenanceLock.unlock();
+            throw e;
+        }
+    }
+
+    private void unlockMaintenance() {
+        try {
+            // Closing the channel releases the lock
+            maintenanceFileLock.channel().close();
+        } catch (IOException e) {
+            log.warn("Could not release visit archive lock in {}", dir, e);
+        } finally {
+            maintenanceFileLock = null;
+            maintenanceLock.unlock();
+        }
+    }
+
+    private static ServiceException maintenanceBusy() {
+        return new ServiceException(HttpStatus.CONFLICT, "VISIT_ARCHIVE_BUSY",
+                "An archive or restore of visits is already running on this or another instance");
+    }
+
+    /**
+     * Visits of the customer both in visit_log and in a segment, between writing a segment and
+     * deleting its rows or between restoring rows and deleting the segment. Only visit_log rows
+     * from the archived months can be, and usually there are none, so blocks are rarely read.
+     */
+    private long countInBoth(NavigableMap<YearMonth, Segment> archive, Long customerId) {
+        List<Long> hotIds = visitLogRepository.findIdsByCustomerIdAndVisitAtBefore(customerId,
+                archiveEnd(archive, customerId));
+        if (hotIds.isEmpty()) {
+            return 0;
+        }
+        Set<Long> ids = new HashSet<>(hotIds);
+        return readAll(archive, customerId).stream().filter(row -> ids.contains(row.id())).count();
+    }
+
+    private static long count(NavigableMap<YearMonth, Segment> archive, Long customerId) {
+        long count = 0;
+        for (Segment segment : archive.values()) {
+            count += segment.file().count(customerId);
+        }
+        return count;
+    }
+
+    /**
+     * Whether every archived visit of the customer comes after {@code rows} in visitAt descending
+     * order: all archived visits happened before the month after the customer's newest segment.
+     */
+    private static boolean endsBeforeArchive(List<VisitRow> rows, List<Sort.Order> orders,
+                                             NavigableMap<YearMonth, Segment> archive, Long customerId) {
+        Sort.Order first = orders.get(0);
+        if (rows.isEmpty() || !"visitAt".equals(first.getProperty()) || first.isAscending()) {
+            return false;
+        }
+        OffsetDateTime boundary = archiveEnd(archive, customerId);
+        return boundary == null || !rows.get(rows.size() - 1).visitAt().isBefore(boundary);
+    }
+
+    /**
+     * Start of the month after the customer's newest segment, or null if no segment has the customer.
+     */
+    private static OffsetDateTime archiveEnd(NavigableMap<YearMonth, Segment> archive, Long customerId) {
+        for (Map.Entry<YearMonth, Segment> entry : archive.descendingMap().entrySet()) {
+            if (entry.getValue().file().count(customerId) > 0) {
+                return startOf(entry.getKey().plusMonths(1));
+            }
+        }
+        return null;
+    }
+
+    private static List<VisitRow> readAll(NavigableMap<YearMonth, Segment> archive, Long customerId) {
+        List<VisitRow> rows = new ArrayList<>();
+        for (Segment segment : archive.values()) {
+            rows.addAll(read(segment, customerId));
+        }
+        return rows;
+    }
+
+    private static List<VisitRow> read(Segment segment, Long customerId) {
+        try {
+            return decode(segment.file().read(customerId));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read archive segment " + segment.file().getFile(), e);
+        }
+    }
+
+    /**
+     * Both lists in {@code order}, once per id; a visit in both is taken from {@code preferred}.
+     */
+    private static List<VisitRow> merge(List<VisitRow> preferred, List<VisitRow> other, Comparator<VisitRow> order) {
+        Map<Long, VisitRow> byId = new HashMap<>();
+        for (VisitRow row : other) {
+            byId.put(row.id(), row);
+        }
+        for (VisitRow row : preferred) {
+            byId.put(row.id(), row);
+        }
+        List<VisitRow> rows = new ArrayList<>(byId.values());
+        rows.sort(order);
+        return rows;
+    }
+
+    // The requested order and then id, as KeysetScroll orders scrolled visits
+    private static List<Sort.Order> orders(Sort sort) {
+        List<Sort.Order> orders = new ArrayList<>(sort.toList());
+        if (sort.getOrderFor("id") == null) {
+            orders.add(Sort.Order.asc("id"));
+        }
+        return orders;
+    }
+
+    private static Comparator<VisitRow> comparator(List<Sort.Order> orders) {
+        Comparator<VisitRow> result = null;
+        for (Sort.Order order : orders) {
+            Comparator<VisitRow> key = switch (order.getProperty()) {
+                case "id" -> Comparator.comparing(VisitRow::id);
+                case "visitAt" -> Comparator.comparing(VisitRow::visitAt, OffsetDateTime.timeLineOrder());
+                default -> throw new IllegalArgumentException("Cannot sort visits by " + order.getProperty());
+            };
+            if (order.isDescending()) {
+                key = key.reversed();
+            }
+            result = result == null ? key : result.thenComparing(key);
+        }
+        return result;
+    }
+
+    private static List<VisitRow> decode(List<byte[]> records) {
+        List<VisitRow> rows = new ArrayList<>(records.size());
+        for (byte[] record : records) {
+            JournaledVisit visit = JournaledVisit.decode(record);
+            rows.add(new VisitRow(visit.id(), visit.visitAt(), visit.type(), visit.result(), visit.notes(),
+                    visit.nextFollowUpAt()));
+        }
+        return rows;
+    }
+
+    private static byte[] encode(long customerId, VisitRow visit) {
+        return new JournaledVisit(visit.id(), customerId, visit.visitAt(), visit.type(), visit.result(),
+                visit.notes(), visit.nextFollowUpAt()).encode();
+    }
+
+    private static OffsetDateTime startOf(YearMonth month) {
+        return month.atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC);
+    }
+
+    private static String fileName(YearMonth month) {
+        return PREFIX + month + SUFFIX;
+    }
+
+    private static void sleep(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted before deleting archived visits", e);
+        }
+    }
+
+    /**
+     * An open segment and the file attributes it was opened with, to notice when it was replaced.
+     */
+    private record Segment(SegmentFile file, FileTime modified, long size) {
+
+        static Segment open(Path path) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return new Segment(SegmentFile.open(path), attributes.lastModifiedTime(), attributes.size());
+        }
+
+        boolean isCurrent(Path path) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return attributes.lastModifiedTime().equals(modified) && attributes.size() == size;
+        }
+
+        void close() {
+            try {
+                file.close();
+            } catch (IOException e) {
+                log.debug("Could not close archive segment {}", file.getFile(), e);
+            }
+        }
+    }
+}
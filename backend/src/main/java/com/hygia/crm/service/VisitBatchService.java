@@ -0,0 +1,229 @@
+package com.hygia.crm.service;
+
+import com.hygia.crm.dto.ErrorResponse;
+import com.hygia.crm.dto.VisitBatchItemDto;
+import com.hygia.crm.dto.VisitBatchItemResultDto;
+import com.hygia.crm.dto.VisitBatchResultDto;
+import com.hygia.crm.entity.ChangeLogEntry;
+import com.hygia.crm.entity.Customer;
+import com.hygia.crm.entity.VisitLog;
+import com.hygia.crm.repository.CustomerRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk visit upload across many customers, e.g. an offline client catching up.
+ * <p>
+ * Rows are validated one by one and all referenced customers are checked with one query. The
+ * valid visits are then written in a single transaction so Hibernate can send them as JDBC
+ * batches, together with one activity summary update per customer. If that transaction fails,
+ * the visits are retried one by one so a single bad row does not take the rest down with it.
+ */
+@Service
+public class VisitBatchService {
+
+    public static final String STATUS_CREATED = "CREATED";
+    public static final String STATUS_FAILED = "FAILED";
+
+    private static final Logger log = LoggerFactory.getLogger(VisitBatchService.class);
+
+    private final CustomerRepository customerRepository;
+    private final CustomerActivityService customerActivityService;
+    private final ChangeLogService changeLogService;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+
+    public VisitBatchService(
+            CustomerRepository customerRepository,
+            CustomerActivityService customerActivityService,
+            ChangeLogService changeLogService,
+            EntityManager entityManager,
+            PlatformTransactionManager transactionManager,
+            Validator validator) {
+        this.customerRepository = customerRepository;
+        this.customerActivityService = customerActivityService;
+        this.changeLogService = changeLogService;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.validator = validator;
+    }
+
+    public VisitBatchResultDto createVisits(List<VisitBatchItemDto> createDtos) {
+        long startNanos = System.nanoTime();
+        VisitBatchItemResultDto[] results = new VisitBatchItemResultDto[createDtos.size()];
+
+        // Bean validation and the follow-up rule first, so the lookup only sees well-formed rows
+        List<Integer> valid = new ArrayList<>();
+        Set<String> seenClientIds = new HashSet<>();
+        for (int i = 0; i < createDtos.size(); i++) {
+            VisitBatchItemDto createDto = createDtos.get(i);
+            ErrorResponse error = validate(createDto);
+            if (error == null && !seenClientIds.add(createDto.getClientId())) {
+                error = new ErrorResponse("DUPLICATE_CLIENT_ID",
+                        "Client ID " + createDto.getClientId() + " appears more than once in the batch");
+            }
+            if (error != null) {
+                results[i] = failure(i, createDto, error);
+            } else {
+                valid.add(i);
+            }
+        }
+
+        List<Integer> prepared = new ArrayList<>();
+        if (!valid.isEmpty()) {
+            Set<Long> customerIds = valid.stream()
+                    .map(i -> createDtos.get(i).getCustomerId())
+                    .collect(Collectors.toSet());
+            Set<Long> existingIds = new HashSet<>(customerRepository.findExistingIds(customerIds));
+            for (int i : valid) {
+                VisitBatchItemDto createDto = createDtos.get(i);
+                if (existingIds.contains(createDto.getCustomerId())) {
+                    prepared.add(i);
+                } else {
+                    results[i] = failure(i, createDto, new ErrorResponse(
+                        "CUSTOMER_NOT_FOUND",
+                        "Customer with ID " + createDto.getCustomerId() + " not found"
+                    ));
+                }
+            }
+        }
+
+        if (!prepared.isEmpty()) {
+            try {
+                List<Long> visitIds = transactionTemplate.execute(status -> persist(createDtos, prepared));
+                for (int i = 0; i < prepared.size(); i++) {
+                    int index = prepared.get(i);
+                    results[index] = success(index, createDtos.get(index), visitIds.get(i));
+                }
+            } catch (RuntimeException e) {
+                log.warn("Visit batch of {} visits failed, retrying visits individually: {}", prepared.size(), e.getMessage());
+                retryIndividually(createDtos, prepared, results);
+            }
+        }
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+        int succeeded = (int) Arrays.stream(results)
+                .filter(result -> STATUS_CREATED.equals(result.getStatus()))
+                .count();
+        int failed = results.length - succeeded;
+
+        log.info("Visit batch finished: {} visits ({} created, {} failed) in {} ms",
+                results.length, succeeded, failed, elapsedNanos / 1_000_000);
+
+        return new VisitBatchResultDto(
+                results.length,
+                succeeded,
+                failed,
+                elapsedNanos / 1_000_000,
+                Arrays.asList(results));
+    }
+
+    private void retryIndividually(List<VisitBatchItemDto> createDtos, List<Integer> prepared,
+                                   VisitBatchItemResultDto[] results) {
+        for (int index : prepared) {
+            VisitBatchItemDto createDto = createDtos.get(index);
+            try {
+                List<Long> visitIds = transactionTemplate.execute(status -> persist(createDtos, List.of(index)));
+                results[index] = success(index, createDto, visitIds.get(0));
+            } catch (RuntimeException e) {
+                results[index] = failure(index, createDto, new ErrorResponse(
+                    "VISIT_WRITE_FAILED",
+                    "Visit " + createDto.getClientId() + " could not be saved: " + e.getMessage()
+                ));
+            }
+        }
+    }
+
+    private List<Long> persist(List<VisitBatchItemDto> createDtos, List<Integer> indexes) {
+        List<Long> visitIds = new ArrayList<>(indexes.size());
+        for (int index : indexes) {
+            VisitBatchItemDto createDto = createDtos.get(index);
+            VisitLog visitLog = new VisitLog();
+            visitLog.setCustomer(entityManager.getReference(Customer.class, createDto.getCustomerId()));
+            visitLog.setVisitAt(createDto.getVisitAt());
+            visitLog.setType(createDto.getType());
+            visitLog.setResult(createDto.getResult());
+            visitLog.setNotes(createDto.getNotes());
+            visitLog.setNextFollowUpAt(createDto.getNextFollowUpAt());
+            entityManager.persist(visitLog);
+            visitIds.add(visitLog.getId());
+        }
+        recordActivity(indexes.stream().map(createDtos::get).toList());
+        changeLogService.record(ChangeLogEntry.VISIT, visitIds);
+        entityManager.flush();
+        entityManager.clear();
+        return visitIds;
+    }
+
+    /**
+     * One activity summary update per customer, with its latest visit of the batch, in customer id
+     * order so concurrent batches lock the summary rows in the same order.
+     */
+    private void recordActivity(List<VisitBatchItemDto> createDtos) {
+        Map<Long, List<VisitBatchItemDto>> visitsByCustomer = createDtos.stream()
+                .collect(Collectors.groupingBy(VisitBatchItemDto::getCustomerId, TreeMap::new, Collectors.toList()));
+        visitsByCustomer.forEach((customerId, visits) -> {
+            VisitBatchItemDto latest = visits.get(0);
+            for (VisitBatchItemDto visit : visits) {
+                if (!visit.getVisitAt().isBefore(latest.getVisitAt())) {
+                    latest = visit;
+                }
+            }
+            customerActivityService.recordVisits(customerId, visits.size(), latest.getVisitAt(), latest.getNextFollowUpAt());
+        });
+    }
+
+    private ErrorResponse validate(VisitBatchItemDto createDto) {
+        if (createDto == null) {
+            return new ErrorResponse("VALIDATION_FAILED", "Visit must not be null");
+        }
+        Set<ConstraintViolation<VisitBatchItemDto>> violations = validator.validate(createDto);
+        if (!violations.isEmpty()) {
+            String message = violations.stream()
+                    .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining("; "));
+            return new ErrorResponse("VALIDATION_FAILED", message);
+        }
+        if (createDto.getNextFollowUpAt() != null && createDto.getNextFollowUpAt().isBefore(createDto.getVisitAt())) {
+            return new ErrorResponse("VALIDATION_FAILED", "nextFollowUpAt must be greater than or equal to visitAt");
+        }
+        return null;
+    }
+
+    private static VisitBatchItemResultDto success(int index, VisitBatchItemDto createDto, Long visitId) {
+        return new VisitBatchItemResultDto(
+                index,
+                createDto.getClientId(),
+                createDto.getCustomerId(),
+                STATUS_CREATED,
+                visitId,
+                null);
+    }
+
+    private static VisitBatchItemResultDto failure(int index, VisitBatchItemDto createDto, ErrorResponse error) {
+        return new VisitBatchItemResultDto(
+                index,
+                createDto != null ? createDto.getClientId() : null,
+                createDto != null ? createDto.getCustomerId() : null,
+                STATUS_FAILED,
+                null,
+                error);
+    }
+}
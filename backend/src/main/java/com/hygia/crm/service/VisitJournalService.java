@@ -0,0 +1,425 @@
+package com.hygia.crm.service;
+
+import com.hygia.crm.dto.VisitCreateDto;
+import com.hygia.crm.entity.ChangeLogEntry;
+import com.hygia.crm.entity.Customer;
+import com.hygia.crm.entity.JournalCheckpoint;
+import com.hygia.crm.entity.VisitLog;
+import com.hygia.crm.journal.AppendOnlyJournal;
+import com.hygia.crm.repository.CustomerRepository;
+import com.hygia.crm.repository.JournalCheckpointRepository;
+import com.hygia.crm.repository.VisitLogRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind visit ingestion, active with {@code crm.visits.ingest.mode=journal}.
+ * <p>
+ * {@link #append} checks the customer, takes an id from visit_log_seq, appends the visit to a
+ * local {@link AppendOnlyJournal} and returns once it is on disk. If forcing it to disk fails the
+ * visit is still acknowledged, since a retry would add it twice, and written from memory: the
+ * journal is then unusable until restart and no longer waited for. A background thread inserts
+ * journaled visits into visit_log in batches of up to {@code batch-size}, at least every
+ * {@code max-delay}, and updates the activity summaries and the {@link JournalCheckpoint} in the
+ * same transaction. On startup everything after the checkpoint is replayed, so each visit is
+ * applied exactly once however the process stopped.
+ * <p>
+ * Readers of a customer's visits call {@link #awaitApplied} first, which waits for that
+ * customer's acknowledged visits to be written.
+ */
+@Service
+@ConditionalOnProperty(name = "crm.visits.ingest.mode", havingValue = "journal")
+public class VisitJournalService {
+
+    private static final Logger log = LoggerFactory.getLogger(VisitJournalService.class);
+
+    // Known customers are cached to skip the lookup; customers are never deleted
+    private static final int MAX_KNOWN_CUSTOMERS = 100_000;
+    private static final long MAX_RETRY_DELAY_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final VisitLogRepository visitLogRepository;
+    private final CustomerRepository customerRepository;
+    private final JournalCheckpointRepository checkpointRepository;
+    private final CustomerActivityService customerActivityService;
+    private final ChangeLogService changeLogService;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final SessionFactory sessionFactory;
+    private final BeforeExecutionGenerator idGenerator;
+    private final String checkpointName;
+    private final int batchSize;
+    private final int maxPending;
+    private final long maxDelayNanos;
+
+    private final AppendOnlyJournal journal;
+    // Durable but not yet applied, by journal sequence number
+    private final ConcurrentSkipListMap<Long, JournaledVisit> pending = new ConcurrentSkipListMap<>();
+    // The map's size() walks all of it
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    // Customer id -> sequence number of its latest pending visit
+    private final Map<Long, Long> latestPendingByCustomer = new ConcurrentHashMap<>();
+    private final Set<Long> knownCustomers = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock appliedLock = new ReentrantLock();
+    private final Condition appliedAdvanced = appliedLock.newCondition();
+    private volatile long appliedSeq;
+    // Set once a sync failed: pending visits are then written without waiting for the disk
+    private volatile boolean syncFailed;
+    private volatile boolean running = true;
+    // Held by the writer while it takes and writes a batch
+    private final ReentrantLock drainLock = new ReentrantLock();
+    private volatile boolean writerPaused;
+    private final Thread writer;
+
+    private final Timer drainTimer;
+    private final Counter rejectedCounter;
+
+    public VisitJournalService(
+            VisitLogRepository visitLogRepository,
+            CustomerRepository customerRepository,
+            JournalCheckpointRepository checkpointRepository,
+            CustomerActivityService customerActivityService,
+            ChangeLogService changeLogService,
+            EntityManager entityManager,
+            EntityManagerFactory entityManagerFactory,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${crm.visits.ingest.journal.dir:data/visit-journal}") Path dir,
+            @Value("${crm.visits.ingest.journal.segment-size:64MB}") DataSize segmentSize,
+            @Value("${crm.visits.ingest.journal.checkpoint-name:visits}") String checkpointName,
+            @Value("${crm.visits.ingest.batch-size:1000}") int batchSize,
+            @Value("${crm.visits.ingest.max-delay:200ms}") Duration maxDelay,
+            @Value("${crm.visits.ingest.max-pending:100000}") int maxPending) throws IOException {
+        this.visitLogRepository = visitLogRepository;
+        this.customerRepository = customerRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.customerActivityService = customerActivityService;
+        this.changeLogService = changeLogService;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.checkpointName = checkpointName;
+        this.batchSize = batchSize;
+        this.maxPending = maxPending;
+        this.maxDelayNanos = maxDelay.toNanos();
+
+        SessionFactoryImplementor factory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        this.sessionFactory = factory;
+        this.idGenerator = (BeforeExecutionGenerator) factory.getMappingMetamodel()
+                .getEntityDescriptor(VisitLog.class).getGenerator();
+
+        this.appliedSeq = transactionTemplate.execute(status -> checkpointRepository.findById(checkpointName)
+                .orElseGet(() -> checkpointRepository.save(new JournalCheckpoint(checkpointName, 0)))
+                .getLastSeq());
+        this.journal = AppendOnlyJournal.open(dir, segmentSize.toBytes(), appliedSeq, entry -> {
+            JournaledVisit visit = JournaledVisit.decode(entry.payload());
+            latestPendingByCustomer.merge(visit.customerId(), entry.seq(), Math::max);
+            pending.put(entry.seq(), visit);
+            pendingCount.incrementAndGet();
+        });
+        if (pendingCount.get() > 0) {
+            log.info("Replaying {} journaled visits after checkpoint {}", pendingCount.get(), appliedSeq);
+        }
+
+        this.drainTimer = Timer.builder("crm.visits.journal.drain")
+                .description("Time to write one batch of journaled visits to the database")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("crm.visits.journal.rejected")
+                .description("Journaled visits the database refused, logged and skipped")
+                .register(meterRegistry);
+        Gauge.builder("crm.visits.journal.pending", pendingCount, AtomicInteger::get)
+                .description("Acknowledged visits not yet written to the database")
+                .register(meterRegistry);
+
+        this.writer = new Thread(this::drainLoop, "visit-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException, InterruptedException {
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+        journal.close();
+        if (pendingCount.get() > 0) {
+            log.info("{} journaled visits left for the next start", pendingCount.get());
+        }
+    }
+
+    /**
+     * Journals a new visit; it is written to visit_log shortly after.
+     *
+     * @return the visit with its final id, not attached to a persistence context
+     * @throws ServiceException CUSTOMER_NOT_FOUND, VISIT_JOURNAL_FULL when the database has fallen
+     *                          {@code max-pending} visits behind
+     */
+    public VisitLog append(Long customerId, VisitCreateDto createDto) {
+        if (pendingCount.get() >= maxPending) {
+            throw new ServiceException(HttpStatus.SERVICE_UNAVAILABLE, "VISIT_JOURNAL_FULL",
+                    "Too many visits waiting to be written, please retry");
+        }
+        if (!knownCustomers.contains(customerId)) {
+            if (!customerRepository.existsById(customerId)) {
+                throw new ServiceException(HttpStatus.NOT_FOUND, "CUSTOMER_NOT_FOUND",
+                        "Customer with ID " + customerId + " not found");
+            }
+            if (knownCustomers.size() >= MAX_KNOWN_CUSTOMERS) {
+                knownCustomers.clear();
+            }
+            knownCustomers.add(customerId);
+        }
+
+        JournaledVisit visit = new JournaledVisit(nextVisitId(), customerId, createDto.getVisitAt(),
+                createDto.getType(), createDto.getResult(), createDto.getNotes(), createDto.getNextFollowUpAt());
+        try {
+            long seq = journal.write(visit.encode());
+            // Registered before it can be applied, so readers never miss it
+            latestPendingByCustomer.merge(customerId, seq, Math::max);
+            pending.put(seq, visit);
+            boolean wake = pendingCount.incrementAndGet() >= batchSize;
+            try {
+                journal.sync(seq);
+            } catch (IOException e) {
+                log.error("Could not force journaled visit {} (journal seq {}) to disk, writing it from memory",
+                        visit.id(), seq, e);
+                syncFailed = true;
+                wake = true;
+            }
+            if (wake) {
+                LockSupport.unpark(writer);
+            }
+        } catch (IOException e) {
+            // Not added to pending: nothing of it is applied, and a torn record is cut off on the next start
+            throw new UncheckedIOException("Could not journal visit", e);
+        }
+        return toEntity(visit);
+    }
+
+    /**
+     * Waits until every visit of the customer acknowledged so far is in visit_log.
+     *
+     * @return false if that took longer than {@code timeout}
+     */
+    public boolean awaitApplied(Long customerId, Duration timeout) {
+        Long seq = latestPendingByCustomer.get(customerId);
+        if (seq == null || seq <= appliedSeq) {
+            return true;
+        }
+        LockSupport.unpark(writer);
+        long nanos = timeout.toNanos();
+        appliedLock.lock();
+        try {
+            while (appliedSeq < seq) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = appliedAdvanced.awaitNanos(nanos);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            appliedLock.unlock();
+        }
+    }
+
+    /**
+     * Number of acknowledged visits not yet written to the database.
+     */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * Stops the writer once its current batch is written, so that tests can leave visits acknowledged but
+     * unwritten as a crash would.
+     */
+    void pauseWriter() {
+        writerPaused = true;
+        drainLock.lock();
+        drainLock.unlock();
+    }
+
+    void resumeWriter() {
+        writerPaused = false;
+        LockSupport.unpark(writer);
+    }
+
+    private long nextVisitId() {
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            return (Long) idGenerator.generate((SharedSessionContractImplementor) session, null, null,
+                    EventType.INSERT);
+        }
+    }
+
+    private void drainLoop() {
+        long retryDelayNanos = maxDelayNanos;
+        while (true) {
+            int attempted = 0;
+            try {
+                List<Map.Entry<Long, JournaledVisit>> batch;
+                drainLock.lock();
+                try {
+                    batch = writerPaused ? List.of() : nextBatch();
+                    attempted = batch.size();
+                    if (!batch.isEmpty()) {
+                        drainTimer.record(() -> apply(batch));
+                    }
+                } finally {
+                    drainLock.unlock();
+                }
+                if (batch.isEmpty()) {
+                    if (!running) {
+                        return;
+                    }
+                    LockSupport.parkNanos(maxDelayNanos);
+                    continue;
+                }
+                retryDelayNanos = maxDelayNanos;
+            } catch (Throwable e) {
+                // Errors too: the visits are acknowledged, so this thread must not die
+                if (!running) {
+                    return;
+                }
+                log.warn("Could not write {} journaled visits, retrying in {} ms", attempted,
+                        TimeUnit.NANOSECONDS.toMillis(retryDelayNanos), e);
+                LockSupport.parkNanos(retryDelayNanos);
+                retryDelayNanos = Math.min(retryDelayNanos * 2, MAX_RETRY_DELAY_NANOS);
+            }
+        }
+    }
+
+    // Consecutive durable records after the checkpoint; a writer may still be between write and put
+    private List<Map.Entry<Long, JournaledVisit>> nextBatch() {
+        List<Map.Entry<Long, JournaledVisit>> batch = new ArrayList<>();
+        long next = appliedSeq + 1;
+        long durable = syncFailed ? Long.MAX_VALUE : journal.getDurableSeq();
+        for (Map.Entry<Long, JournaledVisit> entry : pending.tailMap(appliedSeq, false).entrySet()) {
+            if (entry.getKey() != next || next > durable || batch.size() >= batchSize) {
+                break;
+            }
+            batch.add(entry);
+            next++;
+        }
+        return batch;
+    }
+
+    private void apply(List<Map.Entry<Long, JournaledVisit>> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> write(batch));
+        } catch (DataIntegrityViolationException e) {
+            // One bad visit must not hold up the rest: write them one at a time and skip the culprits
+            log.warn("Batch of {} journaled visits refused, writing them one by one", batch.size(), e);
+            for (Map.Entry<Long, JournaledVisit> entry : batch) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> write(List.of(entry)));
+                } catch (DataIntegrityViolationException refused) {
+                    log.error("Skipping journaled visit {} (journal seq {}): {}", entry.getValue(), entry.getKey(),
+                            refused.getMostSpecificCause().getMessage());
+                    rejectedCounter.increment();
+                    transactionTemplate.executeWithoutResult(status -> advanceCheckpoint(entry.getKey()));
+                    markApplied(List.of(entry));
+                    continue;
+                }
+                markApplied(List.of(entry));
+            }
+            return;
+        }
+        markApplied(batch);
+    }
+
+    private void write(List<Map.Entry<Long, JournaledVisit>> batch) {
+        List<VisitLog> visits = new ArrayList<>(batch.size());
+        Map<Long, JournaledVisit> latestByCustomer = new LinkedHashMap<>();
+        Map<Long, Long> countByCustomer = new LinkedHashMap<>();
+        for (Map.Entry<Long, JournaledVisit> entry : batch) {
+            JournaledVisit visit = entry.getValue();
+            VisitLog visitLog = toEntity(visit);
+            visitLog.setCustomer(entityManager.getReference(Customer.class, visit.customerId()));
+            visits.add(visitLog);
+            countByCustomer.merge(visit.customerId(), 1L, Long::sum);
+            latestByCustomer.merge(visit.customerId(), visit,
+                    (a, b) -> b.visitAt().isBefore(a.visitAt()) ? a : b);
+        }
+        visitLogRepository.insertAll(visits);
+        changeLogService.record(ChangeLogEntry.VISIT, visits.stream().map(VisitLog::getId).toList());
+        for (JournaledVisit latest : latestByCustomer.values()) {
+            customerActivityService.recordVisits(latest.customerId(), countByCustomer.get(latest.customerId()),
+                    latest.visitAt(), latest.nextFollowUpAt());
+        }
+        advanceCheckpoint(batch.get(batch.size() - 1).getKey());
+    }
+
+    private void advanceCheckpoint(long seq) {
+        if (checkpointRepository.advance(checkpointName, seq) == 0) {
+            throw new IllegalStateException("Journal checkpoint " + checkpointName + " is already at or past " + seq
+                    + "; is another instance using the same checkpoint name?");
+        }
+    }
+
+    private void markApplied(List<Map.Entry<Long, JournaledVisit>> batch) {
+        long last = batch.get(batch.size() - 1).getKey();
+        for (Map.Entry<Long, JournaledVisit> entry : batch) {
+            pending.remove(entry.getKey());
+            pendingCount.decrementAndGet();
+            latestPendingByCustomer.remove(entry.getValue().customerId(), entry.getKey());
+        }
+        appliedLock.lock();
+        try {
+            appliedSeq = last;
+            appliedAdvanced.signalAll();
+        } finally {
+            appliedLock.unlock();
+        }
+        journal.deleteUpTo(last);
+    }
+
+    private static VisitLog toEntity(JournaledVisit visit) {
+        VisitLog visitLog = new VisitLog();
+        visitLog.setId(visit.id());
+        visitLog.setVisitAt(visit.visitAt());
+        visitLog.setType(visit.type());
+        visitLog.setResult(visit.result());
+        visitLog.setNotes(visit.notes());
+        visitLog.setNextFollowUpAt(visit.nextFollowUpAt());
+        return visitLog;
+    }
+}
@@ -0,0 +1,62 @@
+package com.hygia.crm.service;
+
+import com.hygia.crm.dto.VisitCreateDto;
+import com.hygia.crm.entity.ChangeLogEntry;
+import com.hygia.crm.entity.Customer;
+import com.hygia.crm.entity.VisitLog;
+import com.hygia.crm.repository.CustomerRepository;
+import com.hygia.crm.repository.VisitLogRepository;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+@Service
+public class VisitService {
+
+    private final VisitLogRepository visitLogRepository;
+    private final CustomerRepository customerRepository;
+    private final CustomerActivityService customerActivityService;
+    private final ChangeLogService changeLogService;
+
+    public VisitService(
+            VisitLogRepository visitLogRepository,
+            CustomerRepository customerRepository,
+            CustomerActivityService customerActivityService,
+            ChangeLogService changeLogService) {
+        this.visitLogRepository = visitLogRepository;
+        this.customerRepository = customerRepository;
+        this.customerActivityService = customerActivityService;
+        this.changeLogService = changeLogService;
+    }
+
+    /**
+     * Saves a visit, updates the customer's activity summary and logs the visit for sync in the same
+     * transaction.
+     *
+     * @throws ServiceException CUSTOMER_NOT_FOUND
+     */
+    @Transactional
+    public VisitLog createVisit(Long customerId, VisitCreateDto createDto) {
+        // Check if customer exists
+        Customer customer = customerRepository.findById(customerId)
+                .orElseThrow(() -> new ServiceException(
+                    HttpStatus.NOT_FOUND,
+                    "CUSTOMER_NOT_FOUND",
+                    "Customer with ID " + customerId + " not found"
+                ));
+
+        // Create visit log
+        VisitLog visitLog = new VisitLog();
+        visitLog.setCustomer(customer);
+        visitLog.setVisitAt(createDto.getVisitAt());
+        visitLog.setType(createDto.getType());
+        visitLog.setResult(createDto.getResult());
+        visitLog.setNotes(createDto.getNotes());
+        visitLog.setNextFollowUpAt(createDto.getNextFollowUpAt());
+
+        VisitLog savedVisitLog = visitLogRepository.save(visitLog);
+        customerActivityService.recordVisits(customerId, 1, savedVisitLog.getVisitAt(), savedVisitLog.getNextFollowUpAt());
+        changeLogService.record(ChangeLogEntry.VISIT, savedVisitLog.getId());
+        return savedVisitLog;
+    }
+}
@@ -0,0 +1,49 @@
+package db.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Sequences for the ids Hibernate now allocates 50 at a time instead of reading them back from
+ * identity columns, so inserts can be batched.
+ * <p>
+ * Each sequence starts above the highest id already in its table. Hibernate's pooled optimizer
+ * takes a sequence value as the top of its next block of 50, hence max + 50. A SQL script cannot
+ * compute the start on both H2 and PostgreSQL, so this is a Java migration. The identity columns
+ * stay as they are; Hibernate always supplies the id.
+ */
+public class V2__Id_sequences extends BaseJavaMigration {
+
+    private static final int INCREMENT = 50;
+
+    // Sequence -> table, as in the entities' @SequenceGenerator
+    private static final Map<String, String> SEQUENCES = new LinkedHashMap<>();
+
+    static {
+        SEQUENCES.put("customer_seq", "customer");
+        SEQUENCES.put("invoice_seq", "invoice");
+        SEQUENCES.put("invoice_item_seq", "invoice_item");
+        SEQUENCES.put("visit_log_seq", "visit_log");
+    }
+
+    @Override
+    public void migrate(Context context) throws SQLException {
+        try (Statement statement = context.getConnection().createStatement()) {
+            for (Map.Entry<String, String> sequence : SEQUENCES.entrySet()) {
+                long maxId;
+                try (ResultSet result = statement.executeQuery("select coalesce(max(id), 0) from " + sequence.getValue())) {
+                    result.next();
+                    maxId = result.getLong(1);
+                }
+                statement.execute("create sequence " + sequence.getKey() + " start with " + (maxId + INCREMENT)
+                        + " increment by " + INCREMENT);
+            }
+        }
+    }
+}
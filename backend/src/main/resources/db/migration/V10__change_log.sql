@@ -0,0 +1,13 @@
+-- Outbox of committed writes, read by GET /api/sync/changes; see ChangeLogService.
+-- One row per entity written in a transaction, inserted when it starts to commit and stamped with the
+-- database time the transaction started. Ids do not follow commit order.
+create table change_log (
+    id bigint generated by default as identity,
+    entity_type varchar(20) not null,
+    entity_id bigint not null,
+    changed_at timestamp(6) with time zone not null,
+    constraint pk_change_log primary key (id)
+);
+
+-- Latest settled change, to hold the feed back behind transactions still committing; retention purge
+create index idx_change_log_changed_at on change_log (changed_at, id);
@@ -0,0 +1,9 @@
+-- One row per maintenance job that must not run on two instances at once (MaintenanceLock). The job holds
+-- its row locked for as long as it runs.
+
+create table maintenance_lock (
+    name varchar(64) not null,
+    constraint pk_maintenance_lock primary key (name)
+);
+
+insert into maintenance_lock (name) values ('sales-rollup-rebuild');
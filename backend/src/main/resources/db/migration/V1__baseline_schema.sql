@@ -0,0 +1,78 @@
+-- Schema as Hibernate generated it from the entities before migrations owned it: every id an identity
+-- column. Databases created that way are baselined at this version (spring.flyway.baseline-on-migrate)
+-- instead of running it, so everything added since goes into the later versions.
+
+create table region (
+    id bigint generated by default as identity,
+    name varchar(255) not null,
+    state varchar(255) not null,
+    constraint pk_region primary key (id),
+    constraint uk_region_name unique (name)
+);
+
+create table product (
+    id bigint generated by default as identity,
+    item_code varchar(255) not null,
+    description text,
+    default_unit_price numeric(19, 2),
+    company_tag varchar(255),
+    product_type varchar(255),
+    barcode varchar(255),
+    active boolean not null,
+    constraint pk_product primary key (id),
+    constraint uk_product_item_code unique (item_code)
+);
+
+create table customer (
+    id bigint generated by default as identity,
+    name_std varchar(255) not null,
+    is_prospect boolean not null,
+    region_id bigint not null,
+    address_text varchar(255),
+    phone varchar(255),
+    email varchar(255),
+    payment_terms varchar(255),
+    notes text,
+    tier varchar(255) not null,
+    constraint pk_customer primary key (id),
+    constraint uk_customer_name_std unique (name_std),
+    constraint fk_customer_region foreign key (region_id) references region (id)
+);
+
+create table visit_log (
+    id bigint generated by default as identity,
+    customer_id bigint not null,
+    visit_at timestamp(6) with time zone not null,
+    type varchar(20),
+    result varchar(20),
+    notes text,
+    next_follow_up_at timestamp(6) with time zone,
+    constraint pk_visit_log primary key (id),
+    constraint fk_visit_log_customer foreign key (customer_id) references customer (id)
+);
+
+create index idx_customer_visit_at on visit_log (customer_id, visit_at);
+
+create table invoice (
+    id bigint generated by default as identity,
+    invoice_number varchar(255) not null,
+    customer_id bigint not null,
+    invoice_date date not null,
+    total_amount numeric(19, 2) not null,
+    note text,
+    constraint pk_invoice primary key (id),
+    constraint uk_invoice_number_customer unique (invoice_number, customer_id),
+    constraint fk_invoice_customer foreign key (customer_id) references customer (id)
+);
+
+create table invoice_item (
+    id bigint generated by default as identity,
+    invoice_id bigint not null,
+    product_id bigint not null,
+    quantity integer not null,
+    unit_price numeric(19, 2) not null,
+    amount numeric(19, 2) not null,
+    constraint pk_invoice_item primary key (id),
+    constraint fk_invoice_item_invoice foreign key (invoice_id) references invoice (id),
+    constraint fk_invoice_item_product foreign key (product_id) references product (id)
+);
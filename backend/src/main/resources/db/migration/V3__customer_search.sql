@@ -0,0 +1,14 @@
+-- Customer search index (CustomerSearchService): normalized search columns and the n-gram postings.
+-- Customers written before this have none; POST /api/admin/customers/search-index/rebuild fills them.
+
+alter table customer add column search_name varchar(255);
+alter table customer add column phone_digits varchar(32);
+
+create table customer_search_gram (
+    field varchar(1) not null,
+    gram varchar(3) not null,
+    customer_id bigint not null,
+    constraint pk_customer_search_gram primary key (field, gram, customer_id)
+);
+
+create index idx_search_gram_customer on customer_search_gram (customer_id);
@@ -0,0 +1,18 @@
+-- Per-customer activity summary (CustomerActivityService). Customers written before this have no row;
+-- POST /api/admin/customers/activity/rebuild computes them from visit_log and invoice.
+
+create table customer_activity (
+    customer_id bigint not null,
+    last_visit_at timestamp(6) with time zone,
+    next_follow_up_at timestamp(6) with time zone,
+    last_invoice_date date,
+    last_activity_at timestamp(6) with time zone,
+    visit_count bigint not null,
+    invoice_count bigint not null,
+    lifetime_revenue numeric(19, 2) not null,
+    constraint pk_customer_activity primary key (customer_id)
+);
+
+create index idx_activity_next_follow_up on customer_activity (next_follow_up_at);
+create index idx_activity_last_activity on customer_activity (last_activity_at);
+create index idx_activity_last_visit on customer_activity (last_visit_at);
@@ -0,0 +1,5 @@
+-- Last write of a customer, for incremental exports. Null for customers not written since.
+
+alter table customer add column updated_at timestamp(6) with time zone;
+
+create index idx_customer_updated_at on customer (updated_at);
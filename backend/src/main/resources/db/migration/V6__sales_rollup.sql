@@ -0,0 +1,15 @@
+-- Monthly sales rollup (SalesRollupService). Empty for invoices written before this;
+-- POST /api/admin/analytics/sales-rollup/rebuild computes it from invoice_item.
+
+create table sales_rollup (
+    period_start date not null,
+    product_id bigint not null,
+    region_id bigint not null,
+    tier varchar(16) not null,
+    revenue numeric(19, 2) not null,
+    quantity bigint not null,
+    line_count bigint not null,
+    constraint pk_sales_rollup primary key (period_start, product_id, region_id, tier)
+);
+
+create index idx_sales_rollup_product on sales_rollup (product_id);
@@ -0,0 +1,7 @@
+-- Last journal record applied per instance in journal ingest mode (VisitJournalService).
+
+create table journal_checkpoint (
+    name varchar(64) not null,
+    last_seq bigint not null,
+    constraint pk_journal_checkpoint primary key (name)
+);
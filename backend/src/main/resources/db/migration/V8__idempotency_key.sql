@@ -0,0 +1,15 @@
+-- Stored responses of requests sent with an Idempotency-Key (IdempotencyService).
+
+create table idempotency_key (
+    id varchar(300) not null,
+    request_hash varchar(64) not null,
+    status varchar(16) not null,
+    locked_until timestamp(6) with time zone not null,
+    expires_at timestamp(6) with time zone not null,
+    response_status integer,
+    response_content_type varchar(100),
+    response_body text,
+    constraint pk_idempotency_key primary key (id)
+);
+
+create index idx_idempotency_expires_at on idempotency_key (expires_at);
@@ -0,0 +1,24 @@
+-- Indexes for the repository queries and CustomerSpecification; QueryPlanTest checks the hot ones.
+-- Covering columns are trailing key columns rather than INCLUDE, so the script also runs on H2.
+
+-- Customer list filtered by region and/or tier, in the default name order
+create index idx_customer_region_tier on customer (region_id, tier, name_std);
+create index idx_customer_tier on customer (tier, name_std);
+
+-- Visits of a customer: pages and keyset scrolls by (visit_at, id), stats and latest visit per customer
+drop index idx_customer_visit_at;
+create index idx_customer_visit_at on visit_log (customer_id, visit_at, id);
+-- Visit exports by time window
+create index idx_visit_log_visit_at on visit_log (visit_at);
+
+-- Invoices of a customer newest first, and count/sum/max per customer without reading the rows
+create index idx_invoice_customer_date on invoice (customer_id, invoice_date, id, total_amount);
+-- Invoice exports by date window
+create index idx_invoice_date on invoice (invoice_date);
+
+-- Items of a page of invoices, in invoice order
+create index idx_invoice_item_invoice on invoice_item (invoice_id, id);
+
+-- Follow-up due filter: customer ids straight from the index
+drop index idx_activity_next_follow_up;
+create index idx_activity_next_follow_up on customer_activity (next_follow_up_at, customer_id);
@@ -0,0 +1,152 @@
+package com.hygia.crm.archive;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Writing and reading segments, and refusing files that are not complete segments.
+ */
+class SegmentFileTest {
+
+    // magic, version, index offset, entries, crc32c
+    private static final int FOOTER_BYTES = 24;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recordsReadBackByKeyInTheOrderTheyWereAdded() throws IOException {
+        Path file = dir.resolve("customers.seg");
+        try (SegmentFile.Writer writer = SegmentFile.create(file)) {
+            writer.add(3, bytes("three-a"));
+            writer.add(3, bytes("three-b"));
+            writer.add(7, new byte[0]);
+            writer.add(42, bytes("forty-two"));
+            writer.finish();
+        }
+
+        try (SegmentFile segment = SegmentFile.open(file)) {
+            assertEquals(3, segment.keyCount());
+            assertEquals(List.of(3L, 7L, 42L), List.of(segment.keyAt(0), segment.keyAt(1), segment.keyAt(2)));
+            assertEquals(4, segment.recordCount());
+            assertEquals(2, segment.count(3));
+            assertEquals(0, segment.count(5));
+            assertEquals(List.of("three-a", "three-b"), strings(segment.read(3)));
+            assertArrayEquals(new byte[0], segment.read(7).get(0));
+            assertEquals(List.of("forty-two"), strings(segment.read(42)));
+            assertTrue(segment.read(43).isEmpty());
+        }
+        assertFalse(Files.exists(dir.resolve("customers.seg.tmp")));
+    }
+
+    @Test
+    void emptySegmentHasNoKeys() throws IOException {
+        Path file = dir.resolve("empty.seg");
+        try (SegmentFile.Writer writer = SegmentFile.create(file)) {
+            writer.finish();
+        }
+        try (SegmentFile segment = SegmentFile.open(file)) {
+            assertEquals(0, segment.keyCount());
+            assertTrue(segment.read(1).isEmpty());
+        }
+    }
+
+    @Test
+    void keysMustBeAddedInAscendingOrder() throws IOException {
+        Path file = dir.resolve("unordered.seg");
+        try (SegmentFile.Writer writer = SegmentFile.create(file)) {
+            writer.add(2, bytes("two"));
+            assertThrows(IllegalArgumentException.class, () -> writer.add(1, bytes("one")));
+        }
+        // Never finished: neither the target nor the partial file is left
+        assertFalse(Files.exists(file));
+        assertFalse(Files.exists(dir.resolve("unordered.seg.tmp")));
+    }
+
+    @Test
+    void unfinishedWriterLeavesThePreviousFile() throws IOException {
+        Path file = write("kept.seg", 1, "old");
+        try (SegmentFile.Writer writer = SegmentFile.create(file)) {
+            writer.add(1, bytes("new"));
+        }
+        try (SegmentFile segment = SegmentFile.open(file)) {
+            assertEquals(List.of("old"), strings(segment.read(1)));
+        }
+    }
+
+    @Test
+    void truncatedSegmentIsRefused() throws IOException {
+        Path file = write("truncated.seg", 1, "one");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        assertThrows(IOException.class, () -> SegmentFile.open(file));
+
+        Path tiny = dir.resolve("tiny.seg");
+        Files.write(tiny, new byte[FOOTER_BYTES - 1]);
+        assertThrows(IOException.class, () -> SegmentFile.open(tiny));
+    }
+
+    @Test
+    void damagedIndexIsRefused() throws IOException {
+        Path file = write("index.seg", 1, "one");
+        // The key of the only index entry, just before the footer
+        long indexStart = Files.size(file) - FOOTER_BYTES - 24;
+        flipByte(file, indexStart + 7);
+
+        IOException e = assertThrows(IOException.class, () -> SegmentFile.open(file));
+        assertTrue(e.getMessage().startsWith("Damaged segment index"), e.getMessage());
+    }
+
+    @Test
+    void damagedBlockIsRefusedOnRead() throws IOException {
+        Path file = write("block.seg", 1, "one");
+        // The header of the first compressed block
+        flipByte(file, 0);
+
+        try (SegmentFile segment = SegmentFile.open(file)) {
+            assertEquals(1, segment.count(1));
+            assertThrows(IOException.class, () -> segment.read(1));
+        }
+    }
+
+    private Path write(String name, long key, String record) throws IOException {
+        Path file = dir.resolve(name);
+        try (SegmentFile.Writer writer = SegmentFile.create(file)) {
+            writer.add(key, bytes(record));
+            writer.finish();
+        }
+        return file;
+    }
+
+    private static void flipByte(Path file, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            channel.read(b, position);
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) (b.get(0) ^ 0x01)}), position);
+        }
+    }
+
+    private static List<String> strings(List<byte[]> records) {
+        return records.stream().map(record -> new String(record, StandardCharsets.UTF_8)).toList();
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,54 @@
+package com.hygia.crm.benchmark;
+
+import com.hygia.crm.dto.InvoiceCreateDto;
+import com.hygia.crm.dto.InvoiceItemCreateDto;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Report output, percentiles and fixtures shared by the benchmarks.
+ */
+final class BenchmarkSupport {
+
+    private static final Path REPORT_DIR = Path.of("target", "benchmarks");
+
+    private static final AtomicInteger invoiceSequence = new AtomicInteger();
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Writes a benchmark's results to {@code target/benchmarks/<name>.txt}.
+     */
+    static void writeReport(String name, CharSequence report) throws IOException {
+        Files.createDirectories(REPORT_DIR);
+        Files.writeString(REPORT_DIR.resolve(name + ".txt"), report);
+    }
+
+    /**
+     * The value at {@code percentile} (0 to 1) of ascending {@code sorted} values.
+     */
+    static long percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    /**
+     * A new invoice dated today with one line for each of the first {@code lines} products, at their
+     * default price, under an invoice number unique across benchmarks.
+     */
+    static InvoiceCreateDto newInvoice(Long customerId, List<Long> productIds, int lines) {
+        List<InvoiceItemCreateDto> items = new ArrayList<>(lines);
+        for (int i = 0; i < lines; i++) {
+            items.add(new InvoiceItemCreateDto(productIds.get(i), 1 + i % 5, null));
+        }
+        return new InvoiceCreateDto("BENCH-" + invoiceSequence.incrementAndGet(), customerId, LocalDate.now(), null,
+                items);
+    }
+}
@@ -0,0 +1,179 @@
+package com.hygia.crm.benchmark;
+
+import com.hygia.crm.dto.InvoiceCreateDto;
+import com.hygia.crm.dto.InvoiceItemCreateDto;
+import com.hygia.crm.entity.Customer;
+import com.hygia.crm.entity.Invoice;
+import com.hygia.crm.entity.InvoiceItem;
+import com.hygia.crm.entity.Product;
+import com.hygia.crm.entity.Region;
+import com.hygia.crm.repository.CustomerRepository;
+import com.hygia.crm.repository.InvoiceItemRepository;
+import com.hygia.crm.repository.InvoiceRepository;
+import com.hygia.crm.repository.ProductRepository;
+import com.hygia.crm.repository.RegionRepository;
+import com.hygia.crm.service.InvoiceService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Latency and statement count of the invoice write path for 1, 10 and 100-line invoices.
+ * <p>
+ * Compares {@link InvoiceService#createInvoice} with a replay of the previous controller logic
+ * (per-line product lookups, insert with zero total, update, then item inserts). Run with
+ * {@code ./mvnw test -Pbenchmark}; results are written to {@code target/benchmarks/invoice-write.txt}.
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = {
+    "spring.jpa.properties.hibernate.generate_statistics=true",
+    "logging.level.org.hibernate.SQL=WARN",
+    "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+    "logging.level.org.hibernate.engine.internal.StatisticalLoggingSessionEventListener=WARN"
+})
+class InvoiceWriteBenchmarkTest {
+
+    private static final int[] LINE_COUNTS = {1, 10, 100};
+    private static final int WARMUP = 50;
+    private static final int ITERATIONS = 300;
+
+    @Autowired
+    private InvoiceService invoiceService;
+
+    @Autowired
+    private RegionRepository regionRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+
+    @Autowired
+    private InvoiceItemRepository invoiceItemRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void invoiceWriteLatency() throws IOException {
+        Region region = regionRepository.save(new Region(null, "Benchmark Region", "WA"));
+        Customer customer = new Customer();
+        customer.setNameStd("Invoice Benchmark Customer");
+        customer.setRegion(region);
+        customer = customerRepository.save(customer);
+
+        List<Long> productIds = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Product product = new Product();
+            product.setItemCode("BENCH-" + i);
+            product.setDefaultUnitPrice(BigDecimal.valueOf(1 + i));
+            productIds.add(productRepository.save(product).getId());
+        }
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        StringBuilder report = new StringBuilder(String.format("%-14s %6s %12s %10s %10s %10s%n",
+                "path", "lines", "stmts/op", "p50 us", "p99 us", "max us"));
+
+        for (int lines : LINE_COUNTS) {
+            Long customerId = customer.getId();
+            Supplier<InvoiceCreateDto> invoice = () -> BenchmarkSupport.newInvoice(customerId, productIds, lines);
+            Result legacy = measure(statistics, invoice, this::legacyCreateInvoice);
+            Result transactional = measure(statistics, invoice, invoiceService::createInvoice);
+
+            report.append(legacy.format("legacy", lines));
+            report.append(transactional.format("transactional", lines));
+
+            assertTrue(transactional.statementsPerOp() < legacy.statementsPerOp(),
+                    "transactional path should issue fewer statements for " + lines + " lines");
+        }
+
+        BenchmarkSupport.writeReport("invoice-write", report);
+    }
+
+    private Result measure(Statistics statistics, Supplier<InvoiceCreateDto> input,
+                           Consumer<InvoiceCreateDto> operation) {
+        for (int i = 0; i < WARMUP; i++) {
+            operation.accept(input.get());
+        }
+
+        long[] latencies = new long[ITERATIONS];
+        statistics.clear();
+        for (int i = 0; i < ITERATIONS; i++) {
+            InvoiceCreateDto createDto = input.get();
+            long start = System.nanoTime();
+            operation.accept(createDto);
+            latencies[i] = System.nanoTime() - start;
+        }
+        double statementsPerOp = (double) statistics.getPrepareStatementCount() / ITERATIONS;
+
+        Arrays.sort(latencies);
+        return new Result(statementsPerOp, BenchmarkSupport.percentile(latencies, 0.50), BenchmarkSupport.percentile(latencies, 0.99),
+                latencies[latencies.length - 1]);
+    }
+
+    /**
+     * The invoice write path as it was before it moved into {@link InvoiceService}.
+     */
+    private void legacyCreateInvoice(InvoiceCreateDto createDto) {
+        Customer customer = customerRepository.findById(createDto.getCustomerId()).orElseThrow();
+        List<Product> products = new ArrayList<>();
+        for (InvoiceItemCreateDto itemDto : createDto.getItems()) {
+            products.add(productRepository.findById(itemDto.getProductId()).orElseThrow());
+        }
+
+        Invoice invoice = new Invoice();
+        invoice.setInvoiceNumber(createDto.getInvoiceNumber());
+        invoice.setCustomer(customer);
+        invoice.setInvoiceDate(createDto.getInvoiceDate());
+        invoice.setTotalAmount(BigDecimal.ZERO);
+        Invoice savedInvoice = invoiceRepository.save(invoice);
+
+        BigDecimal totalAmount = BigDecimal.ZERO;
+        List<InvoiceItem> invoiceItems = new ArrayList<>();
+        for (int i = 0; i < createDto.getItems().size(); i++) {
+            InvoiceItemCreateDto itemDto = createDto.getItems().get(i);
+            Product product = products.get(i);
+            BigDecimal unitPrice = product.getDefaultUnitPrice();
+            BigDecimal amount = unitPrice.multiply(BigDecimal.valueOf(itemDto.getQuantity()));
+
+            InvoiceItem invoiceItem = new InvoiceItem();
+            invoiceItem.setInvoice(savedInvoice);
+            invoiceItem.setProduct(product);
+            invoiceItem.setQuantity(itemDto.getQuantity());
+            invoiceItem.setUnitPrice(unitPrice);
+            invoiceItem.setAmount(amount);
+            invoiceItems.add(invoiceItem);
+            totalAmount = totalAmount.add(amount);
+        }
+
+        savedInvoice.setTotalAmount(totalAmount);
+        invoiceRepository.save(savedInvoice);
+        invoiceItemRepository.saveAll(invoiceItems);
+    }
+
+    private record Result(double statementsPerOp, long p50Nanos, long p99Nanos, long maxNanos) {
+
+        String format(String path, int lines) {
+            return String.format("%-14s %6d %12.1f %10d %10d %10d%n", path, lines, statementsPerOp,
+                    p50Nanos / 1_000, p99Nanos / 1_000, maxNanos / 1_000);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.hygia.crm.benchmark;
+
+import com.hygia.crm.entity.Customer;
+import com.hygia.crm.entity.Product;
+import com.hygia.crm.entity.Region;
+import com.hygia.crm.repository.CustomerRepository;
+import com.hygia.crm.repository.CustomerSpecification;
+import com.hygia.crm.repository.ProductRepository;
+import com.hygia.crm.repository.RegionRepository;
+import com.hygia.crm.service.InvoiceService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Statements per operation with a cold and a warm Region/Product second-level cache, for
+ * creating a 10-line invoice and listing a page of customers spread over 10 regions with their
+ * region names. The cold case evicts all cache regions before every operation. Run with
+ * {@code ./mvnw test -Pbenchmark}; results are written to {@code target/benchmarks/reference-cache.txt}.
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = {
+    "spring.jpa.properties.hibernate.generate_statistics=true",
+    "logging.level.org.hibernate.SQL=WARN",
+    "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+    "logging.level.org.hibernate.engine.internal.StatisticalLoggingSessionEventListener=WARN"
+})
+class ReferenceDataCacheBenchmarkTest {
+
+    private static final int ITERATIONS = 200;
+    private static final int INVOICE_LINES = 10;
+    private static final int REGIONS = 10;
+    private static final String LISTING_TIER = "B";
+
+    @Autowired
+    private InvoiceService invoiceService;
+
+    @Autowired
+    private RegionRepository regionRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void referenceDataRoundTrips() throws IOException {
+        List<Region> regions = new ArrayList<>();
+        for (int i = 0; i < REGIONS; i++) {
+            regions.add(regionRepository.save(new Region(null, "Cache Benchmark Region " + i, "WA")));
+        }
+        List<Long> customerIds = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            Customer customer = new Customer();
+            customer.setNameStd("Cache Benchmark Customer " + i);
+            customer.setTier(LISTING_TIER);
+            customer.setRegion(regions.get(i % REGIONS));
+            customerIds.add(customerRepository.save(customer).getId());
+        }
+        List<Long> productIds = new ArrayList<>();
+        for (int i = 0; i < INVOICE_LINES; i++) {
+            Product product = new Product();
+            product.setItemCode("CACHE-BENCH-" + i);
+            product.setDefaultUnitPrice(BigDecimal.valueOf(1 + i));
+            productIds.add(productRepository.save(product).getId());
+        }
+
+        SessionFactory sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        Statistics statistics = sessionFactory.getStatistics();
+        Pageable listingPage = PageRequest.of(0, 20, Sort.by("nameStd"));
+
+        Map<String, Runnable> operations = new LinkedHashMap<>();
+        operations.put("invoice-create", () -> invoiceService.createInvoice(
+                BenchmarkSupport.newInvoice(customerIds.get(0), productIds, INVOICE_LINES)));
+        // Regions are lazy: resolve them in the transaction, where the cache can answer instead of a query
+        operations.put("customer-list", () -> transactionTemplate.executeWithoutResult(status -> customerRepository
+                .findAll(CustomerSpecification.withFilters(null, LISTING_TIER, null, null, null), listingPage)
+                .forEach(customer -> customer.getRegion().getName())));
+
+        StringBuilder report = new StringBuilder(String.format("%-18s %-6s %10s %10s %10s%n",
+                "operation", "cache", "stmts/op", "hits/op", "misses/op"));
+        operations.forEach((name, operation) -> {
+            Result cold = measure(statistics, () -> sessionFactory.getCache().evictAllRegions(), operation);
+            Result warm = measure(statistics, () -> { }, operation);
+            report.append(cold.format(name, "cold"));
+            report.append(warm.format(name, "warm"));
+
+            assertTrue(warm.statementsPerOp() < cold.statementsPerOp(),
+                    "warm cache should save statements for " + name);
+        });
+
+        BenchmarkSupport.writeReport("reference-cache", report);
+    }
+
+    private Result measure(Statistics statistics, Runnable beforeEach, Runnable operation) {
+        // One untimed run so the warm case starts with populated regions
+        operation.run();
+
+        long statements = 0;
+        long hits = 0;
+        long misses = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            beforeEach.run();
+            statistics.clear();
+            operation.run();
+            statements += statistics.getPrepareStatementCount();
+            hits += statistics.getSecondLevelCacheHitCount();
+            misses += statistics.getSecondLevelCacheMissCount();
+        }
+        return new Result((double) statements / ITERATIONS, (double) hits / ITERATIONS, (double) misses / ITERATIONS);
+    }
+
+    private record Result(double statementsPerOp, double hitsPerOp, double missesPerOp) {
+
+        String format(String operation, String cache) {
+            return String.format("%-18s %-6s %10.1f %10.1f %10.1f%n", operation, cache, statementsPerOp, hitsPerOp, missesPerOp);
+        }
+    }
+}
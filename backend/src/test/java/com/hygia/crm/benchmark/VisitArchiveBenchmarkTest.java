@@ -0,0 +1,195 @@
+package com.hygia.crm.benchmark;
+
+import com.hygia.crm.entity.Customer;
+import com.hygia.crm.entity.Region;
+import com.hygia.crm.entity.VisitLog;
+import com.hygia.crm.repository.CustomerRepository;
+import com.hygia.crm.repository.RegionRepository;
+import com.hygia.crm.repository.VisitLogRepository;
+import com.hygia.crm.repository.VisitRow;
+import com.hygia.crm.service.VisitArchiveService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.LongFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Latency of a customer's visit listing before and after visits older than the two-year horizon
+ * are archived, for four years of visits: the first page (visit_log alone answers it), a page
+ * deep enough to reach the archive, and the hot visit_log page query on its own. Also checks that
+ * archiving or restoring a month does not change what the listing returns. Run with {@code ./mvnw test -Pbenchmark};
+ * results are written to {@code target/benchmarks/visit-archive.txt}.
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = {
+    "crm.visits.archive.horizon=P2Y",
+    "crm.visits.archive.rescan-interval=0s",
+    "logging.level.org.hibernate.SQL=WARN",
+    "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN"
+})
+class VisitArchiveBenchmarkTest {
+
+    private static final int CUSTOMERS = 1000;
+    private static final int VISITS_PER_CUSTOMER = 96;
+    private static final int MONTHS = 48;
+    private static final int WARMUP = 500;
+    private static final int ITERATIONS = 3000;
+    private static final int PAGE_SIZE = 20;
+
+    // Segments of earlier runs would belong to customers of another in-memory database
+    @DynamicPropertySource
+    static void archiveDir(DynamicPropertyRegistry registry) throws IOException {
+        Path dir = Files.createTempDirectory("visit-archive");
+        registry.add("crm.visits.archive.dir", dir::toString);
+    }
+
+    @Autowired
+    private RegionRepository regionRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private VisitLogRepository visitLogRepository;
+
+    @Autowired
+    private VisitArchiveService visitArchiveService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void listingLatencyBeforeAndAfterArchiving() throws IOException {
+        List<Long> customerIds = createCustomersWithVisits();
+        long hotRowsBefore = visitLogRepository.count();
+
+        Pageable firstPage = PageRequest.of(0, PAGE_SIZE, Sort.by(Sort.Direction.DESC, "visitAt"));
+        // Two pages past the visits of the last two years
+        Pageable deepPage = PageRequest.of(VISITS_PER_CUSTOMER / 2 / PAGE_SIZE + 2, PAGE_SIZE,
+                Sort.by(Sort.Direction.DESC, "visitAt"));
+        Long sample = customerIds.get(customerIds.size() / 2);
+        Page<VisitRow> firstBefore = visitArchiveService.findVisits(sample, firstPage);
+        Page<VisitRow> deepBefore = visitArchiveService.findVisits(sample, deepPage);
+        List<VisitRow> scrolledBefore = scrollAll(sample);
+
+        StringBuilder report = new StringBuilder(String.format("%-8s %-12s %10s %10s %10s%n",
+                "phase", "query", "rows", "p50 us", "p99 us"));
+        report.append(measureAll("before", customerIds, hotRowsBefore, firstPage, deepPage));
+
+        long start = System.nanoTime();
+        long archived = visitArchiveService.archive().values().stream().mapToLong(Long::longValue).sum();
+        long archiveMillis = (System.nanoTime() - start) / 1_000_000;
+        long hotRowsAfter = visitLogRepository.count();
+        assertEquals(hotRowsBefore, hotRowsAfter + archived);
+        assertTrue(archived > 0, "nothing archived");
+
+        report.append(measureAll("after", customerIds, hotRowsAfter, firstPage, deepPage));
+        long segmentBytes = visitArchiveService.listSegments().stream()
+                .mapToLong(VisitArchiveService.SegmentInfo::bytes).sum();
+        report.append(String.format("%narchived %d of %d visits in %d ms into %d segments, %d KB%n", archived,
+                hotRowsBefore, archiveMillis, visitArchiveService.listSegments().size(), segmentBytes / 1024));
+
+        assertEquals(firstBefore.getContent(), visitArchiveService.findVisits(sample, firstPage).getContent());
+        assertEquals(deepBefore.getContent(), visitArchiveService.findVisits(sample, deepPage).getContent());
+        assertEquals(deepBefore.getTotalElements(), visitArchiveService.findVisits(sample, deepPage).getTotalElements());
+        assertEquals(scrolledBefore, scrollAll(sample));
+
+        // A restored month is listed from visit_log again
+        long restored = visitArchiveService.restore(visitArchiveService.listSegments().get(0).month());
+        assertEquals(hotRowsAfter + restored, visitLogRepository.count());
+        assertEquals(scrolledBefore, scrollAll(sample));
+
+        BenchmarkSupport.writeReport("visit-archive", report);
+    }
+
+    private List<Long> createCustomersWithVisits() {
+        Region region = regionRepository.save(new Region(null, "Archive Benchmark Region", "WA"));
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        Random random = new Random(42);
+        List<Long> customerIds = new ArrayList<>();
+        for (int c = 0; c < CUSTOMERS; c++) {
+            int index = c;
+            customerIds.add(transactionTemplate.execute(status -> {
+                Customer customer = new Customer();
+                customer.setNameStd("Archive Benchmark Customer " + index);
+                customer.setRegion(region);
+                customer = customerRepository.save(customer);
+                List<VisitLog> visits = new ArrayList<>(VISITS_PER_CUSTOMER);
+                for (int v = 0; v < VISITS_PER_CUSTOMER; v++) {
+                    VisitLog visit = new VisitLog();
+                    visit.setCustomer(customer);
+                    // Spread evenly over the months, newest first, at a random minute of the month
+                    visit.setVisitAt(now.minusMonths((long) v * MONTHS / VISITS_PER_CUSTOMER)
+                            .minusMinutes(random.nextInt(60 * 24 * 28)));
+                    visit.setType("VISIT");
+                    visit.setNotes("Benchmark visit " + v + " of customer " + index);
+                    visits.add(visit);
+                }
+                visitLogRepository.saveAll(visits);
+                return customer.getId();
+            }));
+        }
+        return customerIds;
+    }
+
+    private String measureAll(String phase, List<Long> customerIds, long rows, Pageable firstPage, Pageable deepPage) {
+        return measure(phase, "first page", rows, customerId -> visitArchiveService.findVisits(customerId, firstPage), customerIds)
+                + measure(phase, "deep page", rows, customerId -> visitArchiveService.findVisits(customerId, deepPage), customerIds)
+                + measure(phase, "hot only", rows, customerId -> visitLogRepository.findRowsByCustomerId(customerId, firstPage), customerIds);
+    }
+
+    private String measure(String phase, String query, long rows, LongFunction<Object> operation, List<Long> customerIds) {
+        Random random = new Random(7);
+        for (int i = 0; i < WARMUP; i++) {
+            operation.apply(customerIds.get(random.nextInt(customerIds.size())));
+        }
+        long[] latencies = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            long customerId = customerIds.get(random.nextInt(customerIds.size()));
+            long start = System.nanoTime();
+            operation.apply(customerId);
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        return String.format("%-8s %-12s %10d %10d %10d%n", phase, query, rows,
+                BenchmarkSupport.percentile(latencies, 0.50) / 1_000,
+                BenchmarkSupport.percentile(latencies, 0.99) / 1_000);
+    }
+
+    private List<VisitRow> scrollAll(Long customerId) {
+        List<VisitRow> rows = new ArrayList<>();
+        Window<VisitRow> window = visitArchiveService.scrollVisits(customerId,
+                Sort.by(Sort.Direction.DESC, "visitAt"), PAGE_SIZE, ScrollPosition.keyset());
+        rows.addAll(window.getContent());
+        while (window.hasNext()) {
+            window = visitArchiveService.scrollVisits(customerId, Sort.by(Sort.Direction.DESC, "visitAt"),
+                    PAGE_SIZE, (KeysetScrollPosition) window.positionAt(window.size() - 1));
+            rows.addAll(window.getContent());
+        }
+        return rows;
+    }
+}
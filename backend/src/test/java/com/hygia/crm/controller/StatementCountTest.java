@@ -0,0 +1,135 @@
+package com.hygia.crm.controller;
+
+import com.hygia.crm.config.SqlStatementCounter;
+import com.hygia.crm.dto.InvoiceCreateDto;
+import com.hygia.crm.dto.InvoiceItemCreateDto;
+import com.hygia.crm.entity.Customer;
+import com.hygia.crm.entity.Product;
+import com.hygia.crm.entity.VisitLog;
+import com.hygia.crm.repository.CustomerRepository;
+import com.hygia.crm.repository.ProductRepository;
+import com.hygia.crm.repository.RegionRepository;
+import com.hygia.crm.repository.VisitLogRepository;
+import com.hygia.crm.service.InvoiceService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * SQL statements per request of the read endpoints, from the {@value SqlStatementCounter#HEADER}
+ * header. A higher count usually means an association is loaded row by row again.
+ */
+@SpringBootTest(properties = {
+    "logging.level.org.hibernate.SQL=WARN",
+    "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN"
+})
+@AutoConfigureMockMvc
+class StatementCountTest {
+
+    // More than one page, so paged endpoints also run their count query
+    private static final int ROWS = 30;
+    private static final int PAGE_SIZE = 10;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private RegionRepository regionRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private VisitLogRepository visitLogRepository;
+
+    @Autowired
+    private InvoiceService invoiceService;
+
+    private Long customerId;
+
+    @BeforeEach
+    void createCustomerWithHistory() {
+        Customer customer = new Customer();
+        customer.setNameStd("Statement Count Customer " + System.nanoTime());
+        customer.setRegion(regionRepository.findAll().get(0));
+        customer.setTier("A");
+        customerId = customerRepository.save(customer).getId();
+
+        List<Long> productIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Product product = new Product();
+            product.setItemCode("STMT-" + customerId + "-" + i);
+            product.setDefaultUnitPrice(BigDecimal.TEN);
+            productIds.add(productRepository.save(product).getId());
+        }
+
+        List<VisitLog> visits = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            VisitLog visit = new VisitLog();
+            visit.setCustomer(customer);
+            visit.setVisitAt(OffsetDateTime.of(2025, 1, 1, 9, 0, 0, 0, ZoneOffset.UTC).plusDays(i));
+            visit.setType("VISIT");
+            visits.add(visit);
+
+            List<InvoiceItemCreateDto> items = productIds.stream()
+                    .map(productId -> new InvoiceItemCreateDto(productId, 1, null))
+                    .toList();
+            invoiceService.createInvoice(new InvoiceCreateDto(
+                    "STMT-" + i, customerId, LocalDate.of(2025, 1, 1).plusDays(i), null, items));
+        }
+        visitLogRepository.saveAll(visits);
+    }
+
+    @Test
+    void customerList() throws Exception {
+        Customer other = new Customer();
+        other.setNameStd("Statement Count Other " + System.nanoTime());
+        other.setRegion(regionRepository.findAll().get(0));
+        other.setTier("A");
+        customerRepository.save(other);
+
+        // Rows with their region joined, then the count
+        expectStatements("/api/customers?size=1", 2);
+        expectStatements("/api/customers?size=1&tier=A&sort=id,desc", 2);
+        expectStatements("/api/customers?size=1&paging=cursor", 1);
+    }
+
+    @Test
+    void visitList() throws Exception {
+        // Customer check, rows, count
+        expectStatements("/api/customers/" + customerId + "/visits?size=" + PAGE_SIZE, 3);
+        expectStatements("/api/customers/" + customerId + "/visits?size=" + PAGE_SIZE + "&paging=cursor", 2);
+    }
+
+    @Test
+    void invoiceList() throws Exception {
+        // Customer check, invoices with the customer's name, items with their products
+        expectStatements("/api/invoices/by-customer/" + customerId, 3);
+        // Customer check, invoices, count, and items for the full view
+        expectStatements("/api/invoices/by-customer/" + customerId + "/history?size=" + PAGE_SIZE, 4);
+        expectStatements("/api/invoices/by-customer/" + customerId + "/history?size=" + PAGE_SIZE + "&view=summary", 3);
+    }
+
+    private void expectStatements(String url, int statements) throws Exception {
+        mockMvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andExpect(header().string(SqlStatementCounter.HEADER, String.valueOf(statements)));
+    }
+}
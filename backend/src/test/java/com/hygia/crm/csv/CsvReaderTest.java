@@ -0,0 +1,98 @@
+package com.hygia.crm.csv;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Parsing of quoted, multi-line and differently terminated records, and the line each record
+ * starts on.
+ */
+class CsvReaderTest {
+
+    private static final String BOM = "\uFEFF";
+
+    @Test
+    void fieldsAreSplitOnCommasAndMayBeEmpty() throws IOException {
+        assertEquals(List.of(List.of("a", "b", "c"), List.of("", "x", ""), List.of("")),
+                readAll("a,b,c\n,x,\n\n"));
+    }
+
+    @Test
+    void quotedFieldsKeepCommasAndLineBreaks() throws IOException {
+        assertEquals(List.of(List.of("Pharmacie, du Centre", "1 rue X\nBat. B", "ok"), List.of("next")),
+                readAll("\"Pharmacie, du Centre\",\"1 rue X\nBat. B\",ok\nnext\n"));
+    }
+
+    @Test
+    void doubledQuotesAreOneQuote() throws IOException {
+        assertEquals(List.of(List.of("say \"hi\"", "\"", "")),
+                readAll("\"say \"\"hi\"\"\",\"\"\"\",\"\"\n"));
+        // Outside quotes a quote is kept as is
+        assertEquals(List.of(List.of("5\" pipe", "a\"\"b")), readAll("5\" pipe,a\"\"b"));
+    }
+
+    @Test
+    void crlfAndLfEndRecordsAlike() throws IOException {
+        List<List<String>> expected = List.of(List.of("a", "b"), List.of("c", "d"), List.of("e", "f"));
+        assertEquals(expected, readAll("a,b\nc,d\ne,f\n"));
+        assertEquals(expected, readAll("a,b\r\nc,d\r\ne,f\r\n"));
+        assertEquals(expected, readAll("a,b\r\nc,d\ne,f"));
+        // A line break inside quotes is kept as written
+        assertEquals(List.of(List.of("x\r\ny"), List.of("z")), readAll("\"x\r\ny\"\r\nz\r\n"));
+    }
+
+    @Test
+    void leadingByteOrderMarkIsSkipped() throws IOException {
+        assertEquals(List.of(List.of("name", "tier"), List.of("Acme", "A")), readAll(BOM + "name,tier\nAcme,A\n"));
+        assertEquals(List.of(List.of("quoted")), readAll(BOM + "\"quoted\""));
+        assertEquals(List.of(), readAll(BOM));
+        // Only at the start of the input
+        assertEquals(List.of(List.of("a"), List.of(BOM + "b")), readAll("a\n" + BOM + "b\n"));
+    }
+
+    @Test
+    void unterminatedQuoteNamesTheLineItStartsOn() throws IOException {
+        try (CsvReader reader = new CsvReader(new StringReader("a,b\nc,\"open\nstill open\n"))) {
+            assertEquals(List.of("a", "b"), reader.readRecord());
+            CsvFormatException e = assertThrows(CsvFormatException.class, reader::readRecord);
+            assertTrue(e.getMessage().endsWith("line 2"), e.getMessage());
+        }
+    }
+
+    @Test
+    void recordLineCountsLinesInsideQuotedFields() throws IOException {
+        String csv = "header\r\n"
+                + "\"two\nlines\",x\r\n"
+                + "plain\n"
+                + "\"three\r\nlines\nhere\"\n"
+                + "last";
+        try (CsvReader reader = new CsvReader(new StringReader(csv))) {
+            List<Long> lines = new ArrayList<>();
+            while (reader.readRecord() != null) {
+                lines.add(reader.getRecordLine());
+            }
+            assertEquals(List.of(1L, 2L, 4L, 5L, 8L), lines);
+            assertNull(reader.readRecord());
+        }
+    }
+
+    private static List<List<String>> readAll(String csv) throws IOException {
+        List<List<String>> records = new ArrayList<>();
+        try (CsvReader reader = new CsvReader(new StringReader(csv))) {
+            List<String> record;
+            while ((record = reader.readRecord()) != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+}
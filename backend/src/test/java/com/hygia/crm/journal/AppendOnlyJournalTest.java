@@ -0,0 +1,132 @@
+package com.hygia.crm.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Recovery of the journal from what a crash leaves on disk.
+ */
+class AppendOnlyJournalTest {
+
+    private static final long SEGMENT_BYTES = 1024 * 1024;
+    // length, crc32c, seq
+    private static final int HEADER_BYTES = 16;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replaysRecordsAfterTheCheckpointAndNumbersOn() throws IOException {
+        writeAndClose("one", "two", "three");
+
+        List<AppendOnlyJournal.Entry> replayed = new ArrayList<>();
+        try (AppendOnlyJournal journal = AppendOnlyJournal.open(dir, SEGMENT_BYTES, 1, replayed::add)) {
+            assertEquals(List.of("2:two", "3:three"), describe(replayed));
+            assertEquals(4, journal.write(bytes("four")));
+        }
+    }
+
+    @Test
+    void tornTailIsCutOff() throws IOException {
+        writeAndClose("one", "two");
+        Path segment = onlySegment();
+        long intact = Files.size(segment);
+        // A crash in the middle of the third record: a full header, half its payload
+        append(segment, ByteBuffer.allocate(HEADER_BYTES + 5).putInt(10).putInt(0).putLong(3).put(bytes("thr")).array());
+
+        List<AppendOnlyJournal.Entry> replayed = new ArrayList<>();
+        try (AppendOnlyJournal journal = AppendOnlyJournal.open(dir, SEGMENT_BYTES, 0, replayed::add)) {
+            assertEquals(List.of("1:one", "2:two"), describe(replayed));
+            assertEquals(intact, Files.size(segment));
+            long seq = journal.write(bytes("three"));
+            journal.sync(seq);
+            assertEquals(3, seq);
+        }
+        assertEquals(List.of("1:one", "2:two", "3:three"), describe(reopen(0)));
+    }
+
+    @Test
+    void recordFailingItsChecksumEndsTheLastSegment() throws IOException {
+        writeAndClose("one", "two", "three");
+        Path segment = onlySegment();
+        // Flip a payload byte of the second record
+        long secondPayload = HEADER_BYTES + "one".length() + HEADER_BYTES;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            channel.read(b, secondPayload);
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) (b.get(0) ^ 0x01)}), secondPayload);
+        }
+
+        assertEquals(List.of("1:one"), describe(reopen(0)));
+        assertEquals(HEADER_BYTES + "one".length(), Files.size(segment));
+    }
+
+    @Test
+    void damageBeforeTheLastSegmentIsRefused() throws IOException {
+        writeAndClose("one", "two");
+        Path first = onlySegment();
+        // Reopening starts a second segment
+        try (AppendOnlyJournal journal = AppendOnlyJournal.open(dir, SEGMENT_BYTES, 0, entry -> { })) {
+            journal.sync(journal.write(bytes("three")));
+        }
+        append(first, new byte[]{1, 2, 3});
+
+        assertThrows(IOException.class, () -> AppendOnlyJournal.open(dir, SEGMENT_BYTES, 0, entry -> { }));
+    }
+
+    private void writeAndClose(String... payloads) throws IOException {
+        try (AppendOnlyJournal journal = AppendOnlyJournal.open(dir, SEGMENT_BYTES, 0, entry -> { })) {
+            long seq = 0;
+            for (String payload : payloads) {
+                seq = journal.write(bytes(payload));
+            }
+            journal.sync(seq);
+        }
+    }
+
+    private List<AppendOnlyJournal.Entry> reopen(long afterSeq) throws IOException {
+        List<AppendOnlyJournal.Entry> replayed = new ArrayList<>();
+        AppendOnlyJournal.open(dir, SEGMENT_BYTES, afterSeq, replayed::add).close();
+        return replayed;
+    }
+
+    // The segment holding the records; reopening adds an empty one after it
+    private Path onlySegment() throws IOException {
+        try (var files = Files.list(dir)) {
+            return files.filter(file -> {
+                try {
+                    return Files.size(file) > 0;
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }).sorted().findFirst().orElseThrow();
+        }
+    }
+
+    private static void append(Path file, byte[] data) throws IOException {
+        Files.write(file, data, StandardOpenOption.APPEND);
+    }
+
+    private static List<String> describe(List<AppendOnlyJournal.Entry> entries) {
+        return entries.stream()
+                .map(entry -> entry.seq() + ":" + new String(entry.payload(), StandardCharsets.UTF_8))
+                .toList();
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
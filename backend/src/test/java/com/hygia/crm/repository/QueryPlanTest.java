@@ -0,0 +1,303 @@
+package com.hygia.crm.repository;
+
+import com.hygia.crm.config.SqlStatementCounter;
+import com.hygia.crm.entity.Customer;
+import com.hygia.crm.entity.Invoice;
+import com.hygia.crm.entity.InvoiceItem;
+import com.hygia.crm.entity.Product;
+import com.hygia.crm.entity.Region;
+import com.hygia.crm.entity.VisitLog;
+import com.hygia.crm.service.CustomerActivityService;
+import com.hygia.crm.service.CustomerService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Runs the hot repository queries, EXPLAINs the SQL Hibernate generated for them on H2 and fails
+ * when a plan reads a whole table or index. Guards the indexes of the db/migration scripts against query
+ * changes that no longer match them.
+ */
+@SpringBootTest(properties = {
+    "spring.jpa.properties.hibernate.session_factory.statement_inspector=com.hygia.crm.repository.QueryPlanTest$RecordingInspector",
+    "logging.level.org.hibernate.SQL=WARN",
+    "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN"
+})
+class QueryPlanTest {
+
+    // Enough rows that H2 prefers an index wherever one applies
+    private static final int CUSTOMERS = 200;
+    private static final int VISITS_PER_CUSTOMER = 10;
+    private static final int INVOICES_PER_CUSTOMER = 3;
+
+    private static final OffsetDateTime START = OffsetDateTime.of(2025, 1, 1, 9, 0, 0, 0, ZoneOffset.UTC);
+
+    // H2 notes how each table is read, e.g. /* PUBLIC.IDX_INVOICE_DATE: INVOICE_DATE >= ?1 */. Without a
+    // condition it reads all of it: /* PUBLIC.INVOICE.tableScan */, or a whole index in its order, unless
+    // it only takes min or max from an index end: /* direct lookup */
+    private static final Pattern FULL_SCAN = Pattern.compile("/\\* PUBLIC\\.[\\w.]+ \\*/(?!\\s*/\\* direct lookup \\*/)");
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private RegionRepository regionRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private CustomerActivityRepository customerActivityRepository;
+
+    @Autowired
+    private VisitLogRepository visitLogRepository;
+
+    @Autowired
+    private ChangeLogRepository changeLogRepository;
+
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+
+    @Autowired
+    private InvoiceItemRepository invoiceItemRepository;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private CustomerActivityService customerActivityService;
+
+    private Long regionId;
+    private Long customerId;
+    private List<Long> customerIds;
+    private List<Long> invoiceIds;
+
+    @BeforeEach
+    void createCustomersWithHistory() {
+        List<Region> regions = regionRepository.findAll();
+        regionId = regions.get(0).getId();
+        Product product = new Product();
+        product.setItemCode("PLAN-" + System.nanoTime());
+        product = productRepository.save(product);
+
+        long run = System.nanoTime();
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < CUSTOMERS; i++) {
+            Customer customer = new Customer();
+            customer.setNameStd("Plan Dental Clinic " + run + " " + i);
+            customer.setRegion(regions.get(i % regions.size()));
+            customer.setTier(List.copyOf(Customer.TIERS).get(i % Customer.TIERS.size()));
+            customer.setPhone("08" + (10000000 + i));
+            customers.add(customerService.save(customer));
+        }
+        customerIds = customers.stream().map(Customer::getId).limit(20).toList();
+        customerId = customerIds.get(0);
+
+        List<VisitLog> visits = new ArrayList<>();
+        List<Invoice> invoices = new ArrayList<>();
+        for (Customer customer : customers) {
+            for (int i = 0; i < VISITS_PER_CUSTOMER; i++) {
+                VisitLog visit = new VisitLog();
+                visit.setCustomer(customer);
+                visit.setVisitAt(START.plusDays(i));
+                visit.setNextFollowUpAt(START.plusDays(i + 7));
+                visits.add(visit);
+            }
+            for (int i = 0; i < INVOICES_PER_CUSTOMER; i++) {
+                Invoice invoice = new Invoice();
+                invoice.setInvoiceNumber("PLAN-" + i);
+                invoice.setCustomer(customer);
+                invoice.setInvoiceDate(START.toLocalDate().plusDays(i));
+                invoice.setTotalAmount(BigDecimal.TEN);
+                invoices.add(invoice);
+            }
+        }
+        visitLogRepository.saveAll(visits);
+        invoiceIds = invoiceRepository.saveAll(invoices).stream().map(Invoice::getId).limit(20).toList();
+        List<InvoiceItem> items = new ArrayList<>();
+        for (Invoice invoice : invoices) {
+            items.add(new InvoiceItem(null, invoice, product, 1, BigDecimal.TEN, BigDecimal.TEN));
+        }
+        invoiceItemRepository.saveAll(items);
+        customerActivityService.rebuild();
+    }
+
+    @Test
+    void customerQueries() {
+        PageRequest byName = PageRequest.of(1, 5, Sort.by("nameStd"));
+        expectIndexed(() -> customerRepository.findRows(
+                CustomerSpecification.withFilters(regionId, "A", null, null, null), byName));
+        expectIndexed(() -> customerRepository.findRows(
+                CustomerSpecification.withFilters(null, "B", null, null, null), byName));
+        expectIndexed(() -> customerRepository.findRows(
+                CustomerSpecification.withFilters(null, null, "dental clinic", null, null)
+                        .and(CustomerSpecification.orderByRelevance("dental clinic")), PageRequest.of(1, 5)));
+        expectIndexed(() -> customerRepository.findRows(
+                CustomerSpecification.withFilters(null, null, "0810000012", null, null), byName));
+        expectIndexed(() -> customerRepository.findRows(
+                CustomerSpecification.withFilters(null, null, null, null, "due"), byName));
+        expectIndexed(() -> customerRepository.scrollRows(
+                CustomerSpecification.withFilters(regionId, "A", null, null, null), Sort.by("nameStd"), 5,
+                ScrollPosition.forward(Map.of("nameStd", "Plan", "id", 0L))));
+        expectIndexed(() -> transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<Customer> customers = customerRepository.streamAll(
+                    CustomerSpecification.updatedSince(OffsetDateTime.now().plusDays(1)))) {
+                customers.count();
+            }
+        }));
+        expectIndexed(() -> customerRepository.findExistingNameStds(List.of("Plan Dental Clinic")));
+        expectIndexed(() -> customerRepository.findRowById(customerId));
+        expectIndexed(() -> customerRepository.findRowsByIdIn(customerIds));
+        expectIndexed(() -> customerRepository.findExistingIds(customerIds));
+        expectIndexed(() -> customerActivityRepository.findFollowUpsFrom(START, 0L, START.plusDays(1), Limit.of(10)));
+        expectIndexed(() -> customerActivityRepository.findFollowUps(customerIds));
+    }
+
+    @Test
+    void visitQueries() {
+        expectIndexed(() -> visitLogRepository.findRowsByCustomerId(customerId,
+                PageRequest.of(1, 5, Sort.by(Sort.Direction.DESC, "visitAt"))));
+        expectIndexed(() -> visitLogRepository.scrollRowsByCustomerId(customerId,
+                Sort.by(Sort.Direction.DESC, "visitAt"), 5,
+                ScrollPosition.forward(Map.of("visitAt", START.plusDays(5), "id", Long.MAX_VALUE))));
+        expectIndexed(() -> visitLogRepository.findRowsByCustomerId(customerId,
+                Sort.by(Sort.Order.desc("visitAt"), Sort.Order.asc("id")), Limit.of(10)));
+        expectIndexed(() -> visitLogRepository.findMinVisitAtFrom(START));
+        expectIndexed(() -> visitLogRepository.findExistingIds(List.of(1L, 2L)));
+        expectIndexed(() -> visitLogRepository.findIdsByCustomerIdAndVisitAtBefore(customerId, START.plusDays(1)));
+        expectIndexed(() -> visitLogRepository.findRowsByIdIn(List.of(1L, 2L)));
+        expectIndexed(() -> visitLogRepository.findVisitStats(customerIds));
+        expectIndexed(() -> visitLogRepository.findLatestVisits(customerIds));
+        expectIndexed(() -> transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<VisitLog> visits = visitLogRepository.streamByVisitAtWindow(START, START.plusDays(1))) {
+                visits.count();
+            }
+            try (Stream<VisitLog> visits = visitLogRepository.streamByVisitAtWindowInCustomerOrder(
+                    START, START.plusDays(1))) {
+                visits.count();
+            }
+            try (Stream<VisitLog> visits = visitLogRepository.streamByCustomerIdAndVisitAtWindow(
+                    customerId, START, START.plusDays(1))) {
+                visits.count();
+            }
+        }));
+    }
+
+    @Test
+    void invoiceQueries() {
+        LocalDate from = START.toLocalDate();
+        expectIndexed(() -> invoiceRepository.findRowsByCustomerId(customerId));
+        expectIndexed(() -> invoiceRepository.findRowsByCustomerId(customerId, Limit.of(10)));
+        expectIndexed(() -> invoiceRepository.findRowsByCustomerId(customerId, PageRequest.of(1, 2,
+                Sort.by(Sort.Order.desc("invoiceDate"), Sort.Order.desc("id")))));
+        expectIndexed(() -> invoiceItemRepository.findRowsByInvoiceIdIn(invoiceIds));
+        expectIndexed(() -> invoiceRepository.findRowsByIdIn(invoiceIds));
+        expectIndexed(() -> invoiceRepository.findInvoiceStats(customerIds));
+        expectIndexed(() -> invoiceRepository.findExistingKeys(customerIds, List.of("PLAN-0")));
+        expectIndexed(() -> transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<Invoice> invoices = invoiceRepository.streamByInvoiceDateWindow(from, from.plusDays(1))) {
+                invoices.count();
+            }
+            try (Stream<Invoice> invoices = invoiceRepository.streamByCustomerIdAndInvoiceDateWindow(
+                    customerId, from, from.plusDays(1))) {
+                invoices.count();
+            }
+        }));
+    }
+
+    @Test
+    void changeLogQueries() {
+        expectIndexed(() -> changeLogRepository.findLatestChanges(0L, 100L, Limit.of(10)));
+        expectIndexed(() -> changeLogRepository.findIdsChangedUpTo(START, Limit.of(1)));
+        expectIndexed(() -> changeLogRepository.findStampsAfter(0L, Limit.of(10)));
+        expectIndexed(() -> changeLogRepository.findMinId());
+    }
+
+    /**
+     * Runs {@code queries} and fails if the H2 plan of any statement they issued scans a table.
+     * Parameters are bound as null: H2 plans a prepared statement before it sees the values.
+     */
+    private void expectIndexed(Runnable queries) {
+        List<String> statements = RecordingInspector.record(queries);
+        assertFalse(statements.isEmpty(), "No statements recorded");
+        for (String sql : statements) {
+            String plan = explain(sql);
+            if (FULL_SCAN.matcher(plan).find()) {
+                fail("Full scan in the plan of\n" + sql + "\n\n" + plan);
+            }
+        }
+    }
+
+    private String explain(String sql) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("explain " + sql)) {
+            int parameters = statement.getParameterMetaData().getParameterCount();
+            for (int i = 1; i <= parameters; i++) {
+                statement.setObject(i, null);
+            }
+            try (ResultSet plan = statement.executeQuery()) {
+                plan.next();
+                return plan.getString(1);
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot explain " + sql, e);
+        }
+    }
+
+    /**
+     * Statement inspector that also keeps the SQL of the statements prepared by {@link #record}.
+     */
+    public static class RecordingInspector extends SqlStatementCounter {
+
+        private static final ThreadLocal<List<String>> RECORDED = new ThreadLocal<>();
+
+        static List<String> record(Runnable queries) {
+            List<String> statements = new ArrayList<>();
+            RECORDED.set(statements);
+            try {
+                queries.run();
+            } finally {
+                RECORDED.remove();
+            }
+            return statements;
+        }
+
+        @Override
+        public String inspect(String sql) {
+            List<String> statements = RECORDED.get();
+            if (statements != null) {
+                statements.add(sql);
+            }
+            return super.inspect(sql);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.hygia.crm.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Normalization and n-grams of names and phones, on both the index and the query side.
+ */
+class SearchTextTest {
+
+    @Test
+    void namesAreLowerCasedWithoutAccentsOrPunctuation() {
+        assertEquals("cafe muller co", SearchText.normalizeName("  Café  MÜLLER & Co. "));
+        assertEquals("dr o brien 24", SearchText.normalizeName("Dr. O'Brien-24"));
+        assertEquals("pharmacie", SearchText.normalizeName("PHARMACIE"));
+    }
+
+    @Test
+    void nothingSearchableNormalizesToNull() {
+        assertNull(SearchText.normalizeName(null));
+        assertNull(SearchText.normalizeName(""));
+        assertNull(SearchText.normalizeName(" -/. "));
+    }
+
+    @Test
+    void phonesAreReducedToDigits() {
+        assertEquals("0612345678", SearchText.digitsOnly("+0 (6) 12-34 56.78"));
+        assertNull(SearchText.digitsOnly("n/a"));
+        assertNull(SearchText.digitsOnly(null));
+    }
+
+    @Test
+    void onlyLetterFreeQueriesWithEnoughDigitsArePhoneQueries() {
+        assertEquals("0612", SearchText.phoneQuery("06-12"));
+        assertNull(SearchText.phoneQuery("06"));
+        assertNull(SearchText.phoneQuery("ab 123"));
+        assertNull(SearchText.phoneQuery(null));
+    }
+
+    @Test
+    void indexHoldsPaddedTrigramsAndWordStarts() {
+        assertEquals(List.of(" ab", "ab ", "b c", " cd", "cd ", " a", " c"),
+                List.copyOf(SearchText.nameIndexGrams("ab cd")));
+        assertEquals(List.of(" x ", " x"), List.copyOf(SearchText.nameIndexGrams("x")));
+        assertTrue(SearchText.nameIndexGrams(null).isEmpty());
+    }
+
+    @Test
+    void queryGramsAreContainedInTheIndexOfMatchingNames() {
+        Set<String> indexed = SearchText.nameIndexGrams(SearchText.normalizeName("Pharmacie du Centre"));
+
+        assertEquals(List.of("pha", "har", "arm"), List.copyOf(SearchText.nameQueryGrams("pharm")));
+        assertTrue(indexed.containsAll(SearchText.nameQueryGrams("pharm")));
+        assertTrue(indexed.containsAll(SearchText.nameQueryGrams("e du c")));
+        // Short queries only match word starts
+        assertEquals(Set.of(" ce"), SearchText.nameQueryGrams("ce"));
+        assertTrue(indexed.containsAll(SearchText.nameQueryGrams("ce")));
+        assertTrue(indexed.containsAll(SearchText.nameQueryGrams("d")));
+        assertFalse(indexed.containsAll(SearchText.nameQueryGrams("ha")));
+        assertTrue(SearchText.nameQueryGrams(null).isEmpty());
+    }
+
+    @Test
+    void digitGramsAreTrigramsOfTheDigits() {
+        assertEquals(List.of("061", "612", "123"), List.copyOf(SearchText.digitGrams("06123")));
+        assertTrue(SearchText.digitGrams("06").isEmpty());
+        assertTrue(SearchText.digitGrams(null).isEmpty());
+    }
+}
@@ -0,0 +1,199 @@
+package com.hygia.crm.service;
+
+import com.hygia.crm.entity.ChangeLogEntry;
+import com.hygia.crm.repository.ChangeKey;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The sync change feed over change ids committed out of order, rolled back, paged and purged.
+ * Entity ids are made up; the feed only reports what it cannot load as missing.
+ */
+@SpringBootTest(properties = {
+    "logging.level.org.hibernate.SQL=WARN",
+    "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+    "crm.sync.settle-delay=1s"
+})
+class ChangeLogServiceTest {
+
+    // Above any customer the other tests create
+    private static final long BASE_ID = 9_000_000;
+    // Twice the settle delay and some slack
+    private static final long SETTLE_WAIT_MILLIS = 5_000;
+
+    @Autowired
+    private ChangeLogService changeLogService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void changeCommittedAfterHigherIdIsNotSkipped() throws Exception {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        long since = changeLogService.currentCursor();
+
+        // A logs its change, then stalls before committing; B logs and commits after it
+        CountDownLatch logged = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> transactionTemplate.executeWithoutResult(status -> {
+            changeLogService.record(ChangeLogEntry.CUSTOMER, BASE_ID + 1);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    logged.countDown();
+                    await(release);
+                }
+            });
+        }));
+        assertTrue(logged.await(10, TimeUnit.SECONDS));
+        transactionTemplate.executeWithoutResult(status -> changeLogService.record(ChangeLogEntry.CUSTOMER, BASE_ID + 2));
+
+        Feed whileOpen = read(since);
+        assertFalse(whileOpen.ids().contains(BASE_ID + 2), "Read past a change that is still committing");
+
+        release.countDown();
+        first.get(10, TimeUnit.SECONDS);
+        assertEquals(List.of(BASE_ID + 1, BASE_ID + 2), readUntil(whileOpen.cursor(), 2));
+    }
+
+    @Test
+    void rolledBackIdIsPassedOnceSettled() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        long since = changeLogService.currentCursor();
+
+        assertThrows(IllegalStateException.class, () -> transactionTemplate.executeWithoutResult(status -> {
+            changeLogService.record(ChangeLogEntry.CUSTOMER, BASE_ID + 11);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    throw new IllegalStateException("Roll back after logging");
+                }
+            });
+        }));
+        transactionTemplate.executeWithoutResult(status -> changeLogService.record(ChangeLogEntry.CUSTOMER, BASE_ID + 12));
+
+        assertFalse(read(since).ids().contains(BASE_ID + 12), "Read past a gap before it settled");
+        assertEquals(List.of(BASE_ID + 12), readUntil(since, 1));
+    }
+
+    @Test
+    void pagesEachEntityOnceAtItsLatestChange() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        long since = changeLogService.currentCursor();
+
+        transactionTemplate.executeWithoutResult(status -> changeLogService.record(ChangeLogEntry.CUSTOMER,
+                List.of(BASE_ID + 21, BASE_ID + 22, BASE_ID + 23, BASE_ID + 24, BASE_ID + 25)));
+        transactionTemplate.executeWithoutResult(status -> changeLogService.record(ChangeLogEntry.CUSTOMER, BASE_ID + 21));
+
+        List<Long> ids = new ArrayList<>();
+        boolean hadMore = false;
+        long cursor = since;
+        long deadline = System.currentTimeMillis() + SETTLE_WAIT_MILLIS;
+        while (ids.size() < 5 && System.currentTimeMillis() < deadline) {
+            ChangeLogService.ChangeBatch batch = changeLogService.findChanges(cursor, 2);
+            assertTrue(batch.changes().size() <= 2);
+            hadMore |= batch.hasMore();
+            ids.addAll(ownIds(batch));
+            cursor = batch.cursor();
+        }
+        assertTrue(hadMore);
+        assertEquals(List.of(BASE_ID + 22, BASE_ID + 23, BASE_ID + 24, BASE_ID + 25, BASE_ID + 21), ids);
+    }
+
+    @Test
+    void purgedCursorHasExpired() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        long since = changeLogService.currentCursor();
+
+        transactionTemplate.executeWithoutResult(status -> changeLogService.record(ChangeLogEntry.CUSTOMER, BASE_ID + 31));
+        transactionTemplate.executeWithoutResult(status -> changeLogService.record(ChangeLogEntry.CUSTOMER, BASE_ID + 32));
+        // What a purge leaves: the latest of the expired changes, long settled
+        Long kept = jdbcTemplate.queryForObject(
+                "select id from change_log where entity_id = ?", Long.class, BASE_ID + 32);
+        jdbcTemplate.update("delete from change_log where id < ?", kept);
+        jdbcTemplate.update("update change_log set changed_at = dateadd(DAY, -31, changed_at) where id = ?", kept);
+
+        ServiceException expired = assertThrows(ServiceException.class, () -> changeLogService.findChanges(since, 10));
+        assertEquals(HttpStatus.GONE, expired.getStatus());
+        assertEquals("SYNC_CURSOR_EXPIRED", expired.getCode());
+    }
+
+    private record Feed(List<Long> ids, long cursor) {
+    }
+
+    /**
+     * The ids of this test's changes after {@code since}, all pages of what can be read now.
+     */
+    private Feed read(long since) {
+        List<Long> ids = new ArrayList<>();
+        long cursor = since;
+        ChangeLogService.ChangeBatch batch;
+        do {
+            batch = changeLogService.findChanges(cursor, 100);
+            ids.addAll(ownIds(batch));
+            cursor = batch.cursor();
+        } while (batch.hasMore());
+        return new Feed(ids, cursor);
+    }
+
+    /**
+     * Reads from {@code since} until {@code count} of this test's changes arrived, waiting for gaps
+     * to settle.
+     */
+    private List<Long> readUntil(long since, int count) {
+        List<Long> ids = new ArrayList<>();
+        long cursor = since;
+        long deadline = System.currentTimeMillis() + SETTLE_WAIT_MILLIS;
+        while (ids.size() < count && System.currentTimeMillis() < deadline) {
+            Feed feed = read(cursor);
+            ids.addAll(feed.ids());
+            cursor = feed.cursor();
+            sleep(100);
+        }
+        return ids;
+    }
+
+    private static List<Long> ownIds(ChangeLogService.ChangeBatch batch) {
+        return batch.changes().stream()
+                .filter(change -> ChangeLogEntry.CUSTOMER.equals(change.entityType()) && change.entityId() > BASE_ID)
+                .map(ChangeKey::entityId)
+                .toList();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.hygia.crm.service;
+
+import com.hygia.crm.repository.CustomerActivityRepository;
+import com.hygia.crm.repository.FollowUp;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * The in-memory follow-up window, driven round by round without the dispatcher thread. The
+ * repository answers from a map standing in for customer_activity.
+ */
+class FollowUpSchedulerTest {
+
+    private static final Comparator<FollowUp> INDEX_ORDER =
+            Comparator.comparing(FollowUp::nextFollowUpAt).thenComparing(FollowUp::customerId);
+
+    // Customer id -> its open follow-up
+    private final Map<Long, OffsetDateTime> followUps = new HashMap<>();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CustomerActivityRepository activityRepository = mock(CustomerActivityRepository.class);
+
+    // Far enough ahead that nothing here counts as already due on startup
+    private final OffsetDateTime base = OffsetDateTime.now(ZoneOffset.UTC).plusDays(1).truncatedTo(ChronoUnit.SECONDS);
+
+    @BeforeEach
+    void repository() {
+        when(activityRepository.findFollowUpsFrom(any(), anyLong(), any(), any())).thenAnswer(call -> {
+            OffsetDateTime fromAt = call.getArgument(0);
+            long fromCustomerId = call.getArgument(1);
+            OffsetDateTime to = call.getArgument(2);
+            Limit limit = call.getArgument(3);
+            return followUps.entrySet().stream()
+                    .map(entry -> new FollowUp(entry.getKey(), entry.getValue()))
+                    .filter(followUp -> followUp.nextFollowUpAt().isAfter(fromAt)
+                            || (followUp.nextFollowUpAt().isEqual(fromAt) && followUp.customerId() >= fromCustomerId))
+                    .filter(followUp -> followUp.nextFollowUpAt().isBefore(to))
+                    .sorted(INDEX_ORDER)
+                    .limit(limit.max())
+                    .toList();
+        });
+        when(activityRepository.findFollowUps(anyCollection())).thenAnswer(call -> {
+            Collection<Long> customerIds = call.getArgument(0);
+            return customerIds.stream()
+                    .filter(followUps::containsKey)
+                    .map(customerId -> new FollowUp(customerId, followUps.get(customerId)))
+                    .toList();
+        });
+    }
+
+    @Test
+    void overflowingWindowEndsAtTheFirstFollowUpThatDoesNotFit() {
+        FollowUpScheduler scheduler = scheduler(2);
+        scheduler.subscribe();
+        for (long customerId = 1; customerId <= 4; customerId++) {
+            followUps.put(customerId, base.plusMinutes(10 * customerId));
+        }
+
+        scheduler.reload(micros(base));
+        assertEquals(base.plusMinutes(30), scheduler.loadedUntil());
+        assertEquals(2, scheduled());
+
+        // Only the ones held are announced, however late the round
+        scheduler.fireDue(micros(base.plusMinutes(45)));
+        assertEquals(2, announced());
+
+        // The next reload goes on from the first one left out
+        scheduler.reload(micros(base.plusMinutes(45)));
+        assertEquals(2, scheduled());
+        scheduler.fireDue(micros(base.plusMinutes(45)));
+        assertEquals(4, announced());
+    }
+
+    @Test
+    void replacedFollowUpIsNotAnnounced() {
+        FollowUpScheduler scheduler = scheduler(100);
+        scheduler.subscribe();
+        followUps.put(1L, base.plusMinutes(10));
+        followUps.put(2L, base.plusMinutes(10));
+        followUps.put(3L, base.plusMinutes(10));
+        scheduler.reload(micros(base));
+        assertEquals(3, scheduled());
+
+        // Later visits, e.g. on another instance, replace one follow-up and clear another
+        followUps.put(1L, base.plusMinutes(50));
+        followUps.remove(3L);
+        scheduler.fireDue(micros(base.plusMinutes(15)));
+        assertEquals(1, announced());
+    }
+
+    @Test
+    void followUpScheduledBeyondTheWindowIsReadByTheNextReload() {
+        FollowUpScheduler scheduler = scheduler(100);
+        scheduler.subscribe();
+        scheduler.reload(micros(base));
+        assertEquals(base.plusHours(1), scheduler.loadedUntil());
+
+        recordVisit(scheduler, 1L, base.plusMinutes(30));
+        assertEquals(1, scheduled());
+        recordVisit(scheduler, 2L, base.plusMinutes(90));
+        assertEquals(1, scheduled());
+
+        scheduler.reload(micros(base.plusMinutes(45)));
+        assertEquals(2, scheduled());
+        scheduler.fireDue(micros(base.plusMinutes(91)));
+        assertEquals(2, announced());
+    }
+
+    /**
+     * A visit scheduling {@code nextFollowUpAt}, committed.
+     */
+    private void recordVisit(FollowUpScheduler scheduler, Long customerId, OffsetDateTime nextFollowUpAt) {
+        followUps.put(customerId, nextFollowUpAt);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            scheduler.visitRecorded(customerId, nextFollowUpAt);
+            TransactionSynchronizationUtils.invokeAfterCommit(TransactionSynchronizationManager.getSynchronizations());
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private FollowUpScheduler scheduler(int maxEntries) {
+        return new FollowUpScheduler(activityRepository, meterRegistry, Duration.ofHours(1), Duration.ofMinutes(5),
+                maxEntries, Duration.ofSeconds(30), Duration.ofMinutes(30), 10);
+    }
+
+    private long scheduled() {
+        return (long) meterRegistry.get("crm.followups.scheduled").gauge().value();
+    }
+
+    private long announced() {
+        return (long) meterRegistry.get("crm.followups.due").counter().count();
+    }
+
+    private static long micros(OffsetDateTime dateTime) {
+        return ChronoUnit.MICROS.between(OffsetDateTime.of(1970, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC), dateTime);
+    }
+}
@@ -0,0 +1,210 @@
+package com.hygia.crm.service;
+
+import com.hygia.crm.dto.ErrorResponse;
+import com.hygia.crm.entity.IdempotencyRecord;
+import com.hygia.crm.repository.IdempotencyRecordRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Claims, replays and conflicts of Idempotency-Key requests, with the claim table of another
+ * instance simulated by writing idempotency_key rows directly.
+ */
+@SpringBootTest(properties = {
+    "logging.level.org.hibernate.SQL=WARN",
+    "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+    "crm.idempotency.wait-timeout=1s"
+})
+class IdempotencyServiceTest {
+
+    private static final String SCOPE = "test";
+    private static final Map<String, Object> REQUEST = Map.of("customerId", 1, "note", "first");
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private IdempotencyRecordRepository recordRepository;
+
+    @Test
+    void retryReplaysTheFirstResponse() {
+        String key = newKey();
+        AtomicInteger runs = new AtomicInteger();
+
+        ResponseEntity<?> first = idempotencyService.execute(SCOPE, key, REQUEST,
+                () -> ResponseEntity.status(HttpStatus.CREATED).body(Map.of("id", runs.incrementAndGet())));
+        ResponseEntity<?> retry = idempotencyService.execute(SCOPE, key, REQUEST,
+                () -> ResponseEntity.status(HttpStatus.CREATED).body(Map.of("id", runs.incrementAndGet())));
+
+        assertEquals(1, runs.get());
+        assertEquals(HttpStatus.CREATED, first.getStatusCode());
+        assertNull(first.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        assertEquals(HttpStatus.CREATED, retry.getStatusCode());
+        assertEquals("true", retry.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        assertEquals("{\"id\":1}", retry.getBody());
+        assertEquals(IdempotencyRecord.STATUS_COMPLETED, recordRepository.findById(SCOPE + ":" + key).orElseThrow().getStatus());
+    }
+
+    @Test
+    void keyReusedForAnotherRequestIsRejected() {
+        String key = newKey();
+        idempotencyService.execute(SCOPE, key, REQUEST, () -> ResponseEntity.ok("done"));
+
+        AtomicInteger runs = new AtomicInteger();
+        ResponseEntity<?> reused = idempotencyService.execute(SCOPE, key, Map.of("customerId", 2),
+                () -> ResponseEntity.ok("again " + runs.incrementAndGet()));
+
+        assertEquals(0, runs.get());
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, reused.getStatusCode());
+        assertEquals("IDEMPOTENCY_KEY_REUSED", ((ErrorResponse) reused.getBody()).getCode());
+    }
+
+    @Test
+    void duplicateWhileRunningWaitsForTheResponse() throws Exception {
+        String key = newKey();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+
+        CompletableFuture<ResponseEntity<?>> first = CompletableFuture.supplyAsync(() ->
+                idempotencyService.execute(SCOPE, key, REQUEST, () -> {
+                    runs.incrementAndGet();
+                    running.countDown();
+                    await(release);
+                    return ResponseEntity.ok("done");
+                }));
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+        CompletableFuture<ResponseEntity<?>> duplicate = CompletableFuture.supplyAsync(() ->
+                idempotencyService.execute(SCOPE, key, REQUEST, () -> ResponseEntity.ok("again " + runs.incrementAndGet())));
+        // Found the first request running and waits for it
+        awaitWaiting(1);
+        release.countDown();
+
+        assertEquals("done", first.get(10, TimeUnit.SECONDS).getBody());
+        ResponseEntity<?> replayed = duplicate.get(10, TimeUnit.SECONDS);
+        assertEquals("done", replayed.getBody());
+        assertEquals("true", replayed.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void duplicateOfALongRequestIsInProgress() throws Exception {
+        String key = newKey();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<ResponseEntity<?>> first = CompletableFuture.supplyAsync(() ->
+                idempotencyService.execute(SCOPE, key, REQUEST, () -> {
+                    running.countDown();
+                    await(release);
+                    return ResponseEntity.ok("done");
+                }));
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+        try {
+            // Outlasts wait-timeout
+            ResponseEntity<?> duplicate = idempotencyService.execute(SCOPE, key, REQUEST, () -> ResponseEntity.ok("again"));
+            assertEquals(HttpStatus.CONFLICT, duplicate.getStatusCode());
+            assertEquals("IDEMPOTENCY_KEY_IN_PROGRESS", ((ErrorResponse) duplicate.getBody()).getCode());
+        } finally {
+            release.countDown();
+        }
+        assertEquals("done", first.get(10, TimeUnit.SECONDS).getBody());
+    }
+
+    @Test
+    void claimOfAnotherInstanceHoldsUntilItsLeaseEnds() {
+        String requestHash = requestHash();
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        String heldKey = newKey();
+        String abandonedKey = newKey();
+        recordRepository.save(new IdempotencyRecord(SCOPE + ":" + heldKey, requestHash,
+                IdempotencyRecord.STATUS_IN_PROGRESS, now.plusMinutes(1), now.plusHours(1), null, null, null));
+        recordRepository.save(new IdempotencyRecord(SCOPE + ":" + abandonedKey, requestHash,
+                IdempotencyRecord.STATUS_IN_PROGRESS, now.minusSeconds(1), now.plusHours(1), null, null, null));
+
+        ResponseEntity<?> held = idempotencyService.execute(SCOPE, heldKey, REQUEST, () -> ResponseEntity.ok("ran"));
+        ResponseEntity<?> takenOver = idempotencyService.execute(SCOPE, abandonedKey, REQUEST, () -> ResponseEntity.ok("ran"));
+
+        assertEquals(HttpStatus.CONFLICT, held.getStatusCode());
+        assertEquals("IDEMPOTENCY_KEY_IN_PROGRESS", ((ErrorResponse) held.getBody()).getCode());
+        assertEquals("ran", takenOver.getBody());
+        assertEquals(IdempotencyRecord.STATUS_COMPLETED,
+                recordRepository.findById(SCOPE + ":" + abandonedKey).orElseThrow().getStatus());
+    }
+
+    @Test
+    void failedRequestRunsAgainOnRetry() {
+        String key = newKey();
+        AtomicInteger runs = new AtomicInteger();
+
+        ResponseEntity<?> failed = idempotencyService.execute(SCOPE, key, REQUEST, () -> {
+            runs.incrementAndGet();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        });
+        assertThrows(IllegalStateException.class, () -> idempotencyService.execute(SCOPE, key, REQUEST, () -> {
+            runs.incrementAndGet();
+            throw new IllegalStateException("Write failed");
+        }));
+        ResponseEntity<?> retried = idempotencyService.execute(SCOPE, key, REQUEST, () -> {
+            runs.incrementAndGet();
+            return ResponseEntity.ok("done");
+        });
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, failed.getStatusCode());
+        assertEquals("done", retried.getBody());
+        assertNull(retried.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        assertEquals(3, runs.get());
+    }
+
+    /**
+     * The fingerprint of {@link #REQUEST}, as stored with a claim.
+     */
+    private String requestHash() {
+        String key = newKey();
+        AtomicReference<String> hash = new AtomicReference<>();
+        idempotencyService.execute(SCOPE, key, REQUEST, () -> {
+            hash.set(recordRepository.findById(SCOPE + ":" + key).orElseThrow().getRequestHash());
+            return ResponseEntity.ok(List.of());
+        });
+        return hash.get();
+    }
+
+    private static String newKey() {
+        return UUID.randomUUID().toString();
+    }
+
+    private void awaitWaiting(int count) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (idempotencyService.getWaitingCount() < count) {
+            assertTrue(System.nanoTime() < deadline, "no duplicate waiting");
+            Thread.yield();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.hygia.crm.service;
+
+import com.hygia.crm.dto.InvoiceBatchItemResultDto;
+import com.hygia.crm.dto.InvoiceBatchResultDto;
+import com.hygia.crm.dto.InvoiceCreateDto;
+import com.hygia.crm.dto.InvoiceItemCreateDto;
+import com.hygia.crm.entity.Customer;
+import com.hygia.crm.entity.Product;
+import com.hygia.crm.repository.CustomerRepository;
+import com.hygia.crm.repository.ProductRepository;
+import com.hygia.crm.repository.RegionRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Invoices repeated within one batch, across and within chunks.
+ */
+@SpringBootTest(properties = {
+    "logging.level.org.hibernate.SQL=WARN",
+    "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+    "crm.invoices.batch.chunk-size=3"
+})
+class InvoiceBatchServiceTest {
+
+    private static final long MISSING_PRODUCT_ID = Long.MAX_VALUE;
+
+    @Autowired
+    private InvoiceBatchService invoiceBatchService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private RegionRepository regionRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Test
+    void repeatedInvoiceIsRefusedOnlyOnceACopyIsWritten() {
+        Long customerId = createCustomer();
+        Long productId = createProduct();
+        String number = "BATCH-" + System.nanoTime();
+
+        InvoiceBatchResultDto result = invoiceBatchService.createInvoices(List.of(
+                invoice(customerId, number, MISSING_PRODUCT_ID),
+                invoice(customerId, number, productId),
+                invoice(customerId, number, productId),
+                // Next chunk
+                invoice(customerId, number, productId),
+                invoice(customerId, number + "-other", productId)));
+
+        assertEquals(2, result.getSucceeded());
+        assertFailed(result.getResults().get(0), "PRODUCT_NOT_FOUND");
+        assertEquals(InvoiceBatchService.STATUS_CREATED, result.getResults().get(1).getStatus());
+        assertFailed(result.getResults().get(2), "DUPLICATE_IN_BATCH");
+        assertFailed(result.getResults().get(3), "DUPLICATE_IN_BATCH");
+        assertEquals(InvoiceBatchService.STATUS_CREATED, result.getResults().get(4).getStatus());
+
+        InvoiceBatchResultDto again = invoiceBatchService.createInvoices(List.of(invoice(customerId, number, productId)));
+        assertFailed(again.getResults().get(0), "INVOICE_ALREADY_EXISTS");
+    }
+
+    @Test
+    void repeatedInvoiceIsWrittenWhenTheFirstCopyIsNot() {
+        Long customerId = createCustomer();
+        Long productId = createProduct();
+        String number = "BATCH-" + System.nanoTime();
+
+        // The first copy fails to write in the chunk and again on its own: its unit price overflows the column
+        InvoiceCreateDto overflowing = invoice(customerId, number, productId);
+        overflowing.getItems().get(0).setUnitPrice(new BigDecimal("1e20"));
+        InvoiceBatchResultDto result = invoiceBatchService.createInvoices(List.of(
+                overflowing,
+                invoice(customerId, number, productId)));
+
+        assertFailed(result.getResults().get(0), "INVOICE_WRITE_FAILED");
+        assertEquals(InvoiceBatchService.STATUS_CREATED, result.getResults().get(1).getStatus());
+    }
+
+    private static void assertFailed(InvoiceBatchItemResultDto result, String code) {
+        assertEquals(InvoiceBatchService.STATUS_FAILED, result.getStatus());
+        assertNull(result.getInvoiceId());
+        assertEquals(code, result.getError().getCode());
+    }
+
+    private Long createCustomer() {
+        Customer customer = new Customer();
+        customer.setNameStd("Batch Customer " + System.nanoTime());
+        customer.setRegion(regionRepository.findAll().get(0));
+        customer.setTier("A");
+        return customerRepository.save(customer).getId();
+    }
+
+    private Long createProduct() {
+        Product product = new Product();
+        product.setItemCode("BATCH-" + System.nanoTime());
+        return productRepository.save(product).getId();
+    }
+
+    private static InvoiceCreateDto invoice(Long customerId, String number, Long productId) {
+        InvoiceCreateDto createDto = new InvoiceCreateDto();
+        createDto.setInvoiceNumber(number);
+        createDto.setCustomerId(customerId);
+        createDto.setInvoiceDate(LocalDate.of(2026, 3, 15));
+        createDto.setItems(List.of(new InvoiceItemCreateDto(productId, 2, BigDecimal.TEN)));
+        return createDto;
+    }
+}
@@ -0,0 +1,157 @@
+package com.hygia.crm.service;
+
+import com.hygia.crm.dto.InvoiceCreateDto;
+import com.hygia.crm.dto.InvoiceItemCreateDto;
+import com.hygia.crm.entity.Customer;
+import com.hygia.crm.entity.Product;
+import com.hygia.crm.repository.CustomerRepository;
+import com.hygia.crm.repository.InvoiceItemRepository;
+import com.hygia.crm.repository.ProductRepository;
+import com.hygia.crm.repository.RegionRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mockingDetails;
+
+/**
+ * Rollup rebuilds racing invoice writes and each other. The rebuild is held inside its snapshot,
+ * between reading the stored rollup and applying the correction, by stalling its first aggregate
+ * query.
+ */
+@SpringBootTest(properties = {
+    "logging.level.org.hibernate.SQL=WARN",
+    "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN"
+})
+class SalesRollupServiceTest {
+
+    private static final LocalDate INVOICE_DATE = LocalDate.of(2026, 3, 15);
+
+    @MockitoSpyBean
+    private InvoiceItemRepository invoiceItemRepository;
+
+    @Autowired
+    private SalesRollupService salesRollupService;
+
+    @Autowired
+    private InvoiceService invoiceService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private RegionRepository regionRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void invoiceCommittedDuringARebuildIsCountedOnce() throws Exception {
+        Long customerId = createCustomer();
+        Long productId = createProduct();
+        invoiceService.createInvoice(invoice(customerId, productId, "before"));
+        // Drift for the rebuild to repair
+        jdbcTemplate.update("update sales_rollup set revenue = revenue + 100, quantity = quantity + 7 where product_id = ?",
+                productId);
+
+        CountDownLatch inSnapshot = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        AtomicBoolean first = new AtomicBoolean(true);
+        // A spied repository proxy has no real method to call; its default answer delegates to the proxy
+        Answer<?> repository = mockingDetails(invoiceItemRepository).getMockCreationSettings().getDefaultAnswer();
+        doAnswer(call -> {
+            if (first.compareAndSet(true, false)) {
+                inSnapshot.countDown();
+                await(resume);
+            }
+            return repository.answer(call);
+        }).when(invoiceItemRepository).findSalesRollupRows(anyLong(), anyLong());
+
+        CompletableFuture<Long> rebuild = CompletableFuture.supplyAsync(salesRollupService::rebuild);
+        try {
+            assertTrue(inSnapshot.await(10, TimeUnit.SECONDS));
+            invoiceService.createInvoice(invoice(customerId, productId, "during"));
+            // Another rebuild, here or on another instance, would add the same correction again
+            ServiceException running = assertThrows(ServiceException.class, salesRollupService::rebuild);
+            assertEquals("ROLLUP_REBUILD_RUNNING", running.getCode());
+        } finally {
+            resume.countDown();
+        }
+        rebuild.get(30, TimeUnit.SECONDS);
+
+        Map<String, Object> rollup = jdbcTemplate.queryForMap(
+                "select sum(revenue) revenue, sum(quantity) quantity, sum(line_count) line_count " +
+                "from sales_rollup where product_id = ?", productId);
+        assertEquals(0, new BigDecimal("40.00").compareTo((BigDecimal) rollup.get("revenue")));
+        assertEquals(4L, ((Number) rollup.get("quantity")).longValue());
+        assertEquals(2L, ((Number) rollup.get("line_count")).longValue());
+        assertRollupMatchesInvoiceItems();
+
+        // Started after the first committed, the next rebuild has nothing left to correct
+        salesRollupService.rebuild();
+        assertRollupMatchesInvoiceItems();
+    }
+
+    private void assertRollupMatchesInvoiceItems() {
+        Map<String, Object> items = jdbcTemplate.queryForMap(
+                "select coalesce(sum(amount), 0) revenue, coalesce(sum(quantity), 0) quantity, count(*) line_count " +
+                "from invoice_item");
+        Map<String, Object> rollup = jdbcTemplate.queryForMap(
+                "select coalesce(sum(revenue), 0) revenue, coalesce(sum(quantity), 0) quantity, " +
+                "coalesce(sum(line_count), 0) line_count from sales_rollup");
+        assertEquals(0, ((BigDecimal) items.get("revenue")).compareTo((BigDecimal) rollup.get("revenue")));
+        assertEquals(((Number) items.get("quantity")).longValue(), ((Number) rollup.get("quantity")).longValue());
+        assertEquals(((Number) items.get("line_count")).longValue(), ((Number) rollup.get("line_count")).longValue());
+    }
+
+    private Long createCustomer() {
+        Customer customer = new Customer();
+        customer.setNameStd("Rollup Customer " + System.nanoTime());
+        customer.setRegion(regionRepository.findAll().get(0));
+        customer.setTier("A");
+        return customerRepository.save(customer).getId();
+    }
+
+    private Long createProduct() {
+        Product product = new Product();
+        product.setItemCode("ROLLUP-" + System.nanoTime());
+        return productRepository.save(product).getId();
+    }
+
+    private static InvoiceCreateDto invoice(Long customerId, Long productId, String number) {
+        InvoiceCreateDto createDto = new InvoiceCreateDto();
+        createDto.setInvoiceNumber("ROLLUP-" + number + "-" + System.nanoTime());
+        createDto.setCustomerId(customerId);
+        createDto.setInvoiceDate(INVOICE_DATE);
+        createDto.setItems(List.of(new InvoiceItemCreateDto(productId, 2, BigDecimal.TEN)));
+        return createDto;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.hygia.crm.service;
+
+import com.hygia.crm.entity.Customer;
+import com.hygia.crm.entity.VisitLog;
+import com.hygia.crm.repository.CustomerRepository;
+import com.hygia.crm.repository.RegionRepository;
+import com.hygia.crm.repository.VisitLogRepository;
+import com.hygia.crm.repository.VisitRow;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Listings of a customer's visits across the archive horizon, and archiving and restoring
+ * months, also when repeated after an interruption.
+ */
+@SpringBootTest(properties = {
+    "crm.visits.archive.horizon=P2Y",
+    "crm.visits.archive.rescan-interval=0s",
+    "logging.level.org.hibernate.SQL=WARN",
+    "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN"
+})
+class VisitArchiveServiceTest {
+
+    private static final Sort NEWEST_FIRST = Sort.by(Sort.Direction.DESC, "visitAt");
+
+    // Segments of earlier runs would belong to customers of another in-memory database
+    @DynamicPropertySource
+    static void archiveDir(DynamicPropertyRegistry registry) throws IOException {
+        Path dir = Files.createTempDirectory("visit-archive");
+        registry.add("crm.visits.archive.dir", dir::toString);
+    }
+
+    @Value("${crm.visits.archive.dir}")
+    private Path dir;
+
+    @Autowired
+    private VisitArchiveService visitArchiveService;
+
+    @Autowired
+    private VisitLogRepository visitLogRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private RegionRepository regionRepository;
+
+    @Test
+    void listingIsTheSameBeforeAndAfterArchivingAndRestoring() throws IOException {
+        // Ten recent visits and ten past the horizon, two per month
+        Long customerId = createCustomer();
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC).withDayOfMonth(15);
+        for (int i = 0; i < 10; i++) {
+            addVisit(customerId, now.minusMonths(1 + i / 2).minusHours(i));
+            addVisit(customerId, now.minusMonths(30 + i / 2).minusHours(i));
+        }
+        YearMonth newestArchived = YearMonth.from(now.minusMonths(30));
+        List<VisitRow> before = scrollAll(customerId, 3);
+        assertEquals(20, before.size());
+
+        assertTrue(visitArchiveService.archive().containsKey(newestArchived));
+        assertEquals(10, visitLogRepository.findRowsByCustomerId(customerId, PageRequest.of(0, 50)).getTotalElements());
+        assertListedAs(before, customerId);
+
+        // Nothing left before the horizon
+        assertTrue(visitArchiveService.archive().isEmpty());
+        assertListedAs(before, customerId);
+
+        // A restore interrupted after inserting its rows leaves the segment behind; repeating it inserts nothing
+        Path segment = segmentFile(newestArchived);
+        assertTrue(Files.exists(segment));
+        Path copy = Files.copy(segment, dir.resolve("interrupted-restore.copy"));
+        long restored = visitArchiveService.restore(newestArchived);
+        assertTrue(restored >= 2);
+        Files.move(copy, segment, StandardCopyOption.REPLACE_EXISTING);
+        // Listed once while in both visit_log and the archive
+        assertListedAs(before, customerId);
+        assertEquals(0, visitArchiveService.restore(newestArchived));
+        assertListedAs(before, customerId);
+
+        ServiceException missing = assertThrows(ServiceException.class,
+                () -> visitArchiveService.restore(newestArchived));
+        assertEquals("ARCHIVE_MONTH_NOT_FOUND", missing.getCode());
+
+        // Still before the horizon, so archived again
+        assertTrue(visitArchiveService.archive().containsKey(newestArchived));
+        assertListedAs(before, customerId);
+    }
+
+    private void assertListedAs(List<VisitRow> expected, Long customerId) {
+        // Pages of three, so that one page holds both recent and archived visits
+        assertEquals(expected, scrollAll(customerId, 3));
+        List<VisitRow> paged = new ArrayList<>();
+        Page<VisitRow> page = visitArchiveService.findVisits(customerId, PageRequest.of(0, 3, NEWEST_FIRST));
+        paged.addAll(page.getContent());
+        while (page.hasNext()) {
+            page = visitArchiveService.findVisits(customerId, page.nextPageable());
+            paged.addAll(page.getContent());
+        }
+        assertEquals(expected, paged);
+        assertEquals(expected.size(), page.getTotalElements());
+        assertEquals(expected.subList(0, 12), visitArchiveService.findRecentVisits(customerId, 12));
+    }
+
+    private List<VisitRow> scrollAll(Long customerId, int limit) {
+        List<VisitRow> rows = new ArrayList<>();
+        Window<VisitRow> window = visitArchiveService.scrollVisits(customerId, NEWEST_FIRST, limit,
+                ScrollPosition.keyset());
+        rows.addAll(window.getContent());
+        while (window.hasNext()) {
+            window = visitArchiveService.scrollVisits(customerId, NEWEST_FIRST, limit,
+                    (KeysetScrollPosition) window.positionAt(window.size() - 1));
+            rows.addAll(window.getContent());
+        }
+        return rows;
+    }
+
+    private Path segmentFile(YearMonth month) {
+        return dir.resolve("visits-" + month + ".seg");
+    }
+
+    private Long createCustomer() {
+        Customer customer = new Customer();
+        customer.setNameStd("Archive Customer " + System.nanoTime());
+        customer.setRegion(regionRepository.findAll().get(0));
+        customer.setTier("A");
+        return customerRepository.save(customer).getId();
+    }
+
+    private void addVisit(Long customerId, OffsetDateTime visitAt) {
+        VisitLog visit = new VisitLog();
+        visit.setCustomer(customerRepository.getReferenceById(customerId));
+        visit.setVisitAt(visitAt);
+        visit.setType("VISIT");
+        visit.setNotes("Visit at " + visitAt);
+        visitLogRepository.save(visit);
+    }
+}
@@ -0,0 +1,142 @@
+package com.hygia.crm.service;
+
+import com.hygia.crm.dto.VisitCreateDto;
+import com.hygia.crm.entity.Customer;
+import com.hygia.crm.repository.CustomerRepository;
+import com.hygia.crm.repository.JournalCheckpointRepository;
+import com.hygia.crm.repository.RegionRepository;
+import com.hygia.crm.repository.VisitLogRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Journal ingestion across restarts on the same journal directory. The services are built by
+ * hand, each with its own checkpoint, so the test controls when they start and stop.
+ */
+@SpringBootTest(properties = {
+    "logging.level.org.hibernate.SQL=WARN",
+    "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN"
+})
+class VisitJournalServiceTest {
+
+    private static final Duration AWAIT = Duration.ofSeconds(10);
+
+    @TempDir
+    Path dir;
+
+    @Autowired
+    private VisitLogRepository visitLogRepository;
+    @Autowired
+    private CustomerRepository customerRepository;
+    @Autowired
+    private RegionRepository regionRepository;
+    @Autowired
+    private JournalCheckpointRepository checkpointRepository;
+    @Autowired
+    private CustomerActivityService customerActivityService;
+    @Autowired
+    private ChangeLogService changeLogService;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void restartAppliesEachVisitExactlyOnce() throws Exception {
+        String checkpoint = "test-" + System.nanoTime();
+        Long customerId = createCustomer();
+        List<Long> visitIds = new ArrayList<>();
+
+        // Writes only when a reader waits or its batch is full
+        VisitJournalService first = start(checkpoint, Duration.ofHours(1));
+        for (int i = 0; i < 3; i++) {
+            visitIds.add(first.append(customerId, visit(i)).getId());
+        }
+        assertTrue(first.awaitApplied(customerId, AWAIT));
+        first.pauseWriter();
+        // Acknowledged, then the process "crashes" before writing them
+        for (int i = 3; i < 5; i++) {
+            visitIds.add(first.append(customerId, visit(i)).getId());
+        }
+        assertEquals(2, first.getPendingCount());
+
+        VisitJournalService second = start(checkpoint, Duration.ofMillis(50));
+        try {
+            assertEquals(2, second.getPendingCount());
+            assertTrue(second.awaitApplied(customerId, AWAIT));
+            assertEquals(0, second.getPendingCount());
+            // The stale first instance finds its visits written and the checkpoint past them
+            first.resumeWriter();
+            first.shutdown();
+            assertExactlyOnce(customerId, visitIds);
+        } finally {
+            second.shutdown();
+        }
+
+        VisitJournalService third = start(checkpoint, Duration.ofMillis(50));
+        try {
+            assertEquals(0, third.getPendingCount());
+            visitIds.add(third.append(customerId, visit(5)).getId());
+            assertTrue(third.awaitApplied(customerId, AWAIT));
+        } finally {
+            third.shutdown();
+        }
+        assertExactlyOnce(customerId, visitIds);
+    }
+
+    private void assertExactlyOnce(Long customerId, List<Long> visitIds) {
+        List<Long> stored = jdbcTemplate.queryForList(
+                "select id from visit_log where customer_id = ? order by id", Long.class, customerId);
+        assertEquals(visitIds.stream().sorted().toList(), stored);
+        Long counted = jdbcTemplate.queryForObject(
+                "select visit_count from customer_activity where customer_id = ?", Long.class, customerId);
+        assertEquals(visitIds.size(), counted);
+    }
+
+    private VisitJournalService start(String checkpoint, Duration maxDelay) throws IOException {
+        return new VisitJournalService(visitLogRepository, customerRepository, checkpointRepository,
+                customerActivityService, changeLogService, entityManager, entityManagerFactory, transactionManager,
+                meterRegistry, dir, DataSize.ofMegabytes(1), checkpoint, 1000, maxDelay, 100_000);
+    }
+
+    private Long createCustomer() {
+        Customer customer = new Customer();
+        customer.setNameStd("Journal Customer " + System.nanoTime());
+        customer.setRegion(regionRepository.findAll().get(0));
+        customer.setTier("A");
+        return customerRepository.save(customer).getId();
+    }
+
+    private static VisitCreateDto visit(int day) {
+        VisitCreateDto createDto = new VisitCreateDto();
+        createDto.setVisitAt(OffsetDateTime.of(2026, 1, 1 + day, 10, 0, 0, 0, ZoneOffset.UTC));
+        createDto.setType("CALL");
+        createDto.setNotes("Journaled visit " + day);
+        return createDto;
+    }
+}
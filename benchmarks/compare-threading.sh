@@ -0,0 +1,60 @@
+#!/usr/bin/env bash
+# Runs the HTTP load test against the backend twice, once with Tomcat's platform thread pool and
+# once with virtual threads (spring.threads.virtual.enabled), on the same generated data.
+# Results go to benchmarks/results/threading-<mode>.json. Run from the repository root after
+# `mvn -B package -DskipTests`; virtual threads need Java 21.
+set -euo pipefail
+
+PORT=${PORT:-8091}
+RATE=${RATE:-400}
+DURATION=${DURATION:-60}
+WARMUP=${WARMUP:-15}
+MAX_IN_FLIGHT=${MAX_IN_FLIGHT:-5000}
+CUSTOMERS=${CUSTOMERS:-20000}
+VISITS=${VISITS:-200000}
+INVOICES=${INVOICES:-50000}
+MODES=${MODES:-"platform virtual"}
+JAVA_OPTS=${JAVA_OPTS:-"-Xmx2g"}
+
+BACKEND_JAR=backend/target/crm-backend-0.0.1-SNAPSHOT-exec.jar
+BENCHMARKS_JAR=benchmarks/target/benchmarks.jar
+mkdir -p benchmarks/target
+
+java_major=$(java -XshowSettings:properties -version 2>&1 | awk -F'= ' '/java.specification.version/ {print $2}')
+
+for mode in $MODES; do
+  if [[ $mode == virtual && $java_major -lt 21 ]]; then
+    echo "Skipping virtual threads: Java $java_major < 21" >&2
+    continue
+  fi
+
+  echo "== $mode threads"
+  # shellcheck disable=SC2086
+  java $JAVA_OPTS -jar "$BACKEND_JAR" \
+      --server.port="$PORT" \
+      --spring.threads.virtual.enabled="$([[ $mode == virtual ]] && echo true || echo false)" \
+      --crm.datagen.enabled=true \
+      --crm.datagen.customers="$CUSTOMERS" --crm.datagen.visits="$VISITS" --crm.datagen.invoices="$INVOICES" \
+      --management.endpoint.health.probes.enabled=true \
+      --logging.level.org.hibernate.SQL=INFO --logging.level.org.hibernate.type.descriptor.sql.BasicBinder=INFO \
+      > "benchmarks/target/threading-$mode.log" 2>&1 &
+  server=$!
+  trap 'kill $server 2>/dev/null || true' EXIT
+
+  # Readiness turns UP once the data generator has finished
+  until curl -sf "http://localhost:$PORT/actuator/health/readiness" > /dev/null; do
+    if ! kill -0 $server 2>/dev/null; then
+      echo "Backend exited, see benchmarks/target/threading-$mode.log" >&2
+      exit 1
+    fi
+    sleep 2
+  done
+
+  java -cp "$BENCHMARKS_JAR" com.hygia.crm.loadtest.LoadTestRunner \
+      --base-url="http://localhost:$PORT" --rate="$RATE" --duration="$DURATION" --warmup="$WARMUP" \
+      --max-in-flight="$MAX_IN_FLIGHT" --out="benchmarks/results/threading-$mode.json"
+
+  kill $server
+  wait $server 2>/dev/null || true
+  trap - EXIT
+done
@@ -0,0 +1,135 @@
+package com.hygia.crm.benchmark;
+
+import com.hygia.crm.dto.CustomerDto;
+import com.hygia.crm.dto.CustomerRegionDto;
+import com.hygia.crm.dto.InvoiceDto;
+import com.hygia.crm.dto.InvoiceItemDto;
+import com.hygia.crm.entity.Customer;
+import com.hygia.crm.entity.Invoice;
+import com.hygia.crm.entity.InvoiceItem;
+import com.hygia.crm.entity.Product;
+import com.hygia.crm.entity.Region;
+import com.hygia.crm.entity.VisitLog;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deterministic entities and DTOs shaped like production rows, shared by the benchmarks.
+ */
+public final class BenchmarkData {
+
+    private static final String[] TIERS = {"A", "B", "C", "Potential"};
+    private static final OffsetDateTime BASE_TIME = OffsetDateTime.of(2025, 1, 1, 9, 0, 0, 0, ZoneOffset.UTC);
+
+    private BenchmarkData() {
+    }
+
+    public static Region region(long id) {
+        return new Region(id, "Region " + id, "WA");
+    }
+
+    public static Customer customer(long id) {
+        Customer customer = new Customer();
+        customer.setId(id);
+        customer.setNameStd("Seattle Dental Clinic " + id);
+        customer.setRegion(region(id % 5 + 1));
+        customer.setAddressText(id + " Pine Street, Seattle, WA 98101");
+        customer.setPhone("(206) 555-" + String.format("%04d", id % 10000));
+        customer.setEmail("frontdesk" + id + "@clinic.example");
+        customer.setPaymentTerms("NET30");
+        customer.setNotes("Prefers morning visits; ask for the office manager.");
+        customer.setTier(TIERS[(int) (id % TIERS.length)]);
+        customer.setIsProspect("Potential".equals(customer.getTier()));
+        return customer;
+    }
+
+    public static Product product(long id) {
+        Product product = new Product();
+        product.setId(id);
+        product.setItemCode("HYG-" + (1000 + id));
+        product.setDescription("Nitrile exam gloves, box of 100, size " + (id % 3 == 0 ? "M" : "L"));
+        product.setDefaultUnitPrice(new BigDecimal("12.50"));
+        product.setCompanyTag("hygia");
+        product.setProductType("consumable");
+        product.setActive(true);
+        return product;
+    }
+
+    public static Invoice invoice(long id, Customer customer) {
+        Invoice invoice = new Invoice();
+        invoice.setId(id);
+        invoice.setInvoiceNumber("INV-2025-" + String.format("%06d", id));
+        invoice.setCustomer(customer);
+        invoice.setInvoiceDate(LocalDate.of(2025, 1, 1).plusDays(id % 365));
+        invoice.setTotalAmount(new BigDecimal("187.50"));
+        invoice.setNote("Delivered with the monthly restock.");
+        return invoice;
+    }
+
+    public static List<InvoiceItem> items(Invoice invoice, int count) {
+        List<InvoiceItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            InvoiceItem item = new InvoiceItem();
+            item.setId(invoice.getId() * 100 + i);
+            item.setInvoice(invoice);
+            item.setProduct(product(i + 1));
+            item.setQuantity(5);
+            item.setUnitPrice(new BigDecimal("12.50"));
+            item.setAmount(new BigDecimal("62.50"));
+            items.add(item);
+        }
+        return items;
+    }
+
+    public static VisitLog visit(long id, Customer customer) {
+        VisitLog visit = new VisitLog();
+        visit.setId(id);
+        visit.setCustomer(customer);
+        visit.setVisitAt(BASE_TIME.plusHours(id));
+        visit.setType("in_person");
+        visit.setResult("Restock order placed");
+        visit.setNotes("Discussed the new glove line; follow up on pricing in two weeks.");
+        visit.setNextFollowUpAt(BASE_TIME.plusHours(id).plusDays(14));
+        return visit;
+    }
+
+    public static List<CustomerDto> customerDtos(int count) {
+        List<CustomerDto> dtos = new ArrayList<>(count);
+        for (long id = 1; id <= count; id++) {
+            Customer customer = customer(id);
+            CustomerDto dto = new CustomerDto();
+            dto.setId(customer.getId());
+            dto.setNameStd(customer.getNameStd());
+            dto.setIsProspect(customer.getIsProspect());
+            dto.setRegion(new CustomerRegionDto(customer.getRegion().getId(), customer.getRegion().getName()));
+            dto.setAddressText(customer.getAddressText());
+            dto.setPhone(customer.getPhone());
+            dto.setEmail(customer.getEmail());
+            dto.setPaymentTerms(customer.getPaymentTerms());
+            dto.setTier(customer.getTier());
+            dtos.add(dto);
+        }
+        return dtos;
+    }
+
+    public static List<InvoiceDto> invoiceDtos(int count, int itemsPerInvoice) {
+        List<InvoiceDto> dtos = new ArrayList<>(count);
+        for (long id = 1; id <= count; id++) {
+            Invoice invoice = invoice(id, customer(id));
+            List<InvoiceItemDto> itemDtos = new ArrayList<>(itemsPerInvoice);
+            for (InvoiceItem item : items(invoice, itemsPerInvoice)) {
+                itemDtos.add(new InvoiceItemDto(item.getId(), item.getProduct().getId(), item.getProduct().getItemCode(),
+                        item.getProduct().getDescription(), item.getQuantity(), item.getUnitPrice(), item.getAmount()));
+            }
+            dtos.add(new InvoiceDto(invoice.getId(), invoice.getInvoiceNumber(), invoice.getCustomer().getId(),
+                    invoice.getCustomer().getNameStd(), invoice.getInvoiceDate(), invoice.getTotalAmount(),
+                    invoice.getNote(), itemDtos));
+        }
+        return dtos;
+    }
+}
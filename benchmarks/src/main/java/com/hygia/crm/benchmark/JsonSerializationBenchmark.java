@@ -0,0 +1,62 @@
+package com.hygia.crm.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hygia.crm.dto.CustomerDto;
+import com.hygia.crm.dto.InvoiceDto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of the largest list payloads: a page of GET /api/customers and the
+ * invoice list of GET /api/invoices/by-customer/{id}. The mapper is built the way Spring Boot
+ * builds its default one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonSerializationBenchmark {
+
+    @Param({"20", "100"})
+    public int rows;
+
+    private ObjectMapper objectMapper;
+    private Page<CustomerDto> customerPage;
+    private List<InvoiceDto> invoices;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        customerPage = new PageImpl<>(BenchmarkData.customerDtos(rows), PageRequest.of(0, rows), 10_000);
+        invoices = BenchmarkData.invoiceDtos(rows, 3);
+    }
+
+    @Benchmark
+    public byte[] customerPage() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(customerPage);
+    }
+
+    @Benchmark
+    public byte[] invoiceList() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(invoices);
+    }
+}
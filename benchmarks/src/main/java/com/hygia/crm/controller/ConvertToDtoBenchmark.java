@@ -0,0 +1,87 @@
+package com.hygia.crm.controller;
+
+import com.hygia.crm.benchmark.BenchmarkData;
+import com.hygia.crm.dto.CustomerDto;
+import com.hygia.crm.dto.InvoiceDto;
+import com.hygia.crm.dto.VisitDto;
+import com.hygia.crm.entity.Customer;
+import com.hygia.crm.entity.Invoice;
+import com.hygia.crm.entity.InvoiceItem;
+import com.hygia.crm.entity.VisitLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entity to DTO mapping done by the controllers for every row they return. Lives in the
+ * controller package because the convertToDto methods are package-private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConvertToDtoBenchmark {
+
+    private CustomerController customerController;
+    private InvoiceController invoiceController;
+    private VisitController visitController;
+
+    private Customer customer;
+    private VisitLog visit;
+
+    @Setup
+    public void setUp() {
+        // Mapping does not touch the injected repositories and services
+        customerController = new CustomerController(null, null, null, null);
+        invoiceController = new InvoiceController(null, null, null, null, 0);
+        visitController = new VisitController(null, null, null, null, null, Duration.ZERO);
+
+        customer = BenchmarkData.customer(42);
+        visit = BenchmarkData.visit(42, customer);
+    }
+
+    @State(Scope.Benchmark)
+    public static class InvoiceData {
+
+        @Param({"1", "10"})
+        public int items;
+
+        private Invoice invoice;
+        private List<InvoiceItem> invoiceItems;
+
+        @Setup
+        public void setUp() {
+            invoice = BenchmarkData.invoice(42, BenchmarkData.customer(42));
+            invoiceItems = BenchmarkData.items(invoice, items);
+        }
+    }
+
+    @Benchmark
+    public CustomerDto customer() {
+        return customerController.convertToDto(customer);
+    }
+
+    @Benchmark
+    public InvoiceDto invoice(InvoiceData data) {
+        return invoiceController.convertToDto(data.invoice, data.invoiceItems);
+    }
+
+    @Benchmark
+    public VisitDto visit() {
+        return visitController.convertToDto(visit);
+    }
+}
@@ -0,0 +1,79 @@
+package com.hygia.crm.loadtest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Latencies and error counts of one load test endpoint. Latencies are kept in full (microseconds),
+ * so percentiles are exact.
+ */
+final class EndpointStats {
+
+    private long[] latenciesMicros = new long[1024];
+    private int count;
+    private long errors;
+    private long dropped;
+
+    synchronized void record(long latencyMicros, boolean error) {
+        if (count == latenciesMicros.length) {
+            latenciesMicros = Arrays.copyOf(latenciesMicros, count * 2);
+        }
+        latenciesMicros[count++] = latencyMicros;
+        if (error) {
+            errors++;
+        }
+    }
+
+    /**
+     * A request that was due but not sent because too many requests were already in flight.
+     */
+    synchronized void recordDropped() {
+        dropped++;
+    }
+
+    synchronized long count() {
+        return count;
+    }
+
+    synchronized long errors() {
+        return errors;
+    }
+
+    synchronized long dropped() {
+        return dropped;
+    }
+
+    synchronized Map<String, Object> summary() {
+        long[] sorted = Arrays.copyOf(latenciesMicros, count);
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long latency : sorted) {
+            total += latency;
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", count);
+        summary.put("errors", errors);
+        summary.put("dropped", dropped);
+        summary.put("p50Ms", millis(percentile(sorted, 50)));
+        summary.put("p95Ms", millis(percentile(sorted, 95)));
+        summary.put("p99Ms", millis(percentile(sorted, 99)));
+        summary.put("maxMs", millis(count > 0 ? sorted[count - 1] : 0));
+        summary.put("meanMs", millis(count > 0 ? total / count : 0));
+        return summary;
+    }
+
+    // Nearest-rank percentile
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    private static double millis(long micros) {
+        return Math.round(micros / 10.0) / 100.0;
+    }
+}
@@ -0,0 +1,297 @@
+package com.hygia.crm.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * End-to-end HTTP load test against a running backend, typically one filled by the dev data
+ * generator ({@code crm.datagen.enabled=true}).
+ * <p>
+ * Requests are sent at a fixed rate (open model) over a weighted mix of read endpoints and a
+ * small share of visit writes. Latency is measured from the time a request was scheduled to
+ * start, not from when it was actually sent, so a stalled server shows up in the percentiles
+ * instead of silently lowering the request rate. Requests due while {@code max-in-flight}
+ * requests are outstanding are counted as dropped. Results of the warmup period are discarded.
+ * <p>
+ * Options ({@code --name=value}): base-url (http://localhost:8090), rate (requests/s, 50),
+ * duration (s, 60), warmup (s, 10), max-in-flight (256), timeout (s, 30), seed (1),
+ * out (loadtest-results.json), baseline (a results file of an earlier run to compare the
+ * percentiles with).
+ */
+public final class LoadTestRunner {
+
+    private static final String[] NAME_QUERIES = {
+        "harbor", "summit", "dental", "smile", "orthodontics", "cedar", "pacific", "family", "alpine", "valley"
+    };
+    private static final String[] TIERS = {"A", "B", "C", "Potential"};
+    private static final String[] VISIT_RESULTS = {"order_placed", "follow_up", "no_answer"};
+
+    private final URI baseUri;
+    private final int rate;
+    private final int durationSeconds;
+    private final int warmupSeconds;
+    private final int maxInFlight;
+    private final Duration timeout;
+    private final long seed;
+    private final Path out;
+    private final Path baseline;
+    private final HttpClient client;
+    private final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private long maxCustomerId;
+
+    private LoadTestRunner(Map<String, String> options) {
+        String baseUrl = options.getOrDefault("base-url", "http://localhost:8090");
+        this.baseUri = URI.create(baseUrl.endsWith("/") ? baseUrl : baseUrl + "/");
+        this.rate = Integer.parseInt(options.getOrDefault("rate", "50"));
+        this.durationSeconds = Integer.parseInt(options.getOrDefault("duration", "60"));
+        this.warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "10"));
+        this.maxInFlight = Integer.parseInt(options.getOrDefault("max-in-flight", "256"));
+        this.timeout = Duration.ofSeconds(Long.parseLong(options.getOrDefault("timeout", "30")));
+        this.seed = Long.parseLong(options.getOrDefault("seed", "1"));
+        this.out = Path.of(options.getOrDefault("out", "loadtest-results.json"));
+        this.baseline = options.containsKey("baseline") ? Path.of(options.get("baseline")) : null;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                System.err.println("Unexpected argument " + arg + ", expected --name=value");
+                System.exit(2);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        new LoadTestRunner(options).run();
+    }
+
+    private void run() throws IOException, InterruptedException {
+        maxCustomerId = findMaxCustomerId();
+        List<Scenario> scenarios = scenarios();
+        int totalWeight = scenarios.stream().mapToInt(Scenario::weight).sum();
+        Map<String, EndpointStats> stats = new LinkedHashMap<>();
+        scenarios.forEach(scenario -> stats.put(scenario.name(), new EndpointStats()));
+
+        System.out.printf("Load test against %s: %d requests/s for %d s after %d s warmup, customer ids 1-%d%n",
+                baseUri, rate, durationSeconds, warmupSeconds, maxCustomerId);
+
+        Random random = new Random(seed);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long totalRequests = (long) rate * (warmupSeconds + durationSeconds);
+        long warmupRequests = (long) rate * warmupSeconds;
+        List<CompletableFuture<?>> pending = new ArrayList<>();
+        long startNanos = System.nanoTime();
+
+        for (long i = 0; i < totalRequests; i++) {
+            long intendedStart = startNanos + i * intervalNanos;
+            long wait = intendedStart - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            Scenario scenario = pick(scenarios, totalWeight, random);
+            EndpointStats endpoint = i >= warmupRequests ? stats.get(scenario.name()) : null;
+            if (inFlight.get() >= maxInFlight) {
+                if (endpoint != null) {
+                    endpoint.recordDropped();
+                }
+                continue;
+            }
+
+            inFlight.incrementAndGet();
+            HttpRequest request = scenario.request().apply(random);
+            pending.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, failure) -> {
+                        inFlight.decrementAndGet();
+                        if (endpoint != null) {
+                            long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStart);
+                            boolean error = failure != null || response.statusCode() >= 400;
+                            endpoint.record(latencyMicros, error);
+                        }
+                    }));
+            if (pending.size() >= 10_000) {
+                pending.removeIf(CompletableFuture::isDone);
+            }
+        }
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture[0]))
+                .exceptionally(failure -> null)
+                .join();
+
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1_000_000_000.0 - warmupSeconds;
+        writeResults(stats, elapsedSeconds);
+    }
+
+    private List<Scenario> scenarios() {
+        List<Scenario> scenarios = new ArrayList<>();
+        scenarios.add(new Scenario("GET /api/customers", 20,
+                random -> get("api/customers?page=" + random.nextInt(50) + "&size=20")));
+        scenarios.add(new Scenario("GET /api/customers?q", 15, random -> {
+            String q = random.nextInt(4) == 0
+                    ? String.valueOf(100 + random.nextInt(900))
+                    : NAME_QUERIES[random.nextInt(NAME_QUERIES.length)];
+            return get("api/customers?q=" + q + "&size=20");
+        }));
+        scenarios.add(new Scenario("GET /api/customers?regionId&tier", 10,
+                random -> get("api/customers?regionId=" + (1 + random.nextInt(20))
+                        + "&tier=" + TIERS[random.nextInt(TIERS.length)] + "&size=20")));
+        scenarios.add(new Scenario("GET /api/customers?followup=due", 5,
+                random -> get("api/customers?followup=due&size=20")));
+        scenarios.add(new Scenario("GET /api/customers/{id}/visits", 15,
+                random -> get("api/customers/" + customerId(random) + "/visits?size=20")));
+        scenarios.add(new Scenario("GET /api/invoices/by-customer/{id}/history", 15,
+                random -> get("api/invoices/by-customer/" + customerId(random) + "/history?size=20")));
+        scenarios.add(new Scenario("GET /api/products", 5,
+                random -> get("api/products?active=true")));
+        scenarios.add(new Scenario("GET /api/analytics/revenue", 5, random -> random.nextBoolean()
+                ? get("api/analytics/revenue?groupBy=month,region")
+                : get("api/analytics/revenue?groupBy=product&tier=" + TIERS[random.nextInt(3)])));
+        scenarios.add(new Scenario("POST /api/customers/{id}/visits", 10, random -> {
+            OffsetDateTime visitAt = OffsetDateTime.now(ZoneOffset.UTC).withNano(0);
+            String result = VISIT_RESULTS[random.nextInt(VISIT_RESULTS.length)];
+            String body = "{\"visitAt\":\"" + visitAt + "\",\"type\":\"phone\",\"result\":\"" + result + "\""
+                    + ("follow_up".equals(result) ? ",\"nextFollowUpAt\":\"" + visitAt.plusDays(7) + "\"" : "")
+                    + ",\"notes\":\"Load test visit\"}";
+            return HttpRequest.newBuilder(baseUri.resolve("api/customers/" + customerId(random) + "/visits"))
+                    .timeout(timeout)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+        }));
+        return scenarios;
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(baseUri.resolve(path)).timeout(timeout).GET().build();
+    }
+
+    private long customerId(Random random) {
+        return 1 + (long) (random.nextDouble() * maxCustomerId);
+    }
+
+    private static Scenario pick(List<Scenario> scenarios, int totalWeight, Random random) {
+        int value = random.nextInt(totalWeight);
+        for (Scenario scenario : scenarios) {
+            value -= scenario.weight();
+            if (value < 0) {
+                return scenario;
+            }
+        }
+        throw new IllegalStateException("Scenario weights changed");
+    }
+
+    private long findMaxCustomerId() throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(get("api/customers?size=1&sort=id,desc"),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("GET /api/customers returned " + response.statusCode());
+        }
+        JsonNode content = objectMapper.readTree(response.body()).path("content");
+        if (content.isEmpty()) {
+            throw new IllegalStateException("No customers found; load the database first, e.g. with crm.datagen.enabled=true");
+        }
+        return content.get(0).path("id").asLong();
+    }
+
+    private void writeResults(Map<String, EndpointStats> stats, double elapsedSeconds) throws IOException {
+        long completed = 0;
+        long errors = 0;
+        long dropped = 0;
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        System.out.printf("%n%-45s %8s %7s %8s %9s %9s %9s %9s%n",
+                "endpoint", "count", "errors", "dropped", "p50 ms", "p95 ms", "p99 ms", "max ms");
+        for (Map.Entry<String, EndpointStats> entry : stats.entrySet()) {
+            EndpointStats endpoint = entry.getValue();
+            Map<String, Object> summary = endpoint.summary();
+            endpoints.put(entry.getKey(), summary);
+            completed += endpoint.count();
+            errors += endpoint.errors();
+            dropped += endpoint.dropped();
+            System.out.printf("%-45s %8d %7d %8d %9.2f %9.2f %9.2f %9.2f%n", entry.getKey(),
+                    summary.get("count"), summary.get("errors"), summary.get("dropped"),
+                    summary.get("p50Ms"), summary.get("p95Ms"), summary.get("p99Ms"), summary.get("maxMs"));
+        }
+
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("baseUrl", baseUri.toString());
+        config.put("rate", rate);
+        config.put("durationSeconds", durationSeconds);
+        config.put("warmupSeconds", warmupSeconds);
+        config.put("maxInFlight", maxInFlight);
+        config.put("seed", seed);
+        config.put("maxCustomerId", maxCustomerId);
+
+        Map<String, Object> totals = new LinkedHashMap<>();
+        totals.put("completed", completed);
+        totals.put("errors", errors);
+        totals.put("dropped", dropped);
+        totals.put("achievedRate", Math.round(completed / elapsedSeconds * 10) / 10.0);
+
+        Map<String, Object> results = new LinkedHashMap<>();
+        results.put("finishedAt", OffsetDateTime.now(ZoneOffset.UTC).toString());
+        results.put("config", config);
+        results.put("totals", totals);
+        results.put("endpoints", endpoints);
+        objectMapper.writeValue(out.toFile(), results);
+        Files.writeString(out, System.lineSeparator(), StandardOpenOption.APPEND);
+
+        System.out.printf("%n%d completed, %d errors, %d dropped, %.1f requests/s; results written to %s%n",
+                completed, errors, dropped, (double) totals.get("achievedRate"), out.toAbsolutePath());
+        if (baseline != null) {
+            printComparison(endpoints);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void printComparison(Map<String, Object> endpoints) throws IOException {
+        JsonNode baselineEndpoints = objectMapper.readTree(baseline.toFile()).path("endpoints");
+        System.out.printf("%nCompared with %s:%n%-45s%21s%21s%21s%n", baseline, "endpoint", "p50 ms", "p95 ms", "p99 ms");
+        for (Map.Entry<String, Object> entry : endpoints.entrySet()) {
+            JsonNode before = baselineEndpoints.path(entry.getKey());
+            if (before.isMissingNode()) {
+                System.out.printf("%-45s %20s%n", entry.getKey(), "not in baseline");
+                continue;
+            }
+            Map<String, Object> after = (Map<String, Object>) entry.getValue();
+            StringBuilder line = new StringBuilder(String.format("%-45s", entry.getKey()));
+            for (String percentile : List.of("p50Ms", "p95Ms", "p99Ms")) {
+                double was = before.path(percentile).asDouble();
+                double now = (double) after.get(percentile);
+                String change = was > 0 ? String.format("%+.0f%%", (now - was) / was * 100) : "n/a";
+                line.append(String.format(" %11.2f (%6s)", now, change));
+            }
+            System.out.println(line);
+        }
+    }
+
+    private record Scenario(String name, int weight, Function<Random, HttpRequest> request) {
+    }
+}
@@ -0,0 +1,101 @@
+package com.hygia.crm.repository;
+
+import com.hygia.crm.entity.Customer;
+import com.hygia.crm.entity.CustomerActivity;
+import com.hygia.crm.entity.CustomerSearchGram;
+import com.hygia.crm.entity.Region;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.query.Query;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the criteria predicates of GET /api/customers, and turning them into a Hibernate
+ * query. Nothing is executed; the session never opens a connection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomerSpecificationBenchmark {
+
+    /**
+     * none: no filters; simple: region and tier; search: q only; all: every filter including the
+     * due follow-up subquery.
+     */
+    @Param({"none", "simple", "search", "all"})
+    public String filters;
+
+    private SessionFactory sessionFactory;
+    private Session session;
+    private CriteriaBuilder cb;
+    private Specification<Customer> spec;
+
+    @Setup
+    public void setUp() {
+        sessionFactory = new Configuration()
+                .addAnnotatedClass(Customer.class)
+                .addAnnotatedClass(Region.class)
+                .addAnnotatedClass(CustomerActivity.class)
+                .addAnnotatedClass(CustomerSearchGram.class)
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:specification-benchmark")
+                .setProperty("hibernate.boot.allow_jdbc_metadata_access", "false")
+                .setProperty("hibernate.hbm2ddl.auto", "none")
+                .buildSessionFactory();
+        session = sessionFactory.openSession();
+        cb = sessionFactory.getCriteriaBuilder();
+        spec = switch (filters) {
+            case "none" -> CustomerSpecification.withFilters(null, null, null, null, null);
+            case "simple" -> CustomerSpecification.withFilters(3L, "A", null, null, null);
+            case "search" -> CustomerSpecification.withFilters(null, null, "dental clinic", null, null);
+            case "all" -> CustomerSpecification.withFilters(3L, "A", "dental clinic", false, "due");
+            default -> throw new IllegalArgumentException(filters);
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        session.close();
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    public Predicate predicate() {
+        CriteriaQuery<Customer> query = cb.createQuery(Customer.class);
+        Root<Customer> root = query.from(Customer.class);
+        return spec.toPredicate(root, query, cb);
+    }
+
+    @Benchmark
+    public Query<Customer> query() {
+        CriteriaQuery<Customer> query = cb.createQuery(Customer.class);
+        Root<Customer> root = query.from(Customer.class);
+        Predicate predicate = spec.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        return session.createQuery(query);
+    }
+}
@@ -0,0 +1,284 @@
+package com.hygia.crm.repository;
+
+import com.hygia.crm.entity.Customer;
+import com.hygia.crm.entity.CustomerActivity;
+import com.hygia.crm.entity.CustomerSearchGram;
+import com.hygia.crm.entity.Invoice;
+import com.hygia.crm.entity.InvoiceItem;
+import com.hygia.crm.entity.Product;
+import com.hygia.crm.entity.Region;
+import com.hygia.crm.entity.VisitLog;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.flywaydb.core.Flyway;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One 100-row page of the customer, visit and invoice listings, read as entities (the former read
+ * paths) and as projections (the current ones), from an in-memory H2 database. Each invocation
+ * uses a fresh session, like a request does. Scores are rows per second and, with {@code -prof gc},
+ * {@code gc.alloc.rate.norm} is bytes allocated per row; invoice rows include their 3 items.
+ * Warmup is longer than elsewhere, as query execution takes several seconds to settle.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListingProjectionBenchmark {
+
+    private static final int ROWS = 100;
+    private static final int CUSTOMERS = 2_000;
+    private static final int PRODUCTS = 50;
+    private static final int ITEMS_PER_INVOICE = 3;
+    private static final String URL = "jdbc:h2:mem:listing-benchmark;DB_CLOSE_DELAY=-1";
+
+    // The JPQL of the former read paths, and of VisitLogRepository, InvoiceRepository and InvoiceItemRepository
+    private static final String VISIT_ENTITIES =
+            "select v from VisitLog v where v.customer.id = :customerId order by v.visitAt desc";
+    private static final String VISIT_ROWS =
+            "select new com.hygia.crm.repository.VisitRow(v.id, v.visitAt, v.type, v.result, v.notes, v.nextFollowUpAt) " +
+            "from VisitLog v where v.customer.id = :customerId order by v.visitAt desc";
+    private static final String VISIT_COUNT = "select count(v) from VisitLog v where v.customer.id = :customerId";
+    private static final String INVOICE_ENTITIES =
+            "select i from Invoice i where i.customer.id = :customerId order by i.invoiceDate desc, i.id desc";
+    private static final String ITEM_ENTITIES =
+            "select i from InvoiceItem i join fetch i.product where i.invoice.id in :invoiceIds order by i.invoice.id, i.id";
+    private static final String INVOICE_ROWS =
+            "select new com.hygia.crm.repository.InvoiceRow(i.id, i.invoiceNumber, c.id, c.nameStd, i.invoiceDate, i.totalAmount, i.note) " +
+            "from Invoice i join i.customer c where c.id = :customerId order by i.invoiceDate desc, i.id desc";
+    private static final String ITEM_ROWS =
+            "select new com.hygia.crm.repository.InvoiceItemRow(i.invoice.id, i.id, p.id, p.itemCode, p.description, i.quantity, i.unitPrice, i.amount) " +
+            "from InvoiceItem i join i.product p where i.invoice.id in :invoiceIds order by i.invoice.id, i.id";
+
+    private SessionFactory sessionFactory;
+    private Long customerId;
+    private final Specification<Customer> spec = CustomerSpecification.withFilters(null, null, null, null, null);
+    private final Pageable customerPage = PageRequest.of(3, ROWS, Sort.by("nameStd"));
+    private final Pageable visitPage = PageRequest.of(0, ROWS);
+
+    @Setup
+    public void setUp() {
+        // The application's schema and indexes, not the ones Hibernate would derive from the entities
+        Flyway.configure().dataSource(URL, "", "").load().migrate();
+        sessionFactory = new Configuration()
+                .addAnnotatedClass(Customer.class)
+                .addAnnotatedClass(Region.class)
+                .addAnnotatedClass(CustomerActivity.class)
+                .addAnnotatedClass(CustomerSearchGram.class)
+                .addAnnotatedClass(VisitLog.class)
+                .addAnnotatedClass(Invoice.class)
+                .addAnnotatedClass(InvoiceItem.class)
+                .addAnnotatedClass(Product.class)
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.connection.url", URL)
+                .setProperty("hibernate.hbm2ddl.auto", "validate")
+                .setProperty("hibernate.jdbc.batch_size", "100")
+                .setProperty("hibernate.cache.use_second_level_cache", "false")
+                .buildSessionFactory();
+        sessionFactory.inTransaction(this::seed);
+    }
+
+    @TearDown
+    public void tearDown() {
+        sessionFactory.inTransaction(session -> session.createNativeMutationQuery("drop all objects").executeUpdate());
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public Page<Customer> customersEntity() {
+        try (Session session = sessionFactory.openSession()) {
+            CriteriaBuilder cb = session.getCriteriaBuilder();
+            CriteriaQuery<Customer> query = cb.createQuery(Customer.class);
+            Root<Customer> root = query.from(Customer.class);
+            Predicate predicate = spec.toPredicate(root, query, cb);
+            if (predicate != null) {
+                query.where(predicate);
+            }
+            query.orderBy(QueryUtils.toOrders(customerPage.getSort(), root, cb));
+            List<Customer> content = session.createQuery(query)
+                    .setFirstResult((int) customerPage.getOffset())
+                    .setMaxResults(customerPage.getPageSize())
+                    .getResultList();
+            // Spring Data counts with a criteria query as well
+            CriteriaQuery<Long> count = cb.createQuery(Long.class);
+            Root<Customer> countRoot = count.from(Customer.class);
+            Predicate countPredicate = spec.toPredicate(countRoot, count, cb);
+            if (countPredicate != null) {
+                count.where(countPredicate);
+            }
+            long total = session.createQuery(count.select(cb.count(countRoot))).getSingleResult();
+            // The DTO shows the region's name
+            content.forEach(customer -> customer.getRegion().getName());
+            return new PageImpl<>(content, customerPage, total);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public Page<CustomerRow> customersProjection() {
+        try (Session session = sessionFactory.openSession()) {
+            return new CustomerRepositoryImpl(session).findRows(spec, customerPage);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public Page<VisitLog> visitsEntity() {
+        try (Session session = sessionFactory.openSession()) {
+            List<VisitLog> content = session.createQuery(VISIT_ENTITIES, VisitLog.class)
+                    .setParameter("customerId", customerId)
+                    .setMaxResults(ROWS)
+                    .getResultList();
+            long total = session.createQuery(VISIT_COUNT, Long.class)
+                    .setParameter("customerId", customerId)
+                    .getSingleResult();
+            return new PageImpl<>(content, visitPage, total);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public Page<VisitRow> visitsProjection() {
+        try (Session session = sessionFactory.openSession()) {
+            List<VisitRow> content = session.createQuery(VISIT_ROWS, VisitRow.class)
+                    .setParameter("customerId", customerId)
+                    .setMaxResults(ROWS)
+                    .getResultList();
+            long total = session.createQuery(VISIT_COUNT, Long.class)
+                    .setParameter("customerId", customerId)
+                    .getSingleResult();
+            return new PageImpl<>(content, visitPage, total);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public List<InvoiceItem> invoicesEntity() {
+        try (Session session = sessionFactory.openSession()) {
+            List<Invoice> invoices = session.createQuery(INVOICE_ENTITIES, Invoice.class)
+                    .setParameter("customerId", customerId)
+                    .setMaxResults(ROWS)
+                    .getResultList();
+            // The DTO shows the customer's name
+            invoices.forEach(invoice -> invoice.getCustomer().getNameStd());
+            return session.createQuery(ITEM_ENTITIES, InvoiceItem.class)
+                    .setParameter("invoiceIds", invoices.stream().map(Invoice::getId).toList())
+                    .getResultList();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public List<InvoiceItemRow> invoicesProjection() {
+        try (Session session = sessionFactory.openSession()) {
+            List<InvoiceRow> invoices = session.createQuery(INVOICE_ROWS, InvoiceRow.class)
+                    .setParameter("customerId", customerId)
+                    .setMaxResults(ROWS)
+                    .getResultList();
+            return session.createQuery(ITEM_ROWS, InvoiceItemRow.class)
+                    .setParameter("invoiceIds", invoices.stream().map(InvoiceRow::id).toList())
+                    .getResultList();
+        }
+    }
+
+    // 2,000 customers with notes, one of them with 500 visits and 500 invoices of 3 items
+    private void seed(Session session) {
+        Region[] regions = new Region[3];
+        for (int i = 0; i < regions.length; i++) {
+            regions[i] = new Region();
+            regions[i].setName("Region " + i);
+            regions[i].setState("WA");
+            session.persist(regions[i]);
+        }
+        Product[] products = new Product[PRODUCTS];
+        for (int i = 0; i < PRODUCTS; i++) {
+            products[i] = new Product();
+            products[i].setItemCode(String.format("P%04d", i));
+            products[i].setDescription("Nitrile examination gloves, powder free, size " + i);
+            products[i].setDefaultUnitPrice(new BigDecimal("12.50"));
+            session.persist(products[i]);
+        }
+        String notes = "Prefers deliveries before noon. ".repeat(8);
+        Customer busy = null;
+        for (int i = 0; i < CUSTOMERS; i++) {
+            Customer customer = new Customer();
+            customer.setNameStd(String.format("Dental Clinic %05d", i));
+            customer.setRegion(regions[i % regions.length]);
+            customer.setAddressText(i + " Main Street, Springfield");
+            customer.setPhone(String.format("(555) 010-%04d", i));
+            customer.setEmail("clinic" + i + "@example.com");
+            customer.setPaymentTerms("NET30");
+            customer.setNotes(notes);
+            customer.setTier(List.of("A", "B", "C", "Potential").get(i % 4));
+            session.persist(customer);
+            if (busy == null) {
+                busy = customer;
+            }
+            if (i % 100 == 99) {
+                session.flush();
+                session.clear();
+            }
+        }
+        busy = session.getReference(Customer.class, busy.getId());
+        OffsetDateTime start = OffsetDateTime.of(2024, 1, 1, 9, 0, 0, 0, ZoneOffset.UTC);
+        for (int i = 0; i < 500; i++) {
+            VisitLog visit = new VisitLog();
+            visit.setCustomer(busy);
+            visit.setVisitAt(start.plusHours(i * 7L));
+            visit.setType("VISIT");
+            visit.setResult("ORDER");
+            visit.setNotes("Discussed the new sterilization pouches and restocking schedule.");
+            session.persist(visit);
+
+            Invoice invoice = new Invoice();
+            invoice.setInvoiceNumber("INV" + i);
+            invoice.setCustomer(busy);
+            invoice.setInvoiceDate(LocalDate.of(2024, 1, 1).plusDays(i));
+            invoice.setTotalAmount(new BigDecimal("112.50"));
+            session.persist(invoice);
+            for (int k = 0; k < ITEMS_PER_INVOICE; k++) {
+                InvoiceItem item = new InvoiceItem();
+                item.setInvoice(invoice);
+                item.setProduct(products[(i + k) % PRODUCTS]);
+                item.setQuantity(3);
+                item.setUnitPrice(new BigDecimal("12.50"));
+                item.setAmount(new BigDecimal("37.50"));
+                session.persist(item);
+            }
+        }
+        customerId = busy.getId();
+    }
+}